@@ -0,0 +1,195 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+/**
+ * Encode and decode throughput of {@link GorillaCodec} and {@link ColumnBlock} on the bundled metric fixtures,
+ * repeated up to a full block. Run with {@code mvn -P benchmark test-compile exec:exec}; the bytes per point of
+ * each fixture are logged by {@code GorillaCodecTest}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GorillaCodecBenchmark {
+	private static final int[] TYPES = { Types.VARCHAR, Types.TIMESTAMP, Types.DOUBLE };
+
+	@Param({ "double", "int" })
+	public String fixture;
+
+	private long[] times;
+	private double[] values;
+	private ByteBuffer encodedTimes;
+	private ByteBuffer encodedValues;
+	private ByteBuffer encodedBlock;
+	private ByteBuffer scratch;
+	private long[] decodedTimes;
+	private double[] decodedValues;
+	private ColumnBlock block;
+
+	@Setup
+	public void setUp() throws IOException {
+		final Series series = Series.read(fixture);
+		final int size = ColumnarWriter.BLOCK_ROWS;
+		times = new long[size];
+		values = new double[size];
+		final ColumnBlock source = new ColumnBlock(TYPES, size);
+		final long span = series.times[series.size - 1] - series.times[0] + 1000;
+		for (int i = 0; i < size; i++) {
+			final int row = i % series.size;
+			times[i] = series.times[row] + span * (i / series.size);
+			values[i] = series.values[row];
+			source.add(new String[] { series.entities[row], TimeDateUtils.formatEpochMillis(times[i]),
+					Double.toString(values[i]) });
+		}
+		encodedTimes = encode(times, size);
+		encodedValues = encode(values, size);
+		encodedBlock = ByteBuffer.allocate(source.encodedSize()).order(ByteOrder.nativeOrder());
+		source.encode(encodedBlock);
+		encodedBlock.flip();
+		scratch = ByteBuffer.allocate(16 * size + 64).order(ByteOrder.nativeOrder());
+		decodedTimes = new long[size];
+		decodedValues = new double[size];
+		block = new ColumnBlock(TYPES, size);
+	}
+
+	@Benchmark
+	public ByteBuffer encodeTimestamps() {
+		scratch.clear();
+		final GorillaCodec.BitWriter writer = new GorillaCodec.BitWriter(scratch);
+		GorillaCodec.encodeLongs(times, times.length, writer);
+		writer.flush();
+		return scratch;
+	}
+
+	@Benchmark
+	public ByteBuffer encodeValues() {
+		scratch.clear();
+		final GorillaCodec.BitWriter writer = new GorillaCodec.BitWriter(scratch);
+		GorillaCodec.encodeDoubles(values, values.length, writer);
+		writer.flush();
+		return scratch;
+	}
+
+	@Benchmark
+	public long[] decodeTimestamps() {
+		GorillaCodec.decodeLongs(new GorillaCodec.BitReader(encodedTimes.duplicate().order(ByteOrder.nativeOrder())),
+				decodedTimes, decodedTimes.length);
+		return decodedTimes;
+	}
+
+	@Benchmark
+	public double[] decodeValues() {
+		GorillaCodec.decodeDoubles(new GorillaCodec.BitReader(encodedValues.duplicate().order(ByteOrder.nativeOrder())),
+				decodedValues, decodedValues.length);
+		return decodedValues;
+	}
+
+	@Benchmark
+	public ColumnBlock decodeBlock() throws IOException {
+		block.decode(encodedBlock.duplicate().order(ByteOrder.nativeOrder()));
+		return block;
+	}
+
+	private static ByteBuffer encode(long[] values, int size) {
+		final GorillaCodec.BitWriter counter = new GorillaCodec.BitWriter(null);
+		GorillaCodec.encodeLongs(values, size, counter);
+		final ByteBuffer buffer = ByteBuffer.allocate((int) counter.getBytes()).order(ByteOrder.nativeOrder());
+		final GorillaCodec.BitWriter writer = new GorillaCodec.BitWriter(buffer);
+		GorillaCodec.encodeLongs(values, size, writer);
+		writer.flush();
+		buffer.flip();
+		return buffer;
+	}
+
+	private static ByteBuffer encode(double[] values, int size) {
+		final GorillaCodec.BitWriter counter = new GorillaCodec.BitWriter(null);
+		GorillaCodec.encodeDoubles(values, size, counter);
+		final ByteBuffer buffer = ByteBuffer.allocate((int) counter.getBytes()).order(ByteOrder.nativeOrder());
+		final GorillaCodec.BitWriter writer = new GorillaCodec.BitWriter(buffer);
+		GorillaCodec.encodeDoubles(values, size, writer);
+		writer.flush();
+		buffer.flip();
+		return buffer;
+	}
+
+	private static final class Series {
+		private final int size;
+		private final String[] entities;
+		private final long[] times;
+		private final double[] values;
+
+		private Series(int size) {
+			this.size = size;
+			this.entities = new String[size];
+			this.times = new long[size];
+			this.values = new double[size];
+		}
+
+		static Series read(String fixture) throws IOException {
+			final List<String[]> rows = new ArrayList<>();
+			try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+					GorillaCodecBenchmark.class.getResourceAsStream("/csv/jdbc.driver.test.metric." + fixture + ".csv"),
+					StandardCharsets.UTF_8))) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (!line.isEmpty())
+						rows.add(line.split(","));
+				}
+			}
+			final List<String> header = Arrays.asList(rows.remove(0));
+			final int entity = header.indexOf("entity");
+			final int time = header.indexOf("time");
+			final int value = header.indexOf("value");
+			final Series series = new Series(rows.size());
+			for (int i = 0; i < series.size; i++) {
+				final String[] row = rows.get(i);
+				series.entities[i] = row[entity];
+				series.times[i] = Long.parseLong(row[time]);
+				series.values[i] = Double.parseDouble(row[value]);
+			}
+			return series;
+		}
+	}
+
+}
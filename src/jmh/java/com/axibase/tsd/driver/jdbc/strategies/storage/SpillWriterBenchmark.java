@@ -0,0 +1,166 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Time to spill a 64 MB response served by a local HTTP server with each writer; the throughput in MB/s
+ * is 64 divided by the reported seconds per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SpillWriterBenchmark {
+	private static final int MB = 1024 * 1024;
+	private static final int CONTENT_LENGTH = 64 * MB;
+
+	@Param({ "ASYNC", "TRANSFER", "WRITER" })
+	public Writer writer;
+
+	private HttpServer server;
+	private URL url;
+	private Path tmp;
+
+	@Setup(Level.Trial)
+	public void startServer() throws IOException {
+		final byte[] chunk = new byte[64 * 1024];
+		for (int i = 0; i < chunk.length; i++) {
+			chunk[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + i % 26);
+		}
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.sendResponseHeaders(200, CONTENT_LENGTH);
+				try (final OutputStream os = exchange.getResponseBody()) {
+					for (int written = 0; written < CONTENT_LENGTH; written += chunk.length) {
+						os.write(chunk);
+					}
+				}
+			}
+		});
+		server.start();
+		url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+	}
+
+	@TearDown(Level.Trial)
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Setup(Level.Invocation)
+	public void createFile() throws IOException {
+		tmp = Files.createTempFile("atsd-bench", null);
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteFile() throws IOException {
+		Files.delete(tmp);
+	}
+
+	@Benchmark
+	public long spill() throws Exception {
+		final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+		try (final InputStream is = conn.getInputStream()) {
+			final long length = writer.copy(Channels.newChannel(is), tmp);
+			if (length != CONTENT_LENGTH)
+				throw new IllegalStateException("Spilled " + length + " of " + CONTENT_LENGTH + " bytes");
+			return length;
+		}
+	}
+
+	public enum Writer {
+		/** Positional writes through an AsynchronousFileChannel, one Future per chunk. */
+		ASYNC {
+			@Override
+			long copy(ReadableByteChannel input, Path tmp) throws Exception {
+				long position = 0;
+				try (final AsynchronousFileChannel output = AsynchronousFileChannel.open(tmp, StandardOpenOption.WRITE)) {
+					final ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+					while (input.read(buffer) >= 0) {
+						buffer.flip();
+						while (buffer.hasRemaining()) {
+							position += output.write(buffer, position).get();
+						}
+						buffer.clear();
+					}
+				}
+				return position;
+			}
+		},
+		/** FileChannel.transferFrom, which copies an arbitrary source channel in small chunks. */
+		TRANSFER {
+			@Override
+			long copy(ReadableByteChannel input, Path tmp) throws Exception {
+				long position = 0;
+				try (final FileChannel output = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+					long transferred;
+					while ((transferred = output.transferFrom(input, position, MB)) > 0) {
+						position += transferred;
+					}
+				}
+				return position;
+			}
+		},
+		/** The driver's spill writer. */
+		WRITER {
+			@Override
+			long copy(ReadableByteChannel input, Path tmp) throws Exception {
+				final FileChannel output = FileChannel.open(tmp, StandardOpenOption.WRITE);
+				return new FileChannelWriter(input, output, new StrategyStatus()).call();
+			}
+		};
+
+		abstract long copy(ReadableByteChannel input, Path tmp) throws Exception;
+	}
+
+}
@@ -29,6 +29,20 @@ public interface DriverConstants {
 	static final String QUERY_PARAM_NAME = "%s=%s&%s=%s";
 	static final String REVISION_LINE = "Revision";
 	static final String STRATEGY_PARAM_NAME = "strategy=";
+	static final String MEMORY_BUDGET_PARAM_NAME = "memoryBudget=";
+	static final String COMPRESS_SPILL_PARAM_NAME = "compressSpill=";
+	static final String SPILL_DIRECTORY_PARAM_NAME = "spillDirectory=";
+	static final String FETCH_PARAM_NAME = "fetch=";
+	static final String STATEMENT_MEMORY_LIMIT_PARAM_NAME = "statementMemoryLimit=";
+	static final String CONNECTION_MEMORY_LIMIT_PARAM_NAME = "connectionMemoryLimit=";
+	static final String RESULT_CACHE_PARAM_NAME = "resultCache=";
+	static final String RESULT_CACHE_TTL_PARAM_NAME = "resultCacheTtl=";
+	static final String COALESCE_PARAM_NAME = "coalesce=";
+	static final String SERIES_CACHE_PARAM_NAME = "seriesCache=";
+	static final String SERIES_CACHE_LAG_PARAM_NAME = "seriesCacheLag=";
+	static final String TAIL_PARAM_NAME = "tail=";
+	static final String DISK_CACHE_PARAM_NAME = "diskCache=";
+	static final String DISK_CACHE_SIZE_PARAM_NAME = "diskCacheSize=";
 	static final String TRUST_PARAM_TRUE = "trustServerCertificate=true";
 	static final String TRUST_PARAM_FALSE = "trustServerCertificate=false";
 	static final String VERSION_ENDPOINT = "/version";
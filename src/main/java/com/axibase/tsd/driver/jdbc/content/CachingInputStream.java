@@ -0,0 +1,139 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Deflates the response while a strategy consumes it so that it can be put into the {@link ResultCache}
+ * once it has been read to the end. Capture is abandoned as soon as the response outgrows the
+ * cache entry limit.
+ */
+class CachingInputStream extends FilterInputStream {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(CachingInputStream.class);
+	private static final int INITIAL_CAPACITY = 8 * 1024;
+	private final ResultCache.Key key;
+	private final String schema;
+	private final long ttlMillis;
+	private final long limit;
+	private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private byte[] output = new byte[INITIAL_CAPACITY];
+	private int outputLength;
+	private long length;
+	private boolean complete;
+
+	CachingInputStream(InputStream in, ResultCache.Key key, String schema, long ttlMillis) {
+		super(in);
+		this.key = key;
+		this.schema = schema;
+		this.ttlMillis = ttlMillis;
+		this.limit = ResultCache.getMaxEntryBytes();
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int value = in.read();
+		if (value == -1)
+			finish();
+		else
+			capture(new byte[] {(byte) value}, 0, 1);
+		return value;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		final int read = in.read(b, off, len);
+		if (read == -1)
+			finish();
+		else if (read > 0)
+			capture(b, off, read);
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		synchronized (this) {
+			abandon();
+		}
+		return in.skip(n);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private synchronized void capture(byte[] b, int off, int len) {
+		if (deflater == null)
+			return;
+		length += len;
+		deflater.setInput(b, off, len);
+		while (deflater != null && !deflater.needsInput()) {
+			deflate();
+		}
+	}
+
+	private synchronized void finish() {
+		if (deflater == null || complete)
+			return;
+		deflater.finish();
+		while (deflater != null && !deflater.finished()) {
+			deflate();
+		}
+		complete = deflater != null;
+	}
+
+	private void deflate() {
+		if (outputLength == output.length) {
+			if (output.length >= limit) {
+				if (logger.isDebugEnabled())
+					logger.debug("[capture] response exceeds {} bytes and will not be cached", limit);
+				abandon();
+				return;
+			}
+			output = Arrays.copyOf(output, (int) Math.min(limit, 2L * output.length));
+		}
+		outputLength += deflater.deflate(output, outputLength, output.length - outputLength);
+	}
+
+	private void abandon() {
+		if (deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		output = null;
+	}
+
+	/**
+	 * Puts the response into the cache if it has been read completely, and stops capturing.
+	 *
+	 * @param failed true if the response has not been processed successfully
+	 * @return true if the response has been cached
+	 */
+	synchronized boolean commit(boolean failed) {
+		final boolean cached = complete && !failed
+				&& ResultCache.put(key, schema, output, outputLength, length, ttlMillis);
+		abandon();
+		complete = false;
+		return cached;
+	}
+
+}
@@ -22,6 +22,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.lang3.StringUtils;
 
@@ -30,6 +31,7 @@ import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
 
 public class ContentDescription implements DriverConstants {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(ContentDescription.class);
+	public static final long DEFAULT_MEMORY_BUDGET = 16 * 1024 * 1024;
 
 	private String host;
 	private String query;
@@ -40,6 +42,7 @@ public class ContentDescription implements DriverConstants {
 	private String[] headers;
 	private String jsonScheme;
 	private String url;
+	private Map<String, String> hints = Collections.emptyMap();
 
 	public ContentDescription(String host, String query, String login, String password, String[] params) {
 		this.host = host;
@@ -105,6 +108,14 @@ public class ContentDescription implements DriverConstants {
 		this.headers = headers;
 	}
 
+	public Map<String, String> getHints() {
+		return hints;
+	}
+
+	public void setHints(Map<String, String> hints) {
+		this.hints = hints != null ? hints : Collections.<String, String> emptyMap();
+	}
+
 	public long getContentLength() {
 		return contentLength;
 	}
@@ -154,17 +165,170 @@ public class ContentDescription implements DriverConstants {
 	}
 
 	public String getStrategyName() {
+		return getParamValue(STRATEGY_PARAM_NAME);
+	}
+
+	public long getMemoryBudget() {
+		return getSizeParam(MEMORY_BUDGET_PARAM_NAME, DEFAULT_MEMORY_BUDGET);
+	}
+
+	/**
+	 * @return heap limit for one statement, 0 if only the connection and driver limits apply; a query hint can
+	 *         only lower the limit set for the connection
+	 */
+	public long getStatementMemoryLimit() {
+		final long configured = getSizeParam(STATEMENT_MEMORY_LIMIT_PARAM_NAME,
+				getConnectionParamValue(STATEMENT_MEMORY_LIMIT_PARAM_NAME), 0);
+		final long hinted = getSizeParam(STATEMENT_MEMORY_LIMIT_PARAM_NAME,
+				hints.get(hintName(STATEMENT_MEMORY_LIMIT_PARAM_NAME)), 0);
+		if (hinted <= 0)
+			return configured;
+		return configured > 0 ? Math.min(hinted, configured) : hinted;
+	}
+
+	/**
+	 * @return heap limit for all statements of the connection, 0 if only the driver limit applies
+	 */
+	public long getConnectionMemoryLimit() {
+		return getSizeParam(CONNECTION_MEMORY_LIMIT_PARAM_NAME, 0);
+	}
+
+	private long getSizeParam(String name, long defaultValue) {
+		return getSizeParam(name, getParamValue(name), defaultValue);
+	}
+
+	private long getSizeParam(String name, String value, long defaultValue) {
+		if (value == null)
+			return defaultValue;
+		try {
+			return parseSize(value);
+		} catch (final NumberFormatException e) {
+			logger.error("Invalid " + name + value);
+			return defaultValue;
+		}
+	}
+
+	public String getSpillDirectory() {
+		return getParamValue(SPILL_DIRECTORY_PARAM_NAME);
+	}
+
+	public boolean isSpillCompressed() {
+		return Boolean.parseBoolean(getParamValue(COMPRESS_SPILL_PARAM_NAME));
+	}
+
+	public boolean isSeriesCacheEnabled() {
+		return Boolean.parseBoolean(getParamValue(SERIES_CACHE_PARAM_NAME));
+	}
+
+	/**
+	 * @return milliseconds before the present during which the server may still receive data
+	 */
+	public long getSeriesCacheLag() {
+		return getSecondsParam(SERIES_CACHE_LAG_PARAM_NAME, SeriesCache.DEFAULT_LAG_MILLIS);
+	}
+
+	/**
+	 * @return directory of the persistent result cache, or null if it is disabled
+	 */
+	public String getDiskCacheDirectory() {
+		final String value = getParamValue(DISK_CACHE_PARAM_NAME);
+		return value == null || value.trim().isEmpty() ? null : value.trim();
+	}
+
+	public long getDiskCacheSize() {
+		return getSizeParam(DISK_CACHE_SIZE_PARAM_NAME, DiskCache.DEFAULT_SIZE);
+	}
+
+	public boolean isTailEnabled() {
+		return Boolean.parseBoolean(getParamValue(TAIL_PARAM_NAME));
+	}
+
+	public boolean isCoalesceEnabled() {
+		return Boolean.parseBoolean(getParamValue(COALESCE_PARAM_NAME));
+	}
+
+	public boolean isResultCacheEnabled() {
+		return Boolean.parseBoolean(getParamValue(RESULT_CACHE_PARAM_NAME));
+	}
+
+	/**
+	 * @return time to keep a cached response in milliseconds
+	 */
+	public long getResultCacheTtl() {
+		return getSecondsParam(RESULT_CACHE_TTL_PARAM_NAME, ResultCache.DEFAULT_TTL_MILLIS);
+	}
+
+	private long getSecondsParam(String name, long defaultMillis) {
+		final String value = getParamValue(name);
+		if (value == null)
+			return defaultMillis;
+		try {
+			return TimeUnit.SECONDS.toMillis(Long.parseLong(value.trim()));
+		} catch (final NumberFormatException e) {
+			logger.error("Invalid " + name + value);
+			return defaultMillis;
+		}
+	}
+
+	/**
+	 * @param defaultValue fetch size requested by the statement
+	 * @return fetch size from the query hint or the default one
+	 */
+	public int getFetchSize(int defaultValue) {
+		final String value = hints.get(hintName(FETCH_PARAM_NAME));
+		if (value == null)
+			return defaultValue;
+		try {
+			final int fetchSize = Integer.parseInt(value.trim());
+			return fetchSize > 0 ? fetchSize : defaultValue;
+		} catch (final NumberFormatException e) {
+			logger.error("Invalid " + FETCH_PARAM_NAME + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * @param name parameter name including the trailing '='
+	 * @return value of the parameter from the query hints or the connection URL or null
+	 */
+	public String getParamValue(String name) {
+		final String hint = hints.get(hintName(name));
+		return hint != null ? hint : getConnectionParamValue(name);
+	}
+
+	/**
+	 * @return value of the parameter from the connection URL or null
+	 */
+	private String getConnectionParamValue(String name) {
 		if (params == null || params.length == 0)
 			return null;
+		final String prefix = name.toLowerCase(Locale.US);
 		for (final String param : params) {
-			if (!param.toLowerCase(Locale.US).startsWith(STRATEGY_PARAM_NAME))
+			if (!param.toLowerCase(Locale.US).startsWith(prefix))
 				continue;
-			final String value = param.substring(STRATEGY_PARAM_NAME.length());
+			final String value = param.substring(name.length());
 			return StringUtils.isNoneEmpty(value) ? value : null;
 		}
 		return null;
 	}
 
+	private static String hintName(String name) {
+		return name.substring(0, name.length() - 1).toLowerCase(Locale.US);
+	}
+
+	/**
+	 * Parses a size in bytes with an optional k, m or g suffix.
+	 */
+	public static long parseSize(String value) {
+		final String trimmed = value.trim().toLowerCase(Locale.US);
+		if (trimmed.isEmpty())
+			throw new NumberFormatException("Empty size");
+		final char unit = trimmed.charAt(trimmed.length() - 1);
+		final long multiplier = unit == 'k' ? 1024L : unit == 'm' ? 1024L * 1024 : unit == 'g' ? 1024L * 1024 * 1024 : 1;
+		final String number = multiplier == 1 ? trimmed : trimmed.substring(0, trimmed.length() - 1);
+		return Long.parseLong(number.trim()) * multiplier;
+	}
+
 	@Override
 	public int hashCode() {
 		final int prime = 31;
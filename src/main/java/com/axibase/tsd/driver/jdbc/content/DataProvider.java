@@ -14,27 +14,47 @@
 */
 package com.axibase.tsd.driver.jdbc.content;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.commons.lang3.StringUtils;
 
 import com.axibase.tsd.driver.jdbc.ext.AtsdException;
 import com.axibase.tsd.driver.jdbc.intf.IContentProtocol;
 import com.axibase.tsd.driver.jdbc.intf.IDataProvider;
 import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.protocol.EncodedInputStream;
 import com.axibase.tsd.driver.jdbc.protocol.ProtocolFactory;
 import com.axibase.tsd.driver.jdbc.protocol.SdkProtocolImpl;
+import com.axibase.tsd.driver.jdbc.strategies.AutoStrategySelector;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyChoice;
 import com.axibase.tsd.driver.jdbc.strategies.StrategyFactory;
 
 public class DataProvider implements IDataProvider {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(DataProvider.class);
 	private static final String WHERE_CLAUSE = " WHERE ";
 	private static final String PARAM_SEPARATOR = ";";
+	private static final String LINE_SEPARATOR = "\r\n";
 	private final ContentDescription cd;
 	private final IContentProtocol tp;
 	private final StatementContext context;
 	private IStoreStrategy strategy;
+	private StrategyChoice choice;
+	private EncodedInputStream content;
+	private CachingInputStream capture;
+	private InputStream shared;
+	private PersistingInputStream persist;
+	private InputStream replay;
 
 	public DataProvider(String url, String q, String login, String password, StatementContext context) {
 		final String[] parts = url.split(PARAM_SEPARATOR);
@@ -46,7 +66,9 @@ public class DataProvider implements IDataProvider {
 			logger.trace("Host: " + parts[0]);
 			logger.trace("Params: " + params.length);
 		}
-		this.cd = new ContentDescription(parts[0], q, login, password, params);
+		final QueryHints hints = QueryHints.parse(q);
+		this.cd = new ContentDescription(parts[0], hints.getQuery(), login, password, params);
+		this.cd.setHints(hints.getValues());
 		this.tp = ProtocolFactory.create(SdkProtocolImpl.class, cd);
 		this.context = context;
 		this.strategy = defineStrategy();
@@ -64,29 +86,339 @@ public class DataProvider implements IDataProvider {
 
 	@Override
 	public void fetchData(long maxLimit) throws AtsdException, GeneralSecurityException, IOException {
-		final InputStream is = tp.readContent();
-		this.strategy = defineStrategy();
+		final TailWindow tail = maxLimit <= 0 ? context.getTailWindow() : null;
+		final SeriesQuery series = cd.isSeriesCacheEnabled() && maxLimit <= 0 ? SeriesQuery.parse(cd.getQuery()) : null;
+		InputStream merged = tail != null ? readTail(tail) : null;
+		if (merged == null && series != null)
+			merged = readSeries(series);
+		if (merged != null) {
+			context.setMaxRowCount(0);
+			this.strategy = defineStrategy(merged);
+			if (this.strategy != null)
+				store(merged);
+			return;
+		}
+		final boolean cache = cd.isResultCacheEnabled();
+		final boolean coalesce = cd.isCoalesceEnabled();
+		final ResultCache.Key key = cache || coalesce ? ResultCache.key(cd, maxLimit > 0 ? maxLimit : 0) : null;
+		final ResultCache.Entry cached = cache ? ResultCache.get(key) : null;
+		final String diskCache = maxLimit <= 0 ? cd.getDiskCacheDirectory() : null;
+		final Path directory = diskCache != null
+				&& DiskCache.isClosed(cd.getQuery(), System.currentTimeMillis() - cd.getSeriesCacheLag())
+						? Paths.get(diskCache) : null;
+		final byte[] digest = directory != null ? DiskCache.digest(cd) : null;
+		final DiskCache.Entry stored = directory != null && cached == null
+				? DiskCache.get(directory, cd.getDiskCacheSize(), digest) : null;
+		InputStream is;
+		if (cached != null) {
+			if (logger.isDebugEnabled())
+				logger.debug("[fetchData] cached response: {} bytes", cached.getLength());
+			context.setMaxRowCount(maxLimit > 0 ? maxLimit : 0);
+			if (StringUtils.isEmpty(cd.getJsonScheme()))
+				cd.setJsonScheme(cached.getSchema());
+			cd.setContentLength(cached.getLength());
+			is = cached.open();
+			this.strategy = defineStrategy(is);
+		} else {
+			if (stored != null) {
+				if (logger.isDebugEnabled())
+					logger.debug("[fetchData] stored response: {} bytes", stored.getLength());
+				context.setMaxRowCount(0);
+				if (StringUtils.isEmpty(cd.getJsonScheme()))
+					cd.setJsonScheme(stored.getSchema());
+				cd.setContentLength(stored.getLength());
+				replay = stored.open();
+				is = replay;
+				this.strategy = defineStrategy(is);
+			} else {
+				is = coalesce ? readShared(key, maxLimit) : readContent(maxLimit);
+				this.strategy = defineStrategy(is);
+				if (directory != null) {
+					persist = new PersistingInputStream(is, directory, cd.getDiskCacheSize(), digest,
+							cd.getJsonScheme());
+					is = persist;
+				}
+			}
+			if (cache) {
+				capture = new CachingInputStream(is, key, cd.getJsonScheme(), cd.getResultCacheTtl());
+				is = capture;
+			}
+		}
 		if (this.strategy != null)
+			store(is);
+	}
+
+	/**
+	 * Streams the response if the strategy cannot get a driver thread to spill it.
+	 */
+	private void store(InputStream is) throws IOException {
+		try {
+			this.strategy.store(is);
+		} catch (final RejectedExecutionException e) {
+			logger.warn(e.getMessage() + ", the response is streamed");
+			this.strategy = StrategyFactory.create(StrategyFactory.findClassByName(StrategyFactory.STREAM_STRATEGY),
+					this.context, this.cd);
 			this.strategy.store(is);
+		}
+	}
+
+	@Override
+	public InputStream readContent(long maxLimit) throws AtsdException, GeneralSecurityException, IOException {
+		final String query = cd.getQuery();
+		context.setMaxRowCount(maxLimit > 0 ? maxLimit : 0);
+		if (maxLimit > 0) {
+			final String limited = LimitClause.apply(query, maxLimit);
+			if (logger.isDebugEnabled())
+				logger.debug("[fetchData] maxLimit: {} rewritten: {}", maxLimit, limited != null);
+			if (limited != null)
+				cd.setQuery(limited);
+		}
+		final InputStream is;
+		try {
+			is = tp.readContent();
+		} finally {
+			cd.setQuery(query);
+		}
+		return is;
+	}
+
+	/**
+	 * @return rows of the query from the series cache completed by requests for the missing intervals, or null
+	 *         if a response cannot be merged or the cache lost rows of the query while they were requested
+	 */
+	private InputStream readSeries(SeriesQuery query) throws AtsdException, GeneralSecurityException, IOException {
+		final SeriesCache.Series series = SeriesCache.get(SeriesCache.key(cd, query));
+		final long coveredEnd = System.currentTimeMillis() - cd.getSeriesCacheLag();
+		final List<long[]> gaps;
+		synchronized (series) {
+			gaps = series.missing(query.getStart(), query.getEnd());
+		}
+		final boolean cached = gaps.size() != 1 || gaps.get(0)[0] != query.getStart()
+				|| gaps.get(0)[1] != query.getEnd();
+		SeriesCache.record(gaps.size(), cached);
+		if (logger.isDebugEnabled())
+			logger.debug("[readSeries] {} intervals to request", gaps.size());
+		final List<SeriesCache.Fetched> responses = new ArrayList<>(gaps.size());
+		for (long[] gap : gaps) {
+			final String original = cd.getQuery();
+			cd.setQuery(query.rewrite(gap[0], gap[1]));
+			final String response;
+			try {
+				response = readFully(tp.readContent());
+			} finally {
+				cd.setQuery(original);
+			}
+			final SeriesCache.Fetched fetched = SeriesCache.parse(response);
+			if (fetched == null)
+				return null;
+			responses.add(fetched);
+		}
+		final StringBuilder sb = new StringBuilder();
+		synchronized (series) {
+			for (int i = 0; i < gaps.size(); i++) {
+				final long[] gap = gaps.get(i);
+				final SeriesCache.Fetched fetched = responses.get(i);
+				if (!series.merge(fetched.getHeader(), cd.getJsonScheme(), gap[0], gap[1], coveredEnd,
+						fetched.getRows()))
+					return null;
+			}
+			if (series.getHeader() == null || !contains(gaps, series.missing(query.getStart(), query.getEnd()))) {
+				if (logger.isDebugEnabled())
+					logger.debug("[readSeries] cached rows changed while the intervals were requested");
+				return null;
+			}
+			if (StringUtils.isEmpty(cd.getJsonScheme()))
+				cd.setJsonScheme(series.getSchema());
+			sb.append(series.getHeader()).append(LINE_SEPARATOR);
+			for (String line : series.lines(query.getStart(), query.getEnd())) {
+				sb.append(line).append(LINE_SEPARATOR);
+			}
+		}
+		final byte[] content = sb.toString().getBytes(Charset.defaultCharset());
+		cd.setContentLength(content.length);
+		return new ByteArrayInputStream(content);
+	}
+
+	/**
+	 * @return true if every interval still missing lies within one of the requested intervals
+	 */
+	private static boolean contains(List<long[]> requested, List<long[]> missing) {
+		for (long[] interval : missing) {
+			boolean found = false;
+			for (long[] gap : requested) {
+				if (gap[0] <= interval[0] && interval[1] <= gap[1]) {
+					found = true;
+					break;
+				}
+			}
+			if (!found)
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return rows of the window kept for the prepared statement completed by a request for the newer ones, or
+	 *         null if the statement cannot be tailed, the response cannot be merged or the window was emptied
+	 *         while the rows were requested
+	 */
+	private InputStream readTail(TailWindow tail) throws AtsdException, GeneralSecurityException, IOException {
+		final long now = System.currentTimeMillis();
+		final String original = cd.getQuery();
+		final String request;
+		final int generation;
+		synchronized (tail) {
+			tail.charge(context.getMemory());
+			request = tail.request(original, now);
+			generation = tail.getGeneration();
+		}
+		if (request == null)
+			return null;
+		if (logger.isDebugEnabled())
+			logger.debug("[readTail] {}", request);
+		cd.setQuery(request);
+		final String response;
+		try {
+			response = readFully(tp.readContent());
+		} finally {
+			cd.setQuery(original);
+		}
+		final SeriesCache.Fetched fetched = SeriesCache.parse(response);
+		final StringBuilder sb = new StringBuilder();
+		synchronized (tail) {
+			if (fetched == null) {
+				tail.close();
+				return null;
+			}
+			if (tail.getGeneration() != generation) {
+				if (logger.isDebugEnabled())
+					logger.debug("[readTail] window emptied while the rows were requested");
+				return null;
+			}
+			if (!tail.merge(fetched.getHeader(), cd.getJsonScheme(), fetched.getRows(), now))
+				return null;
+			if (StringUtils.isEmpty(cd.getJsonScheme()))
+				cd.setJsonScheme(tail.getSchema());
+			sb.append(tail.getHeader()).append(LINE_SEPARATOR);
+			for (String line : tail.lines()) {
+				sb.append(line).append(LINE_SEPARATOR);
+			}
+		}
+		final byte[] content = sb.toString().getBytes(Charset.defaultCharset());
+		cd.setContentLength(content.length);
+		return new ByteArrayInputStream(content);
+	}
+
+	private static String readFully(InputStream is) throws IOException {
+		try (InputStreamReader reader = new InputStreamReader(is, Charset.defaultCharset())) {
+			final StringBuilder sb = new StringBuilder();
+			final char[] buffer = new char[8 * 1024];
+			int read;
+			while ((read = reader.read(buffer)) != -1) {
+				sb.append(buffer, 0, read);
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * @return stream over the response shared with identical executions in flight, or the response of this
+	 *         execution alone if no driver thread is available to copy it for the others
+	 */
+	private InputStream readShared(ResultCache.Key key, long maxLimit)
+			throws AtsdException, GeneralSecurityException, IOException {
+		final SharedResponse response = SharedResponse.acquire(key, cd.getMemoryBudget(), cd.getSpillDirectory());
+		if (response.lead()) {
+			final InputStream is;
+			try {
+				is = readContent(maxLimit);
+			} catch (AtsdException | GeneralSecurityException | IOException | RuntimeException e) {
+				response.fail(e);
+				throw e;
+			}
+			try {
+				response.start(is, cd.getJsonScheme(), cd.getContentLength());
+			} catch (final RejectedExecutionException e) {
+				logger.warn(e.getMessage() + ", the response is not shared");
+				response.fail(e);
+				return is;
+			}
+		} else {
+			if (logger.isDebugEnabled())
+				logger.debug("[fetchData] joining the request in flight");
+			context.setMaxRowCount(maxLimit > 0 ? maxLimit : 0);
+			response.awaitStart();
+			if (StringUtils.isEmpty(cd.getJsonScheme()))
+				cd.setJsonScheme(response.getSchema());
+			cd.setContentLength(response.getContentLength());
+		}
+		shared = response.open();
+		return shared;
 	}
 
 	@Override
 	public void checkScheme(final String original) throws AtsdException, GeneralSecurityException, IOException {
-		final int wherePart = original.indexOf(WHERE_CLAUSE);
-		String beforeWhere = wherePart == -1 ? original : original.substring(0, wherePart);
+		final String query = QueryHints.parse(original).getQuery();
+		final int wherePart = query.indexOf(WHERE_CLAUSE);
+		String beforeWhere = wherePart == -1 ? query : query.substring(0, wherePart);
 		cd.setQuery(beforeWhere);
 		tp.getContentSchema();
-		cd.setQuery(original);
+		cd.setQuery(query);
 	}
 
 	@Override
 	public void close() throws Exception {
+		if (capture != null) {
+			final boolean cached = capture.commit(context.getException() != null);
+			if (logger.isDebugEnabled())
+				logger.debug("[close] response cached: {}", cached);
+			capture = null;
+		}
+		if (persist != null) {
+			final boolean written = persist.commit(context.getException() != null);
+			if (logger.isDebugEnabled())
+				logger.debug("[close] response stored: {}", written);
+			persist = null;
+		}
 		if (this.strategy != null)
 			this.strategy.close();
+		if (replay != null) {
+			replay.close();
+			replay = null;
+		}
+		if (shared != null) {
+			shared.close();
+			shared = null;
+		}
+		if (content != null) {
+			// responses cut by maxRows or stopped before the end would understate the size of the query
+			if (content.isFinished() && context.getException() == null && context.getMaxRowCount() <= 0)
+				AutoStrategySelector.record(choice.getFingerprint(), content.getCount());
+			content = null;
+		}
 	}
 
 	private IStoreStrategy defineStrategy() {
-		return StrategyFactory.create(StrategyFactory.findClassByName(this.cd.getStrategyName()), this.context);
+		return defineStrategy(null);
+	}
+
+	/**
+	 * @param is response of the query, or null before the request is sent
+	 */
+	private IStoreStrategy defineStrategy(InputStream is) {
+		String name = this.cd.getStrategyName();
+		if (StrategyFactory.AUTO_STRATEGY.equalsIgnoreCase(name)) {
+			final EncodedInputStream encoded = is instanceof EncodedInputStream ? (EncodedInputStream) is : null;
+			final long contentLength = is != null ? cd.getContentLength() : -1;
+			choice = AutoStrategySelector.select(cd.getQuery(), contentLength, encoded != null && encoded.isGzipped(),
+					cd.getMemoryBudget());
+			if (is != null) {
+				context.setStrategyChoice(choice);
+				content = encoded;
+			}
+			name = choice.getStrategy();
+		}
+		return StrategyFactory.create(StrategyFactory.findClassByName(name), this.context, this.cd);
 	}
 
 }
@@ -0,0 +1,589 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+/**
+ * Persistent cache of responses kept in the directory set with {@code diskCache}. Only queries whose time
+ * conditions are bounded from above by literals older than {@code seriesCacheLag} seconds are cached, since the
+ * rows of such ranges no longer change. An entry file holds a checksummed header followed by deflated blocks of
+ * the response with a CRC-32 each; entries that fail verification are deleted and requested again. Files of a
+ * directory are limited by {@code diskCacheSize}, least recently read entries are deleted first.
+ */
+public final class DiskCache {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(DiskCache.class);
+	public static final long DEFAULT_SIZE = 1024L * 1024 * 1024;
+	static final int MAGIC = 0x41545343;
+	static final byte VERSION = 1;
+	static final int BLOCK_SIZE = 64 * 1024;
+	static final String SUFFIX = ".atsdc";
+	static final String TEMP_PREFIX = "entry";
+	static final String TEMP_SUFFIX = ".tmp";
+	private static final long STALE_TEMP_MILLIS = TimeUnit.HOURS.toMillis(1);
+	private static final Pattern WORD = Pattern.compile("[A-Za-z_][A-Za-z0-9_.]*");
+	private static final Pattern COMPARISON = Pattern.compile("\\s*(<=|>=|<>|!=|<|>|=)\\s*('[^']*'|\\d+)");
+	private static final Pattern RANGE = Pattern.compile(
+			"\\s+BETWEEN\\s+('[^']*'|\\d+)\\s+AND\\s+('[^']*'|\\d+)", Pattern.CASE_INSENSITIVE);
+	private static final Set<String> REFUSED = new HashSet<>(Arrays.asList("OR", "NOT", "UNION", "NOW"));
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final Map<Path, Directory> directories = new HashMap<>();
+	private static long hits;
+	private static long misses;
+	private static long writes;
+	private static long evictions;
+	private static long corrupted;
+
+	private DiskCache() {
+	}
+
+	/**
+	 * @return true if the query reads only rows older than the cutoff
+	 */
+	static boolean isClosed(String sql, long cutoff) {
+		final long bound = upperBound(sql);
+		return bound != Long.MIN_VALUE && bound < cutoff;
+	}
+
+	/**
+	 * @return latest time the query can return rows for, or Long.MIN_VALUE if it has no absolute upper bound
+	 */
+	static long upperBound(String sql) {
+		final String masked = TailWindow.mask(sql);
+		if (masked == null)
+			return Long.MIN_VALUE;
+		final Matcher words = WORD.matcher(masked);
+		long bound = Long.MIN_VALUE;
+		boolean where = false;
+		while (words.find()) {
+			final String word = words.group().toUpperCase(Locale.US);
+			if (REFUSED.contains(word) || word.startsWith("CURRENT_"))
+				return Long.MIN_VALUE;
+			if (word.equals("WHERE")) {
+				where = true;
+				continue;
+			}
+			if (!where || !isTime(word))
+				continue;
+			final Matcher comparison = COMPARISON.matcher(sql).region(words.end(), sql.length());
+			final Matcher range = RANGE.matcher(sql).region(words.end(), sql.length());
+			try {
+				if (comparison.lookingAt()) {
+					final String operator = comparison.group(1);
+					if (operator.equals("<>") || operator.equals("!="))
+						return Long.MIN_VALUE;
+					if (operator.charAt(0) != '>')
+						bound = Math.max(bound, time(comparison.group(2)));
+				} else if (range.lookingAt()) {
+					bound = Math.max(bound, time(range.group(2)));
+				} else if (isCondition(masked, words.end())) {
+					return Long.MIN_VALUE;
+				}
+			} catch (final ParseException | NumberFormatException e) {
+				return Long.MIN_VALUE;
+			}
+		}
+		return bound;
+	}
+
+	private static boolean isTime(String word) {
+		if (word.startsWith("TAGS."))
+			return false;
+		return word.equals("DATETIME") || word.equals("TIME") || word.endsWith(".DATETIME") || word.endsWith(".TIME");
+	}
+
+	/**
+	 * @return true if the column at the position is compared by an operator or keyword other than a literal bound
+	 */
+	private static boolean isCondition(String masked, int position) {
+		final String rest = masked.substring(position).trim().toUpperCase(Locale.US);
+		return rest.length() > 0 && "<>=!".indexOf(rest.charAt(0)) != -1 || rest.startsWith("BETWEEN")
+				|| rest.startsWith("IN ") || rest.startsWith("IN(") || rest.startsWith("IS ")
+				|| rest.startsWith("LIKE ");
+	}
+
+	private static long time(String literal) throws ParseException {
+		if (literal.charAt(0) == '\'')
+			return TimeDateUtils.parseEpochMillis(literal.substring(1, literal.length() - 1));
+		return Long.parseLong(literal);
+	}
+
+	/**
+	 * @return SHA-256 of the server, user and normalized query, the name of the entry file
+	 */
+	static byte[] digest(ContentDescription cd) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			final String key = cd.getHost() + '\n' + cd.getLogin() + '\n' + cd.getPassword() + '\n'
+					+ ResultCache.normalize(cd.getQuery());
+			return digest.digest(key.getBytes(StandardCharsets.UTF_8));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return verified entry or null if the directory has none for the digest
+	 */
+	static Entry get(Path path, long maxBytes, byte[] digest) {
+		final Directory directory = directory(path, maxBytes);
+		final Path file = path.resolve(hex(digest) + SUFFIX);
+		Entry entry = null;
+		try {
+			if (Files.exists(file)) {
+				entry = Entry.verify(file, digest);
+				if (entry == null) {
+					logger.warn("Deleting corrupted cache entry " + file);
+					synchronized (DiskCache.class) {
+						corrupted++;
+					}
+					directory.delete(file);
+				} else {
+					Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+				}
+			}
+		} catch (final IOException e) {
+			if (logger.isDebugEnabled())
+				logger.debug("[get] " + e.getMessage());
+			entry = null;
+		}
+		synchronized (DiskCache.class) {
+			if (entry == null)
+				misses++;
+			else
+				hits++;
+		}
+		return entry;
+	}
+
+	static Path createTemp(Path path) throws IOException {
+		Files.createDirectories(path);
+		return Files.createTempFile(path, TEMP_PREFIX, TEMP_SUFFIX);
+	}
+
+	/**
+	 * @return largest entry the directory accepts
+	 */
+	static long getMaxEntryBytes(long maxBytes) {
+		return maxBytes / 4;
+	}
+
+	/**
+	 * Moves a written entry into the directory, deleting least recently read entries while it does not fit.
+	 *
+	 * @return false if the entry is too large and has been deleted
+	 */
+	static boolean put(Path path, long maxBytes, byte[] digest, Path temp) throws IOException {
+		final Directory directory = directory(path, maxBytes);
+		final long size = Files.size(temp);
+		if (size > getMaxEntryBytes(maxBytes)) {
+			Files.deleteIfExists(temp);
+			return false;
+		}
+		directory.store(temp, path.resolve(hex(digest) + SUFFIX), size);
+		synchronized (DiskCache.class) {
+			writes++;
+		}
+		return true;
+	}
+
+	private static Directory directory(Path path, long maxBytes) {
+		final Path key = path.toAbsolutePath().normalize();
+		synchronized (directories) {
+			Directory directory = directories.get(key);
+			if (directory == null) {
+				directory = new Directory(key);
+				directories.put(key, directory);
+			}
+			directory.setMaxBytes(maxBytes);
+			return directory;
+		}
+	}
+
+	/**
+	 * @return entries read from disk
+	 */
+	public static synchronized long getHits() {
+		return hits;
+	}
+
+	public static synchronized long getMisses() {
+		return misses;
+	}
+
+	public static synchronized long getWrites() {
+		return writes;
+	}
+
+	public static synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * @return entries deleted because they failed verification
+	 */
+	public static synchronized long getCorrupted() {
+		return corrupted;
+	}
+
+	/**
+	 * @return size of the entries in the directory known to the driver
+	 */
+	public static long getBytes(Path path) {
+		final Directory directory;
+		synchronized (directories) {
+			directory = directories.get(path.toAbsolutePath().normalize());
+		}
+		return directory == null ? 0 : directory.getBytes();
+	}
+
+	private static String hex(byte[] bytes) {
+		final char[] chars = new char[2 * bytes.length];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(chars);
+	}
+
+	/**
+	 * @return header of an entry: magic, version, digest, creation time, schema and CRC-32 of these fields
+	 */
+	static byte[] header(byte[] digest, String schema) {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			final byte[] schemaBytes = schema == null ? new byte[0] : schema.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(MAGIC);
+			out.writeByte(VERSION);
+			out.write(digest);
+			out.writeLong(System.currentTimeMillis());
+			out.writeInt(schemaBytes.length);
+			out.write(schemaBytes);
+			out.writeInt((int) crc(bytes.toByteArray(), bytes.size()));
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	static long crc(byte[] bytes, int length) {
+		final CRC32 crc = new CRC32();
+		crc.update(bytes, 0, length);
+		return crc.getValue();
+	}
+
+	/**
+	 * Entries of one directory and their total size. Directories shared with other processes are bounded on a
+	 * best effort basis.
+	 */
+	private static final class Directory {
+		private final Path path;
+		private long maxBytes;
+		private long bytes = -1;
+
+		private Directory(Path path) {
+			this.path = path;
+		}
+
+		synchronized void setMaxBytes(long maxBytes) {
+			this.maxBytes = maxBytes;
+		}
+
+		synchronized long getBytes() {
+			scan();
+			return bytes;
+		}
+
+		synchronized void delete(Path file) throws IOException {
+			scan();
+			final long size = Files.size(file);
+			if (Files.deleteIfExists(file))
+				bytes -= size;
+		}
+
+		synchronized void store(Path temp, Path file, long size) throws IOException {
+			scan();
+			if (Files.exists(file))
+				delete(file);
+			evict(size);
+			Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			bytes += size;
+		}
+
+		private void evict(long size) throws IOException {
+			if (bytes + size <= maxBytes)
+				return;
+			final List<Path> files = entries();
+			final Map<Path, Long> modified = new HashMap<>();
+			for (Path file : files) {
+				modified.put(file, Files.getLastModifiedTime(file).toMillis());
+			}
+			Collections.sort(files, new Comparator<Path>() {
+				@Override
+				public int compare(Path left, Path right) {
+					return Long.compare(modified.get(left), modified.get(right));
+				}
+			});
+			for (Path file : files) {
+				if (bytes + size <= maxBytes)
+					break;
+				if (logger.isDebugEnabled())
+					logger.debug("[evict] {}", file);
+				delete(file);
+				synchronized (DiskCache.class) {
+					evictions++;
+				}
+			}
+		}
+
+		private void scan() {
+			if (bytes >= 0)
+				return;
+			bytes = 0;
+			if (!Files.isDirectory(path))
+				return;
+			try {
+				for (Path file : entries()) {
+					bytes += Files.size(file);
+				}
+				// temporary files of writers that have not finished, e.g. before a restart; the directory may be
+				// shared with other programs, so only files named like ours are deleted
+				try (DirectoryStream<Path> stream = Files.newDirectoryStream(path,
+						TEMP_PREFIX + "*" + TEMP_SUFFIX)) {
+					for (Path file : stream) {
+						if (Files.getLastModifiedTime(file).toMillis() < System.currentTimeMillis() - STALE_TEMP_MILLIS)
+							Files.deleteIfExists(file);
+					}
+				}
+			} catch (final IOException e) {
+				logger.warn("Cannot scan cache directory " + path + ": " + e.getMessage());
+			}
+		}
+
+		private List<Path> entries() throws IOException {
+			final List<Path> files = new ArrayList<>();
+			if (!Files.isDirectory(path))
+				return files;
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, "*" + SUFFIX)) {
+				for (Path file : stream) {
+					files.add(file);
+				}
+			}
+			return files;
+		}
+	}
+
+	/**
+	 * Verified entry file. Blocks are checked again while the response is read, since the file may change
+	 * in between.
+	 */
+	static final class Entry {
+		private final Path file;
+		private final String schema;
+		private final long length;
+		private final int headerLength;
+
+		private Entry(Path file, String schema, long length, int headerLength) {
+			this.file = file;
+			this.schema = schema;
+			this.length = length;
+			this.headerLength = headerLength;
+		}
+
+		String getSchema() {
+			return schema;
+		}
+
+		/**
+		 * @return length of the inflated response
+		 */
+		long getLength() {
+			return length;
+		}
+
+		InputStream open() throws IOException {
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+			try {
+				in.readFully(new byte[headerLength]);
+			} catch (final IOException e) {
+				in.close();
+				throw e;
+			}
+			return new BlockInputStream(in);
+		}
+
+		/**
+		 * @return entry if the header matches the digest and all checksums and lengths are valid, otherwise null
+		 */
+		static Entry verify(Path file, byte[] digest) throws IOException {
+			try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+				final ByteArrayOutputStream header = new ByteArrayOutputStream();
+				final DataOutputStream copy = new DataOutputStream(header);
+				final int magic = in.readInt();
+				final byte version = in.readByte();
+				if (magic != MAGIC || version != VERSION)
+					return null;
+				final byte[] stored = new byte[digest.length];
+				in.readFully(stored);
+				if (!Arrays.equals(stored, digest))
+					return null;
+				final long created = in.readLong();
+				final int schemaLength = in.readInt();
+				if (schemaLength < 0 || schemaLength > BLOCK_SIZE * 16)
+					return null;
+				final byte[] schema = new byte[schemaLength];
+				in.readFully(schema);
+				copy.writeInt(magic);
+				copy.writeByte(version);
+				copy.write(stored);
+				copy.writeLong(created);
+				copy.writeInt(schemaLength);
+				copy.write(schema);
+				if (in.readInt() != (int) crc(header.toByteArray(), header.size()))
+					return null;
+				long length = 0;
+				final byte[] block = new byte[BLOCK_SIZE + BLOCK_SIZE / 8];
+				while (true) {
+					final int raw = in.readInt();
+					if (raw == 0)
+						break;
+					final int deflated = in.readInt();
+					final int crc = in.readInt();
+					if (raw < 0 || raw > BLOCK_SIZE || deflated <= 0 || deflated > block.length)
+						return null;
+					in.readFully(block, 0, deflated);
+					if ((int) crc(block, deflated) != crc)
+						return null;
+					length += raw;
+				}
+				if (in.readLong() != length || in.read() != -1)
+					return null;
+				return new Entry(file, new String(schema, StandardCharsets.UTF_8), length, header.size() + 4);
+			} catch (final EOFException e) {
+				return null;
+			}
+		}
+	}
+
+	private static final class BlockInputStream extends InputStream {
+		private final DataInputStream in;
+		private final Inflater inflater = new Inflater();
+		private final byte[] compressed = new byte[BLOCK_SIZE + BLOCK_SIZE / 8];
+		private final byte[] block = new byte[BLOCK_SIZE];
+		private int position;
+		private int limit;
+		private boolean finished;
+
+		private BlockInputStream(DataInputStream in) {
+			this.in = in;
+		}
+
+		@Override
+		public int read() throws IOException {
+			if (!fill())
+				return -1;
+			return block[position++] & 0xFF;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (len == 0)
+				return 0;
+			if (!fill())
+				return -1;
+			final int count = Math.min(len, limit - position);
+			System.arraycopy(block, position, b, off, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return limit - position;
+		}
+
+		@Override
+		public void close() throws IOException {
+			inflater.end();
+			in.close();
+		}
+
+		private boolean fill() throws IOException {
+			if (position < limit)
+				return true;
+			if (finished)
+				return false;
+			final int raw = in.readInt();
+			if (raw == 0) {
+				finished = true;
+				return false;
+			}
+			final int deflated = in.readInt();
+			final int crc = in.readInt();
+			if (raw < 0 || raw > BLOCK_SIZE || deflated <= 0 || deflated > compressed.length)
+				throw new IOException("Corrupted cache entry");
+			in.readFully(compressed, 0, deflated);
+			if ((int) crc(compressed, deflated) != crc)
+				throw new IOException("Corrupted cache entry");
+			inflater.reset();
+			inflater.setInput(compressed, 0, deflated);
+			try {
+				if (inflater.inflate(block, 0, raw) != raw)
+					throw new IOException("Corrupted cache entry");
+			} catch (final DataFormatException e) {
+				throw new IOException("Corrupted cache entry", e);
+			}
+			position = 0;
+			limit = raw;
+			return true;
+		}
+	}
+
+}
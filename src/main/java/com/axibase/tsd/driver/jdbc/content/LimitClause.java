@@ -0,0 +1,194 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Adds or tightens the top-level LIMIT clause of a SELECT statement. Returns
+ * {@code null} when the statement cannot be rewritten safely, in which case the
+ * caller stops reading the response once the row limit is reached instead.
+ */
+public final class LimitClause {
+	private static final String SELECT_KEYWORD = "SELECT";
+	private static final String LIMIT_KEYWORD = "LIMIT";
+	private static final String OFFSET_KEYWORD = "OFFSET";
+	private static final String OPTION_KEYWORD = "OPTION";
+
+	private LimitClause() {
+	}
+
+	public static String apply(final String sql, final long maxRows) {
+		if (sql == null || maxRows <= 0)
+			return sql;
+		final List<Token> tokens = tokenize(sql);
+		if (tokens == null || tokens.isEmpty() || !tokens.get(0).is(SELECT_KEYWORD))
+			return null;
+		int end = tokens.size();
+		if (tokens.get(end - 1).is(";"))
+			end--;
+		int option = end;
+		int limit = -1;
+		for (int i = 0; i < end; i++) {
+			final Token token = tokens.get(i);
+			if (token.is(LIMIT_KEYWORD))
+				limit = i;
+			else if (token.is(OPTION_KEYWORD) && option == end)
+				option = i;
+		}
+		if (limit == -1) {
+			final int position = option < end ? tokens.get(option).start : tokens.get(end - 1).end;
+			final StringBuilder sb = new StringBuilder(sql.length() + 24);
+			sb.append(sql, 0, position);
+			trimRight(sb);
+			sb.append(' ').append(LIMIT_KEYWORD).append(' ').append(maxRows);
+			if (option < end)
+				sb.append(' ').append(sql, position, tokens.get(end - 1).end);
+			return sb.toString();
+		}
+		if (limit > option)
+			return null;
+		final Token count;
+		if (limit + 2 == option) {
+			count = tokens.get(limit + 1);
+		} else if (limit + 4 == option
+				&& (tokens.get(limit + 2).is(OFFSET_KEYWORD) || tokens.get(limit + 2).is(","))) {
+			if (!tokens.get(limit + 3).isNumber())
+				return null;
+			count = tokens.get(tokens.get(limit + 2).is(",") ? limit + 3 : limit + 1);
+		} else {
+			return null;
+		}
+		if (!count.isNumber())
+			return null;
+		final long current;
+		try {
+			current = Long.parseLong(count.text);
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+		if (current <= maxRows)
+			return sql;
+		return new StringBuilder(sql.length()).append(sql, 0, count.start).append(maxRows)
+				.append(sql, count.end, sql.length()).toString();
+	}
+
+	// collects tokens outside of literals, comments and parentheses
+	private static List<Token> tokenize(final String sql) {
+		final List<Token> tokens = new ArrayList<>();
+		final int length = sql.length();
+		int depth = 0;
+		int pos = 0;
+		while (pos < length) {
+			final char ch = sql.charAt(pos);
+			if (ch == '\'' || ch == '"') {
+				final int close = closingQuote(sql, pos, ch);
+				if (close == -1)
+					return null;
+				if (depth == 0)
+					tokens.add(new Token(sql, pos, close + 1));
+				pos = close + 1;
+			} else if (ch == '-' && pos + 1 < length && sql.charAt(pos + 1) == '-') {
+				final int eol = sql.indexOf('\n', pos);
+				pos = eol == -1 ? length : eol + 1;
+			} else if (ch == '/' && pos + 1 < length && sql.charAt(pos + 1) == '*') {
+				final int close = sql.indexOf("*/", pos + 2);
+				if (close == -1)
+					return null;
+				pos = close + 2;
+			} else if (ch == '(') {
+				if (depth == 0)
+					tokens.add(new Token(sql, pos, pos + 1));
+				depth++;
+				pos++;
+			} else if (ch == ')') {
+				depth--;
+				if (depth < 0)
+					return null;
+				if (depth == 0)
+					tokens.get(tokens.size() - 1).end = pos + 1;
+				pos++;
+			} else if (Character.isWhitespace(ch)) {
+				pos++;
+			} else if (isWordChar(ch)) {
+				final int start = pos;
+				while (pos < length && isWordChar(sql.charAt(pos)))
+					pos++;
+				if (depth == 0)
+					tokens.add(new Token(sql, start, pos));
+			} else {
+				if (depth == 0)
+					tokens.add(new Token(sql, pos, pos + 1));
+				pos++;
+			}
+		}
+		return depth == 0 ? tokens : null;
+	}
+
+	private static int closingQuote(final String sql, int from, char quote) {
+		int pos = from + 1;
+		while (pos < sql.length()) {
+			if (sql.charAt(pos) == quote) {
+				if (pos + 1 < sql.length() && sql.charAt(pos + 1) == quote) {
+					pos += 2;
+					continue;
+				}
+				return pos;
+			}
+			pos++;
+		}
+		return -1;
+	}
+
+	private static boolean isWordChar(char ch) {
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '.' || ch == '$' || ch == '*';
+	}
+
+	private static void trimRight(StringBuilder sb) {
+		int length = sb.length();
+		while (length > 0 && Character.isWhitespace(sb.charAt(length - 1)))
+			length--;
+		sb.setLength(length);
+	}
+
+	private static class Token {
+		private final String text;
+		private final int start;
+		private int end;
+
+		Token(String sql, int start, int end) {
+			this.text = sql.substring(start, end);
+			this.start = start;
+			this.end = end;
+		}
+
+		boolean is(String keyword) {
+			return text.toUpperCase(Locale.US).equals(keyword);
+		}
+
+		boolean isNumber() {
+			if (text.isEmpty())
+				return false;
+			for (int i = 0; i < text.length(); i++) {
+				if (!Character.isDigit(text.charAt(i)))
+					return false;
+			}
+			return true;
+		}
+	}
+
+}
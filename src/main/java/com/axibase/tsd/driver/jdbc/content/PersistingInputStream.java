@@ -0,0 +1,203 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.Deflater;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Writes the response to a temporary file in the {@link DiskCache} block format while a strategy consumes it,
+ * and moves the file into the cache directory once the response has been read to the end. Write errors and
+ * responses larger than the entry limit only abandon the capture.
+ */
+class PersistingInputStream extends FilterInputStream {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(PersistingInputStream.class);
+	private final Path directory;
+	private final long maxBytes;
+	private final byte[] digest;
+	private final String schema;
+	private final long limit;
+	private final byte[] block = new byte[DiskCache.BLOCK_SIZE];
+	private final byte[] compressed = new byte[DiskCache.BLOCK_SIZE + DiskCache.BLOCK_SIZE / 8];
+	private Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+	private Path temp;
+	private DataOutputStream out;
+	private int blockLength;
+	private long length;
+	private long written;
+	private boolean complete;
+
+	PersistingInputStream(InputStream in, Path directory, long maxBytes, byte[] digest, String schema) {
+		super(in);
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		this.digest = digest;
+		this.schema = schema;
+		this.limit = DiskCache.getMaxEntryBytes(maxBytes);
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int value = in.read();
+		if (value == -1)
+			finish();
+		else
+			capture(new byte[] {(byte) value}, 0, 1);
+		return value;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		final int read = in.read(b, off, len);
+		if (read == -1)
+			finish();
+		else if (read > 0)
+			capture(b, off, read);
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		synchronized (this) {
+			abandon();
+		}
+		return in.skip(n);
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private synchronized void capture(byte[] b, int off, int len) {
+		int position = off;
+		final int end = off + len;
+		while (deflater != null && position < end) {
+			final int count = Math.min(end - position, block.length - blockLength);
+			System.arraycopy(b, position, block, blockLength, count);
+			blockLength += count;
+			position += count;
+			if (blockLength == block.length)
+				writeBlock();
+		}
+	}
+
+	private synchronized void finish() {
+		if (deflater == null || complete)
+			return;
+		if (blockLength > 0)
+			writeBlock();
+		complete = deflater != null;
+	}
+
+	private void writeBlock() {
+		try {
+			open();
+			deflater.reset();
+			deflater.setInput(block, 0, blockLength);
+			deflater.finish();
+			int deflated = 0;
+			while (!deflater.finished()) {
+				deflated += deflater.deflate(compressed, deflated, compressed.length - deflated);
+			}
+			out.writeInt(blockLength);
+			out.writeInt(deflated);
+			out.writeInt((int) DiskCache.crc(compressed, deflated));
+			out.write(compressed, 0, deflated);
+			length += blockLength;
+			written += 12 + deflated;
+			blockLength = 0;
+			if (written > limit) {
+				if (logger.isDebugEnabled())
+					logger.debug("[capture] response exceeds {} bytes and will not be stored", limit);
+				abandon();
+			}
+		} catch (final IOException e) {
+			if (logger.isDebugEnabled())
+				logger.debug("[capture] " + e.getMessage());
+			abandon();
+		}
+	}
+
+	private void open() throws IOException {
+		if (out != null)
+			return;
+		temp = DiskCache.createTemp(directory);
+		out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)));
+		out.write(DiskCache.header(digest, schema));
+		written = out.size();
+	}
+
+	private void abandon() {
+		if (deflater != null) {
+			deflater.end();
+			deflater = null;
+		}
+		if (out != null) {
+			try {
+				out.close();
+			} catch (final IOException e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[abandon] " + e.getMessage());
+			}
+			out = null;
+		}
+		if (temp != null) {
+			try {
+				Files.deleteIfExists(temp);
+			} catch (final IOException e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[abandon] " + e.getMessage());
+			}
+			temp = null;
+		}
+	}
+
+	/**
+	 * Stores the response if it has been read completely, and stops capturing.
+	 *
+	 * @param failed true if the response has not been processed successfully
+	 * @return true if the response has been stored
+	 */
+	synchronized boolean commit(boolean failed) {
+		boolean stored = false;
+		if (complete && !failed) {
+			try {
+				open();
+				out.writeInt(0);
+				out.writeLong(length);
+				out.close();
+				out = null;
+				stored = DiskCache.put(directory, maxBytes, digest, temp);
+				temp = null;
+			} catch (final IOException e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[commit] " + e.getMessage());
+			}
+		}
+		abandon();
+		complete = false;
+		return stored;
+	}
+
+}
@@ -0,0 +1,112 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Driver hints in a SQL comment opened with {@code /*+ atsd:} and holding {@code name=value} pairs, e.g.
+ * {@code strategy=file fetch=50000}. Hints are removed from the query text and override the connection
+ * parameters of the same name for that query.
+ */
+public final class QueryHints {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(QueryHints.class);
+	private static final String HINT_START = "/*+";
+	private static final String HINT_END = "*/";
+	private static final String PREFIX = "atsd:";
+	/** Connection parameters a query may override; locations on disk are not among them. */
+	private static final Set<String> SUPPORTED = new HashSet<>(
+			Arrays.asList("strategy", "memorybudget", "compressspill", "fetch",
+					"statementmemorylimit", "resultcache", "resultcachettl", "coalesce",
+					"seriescache", "seriescachelag", "tail"));
+
+	private final String query;
+	private final Map<String, String> values;
+
+	private QueryHints(String query, Map<String, String> values) {
+		this.query = query;
+		this.values = values;
+	}
+
+	public static QueryHints parse(String sql) {
+		if (sql == null || !sql.contains(HINT_START))
+			return new QueryHints(sql, Collections.<String, String> emptyMap());
+		final StringBuilder sb = new StringBuilder(sql.length());
+		final Map<String, String> values = new LinkedHashMap<>();
+		char quote = 0;
+		int i = 0;
+		while (i < sql.length()) {
+			final char c = sql.charAt(i);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			} else if (c == '\'' || c == '"') {
+				quote = c;
+			} else if (sql.startsWith(HINT_START, i)) {
+				final int end = sql.indexOf(HINT_END, i + HINT_START.length());
+				final String body = end == -1 ? "" : sql.substring(i + HINT_START.length(), end).trim();
+				if (body.regionMatches(true, 0, PREFIX, 0, PREFIX.length())) {
+					parseBody(body.substring(PREFIX.length()), values);
+					i = end + HINT_END.length();
+					continue;
+				}
+			}
+			sb.append(c);
+			i++;
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[parse] hints: " + values);
+		return new QueryHints(sb.toString(), Collections.unmodifiableMap(values));
+	}
+
+	/**
+	 * @return query without driver hints
+	 */
+	public String getQuery() {
+		return query;
+	}
+
+	/**
+	 * @return hint values by lower-case name
+	 */
+	public Map<String, String> getValues() {
+		return values;
+	}
+
+	private static void parseBody(String body, Map<String, String> values) {
+		for (final String token : body.trim().split("[\\s,]+")) {
+			if (token.isEmpty())
+				continue;
+			final int separator = token.indexOf('=');
+			final String name = separator > 0 ? token.substring(0, separator).toLowerCase(Locale.US) : token;
+			if (separator <= 0 || separator == token.length() - 1) {
+				logger.warn("Ignoring malformed hint: " + token);
+			} else if (!SUPPORTED.contains(name)) {
+				logger.warn("Ignoring unsupported hint: " + token);
+			} else {
+				values.put(name, token.substring(separator + 1));
+			}
+		}
+	}
+
+}
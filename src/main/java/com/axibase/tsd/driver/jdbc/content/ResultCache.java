@@ -0,0 +1,347 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+
+/**
+ * Driver-wide cache of complete query responses for connections with {@code resultCache=true}.
+ * Responses are keyed by a digest of the server, user and password, the query text with whitespace outside literals collapsed (bound
+ * parameters are already substituted into it) and the row limit, and kept deflated for
+ * {@code resultCacheTtl} seconds. The total size is bounded by -Daxibase.tsd.driver.jdbc.resultCacheSize;
+ * least recently used entries are evicted first. Entries are kept off-heap with
+ * -Daxibase.tsd.driver.jdbc.resultCacheOffHeap=true, on-heap ones are charged to the driver memory limit.
+ */
+public final class ResultCache {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(ResultCache.class);
+	static final String SIZE_PROPERTY = "axibase.tsd.driver.jdbc.resultCacheSize";
+	static final String OFF_HEAP_PROPERTY = "axibase.tsd.driver.jdbc.resultCacheOffHeap";
+	public static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+	public static final long DEFAULT_TTL_MILLIS = TimeUnit.SECONDS.toMillis(10);
+	private static final boolean OFF_HEAP = Boolean.getBoolean(OFF_HEAP_PROPERTY);
+
+	private static final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private static long maxBytes = readSize();
+	private static long bytes;
+	private static long hits;
+	private static long misses;
+	private static long evictions;
+	private static long expirations;
+
+	private ResultCache() {
+	}
+
+	static Key key(ContentDescription cd, long maxRowCount) {
+		return new Key(credentials(cd), normalize(cd.getQuery()), maxRowCount);
+	}
+
+	/**
+	 * @return SHA-256 of the server, user and password in hex, so that driver-wide caches do not keep passwords
+	 */
+	static String credentials(ContentDescription cd) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			final String text = cd.getHost() + '\n' + cd.getLogin() + '\n' + cd.getPassword();
+			final byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+			final StringBuilder sb = new StringBuilder(2 * hash.length);
+			for (byte b : hash) {
+				sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+			}
+			return sb.toString();
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * @return live entry for the key or null
+	 */
+	static Entry get(Key key) {
+		synchronized (entries) {
+			final Entry entry = entries.get(key);
+			if (entry != null && entry.expires > System.currentTimeMillis()) {
+				hits++;
+				return entry;
+			}
+			if (entry != null) {
+				remove(key);
+				expirations++;
+			}
+			misses++;
+			return null;
+		}
+	}
+
+	/**
+	 * @param deflated response compressed with {@link java.util.zip.Deflater}
+	 * @return false if the entry does not fit into the cache
+	 */
+	static boolean put(Key key, String schema, byte[] deflated, int deflatedLength, long length, long ttlMillis) {
+		if (deflatedLength > getMaxEntryBytes())
+			return false;
+		final ByteBuffer buffer;
+		if (OFF_HEAP) {
+			buffer = ByteBuffer.allocateDirect(deflatedLength);
+			buffer.put(deflated, 0, deflatedLength).flip();
+		} else {
+			if (!MemoryAccountant.driver().tryReserve(deflatedLength))
+				return false;
+			buffer = ByteBuffer.wrap(Arrays.copyOf(deflated, deflatedLength));
+		}
+		final Entry entry = new Entry(schema, buffer, length, System.currentTimeMillis() + ttlMillis);
+		synchronized (entries) {
+			remove(key);
+			entries.put(key, entry);
+			bytes += deflatedLength;
+			final Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+			while (bytes > maxBytes && iterator.hasNext()) {
+				final Entry eldest = iterator.next().getValue();
+				iterator.remove();
+				release(eldest);
+				evictions++;
+			}
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[put] {} bytes deflated to {}", length, deflatedLength);
+		return true;
+	}
+
+	private static void remove(Key key) {
+		final Entry removed = entries.remove(key);
+		if (removed != null)
+			release(removed);
+	}
+
+	private static void release(Entry entry) {
+		final int size = entry.buffer.capacity();
+		bytes -= size;
+		if (!entry.buffer.isDirect())
+			MemoryAccountant.driver().release(size);
+	}
+
+	static long getMaxEntryBytes() {
+		synchronized (entries) {
+			return maxBytes / 4;
+		}
+	}
+
+	static void setMaxBytes(long size) {
+		synchronized (entries) {
+			maxBytes = size;
+		}
+	}
+
+	public static void clear() {
+		synchronized (entries) {
+			for (Entry entry : entries.values()) {
+				release(entry);
+			}
+			entries.clear();
+			hits = 0;
+			misses = 0;
+			evictions = 0;
+			expirations = 0;
+		}
+	}
+
+	public static long getHits() {
+		synchronized (entries) {
+			return hits;
+		}
+	}
+
+	public static long getMisses() {
+		synchronized (entries) {
+			return misses;
+		}
+	}
+
+	public static long getEvictions() {
+		synchronized (entries) {
+			return evictions;
+		}
+	}
+
+	public static long getExpirations() {
+		synchronized (entries) {
+			return expirations;
+		}
+	}
+
+	public static long getBytes() {
+		synchronized (entries) {
+			return bytes;
+		}
+	}
+
+	public static int getEntries() {
+		synchronized (entries) {
+			return entries.size();
+		}
+	}
+
+	/**
+	 * Collapses whitespace outside quoted literals and identifiers and drops trailing semicolons.
+	 */
+	static String normalize(String sql) {
+		if (sql == null)
+			return "";
+		final StringBuilder sb = new StringBuilder(sql.length());
+		char quote = 0;
+		boolean space = false;
+		for (int i = 0; i < sql.length(); i++) {
+			final char c = sql.charAt(i);
+			if (quote == 0 && Character.isWhitespace(c)) {
+				space = sb.length() > 0;
+				continue;
+			}
+			if (space) {
+				sb.append(' ');
+				space = false;
+			}
+			if (quote == 0 && (c == '\'' || c == '"'))
+				quote = c;
+			else if (c == quote)
+				quote = 0;
+			sb.append(c);
+		}
+		while (sb.length() > 0 && sb.charAt(sb.length() - 1) == ';') {
+			sb.setLength(sb.length() - 1);
+		}
+		return sb.toString().trim();
+	}
+
+	private static long readSize() {
+		final String value = System.getProperty(SIZE_PROPERTY);
+		if (value == null)
+			return DEFAULT_SIZE;
+		try {
+			return ContentDescription.parseSize(value);
+		} catch (final NumberFormatException e) {
+			logger.error("Invalid " + SIZE_PROPERTY + ": " + value);
+			return DEFAULT_SIZE;
+		}
+	}
+
+	static final class Key {
+		private final String credentials;
+		private final String query;
+		private final long maxRowCount;
+		private final int hash;
+
+		Key(String credentials, String query, long maxRowCount) {
+			this.credentials = credentials;
+			this.query = query;
+			this.maxRowCount = maxRowCount;
+			int result = credentials.hashCode();
+			result = 31 * result + query.hashCode();
+			hash = 31 * result + (int) (maxRowCount ^ (maxRowCount >>> 32));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Key))
+				return false;
+			final Key other = (Key) obj;
+			return maxRowCount == other.maxRowCount && credentials.equals(other.credentials)
+					&& query.equals(other.query);
+		}
+	}
+
+	static final class Entry {
+		private final String schema;
+		private final ByteBuffer buffer;
+		private final long length;
+		private final long expires;
+
+		Entry(String schema, ByteBuffer buffer, long length, long expires) {
+			this.schema = schema;
+			this.buffer = buffer;
+			this.length = length;
+			this.expires = expires;
+		}
+
+		String getSchema() {
+			return schema;
+		}
+
+		/**
+		 * @return length of the inflated response
+		 */
+		long getLength() {
+			return length;
+		}
+
+		InputStream open() {
+			return new InflaterInputStream(new BufferInputStream(buffer.duplicate()), new Inflater(), 64 * 1024) {
+				@Override
+				public void close() throws IOException {
+					super.close();
+					inf.end();
+				}
+			};
+		}
+	}
+
+	private static final class BufferInputStream extends InputStream {
+		private final ByteBuffer buffer;
+
+		BufferInputStream(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		@Override
+		public int read() {
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) {
+			if (!buffer.hasRemaining())
+				return -1;
+			final int count = Math.min(len, buffer.remaining());
+			buffer.get(b, off, count);
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return buffer.remaining();
+		}
+	}
+
+}
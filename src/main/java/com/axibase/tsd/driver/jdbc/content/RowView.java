@@ -0,0 +1,154 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.text.ParseException;
+import java.util.List;
+
+import org.apache.calcite.avatica.ColumnMetaData;
+
+import com.axibase.tsd.driver.jdbc.intf.IRowView;
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+public class RowView implements IRowView {
+	private static final String NUMERIC_OUT_OF_RANGE = "22003";
+	private final String[] names;
+	private final int[] types;
+	private String[] values;
+	private long rowNumber;
+
+	public RowView(List<ColumnMetaData> metadataList, String[] headers) {
+		this.names = headers;
+		this.types = new int[headers.length];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = Types.VARCHAR;
+		}
+		for (ColumnMetaData columnMetaData : metadataList) {
+			if (columnMetaData.ordinal < types.length)
+				types[columnMetaData.ordinal] = columnMetaData.type.id;
+		}
+	}
+
+	public void wrap(String[] values) {
+		this.values = values;
+		this.rowNumber++;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return names.length;
+	}
+
+	@Override
+	public String getColumnName(int columnIndex) {
+		return names[columnIndex - 1];
+	}
+
+	@Override
+	public int getColumnType(int columnIndex) {
+		return types[columnIndex - 1];
+	}
+
+	@Override
+	public long getRowNumber() {
+		return rowNumber;
+	}
+
+	@Override
+	public boolean isNull(int columnIndex) {
+		final String value = values[columnIndex - 1];
+		return value == null || (value.isEmpty() && types[columnIndex - 1] != Types.VARCHAR);
+	}
+
+	@Override
+	public String getString(int columnIndex) {
+		return values[columnIndex - 1];
+	}
+
+	@Override
+	public int getInt(int columnIndex) throws SQLException {
+		final long value = getLong(columnIndex);
+		if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE)
+			throw new SQLException(mismatch(columnIndex, "in int range"), NUMERIC_OUT_OF_RANGE);
+		return (int) value;
+	}
+
+	@Override
+	public long getLong(int columnIndex) throws SQLException {
+		if (isNull(columnIndex))
+			return 0;
+		final String value = values[columnIndex - 1];
+		try {
+			switch (types[columnIndex - 1]) {
+			case Types.TIMESTAMP:
+				return TimeDateUtils.parseEpochMillis(value);
+			case Types.SMALLINT:
+			case Types.INTEGER:
+			case Types.BIGINT:
+				return Long.parseLong(value);
+			default:
+				return (long) Double.parseDouble(value);
+			}
+		} catch (final NumberFormatException | ParseException e) {
+			throw new SQLException(mismatch(columnIndex, "long"), e);
+		}
+	}
+
+	@Override
+	public double getDouble(int columnIndex) throws SQLException {
+		if (isNull(columnIndex))
+			return 0;
+		if (types[columnIndex - 1] == Types.TIMESTAMP)
+			return getLong(columnIndex);
+		try {
+			return Double.parseDouble(values[columnIndex - 1]);
+		} catch (final NumberFormatException e) {
+			throw new SQLException(mismatch(columnIndex, "double"), e);
+		}
+	}
+
+	@Override
+	public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+		if (isNull(columnIndex))
+			return null;
+		try {
+			return new BigDecimal(values[columnIndex - 1]);
+		} catch (final NumberFormatException e) {
+			throw new SQLException(mismatch(columnIndex, "decimal"), e);
+		}
+	}
+
+	@Override
+	public long getTime(int columnIndex) throws SQLException {
+		if (isNull(columnIndex))
+			return 0;
+		final String value = values[columnIndex - 1];
+		try {
+			return types[columnIndex - 1] == Types.TIMESTAMP ? TimeDateUtils.parseEpochMillis(value)
+					: Long.parseLong(value);
+		} catch (final NumberFormatException | ParseException e) {
+			throw new SQLException(mismatch(columnIndex, "time"), e);
+		}
+	}
+
+	private String mismatch(int columnIndex, String type) {
+		return String.format("Value '%s' of column %s at row %d is not %s", values[columnIndex - 1],
+				names[columnIndex - 1], rowNumber, type);
+	}
+
+}
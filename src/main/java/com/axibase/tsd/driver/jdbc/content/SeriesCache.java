@@ -0,0 +1,411 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+/**
+ * Driver-wide cache of time series rows for connections with {@code seriesCache=true}. Rows of a
+ * {@link SeriesQuery} are kept per server, user, table, columns and filters together with the time
+ * intervals they cover, so a later query only requests the intervals missing from the cache.
+ * Intervals closer to the present than {@code seriesCacheLag} seconds are never marked as covered,
+ * since the server may still receive data for them. The size is bounded by
+ * -Daxibase.tsd.driver.jdbc.seriesCacheSize; least recently used series are evicted first.
+ */
+public final class SeriesCache {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(SeriesCache.class);
+	static final String SIZE_PROPERTY = "axibase.tsd.driver.jdbc.seriesCacheSize";
+	public static final long DEFAULT_SIZE = 32L * 1024 * 1024;
+	public static final long DEFAULT_LAG_MILLIS = TimeUnit.MINUTES.toMillis(1);
+	private static final String DATETIME_COLUMN = "datetime";
+	private static final String COMMENT = "#";
+	/** Approximate heap taken by a cached row besides its characters. */
+	private static final int ROW_OVERHEAD = 64;
+
+	private static final Map<String, Series> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private static long maxBytes = readSize();
+	private static long bytes;
+	private static long hits;
+	private static long partialHits;
+	private static long misses;
+	private static long evictions;
+
+	private SeriesCache() {
+	}
+
+	static String key(ContentDescription cd, SeriesQuery query) {
+		return ResultCache.credentials(cd) + '\n' + query.getSeries();
+	}
+
+	/**
+	 * @return cached series for the key, registered empty if missing
+	 */
+	static Series get(String key) {
+		synchronized (entries) {
+			Series series = entries.get(key);
+			if (series == null) {
+				series = new Series(key);
+				entries.put(key, series);
+			}
+			return series;
+		}
+	}
+
+	static void record(int requests, boolean cached) {
+		synchronized (entries) {
+			if (requests == 0)
+				hits++;
+			else if (cached)
+				partialHits++;
+			else
+				misses++;
+		}
+	}
+
+	/**
+	 * Charges the cache for a series that changes its size, evicting other series if needed.
+	 *
+	 * @return false if the series does not fit or has been evicted
+	 */
+	private static boolean resize(Series series, long delta) {
+		synchronized (entries) {
+			if (series.evicted)
+				return false;
+			if (delta <= 0) {
+				bytes += delta;
+				series.bytes += delta;
+				MemoryAccountant.driver().release(-delta);
+				return true;
+			}
+			final Iterator<Series> iterator = entries.values().iterator();
+			boolean reserved = false;
+			while (!(reserved = bytes + delta <= maxBytes && MemoryAccountant.driver().tryReserve(delta))
+					&& iterator.hasNext()) {
+				final Series eldest = iterator.next();
+				if (eldest == series)
+					continue;
+				iterator.remove();
+				evict(eldest);
+			}
+			if (!reserved) {
+				entries.remove(series.key);
+				evict(series);
+				return false;
+			}
+			bytes += delta;
+			series.bytes += delta;
+			return true;
+		}
+	}
+
+	private static void evict(Series series) {
+		if (logger.isDebugEnabled())
+			logger.debug("[evict] {} bytes", series.bytes);
+		series.evicted = true;
+		bytes -= series.bytes;
+		MemoryAccountant.driver().release(series.bytes);
+		series.bytes = 0;
+		evictions++;
+	}
+
+	static void setMaxBytes(long size) {
+		synchronized (entries) {
+			maxBytes = size;
+		}
+	}
+
+	public static void clear() {
+		synchronized (entries) {
+			for (Series series : entries.values()) {
+				series.evicted = true;
+				MemoryAccountant.driver().release(series.bytes);
+				series.bytes = 0;
+			}
+			entries.clear();
+			bytes = 0;
+		}
+	}
+
+	/**
+	 * @return queries answered without a request
+	 */
+	public static long getHits() {
+		synchronized (entries) {
+			return hits;
+		}
+	}
+
+	/**
+	 * @return queries that requested only part of their range
+	 */
+	public static long getPartialHits() {
+		synchronized (entries) {
+			return partialHits;
+		}
+	}
+
+	public static long getMisses() {
+		synchronized (entries) {
+			return misses;
+		}
+	}
+
+	public static long getEvictions() {
+		synchronized (entries) {
+			return evictions;
+		}
+	}
+
+	public static long getBytes() {
+		synchronized (entries) {
+			return bytes;
+		}
+	}
+
+	private static long readSize() {
+		final String value = System.getProperty(SIZE_PROPERTY);
+		if (value == null)
+			return DEFAULT_SIZE;
+		try {
+			return ContentDescription.parseSize(value);
+		} catch (final NumberFormatException e) {
+			logger.error("Invalid " + SIZE_PROPERTY + ": " + value);
+			return DEFAULT_SIZE;
+		}
+	}
+
+	/**
+	 * @return header and rows of a CSV response by time, or null if it carries errors or warnings or has no
+	 *         datetime column
+	 */
+	static Fetched parse(String response) {
+		final String[] lines = response.split("\r?\n");
+		final String header = lines[0];
+		final int column = indexOf(header, DATETIME_COLUMN);
+		if (column < 0 || header.startsWith(COMMENT))
+			return null;
+		final NavigableMap<Long, List<String>> rows = new TreeMap<>();
+		for (int i = 1; i < lines.length; i++) {
+			final String line = lines[i];
+			if (line.isEmpty())
+				continue;
+			if (line.startsWith(COMMENT))
+				return null;
+			final String value = field(line, column);
+			if (value == null)
+				return null;
+			final long time;
+			try {
+				time = TimeDateUtils.parseEpochMillis(value);
+			} catch (final ParseException e) {
+				return null;
+			}
+			List<String> values = rows.get(time);
+			if (values == null) {
+				values = new ArrayList<>(1);
+				rows.put(time, values);
+			}
+			values.add(line);
+		}
+		return new Fetched(header, rows);
+	}
+
+	static int indexOf(String header, String column) {
+		int index = 0;
+		String name;
+		while ((name = field(header, index)) != null) {
+			if (name.trim().equalsIgnoreCase(column))
+				return index;
+			index++;
+		}
+		return -1;
+	}
+
+	/**
+	 * @return unquoted value of the CSV field or null if the line has fewer fields
+	 */
+	static String field(String line, int index) {
+		int current = 0;
+		int start = 0;
+		boolean quoted = false;
+		for (int i = 0; i <= line.length(); i++) {
+			final char ch = i < line.length() ? line.charAt(i) : ',';
+			if (ch == '"') {
+				quoted = !quoted;
+			} else if (ch == ',' && !quoted) {
+				if (current == index) {
+					final String value = line.substring(start, i);
+					return value.length() > 1 && value.charAt(0) == '"' ? value.substring(1, value.length() - 1) : value;
+				}
+				current++;
+				start = i + 1;
+			}
+		}
+		return null;
+	}
+
+	static final class Fetched {
+		private final String header;
+		private final NavigableMap<Long, List<String>> rows;
+
+		private Fetched(String header, NavigableMap<Long, List<String>> rows) {
+			this.header = header;
+			this.rows = rows;
+		}
+
+		String getHeader() {
+			return header;
+		}
+
+		NavigableMap<Long, List<String>> getRows() {
+			return rows;
+		}
+	}
+
+	/**
+	 * Rows of one series ordered by time and the intervals they cover. Callers hold the monitor of
+	 * the series while they read or update it, but not while they request the missing intervals.
+	 */
+	static final class Series {
+		private final String key;
+		private final NavigableMap<Long, Long> covered = new TreeMap<>();
+		private final NavigableMap<Long, List<String>> rows = new TreeMap<>();
+		private String header;
+		private String schema;
+		private long bytes;
+		private volatile boolean evicted;
+
+		private Series(String key) {
+			this.key = key;
+		}
+
+		String getHeader() {
+			return header;
+		}
+
+		String getSchema() {
+			return schema;
+		}
+
+		/**
+		 * @return intervals of the range not covered by the cache, as {start, end} pairs
+		 */
+		List<long[]> missing(long start, long end) {
+			final List<long[]> gaps = new ArrayList<>();
+			long position = start;
+			final Map.Entry<Long, Long> before = covered.floorEntry(start);
+			if (before != null && before.getValue() > position)
+				position = before.getValue();
+			for (Map.Entry<Long, Long> interval : covered.subMap(start, false, end, false).entrySet()) {
+				if (interval.getKey() > position)
+					gaps.add(new long[] {position, interval.getKey()});
+				position = Math.max(position, interval.getValue());
+			}
+			if (position < end)
+				gaps.add(new long[] {position, end});
+			return gaps;
+		}
+
+		/**
+		 * Replaces the rows of the interval with the fetched ones.
+		 *
+		 * @param coveredEnd end of the part of the interval the server will not add rows to
+		 * @return false if the rows do not fit into the cache
+		 */
+		boolean merge(String header, String schema, long start, long end, long coveredEnd,
+				NavigableMap<Long, List<String>> fetched) {
+			if (this.header != null && !this.header.equals(header))
+				reset();
+			this.header = header;
+			if (schema != null && !schema.isEmpty())
+				this.schema = schema;
+			final NavigableMap<Long, List<String>> replaced = rows.subMap(start, true, end, false);
+			final NavigableMap<Long, List<String>> added = fetched.subMap(start, true, end, false);
+			long delta = 0;
+			for (List<String> lines : replaced.values()) {
+				delta -= size(lines);
+			}
+			for (List<String> lines : added.values()) {
+				delta += size(lines);
+			}
+			if (!resize(this, delta)) {
+				covered.clear();
+				rows.clear();
+				this.header = null;
+				return false;
+			}
+			replaced.clear();
+			rows.putAll(added);
+			if (coveredEnd > start)
+				cover(start, Math.min(end, coveredEnd));
+			return true;
+		}
+
+		/**
+		 * @return rows of the range in time order
+		 */
+		List<String> lines(long start, long end) {
+			final List<String> lines = new ArrayList<>();
+			for (List<String> values : rows.subMap(start, true, end, false).values()) {
+				lines.addAll(values);
+			}
+			return lines;
+		}
+
+		private void cover(long start, long end) {
+			long from = start;
+			long to = end;
+			final Map.Entry<Long, Long> before = covered.floorEntry(start);
+			if (before != null && before.getValue() >= start) {
+				from = before.getKey();
+				to = Math.max(to, before.getValue());
+			}
+			final Iterator<Map.Entry<Long, Long>> iterator = covered.subMap(from, true, to, true).entrySet().iterator();
+			while (iterator.hasNext()) {
+				to = Math.max(to, iterator.next().getValue());
+				iterator.remove();
+			}
+			covered.put(from, to);
+		}
+
+		private void reset() {
+			covered.clear();
+			rows.clear();
+			header = null;
+			resize(this, -bytes);
+		}
+
+		private static long size(List<String> lines) {
+			long size = 0;
+			for (String line : lines) {
+				size += ROW_OVERHEAD + 2L * line.length();
+			}
+			return size;
+		}
+	}
+
+}
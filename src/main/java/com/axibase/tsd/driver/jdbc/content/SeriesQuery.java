@@ -0,0 +1,254 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+/**
+ * SELECT statement that reads plain columns of one table filtered by a closed {@code datetime} range
+ * and other conditions joined with AND, e.g.
+ * {@code SELECT datetime, value FROM m WHERE entity = 'e' AND datetime BETWEEN '...' AND '...'}.
+ * Such a statement can be answered from rows of the same series fetched earlier, and re-sent for
+ * any part of its range.
+ */
+final class SeriesQuery {
+	private static final String DATETIME = "datetime";
+	private static final String AND = "AND";
+	private static final String BETWEEN = "BETWEEN";
+	private static final List<String> OPERATORS = Arrays.asList("=", "!=", "<>", "<", ">", "<=", ">=", "LIKE");
+	private final String columns;
+	private final String table;
+	private final List<String> filters;
+	private final long start;
+	private final long end;
+
+	private SeriesQuery(String columns, String table, List<String> filters, long start, long end) {
+		this.columns = columns;
+		this.table = table;
+		this.filters = filters;
+		this.start = start;
+		this.end = end;
+	}
+
+	/**
+	 * @return parsed statement or null if it has another form or no lower and upper time bound
+	 */
+	static SeriesQuery parse(String sql) {
+		if (sql == null)
+			return null;
+		final List<String> tokens = tokenize(sql);
+		if (tokens == null)
+			return null;
+		int end = tokens.size();
+		if (end > 0 && tokens.get(end - 1).equals(";"))
+			end--;
+		if (end < 6 || !is(tokens.get(0), "SELECT"))
+			return null;
+		int pos = 1;
+		final StringBuilder columns = new StringBuilder();
+		boolean datetime = false;
+		while (true) {
+			final String column = tokens.get(pos++);
+			if (!isIdentifier(column) || is(column, "FROM") || pos >= end)
+				return null;
+			datetime |= column.equals("*") || is(column, DATETIME);
+			columns.append(columns.length() > 0 ? ", " : "").append(column);
+			if (!tokens.get(pos).equals(","))
+				break;
+			pos++;
+		}
+		if (!datetime || pos + 2 >= end || !is(tokens.get(pos), "FROM") || !is(tokens.get(pos + 2), "WHERE"))
+			return null;
+		final String table = tokens.get(pos + 1);
+		if (!isIdentifier(table) || table.equals("*"))
+			return null;
+		pos += 3;
+		long from = Long.MIN_VALUE;
+		long to = Long.MAX_VALUE;
+		final List<String> filters = new ArrayList<>();
+		try {
+			while (pos + 2 < end) {
+				final String column = tokens.get(pos);
+				final String operator = tokens.get(pos + 1).toUpperCase(Locale.US);
+				if (!isIdentifier(column) || column.equals("*") || is(column, "time"))
+					return null;
+				if (is(column, DATETIME)) {
+					if (operator.equals(BETWEEN)) {
+						if (pos + 4 >= end || !is(tokens.get(pos + 3), AND))
+							return null;
+						from = Math.max(from, timestamp(tokens.get(pos + 2)));
+						to = Math.min(to, timestamp(tokens.get(pos + 4)) + 1);
+						pos += 5;
+					} else {
+						final long time = timestamp(tokens.get(pos + 2));
+						if (operator.equals(">="))
+							from = Math.max(from, time);
+						else if (operator.equals(">"))
+							from = Math.max(from, time + 1);
+						else if (operator.equals("<"))
+							to = Math.min(to, time);
+						else if (operator.equals("<="))
+							to = Math.min(to, time + 1);
+						else
+							return null;
+						pos += 3;
+					}
+				} else {
+					final String value = tokens.get(pos + 2);
+					if (!OPERATORS.contains(operator) || !isLiteral(value))
+						return null;
+					filters.add(column + ' ' + operator + ' ' + value);
+					pos += 3;
+				}
+				if (pos == end)
+					break;
+				if (!is(tokens.get(pos), AND))
+					return null;
+				pos++;
+			}
+		} catch (final ParseException e) {
+			return null;
+		}
+		if (pos != end || from == Long.MIN_VALUE || to == Long.MAX_VALUE)
+			return null;
+		Collections.sort(filters);
+		return new SeriesQuery(columns.toString(), table, filters, from, to);
+	}
+
+	/**
+	 * @return first millisecond of the range
+	 */
+	long getStart() {
+		return start;
+	}
+
+	/**
+	 * @return millisecond following the range
+	 */
+	long getEnd() {
+		return end;
+	}
+
+	/**
+	 * @return identity of the rows regardless of the time range
+	 */
+	String getSeries() {
+		final StringBuilder sb = new StringBuilder(columns).append(" FROM ").append(table);
+		for (String filter : filters) {
+			sb.append(" AND ").append(filter);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @return statement reading the rows of the series in the range
+	 */
+	String rewrite(long from, long to) {
+		final StringBuilder sb = new StringBuilder("SELECT ").append(columns).append(" FROM ").append(table)
+				.append(" WHERE ");
+		for (String filter : filters) {
+			sb.append(filter).append(" AND ");
+		}
+		return sb.append(DATETIME).append(" >= '").append(TimeDateUtils.formatEpochMillis(from)).append("' AND ")
+				.append(DATETIME).append(" < '").append(TimeDateUtils.formatEpochMillis(to)).append('\'').toString();
+	}
+
+	private static long timestamp(String literal) throws ParseException {
+		if (literal.length() < 2 || literal.charAt(0) != '\'')
+			throw new ParseException("Not a timestamp literal: " + literal, 0);
+		return TimeDateUtils.parseEpochMillis(literal.substring(1, literal.length() - 1));
+	}
+
+	private static boolean is(String token, String keyword) {
+		return token.equalsIgnoreCase(keyword);
+	}
+
+	private static boolean isIdentifier(String token) {
+		return token.charAt(0) == '"' || token.equals("*") || isWordChar(token.charAt(0));
+	}
+
+	private static boolean isLiteral(String token) {
+		if (token.charAt(0) == '\'')
+			return true;
+		for (int i = 0; i < token.length(); i++) {
+			final char ch = token.charAt(i);
+			if (!Character.isDigit(ch) && ch != '.' && !(i == 0 && ch == '-'))
+				return false;
+		}
+		return true;
+	}
+
+	// tokens are words, quoted literals and identifiers and operators; comments and parentheses are refused
+	private static List<String> tokenize(String sql) {
+		final List<String> tokens = new ArrayList<>();
+		final int length = sql.length();
+		int pos = 0;
+		while (pos < length) {
+			final char ch = sql.charAt(pos);
+			if (ch == '\'' || ch == '"') {
+				final int close = closingQuote(sql, pos, ch);
+				if (close == -1)
+					return null;
+				tokens.add(sql.substring(pos, close + 1));
+				pos = close + 1;
+			} else if (Character.isWhitespace(ch)) {
+				pos++;
+			} else if (isWordChar(ch) || ch == '-' && pos + 1 < length && Character.isDigit(sql.charAt(pos + 1))) {
+				final int start = pos++;
+				while (pos < length && isWordChar(sql.charAt(pos)))
+					pos++;
+				tokens.add(sql.substring(start, pos));
+			} else if (ch == '<' || ch == '>' || ch == '=' || ch == '!') {
+				final int start = pos++;
+				while (pos < length && "<>=".indexOf(sql.charAt(pos)) != -1)
+					pos++;
+				tokens.add(sql.substring(start, pos));
+			} else if (ch == ',' || ch == ';') {
+				tokens.add(String.valueOf(ch));
+				pos++;
+			} else {
+				return null;
+			}
+		}
+		return tokens;
+	}
+
+	private static int closingQuote(String sql, int from, char quote) {
+		int pos = from + 1;
+		while (pos < sql.length()) {
+			if (sql.charAt(pos) == quote) {
+				if (pos + 1 < sql.length() && sql.charAt(pos + 1) == quote) {
+					pos += 2;
+					continue;
+				}
+				return pos;
+			}
+			pos++;
+		}
+		return -1;
+	}
+
+	private static boolean isWordChar(char ch) {
+		return Character.isLetterOrDigit(ch) || ch == '_' || ch == '.' || ch == '$' || ch == '*';
+	}
+
+}
@@ -0,0 +1,390 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.CommittedSequence;
+import com.axibase.tsd.driver.jdbc.strategies.SpillFile;
+import com.axibase.tsd.driver.jdbc.strategies.SpillManager;
+import com.axibase.tsd.driver.jdbc.util.BufferPool;
+import com.axibase.tsd.driver.jdbc.util.DriverExecutor;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+
+/**
+ * Response of a query shared by identical executions that overlap in time, for connections with
+ * {@code coalesce=true}. The first execution sends the request and a background task copies the
+ * response into buffers, and into a spill file past the memory budget. Every execution, the first
+ * one included, reads the response from the beginning through its own stream. The response is
+ * released when the last stream is closed.
+ */
+final class SharedResponse {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(SharedResponse.class);
+	static final int CHUNK_SIZE = 64 * 1024;
+	private static final Map<ResultCache.Key, SharedResponse> inFlight = new HashMap<>();
+	private static long coalesced;
+
+	private final ResultCache.Key key;
+	private final long budget;
+	private final String spillDirectory;
+	private final MemoryAccountant memory = MemoryAccountant.driver();
+	private final CommittedSequence sequence = new CommittedSequence();
+	private final CountDownLatch started = new CountDownLatch(1);
+	private final AtomicBoolean claimed = new AtomicBoolean();
+	private final List<ByteBuffer> chunks = new ArrayList<>();
+	private int refs;
+	private volatile boolean abandoned;
+	private volatile IOException failure;
+	private volatile String schema;
+	private volatile long contentLength;
+	private volatile FileChannel spill;
+	private volatile long spillStart = -1;
+	private SpillFile spillFile;
+
+	private SharedResponse(ResultCache.Key key, long budget, String spillDirectory) {
+		this.key = key;
+		this.budget = Math.max(budget, CHUNK_SIZE);
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Joins the response to the query in flight or registers a new one. The caller holds a reference
+	 * until it closes the stream returned by {@link #open()} or the request fails.
+	 */
+	static SharedResponse acquire(ResultCache.Key key, long budget, String spillDirectory) {
+		synchronized (inFlight) {
+			SharedResponse response = inFlight.get(key);
+			if (response == null) {
+				response = new SharedResponse(key, budget, spillDirectory);
+				inFlight.put(key, response);
+			} else {
+				coalesced++;
+			}
+			response.refs++;
+			return response;
+		}
+	}
+
+	/**
+	 * Forgets the responses in flight; callers holding them keep reading.
+	 */
+	static void clear() {
+		synchronized (inFlight) {
+			inFlight.clear();
+		}
+	}
+
+	static int getInFlight() {
+		synchronized (inFlight) {
+			return inFlight.size();
+		}
+	}
+
+	/**
+	 * @return number of executions served by a request sent for another execution
+	 */
+	static long getCoalesced() {
+		synchronized (inFlight) {
+			return coalesced;
+		}
+	}
+
+	/**
+	 * @return true for the one caller that has to send the request
+	 */
+	boolean lead() {
+		return claimed.compareAndSet(false, true);
+	}
+
+	/**
+	 * Starts copying the response sent by the leading caller.
+	 *
+	 * @throws RejectedExecutionException if no driver thread is available, the caller then fails the response
+	 */
+	void start(InputStream is, String schema, long contentLength) {
+		synchronized (inFlight) {
+			refs++;
+		}
+		try {
+			DriverExecutor.submit(new Pump(is));
+		} catch (final RejectedExecutionException e) {
+			synchronized (inFlight) {
+				refs--;
+			}
+			throw e;
+		}
+		this.schema = schema;
+		this.contentLength = contentLength;
+		started.countDown();
+	}
+
+	/**
+	 * Fails the callers waiting for the request and releases the reference of the leading caller.
+	 */
+	void fail(Throwable cause) {
+		failure = cause instanceof IOException ? (IOException) cause : new IOException(cause);
+		unregister();
+		sequence.finish();
+		started.countDown();
+		release();
+	}
+
+	/**
+	 * Waits until the leading caller receives the response headers.
+	 */
+	void awaitStart() throws IOException {
+		try {
+			started.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			release();
+			throw new InterruptedIOException(e.getMessage());
+		}
+		if (schema == null && failure != null) {
+			release();
+			throw new IOException("Shared request failed: " + failure.getMessage(), failure);
+		}
+	}
+
+	String getSchema() {
+		return schema;
+	}
+
+	long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * @return stream over the whole response, closing it releases the reference of the caller
+	 */
+	InputStream open() {
+		return new Reader();
+	}
+
+	private void unregister() {
+		synchronized (inFlight) {
+			if (inFlight.get(key) == this)
+				inFlight.remove(key);
+		}
+	}
+
+	/**
+	 * @return true if nobody but the copying task holds the response any longer
+	 */
+	private boolean abandon() {
+		synchronized (inFlight) {
+			if (refs > 1)
+				return false;
+			if (inFlight.get(key) == this)
+				inFlight.remove(key);
+			abandoned = true;
+			return true;
+		}
+	}
+
+	private void release() {
+		synchronized (inFlight) {
+			if (--refs > 0)
+				return;
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[release] {} bytes", sequence.getCommitted());
+		synchronized (chunks) {
+			for (ByteBuffer chunk : chunks) {
+				BufferPool.release(chunk);
+			}
+			memory.release((long) chunks.size() * CHUNK_SIZE);
+			chunks.clear();
+		}
+		try {
+			if (spill != null)
+				spill.close();
+		} catch (IOException e) {
+			logger.error(e.getMessage());
+		}
+		if (spillFile != null)
+			spillFile.close();
+	}
+
+	private ByteBuffer nextChunk() {
+		synchronized (chunks) {
+			if ((long) (chunks.size() + 1) * CHUNK_SIZE > budget || !memory.tryReserve(CHUNK_SIZE))
+				return null;
+			final ByteBuffer chunk = BufferPool.acquire(CHUNK_SIZE);
+			chunk.limit(CHUNK_SIZE);
+			chunks.add(chunk);
+			return chunk;
+		}
+	}
+
+	private ByteBuffer chunkAt(long position) {
+		synchronized (chunks) {
+			return chunks.get((int) (position / CHUNK_SIZE)).duplicate();
+		}
+	}
+
+	private final class Pump implements Callable<Long> {
+		private final ReadableByteChannel channel;
+
+		Pump(InputStream is) {
+			this.channel = Channels.newChannel(is);
+		}
+
+		@Override
+		public Long call() throws IOException {
+			long position = 0;
+			ByteBuffer chunk = null;
+			ByteBuffer scratch = null;
+			try {
+				while (!abandon()) {
+					if (spill == null && (chunk == null || !chunk.hasRemaining())) {
+						chunk = nextChunk();
+						if (chunk == null)
+							startSpill(position);
+					}
+					final ByteBuffer target;
+					if (spill == null) {
+						target = chunk;
+					} else {
+						if (scratch == null)
+							scratch = BufferPool.acquire(CHUNK_SIZE);
+						scratch.clear();
+						target = scratch;
+					}
+					final int read = channel.read(target);
+					if (read < 0)
+						break;
+					if (target == scratch) {
+						scratch.flip();
+						write(scratch, position);
+					}
+					position += read;
+					sequence.publish(position);
+				}
+			} catch (IOException e) {
+				logger.error("[Pump] " + e.getMessage());
+				failure = e;
+			} finally {
+				BufferPool.release(scratch);
+				unregister();
+				sequence.finish();
+				channel.close();
+				release();
+				if (logger.isDebugEnabled())
+					logger.debug("[Pump] {} bytes, abandoned: {}", position, abandoned);
+			}
+			return position;
+		}
+
+		private void startSpill(long position) throws IOException {
+			spillFile = SpillManager.create(spillDirectory, SharedResponse.this);
+			spill = FileChannel.open(spillFile.getPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			spillStart = position;
+			if (logger.isDebugEnabled())
+				logger.debug("[startSpill] {} at {}", spillFile.getPath(), position);
+		}
+
+		private void write(ByteBuffer buffer, long position) throws IOException {
+			final long offset = position - spillStart;
+			try {
+				if (!spillFile.reserve(offset + buffer.remaining(), SpillManager.BACKPRESSURE_TIMEOUT_MILLIS))
+					throw new IOException("Spill quota of " + SpillManager.getQuota() + " bytes is exhausted after "
+							+ position + " bytes");
+			} catch (InterruptedException e) {
+				throw new InterruptedIOException(e.getMessage());
+			}
+			while (buffer.hasRemaining()) {
+				spill.write(buffer, offset + buffer.position());
+			}
+		}
+	}
+
+	private final class Reader extends InputStream {
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private long position;
+
+		@Override
+		public int read() throws IOException {
+			final byte[] one = new byte[1];
+			return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (closed.get())
+				throw new IOException("Stream is closed");
+			if (len == 0)
+				return 0;
+			final long committed;
+			try {
+				committed = sequence.await(position);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException(e.getMessage());
+			}
+			if (committed <= position) {
+				if (failure != null)
+					throw new IOException("Shared request failed: " + failure.getMessage(), failure);
+				return -1;
+			}
+			int count = (int) Math.min(len, committed - position);
+			final long spillAt = spillStart;
+			if (spillAt < 0 || position < spillAt) {
+				final ByteBuffer chunk = chunkAt(position);
+				final int offset = (int) (position % CHUNK_SIZE);
+				count = Math.min(count, CHUNK_SIZE - offset);
+				chunk.position(offset);
+				chunk.get(b, off, count);
+			} else {
+				final ByteBuffer target = ByteBuffer.wrap(b, off, count);
+				while (target.hasRemaining()) {
+					if (spill.read(target, position - spillAt + target.position() - off) < 0)
+						break;
+				}
+				count = target.position() - off;
+			}
+			position += count;
+			return count;
+		}
+
+		@Override
+		public int available() {
+			return (int) Math.min(Integer.MAX_VALUE, Math.max(0, sequence.getCommitted() - position));
+		}
+
+		@Override
+		public void close() {
+			if (closed.compareAndSet(false, true))
+				release();
+		}
+	}
+
+}
@@ -17,9 +17,17 @@ package com.axibase.tsd.driver.jdbc.content;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 
+import com.axibase.tsd.driver.jdbc.strategies.StrategyChoice;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+
 public class StatementContext {
 	private SQLException exception;
 	private SQLWarning warning;
+	private long maxRowCount;
+	private StrategyChoice strategyChoice;
+	private MemoryAccountant memory;
+	private long frameMemory;
+	private TailWindow tailWindow;
 
 	public StatementContext() {
 	}
@@ -53,10 +61,62 @@ public class StatementContext {
 		this.warning = warning;
 	}
 
+	public long getMaxRowCount() {
+		return maxRowCount;
+	}
+
+	public void setMaxRowCount(long maxRowCount) {
+		this.maxRowCount = maxRowCount;
+	}
+
 	public void addWarning(SQLWarning warn) {
 		if (this.warning != null)
 			this.warning.setNextWarning(warn);
 		else
 			setWarning(warn);
 	}
+
+	public StrategyChoice getStrategyChoice() {
+		return strategyChoice;
+	}
+
+	public void setStrategyChoice(StrategyChoice strategyChoice) {
+		this.strategyChoice = strategyChoice;
+	}
+
+	/**
+	 * @return accountant of the statement, an unlimited child of the driver one if none was set
+	 */
+	public synchronized MemoryAccountant getMemory() {
+		if (memory == null)
+			memory = MemoryAccountant.driver().newChild("statement", MemoryAccountant.UNLIMITED);
+		return memory;
+	}
+
+	public synchronized void setMemory(MemoryAccountant memory) {
+		this.memory = memory;
+	}
+
+	/**
+	 * @return bytes reserved for the last frame returned to Avatica
+	 */
+	public long getFrameMemory() {
+		return frameMemory;
+	}
+
+	public void setFrameMemory(long frameMemory) {
+		this.frameMemory = frameMemory;
+	}
+
+	/**
+	 * @return rows kept from earlier executions of the prepared statement, or null unless tail=true
+	 */
+	public TailWindow getTailWindow() {
+		return tailWindow;
+	}
+
+	public void setTailWindow(TailWindow tailWindow) {
+		this.tailWindow = tailWindow;
+	}
+
 }
@@ -0,0 +1,376 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+/**
+ * Rows kept between executions of a prepared statement with {@code tail=true}. The statement must read plain
+ * columns of one table with a {@code datetime} bound relative to the present and other conditions joined with
+ * AND, e.g. {@code SELECT * FROM m WHERE entity = 'e' AND datetime > now - 1 * HOUR}. After the first execution
+ * only rows newer than the last row of every series are requested; they are added to the rows kept from earlier
+ * executions and rows that left the window are dropped. A series is identified by the entity, metric and tags
+ * columns of a row, so rows the server receives after newer rows of the same series are not returned. Rows of a
+ * series that appears with rows older than the last row of every other series are missed by the incremental
+ * requests, so the whole window is requested again once per window width.
+ * <p>
+ * The kept rows are charged to the statement accountant of the current execution and released on {@link #close()}.
+ * Callers hold the monitor of the window while they use it but not while they fetch the rows; a window emptied
+ * in the meantime has a new {@link #getGeneration() generation}.
+ */
+public final class TailWindow {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(TailWindow.class);
+	private static final Pattern WORD = Pattern.compile("[A-Za-z_][A-Za-z0-9_.]*");
+	private static final Pattern BOUND = Pattern.compile(
+			"\\bdatetime\\s*(>=?)\\s*now\\s*-\\s*(\\d+)\\s*\\*\\s*(millisecond|second|minute|hour|day|week)\\b",
+			Pattern.CASE_INSENSITIVE);
+	private static final Set<String> REFUSED = new HashSet<>(Arrays.asList("GROUP", "ORDER", "LIMIT", "OFFSET",
+			"OPTION", "WITH", "JOIN", "UNION", "HAVING", "OR", "NOT"));
+	private static final String DATETIME = "datetime";
+	/** Approximate heap taken by a kept row besides its characters. */
+	private static final int ROW_OVERHEAD = 64;
+
+	private final NavigableMap<Long, List<String>> rows = new TreeMap<>();
+	private final Map<String, Long> latest = new HashMap<>();
+	private String sql;
+	private String prefix;
+	private String conditions;
+	private long width;
+	private boolean inclusive;
+	private String header;
+	private String schema;
+	private int[] seriesColumns;
+	private long bytes;
+	private int rowCount;
+	private int added;
+	private long refreshed;
+	private int generation;
+	private MemoryAccountant memory = MemoryAccountant.driver();
+
+	/**
+	 * Moves the reservation of the kept rows to the accountant of the current execution; the window is emptied if
+	 * they do not fit.
+	 */
+	void charge(MemoryAccountant memory) {
+		if (memory == this.memory)
+			return;
+		this.memory.release(bytes);
+		this.memory = memory;
+		if (!memory.tryReserve(bytes)) {
+			bytes = 0;
+			reset();
+		}
+	}
+
+	/**
+	 * @return statement requesting the rows missing from the window, or null if the statement cannot be tailed
+	 */
+	String request(String statement, long now) {
+		if (!statement.equals(sql)) {
+			reset();
+			sql = statement;
+			if (!parse(statement)) {
+				prefix = null;
+				if (logger.isDebugEnabled())
+					logger.debug("[request] statement cannot be tailed");
+			}
+		}
+		if (prefix == null)
+			return null;
+		evict(now);
+		if (header == null || latest.isEmpty() || now - refreshed >= width) {
+			refreshed = now;
+			return statement;
+		}
+		final long since = Collections.min(latest.values());
+		return prefix + " (" + conditions + ") AND " + DATETIME + " > '" + TimeDateUtils.formatEpochMillis(since)
+				+ '\'';
+	}
+
+	/**
+	 * Adds the fetched rows newer than the last row of their series.
+	 *
+	 * @return false if the columns have changed or the rows do not fit into statement memory; the window is then
+	 *         emptied
+	 */
+	boolean merge(String header, String schema, NavigableMap<Long, List<String>> fetched, long now) {
+		if (this.header != null && !this.header.equals(header)) {
+			reset();
+			return false;
+		}
+		if (this.header == null) {
+			this.header = header;
+			seriesColumns = seriesColumns(header);
+		}
+		if (schema != null && !schema.isEmpty())
+			this.schema = schema;
+		final NavigableMap<Long, List<String>> newer = new TreeMap<>();
+		final Map<String, Long> last = new HashMap<>();
+		long delta = 0;
+		int count = 0;
+		for (Map.Entry<Long, List<String>> entry : fetched.entrySet()) {
+			final long time = entry.getKey();
+			for (String line : entry.getValue()) {
+				final String series = series(line);
+				final Long previous = latest.get(series);
+				if (previous != null && time <= previous)
+					continue;
+				List<String> lines = newer.get(time);
+				if (lines == null) {
+					lines = new ArrayList<>(1);
+					newer.put(time, lines);
+				}
+				lines.add(line);
+				last.put(series, time);
+				delta += ROW_OVERHEAD + 2L * line.length();
+				count++;
+			}
+		}
+		if (!memory.tryReserve(delta)) {
+			reset();
+			return false;
+		}
+		bytes += delta;
+		rowCount += count;
+		added = count;
+		for (Map.Entry<Long, List<String>> entry : newer.entrySet()) {
+			final List<String> lines = rows.get(entry.getKey());
+			if (lines == null)
+				rows.put(entry.getKey(), entry.getValue());
+			else
+				lines.addAll(entry.getValue());
+		}
+		latest.putAll(last);
+		evict(now);
+		if (logger.isDebugEnabled())
+			logger.debug("[merge] added: {} kept: {}", count, rowCount);
+		return true;
+	}
+
+	String getHeader() {
+		return header;
+	}
+
+	/**
+	 * @return number of times the window has been emptied
+	 */
+	int getGeneration() {
+		return generation;
+	}
+
+	String getSchema() {
+		return schema;
+	}
+
+	/**
+	 * @return rows of the window in time order
+	 */
+	List<String> lines() {
+		final List<String> lines = new ArrayList<>(rowCount);
+		for (List<String> values : rows.values()) {
+			lines.addAll(values);
+		}
+		return lines;
+	}
+
+	public synchronized int getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * @return rows added by the last execution
+	 */
+	public synchronized int getAddedRows() {
+		return added;
+	}
+
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	public synchronized void close() {
+		reset();
+		sql = null;
+	}
+
+	private void evict(long now) {
+		final long bound = now - width;
+		final Iterator<List<String>> iterator = rows.headMap(bound, !inclusive).values().iterator();
+		long delta = 0;
+		while (iterator.hasNext()) {
+			for (String line : iterator.next()) {
+				delta += ROW_OVERHEAD + 2L * line.length();
+				rowCount--;
+			}
+			iterator.remove();
+		}
+		final Iterator<Long> times = latest.values().iterator();
+		while (times.hasNext()) {
+			final long time = times.next();
+			if (time < bound || time == bound && !inclusive)
+				times.remove();
+		}
+		release(delta);
+	}
+
+	private void reset() {
+		generation++;
+		rows.clear();
+		latest.clear();
+		header = null;
+		schema = null;
+		seriesColumns = null;
+		rowCount = 0;
+		added = 0;
+		release(bytes);
+	}
+
+	private void release(long delta) {
+		if (delta > 0) {
+			bytes -= delta;
+			memory.release(delta);
+		}
+	}
+
+	private String series(String line) {
+		if (seriesColumns.length == 0)
+			return "";
+		final StringBuilder sb = new StringBuilder();
+		for (int column : seriesColumns) {
+			sb.append(SeriesCache.field(line, column)).append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static int[] seriesColumns(String header) {
+		final List<Integer> columns = new ArrayList<>();
+		String name;
+		for (int i = 0; (name = SeriesCache.field(header, i)) != null; i++) {
+			name = name.trim().toLowerCase(Locale.US);
+			if (name.equals("entity") || name.equals("metric") || name.equals("tags") || name.startsWith("tags."))
+				columns.add(i);
+		}
+		final int[] result = new int[columns.size()];
+		for (int i = 0; i < result.length; i++) {
+			result[i] = columns.get(i);
+		}
+		return result;
+	}
+
+	/**
+	 * Finds the WHERE clause and the window width of a statement of the supported form.
+	 */
+	private boolean parse(String statement) {
+		final String masked = mask(statement);
+		if (masked == null)
+			return false;
+		int end = masked.length();
+		while (end > 0 && (Character.isWhitespace(masked.charAt(end - 1)) || masked.charAt(end - 1) == ';'))
+			end--;
+		final Matcher words = WORD.matcher(masked.substring(0, end));
+		int from = -1;
+		int where = -1;
+		int selects = 0;
+		int datetimes = 0;
+		while (words.find()) {
+			final String word = words.group().toUpperCase(Locale.US);
+			if (REFUSED.contains(word))
+				return false;
+			if (word.equals("SELECT"))
+				selects++;
+			else if (word.equals("FROM") && from == -1)
+				from = words.start();
+			else if (word.equals("WHERE")) {
+				if (where != -1)
+					return false;
+				where = words.end();
+			} else if (where != -1 && (word.equals("DATETIME") || word.equals("TIME")))
+				datetimes++;
+		}
+		if (selects != 1 || !masked.trim().toUpperCase(Locale.US).startsWith("SELECT") || from == -1 || where == -1
+				|| datetimes != 1 || masked.substring(0, from).indexOf('(') != -1)
+			return false;
+		final Matcher bound = BOUND.matcher(masked.substring(where, end));
+		if (!bound.find())
+			return false;
+		width = unit(bound.group(3)).toMillis(Long.parseLong(bound.group(2)));
+		if (bound.group(3).equalsIgnoreCase("WEEK"))
+			width *= 7;
+		inclusive = bound.group(1).length() == 2;
+		prefix = statement.substring(0, where);
+		conditions = statement.substring(where, end).trim();
+		return true;
+	}
+
+	private static TimeUnit unit(String name) {
+		switch (name.toUpperCase(Locale.US)) {
+			case "MILLISECOND":
+				return TimeUnit.MILLISECONDS;
+			case "SECOND":
+				return TimeUnit.SECONDS;
+			case "MINUTE":
+				return TimeUnit.MINUTES;
+			case "HOUR":
+				return TimeUnit.HOURS;
+			default:
+				return TimeUnit.DAYS;
+		}
+	}
+
+	/**
+	 * @return statement with the contents of quoted literals and identifiers replaced by spaces, or null if it
+	 *         has comments or an unterminated quote
+	 */
+	static String mask(String statement) {
+		final StringBuilder sb = new StringBuilder(statement.length());
+		char quote = 0;
+		for (int i = 0; i < statement.length(); i++) {
+			final char ch = statement.charAt(i);
+			if (quote != 0) {
+				sb.append(ch == quote ? ch : ' ');
+				if (ch == quote)
+					quote = 0;
+			} else if (ch == '\'' || ch == '"') {
+				quote = ch;
+				sb.append(ch);
+			} else if ((ch == '-' || ch == '/') && i + 1 < statement.length()
+					&& statement.charAt(i + 1) == (ch == '-' ? '-' : '*')) {
+				return null;
+			} else {
+				sb.append(ch);
+			}
+		}
+		return quote == 0 ? sb.toString() : null;
+	}
+
+}
@@ -18,6 +18,7 @@ import java.math.BigDecimal;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
+import java.sql.Timestamp;
 import java.util.TimeZone;
 
 import org.apache.calcite.avatica.AvaticaResultSet;
@@ -29,12 +30,15 @@ import org.apache.calcite.avatica.QueryState;
 
 import com.axibase.tsd.driver.jdbc.content.StatementContext;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.util.TimestampConverter;
 
 public class AtdsResultSet extends AvaticaResultSet {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(AtdsResultSet.class);
 	private final AtsdMeta meta;
 	private final Meta.StatementHandle handle;
 	private final StatementContext context;
+	private AtsdColumnarResult columnar;
+	private long rowCount;
 
 	public AtdsResultSet(AvaticaStatement statement, QueryState state, Signature signature,
 			ResultSetMetaData resultSetMetaData, TimeZone timeZone, Frame firstFrame) {
@@ -82,9 +86,90 @@ public class AtdsResultSet extends AvaticaResultSet {
 		return super.getBigDecimal(columnLabel, 0);
 	}
 
+	@Override
+	public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+		if (type == null)
+			throw new SQLException("Type is not specified");
+		if (TimestampConverter.isSupported(type)) {
+			final Object raw = getRawObject(columnIndex);
+			if (raw instanceof Timestamp) {
+				final long epochMillis = ((Timestamp) raw).getTime();
+				return TimestampConverter.toObject(
+						TimestampConverter.isAbsolute(type) ? epochMillis : toLocalMillis(epochMillis), type);
+			}
+		}
+		final Object value = getObject(columnIndex);
+		if (value == null)
+			return null;
+		if (type.isInstance(value))
+			return type.cast(value);
+		if (value instanceof Number) {
+			final Number number = (Number) value;
+			if (type == Long.class)
+				return type.cast(number.longValue());
+			if (type == Integer.class)
+				return type.cast(number.intValue());
+			if (type == Short.class)
+				return type.cast(number.shortValue());
+			if (type == Double.class)
+				return type.cast(number.doubleValue());
+			if (type == Float.class)
+				return type.cast(number.floatValue());
+			if (type == BigDecimal.class)
+				return type.cast(new BigDecimal(number.toString()));
+		}
+		if (type == String.class)
+			return type.cast(value.toString());
+		throw new SQLException("Cannot convert " + value.getClass().getName() + " to " + type.getName());
+	}
+
+	@Override
+	public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+		return getObject(findColumn(columnLabel), type);
+	}
+
+	/**
+	 * @return value of the frame row as it is held by the accessor, without conversion to the column type
+	 */
+	private Object getRawObject(int columnIndex) throws SQLException {
+		if (columnIndex < 1 || columnIndex > accessorList.size())
+			throw new SQLException("invalid column ordinal: " + columnIndex);
+		return accessorList.get(columnIndex - 1).getObject();
+	}
+
+	/**
+	 * Applies the shift {@link #getObject(int)} makes for the time zone of the connection.
+	 */
+	private long toLocalMillis(long epochMillis) {
+		return localCalendar == null ? epochMillis
+				: epochMillis - localCalendar.getTimeZone().getOffset(epochMillis);
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface == AtsdColumnarResult.class) {
+			if (columnar == null)
+				columnar = new AtsdColumnarResult(meta, handle, rowCount);
+			return iface.cast(columnar);
+		}
+		return super.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		return iface == AtsdColumnarResult.class || super.isWrapperFor(iface);
+	}
+
 	@Override
 	public boolean next() throws SQLException {
+		if (columnar != null && columnar.isStarted())
+			throw new SQLException("Result set is consumed by the columnar reader");
 		final boolean next = super.next();
+		if (next) {
+			rowCount++;
+			if (columnar != null)
+				columnar.setConsumed(rowCount);
+		}
 		if (!next)
 			meta.closeStatement(handle);
 		if (!next && context != null && context.getException() != null) {
@@ -0,0 +1,183 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.ext;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.calcite.avatica.ColumnMetaData;
+import org.apache.calcite.avatica.Meta.Frame;
+import org.apache.calcite.avatica.Meta.StatementHandle;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.content.ContentMetadata;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.intf.IDataProvider;
+import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Column-oriented reader over a result set, obtained with
+ * {@code resultSet.unwrap(AtsdColumnarResult.class)}. Rows already fetched into the current
+ * JDBC frame are delivered first, the rest is read straight from the store strategy without
+ * building JDBC frames. Once a batch has been requested the result set can no longer be
+ * advanced with {@code next()}.
+ */
+public class AtsdColumnarResult {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(AtsdColumnarResult.class);
+	private final AtsdMeta meta;
+	private final StatementHandle handle;
+	private long consumed;
+	private boolean started;
+	private String[] headers;
+	private int[] types;
+	private List<?> pending;
+	private int pendingIndex;
+	private Iterator<String[]> iterator;
+	private long delivered;
+	private long maxRowCount;
+	private boolean done;
+
+	AtsdColumnarResult(AtsdMeta meta, StatementHandle handle, long consumed) {
+		this.meta = meta;
+		this.handle = handle;
+		this.consumed = consumed;
+	}
+
+	/**
+	 * Fills the batch with up to {@link ColumnBatch#getCapacity()} rows.
+	 *
+	 * @return number of rows in the batch, 0 when the result is exhausted
+	 */
+	public int nextBatch(ColumnBatch batch) throws SQLException {
+		if (batch == null)
+			throw new SQLException("Batch is not specified");
+		started = true;
+		if (headers == null && !done)
+			open();
+		if (done) {
+			batch.clear();
+			return 0;
+		}
+		batch.bind(headers, types);
+		while (!batch.isFull() && pending != null && pendingIndex < pending.size()) {
+			batch.add((List<?>) pending.get(pendingIndex++));
+		}
+		while (!batch.isFull()) {
+			if (iterator == null || (maxRowCount > 0 && delivered >= maxRowCount) || !iterator.hasNext()) {
+				finish();
+				break;
+			}
+			final String[] next = iterator.next();
+			if (next == null) {
+				finish();
+				break;
+			}
+			if (next.length != headers.length) {
+				if (logger.isDebugEnabled())
+					logger.debug("[nextBatch] array length discrepancy: " + Arrays.toString(next));
+				continue;
+			}
+			batch.add(next);
+			delivered++;
+		}
+		return batch.size();
+	}
+
+	/**
+	 * @return true once a batch has been requested, after that the row cursor is no longer usable
+	 */
+	boolean isStarted() {
+		return started;
+	}
+
+	/**
+	 * Updates the number of rows read with {@code next()} before the first batch.
+	 */
+	void setConsumed(long consumed) {
+		this.consumed = consumed;
+	}
+
+	private void open() throws SQLException {
+		final IDataProvider provider = meta.getProvider(handle);
+		final ContentMetadata contentMetadata = meta.getMetadata(handle);
+		if (provider == null || contentMetadata == null) {
+			done = true;
+			return;
+		}
+		final ContentDescription cd = provider.getContentDescription();
+		final IStoreStrategy strategy = provider.getStrategy();
+		final Frame frame = meta.getLastFrame(handle);
+		try {
+			if (frame == null) {
+				final String[] opened = strategy.openToRead();
+				if (opened == null || opened.length == 0) {
+					finish();
+					return;
+				}
+				cd.setHeaders(opened);
+			} else {
+				pending = toList(frame.rows);
+				pendingIndex = (int) Math.max(0, Math.min(pending.size(), consumed - frame.offset));
+				delivered = frame.offset + pending.size();
+			}
+			headers = cd.getHeaders();
+			types = columnTypes(contentMetadata.getMetadataList(), headers.length);
+			if (frame == null || !frame.done)
+				iterator = strategy.getIterator();
+		} catch (final AtsdException | IOException e) {
+			if (logger.isDebugEnabled())
+				logger.debug("[open] " + e.getMessage());
+			throw new SQLException(e.getMessage(), e);
+		}
+		final StatementContext context = meta.getContextFromMap(handle);
+		if (context != null)
+			maxRowCount = context.getMaxRowCount();
+	}
+
+	private void finish() throws SQLException {
+		done = true;
+		final StatementContext context = meta.getContextFromMap(handle);
+		meta.closeStatement(handle);
+		if (context != null && context.getException() != null)
+			throw context.getException();
+	}
+
+	private static List<?> toList(Iterable<Object> rows) {
+		if (rows instanceof List)
+			return (List<?>) rows;
+		final List<Object> list = new ArrayList<>();
+		for (Object row : rows) {
+			list.add(row);
+		}
+		return list;
+	}
+
+	private static int[] columnTypes(List<ColumnMetaData> metadataList, int count) {
+		final int[] result = new int[count];
+		Arrays.fill(result, Types.VARCHAR);
+		for (ColumnMetaData columnMetaData : metadataList) {
+			if (columnMetaData.ordinal < count)
+				result[columnMetaData.ordinal] = columnMetaData.type.id;
+		}
+		return result;
+	}
+
+}
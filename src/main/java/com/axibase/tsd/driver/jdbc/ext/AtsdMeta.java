@@ -15,9 +15,11 @@
 package com.axibase.tsd.driver.jdbc.ext;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.lang.reflect.Field;
 import java.math.BigDecimal;
+import java.nio.channels.WritableByteChannel;
 import java.security.GeneralSecurityException;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -29,7 +31,6 @@ import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
@@ -57,19 +58,34 @@ import com.axibase.tsd.driver.jdbc.DriverConstants;
 import com.axibase.tsd.driver.jdbc.content.ContentDescription;
 import com.axibase.tsd.driver.jdbc.content.ContentMetadata;
 import com.axibase.tsd.driver.jdbc.content.DataProvider;
+import com.axibase.tsd.driver.jdbc.content.QueryHints;
+import com.axibase.tsd.driver.jdbc.content.RowView;
 import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.content.TailWindow;
 import com.axibase.tsd.driver.jdbc.intf.IDataProvider;
+import com.axibase.tsd.driver.jdbc.intf.IFrameSource;
+import com.axibase.tsd.driver.jdbc.intf.IRowHandler;
 import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.CsvExporter;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyChoice;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
 
 public class AtsdMeta extends MetaImpl {
 	private static final LoggingFacade log = LoggingFacade.getLogger(AtsdMeta.class);
 	private static final int TIMESTAMP_LENGTH = "2016-01-01T00:00:00.000".length();
+	private static final int FRAME_ROW_OVERHEAD = 64;
+	private static final int FRAME_VALUE_OVERHEAD = 40;
 	private final AtomicInteger idGenerator = new AtomicInteger(1);
 	private final Map<Integer, ContentMetadata> metaCache = new ConcurrentHashMap<>();
 	private final Map<Integer, IDataProvider> providerCache = new ConcurrentHashMap<>();
 	private final Map<Integer, StatementContext> contextMap = new ConcurrentHashMap<>();
+	private final Map<Integer, Frame> frameCache = new ConcurrentHashMap<>();
+	private final Map<Integer, StrategyChoice> choiceMap = new ConcurrentHashMap<>();
+	private final Map<Integer, TailWindow> tailMap = new ConcurrentHashMap<>();
 	private final ReentrantLock lock = new ReentrantLock();
+	private MemoryAccountant connectionMemory;
 
 	public AtsdMeta(final AvaticaConnection conn) {
 		super(conn);
@@ -83,6 +99,52 @@ public class AtsdMeta extends MetaImpl {
 		return contextMap.get(h.id);
 	}
 
+	/**
+	 * @return strategy picked by strategy=auto for the last query of the statement, or null
+	 */
+	StrategyChoice getStrategyChoice(StatementHandle h) {
+		final StatementContext context = contextMap.get(h.id);
+		if (context != null && context.getStrategyChoice() != null)
+			return context.getStrategyChoice();
+		return choiceMap.get(h.id);
+	}
+
+	void forgetStrategyChoice(StatementHandle h) {
+		choiceMap.remove(h.id);
+	}
+
+	/**
+	 * @return rows kept between executions of the prepared statement with tail=true
+	 */
+	TailWindow getTailWindow(StatementHandle h) {
+		synchronized (tailMap) {
+			TailWindow window = tailMap.get(h.id);
+			if (window == null) {
+				window = new TailWindow();
+				tailMap.put(h.id, window);
+			}
+			return window;
+		}
+	}
+
+	void forgetTailWindow(StatementHandle h) {
+		final TailWindow window = tailMap.remove(h.id);
+		if (window != null)
+			window.close();
+	}
+
+	IDataProvider getProvider(StatementHandle h) {
+		return providerCache.get(h.id);
+	}
+
+	ContentMetadata getMetadata(StatementHandle h) {
+		return metaCache.get(h.id);
+	}
+
+	Frame getLastFrame(StatementHandle h) {
+		return frameCache.get(h.id);
+	}
+
 	@Override
 	public StatementHandle prepare(ConnectionHandle ch, String query, long maxRowCount) {
 		try {
@@ -114,9 +176,16 @@ public class AtsdMeta extends MetaImpl {
 			log.trace("[execute] maxRowCount: {} parameters: {} handle: {}", maxRowCount, parameterValues.size(),
 					h.toString());
 		}
-		final IDataProvider provider = providerCache.get(h.id);
-		assert provider != null;
-		String query = new String(h.signature.sql);
+		IDataProvider provider = providerCache.get(h.id);
+		if (provider == null) {
+			// the provider is closed once the results of the previous execution have been read
+			try {
+				provider = initProvider(h.id, new String(h.signature.sql));
+			} catch (final UnsupportedEncodingException e) {
+				throw new NoSuchStatementException(h);
+			}
+		}
+		String query = QueryHints.parse(new String(h.signature.sql)).getQuery();
 		if (query.contains("?")) {
 			final Iterator<TypedValue> iterator = parameterValues.iterator();
 			final StringBuilder sb = new StringBuilder();
@@ -148,8 +217,11 @@ public class AtsdMeta extends MetaImpl {
 				log.debug("[execute] " + sb.toString());
 			provider.getContentDescription().setQuery(sb.toString());
 		}
+		final StatementContext context = contextMap.get(h.id);
+		if (context != null && provider.getContentDescription().isTailEnabled())
+			context.setTailWindow(getTailWindow(h));
 		try {
-			provider.fetchData(-1);
+			provider.fetchData(maxRowCount);
 			final ContentMetadata contentMetadata = findMetadata(query, h.connectionId, h.id);
 			return new ExecuteResult(contentMetadata.getList());
 		} catch (final AtsdException | GeneralSecurityException | IOException e) {
@@ -190,6 +262,89 @@ public class AtsdMeta extends MetaImpl {
 		}
 	}
 
+	public long executeStreaming(final StatementHandle h, String query, long maxRowCount, final IRowHandler handler)
+			throws SQLException {
+		try {
+			lock.lockInterruptibly();
+		} catch (InterruptedException e) {
+			if (log.isDebugEnabled())
+				log.debug("[executeStreaming] " + e.getMessage());
+		}
+		if (log.isTraceEnabled()) {
+			log.trace("[executeStreaming] locked: {} maxRowCount: {} handle: {} query: {}", lock.getHoldCount(),
+					maxRowCount, h.toString(), query);
+		}
+		long count = 0;
+		try {
+			final IDataProvider provider = initProvider(h.id, query);
+			provider.fetchData(maxRowCount);
+			final ContentMetadata contentMetadata = findMetadata(query, h.connectionId, h.id);
+			final IStoreStrategy strategy = provider.getStrategy();
+			final String[] headers = strategy.openToRead();
+			if (headers == null || headers.length == 0)
+				throw new SQLException("No result for the query: " + query);
+			final RowView row = new RowView(contentMetadata.getMetadataList(), headers);
+			final Iterator<String[]> iterator = strategy.getIterator();
+			while (iterator.hasNext() && (maxRowCount <= 0 || count < maxRowCount)) {
+				final String[] next = iterator.next();
+				if (next == null)
+					break;
+				if (next.length != headers.length) {
+					if (log.isDebugEnabled())
+						log.debug("[executeStreaming] array length discrepancy: " + Arrays.toString(next));
+					continue;
+				}
+				row.wrap(next);
+				count++;
+				if (!handler.handle(row))
+					break;
+			}
+			final StatementContext context = contextMap.get(h.id);
+			if (context != null && context.getException() != null)
+				throw context.getException();
+		} catch (final AtsdException | IOException | GeneralSecurityException e) {
+			if (log.isDebugEnabled())
+				log.debug("[executeStreaming] " + e.getMessage());
+			throw new SQLException(e.getMessage(), e);
+		} finally {
+			closeStatement(h);
+		}
+		if (log.isDebugEnabled())
+			log.debug("[executeStreaming] rows: " + count);
+		return count;
+	}
+
+	public long exportCsv(final StatementHandle h, String query, long maxRowCount, final WritableByteChannel target)
+			throws SQLException {
+		try {
+			lock.lockInterruptibly();
+		} catch (InterruptedException e) {
+			if (log.isDebugEnabled())
+				log.debug("[exportCsv] " + e.getMessage());
+		}
+		if (log.isTraceEnabled()) {
+			log.trace("[exportCsv] locked: {} maxRowCount: {} handle: {} query: {}", lock.getHoldCount(), maxRowCount,
+					h.toString(), query);
+		}
+		long written;
+		try {
+			final IDataProvider provider = initProvider(h.id, query);
+			final StatementContext context = contextMap.get(h.id);
+			try (final InputStream is = provider.readContent(maxRowCount)) {
+				written = new CsvExporter(context).export(is, target);
+			}
+			if (context.getException() != null)
+				throw context.getException();
+		} catch (final AtsdException | IOException | GeneralSecurityException e) {
+			if (log.isDebugEnabled())
+				log.debug("[exportCsv] " + e.getMessage());
+			throw new SQLException(e.getMessage(), e);
+		} finally {
+			closeStatement(h);
+		}
+		return written;
+	}
+
 	@Override
 	public Frame fetch(final StatementHandle h, long loffset, int fetchMaxRowCount)
 			throws NoSuchStatementException, MissingResultsException {
@@ -208,9 +363,26 @@ public class AtsdMeta extends MetaImpl {
 					throw new MissingResultsException(h);
 				cd.setHeaders(headers);
 			}
-			final List<String[]> subList = strategy.fetch(offset, fetchMaxRowCount);
-			final List<Object> rows = getFrame(h, fetchMaxRowCount, subList);
-			return new Meta.Frame(loffset, rows.size() < fetchMaxRowCount, rows);
+			final int fetchSize = cd.getFetchSize(fetchMaxRowCount);
+			final StatementContext context = contextMap.get(h.id);
+			final List<Object> rows;
+			final long frameBytes;
+			if (strategy instanceof IFrameSource) {
+				rows = ((IFrameSource) strategy).fetchFrame(offset, fetchSize);
+				frameBytes = estimateRows(rows);
+			} else {
+				final List<String[]> subList = strategy.fetch(offset, fetchSize);
+				frameBytes = estimateFrame(subList);
+				rows = getFrame(h, fetchSize, subList);
+			}
+			if (context != null && !reserveFrame(context, frameBytes)) {
+				final Frame frame = new Meta.Frame(loffset, true, Collections.<Object> emptyList());
+				frameCache.put(h.id, frame);
+				return frame;
+			}
+			final Frame frame = new Meta.Frame(loffset, rows.size() < fetchSize, rows);
+			frameCache.put(h.id, frame);
+			return frame;
 		} catch (final AtsdException | IOException e) {
 			if (log.isDebugEnabled())
 				log.debug("[fetch] " + e.getMessage());
@@ -234,11 +406,63 @@ public class AtsdMeta extends MetaImpl {
 			log.trace("[closedStatement]");
 	}
 
+	/**
+	 * Replaces the reservation of the previous frame with the estimated size of the next one; on failure
+	 * the error is left in the context for the result set to throw.
+	 */
+	private static boolean reserveFrame(StatementContext context, long bytes) {
+		final MemoryAccountant memory = context.getMemory();
+		memory.release(context.getFrameMemory());
+		context.setFrameMemory(0);
+		try {
+			memory.reserve(bytes, MemoryAccountant.BACKPRESSURE_TIMEOUT_MILLIS);
+		} catch (final SQLException e) {
+			if (log.isDebugEnabled())
+				log.debug("[reserveFrame] " + e.getMessage());
+			context.addException(e);
+			return false;
+		}
+		context.setFrameMemory(bytes);
+		return true;
+	}
+
+	private static long estimateFrame(List<String[]> subList) {
+		long bytes = 0;
+		for (final String[] sarray : subList) {
+			bytes += FRAME_ROW_OVERHEAD;
+			if (sarray == null)
+				continue;
+			for (final String value : sarray) {
+				bytes += FRAME_VALUE_OVERHEAD + (value != null ? 2L * value.length() : 0);
+			}
+		}
+		return bytes;
+	}
+
+	private static long estimateRows(List<Object> rows) {
+		long bytes = 0;
+		for (final Object row : rows) {
+			bytes += FRAME_ROW_OVERHEAD;
+			for (final Object value : (List<?>) row) {
+				bytes += FRAME_VALUE_OVERHEAD + (value instanceof String ? 2L * ((String) value).length() : 0);
+			}
+		}
+		return bytes;
+	}
+
 	private void closeProviderCaches(StatementHandle h) {
 		if (metaCache != null && !metaCache.isEmpty())
 			metaCache.remove(h.id);
-		if (contextMap != null && !contextMap.isEmpty())
-			contextMap.remove(h.id);
+		if (contextMap != null && !contextMap.isEmpty()) {
+			final StatementContext context = contextMap.remove(h.id);
+			// the choice stays available to unwrap until the statement is closed
+			if (context != null && context.getStrategyChoice() != null)
+				choiceMap.put(h.id, context.getStrategyChoice());
+			if (context != null)
+				context.getMemory().close();
+		}
+		if (!frameCache.isEmpty())
+			frameCache.remove(h.id);
 
 	}
 
@@ -269,8 +493,17 @@ public class AtsdMeta extends MetaImpl {
 	private void closeCaches() {
 		if (metaCache != null && !metaCache.isEmpty())
 			metaCache.clear();
-		if (contextMap != null && !contextMap.isEmpty())
+		if (contextMap != null && !contextMap.isEmpty()) {
+			for (final StatementContext context : contextMap.values()) {
+				context.getMemory().close();
+			}
 			contextMap.clear();
+		}
+		choiceMap.clear();
+		for (final TailWindow window : tailMap.values()) {
+			window.close();
+		}
+		tailMap.clear();
 		if (providerCache != null && !providerCache.isEmpty())
 			providerCache.clear();
 	}
@@ -356,17 +589,32 @@ public class AtsdMeta extends MetaImpl {
 	}
 
 	private IDataProvider initProvider(Integer id, String sql) throws UnsupportedEncodingException {
+		final StatementContext newContext = new StatementContext();
+		final StatementContext previous = contextMap.put(id, newContext);
+		if (previous != null)
+			previous.getMemory().close();
+		choiceMap.remove(id);
+		final IDataProvider dataProvider = createProvider(sql, newContext);
+		providerCache.put(id, dataProvider);
+		return dataProvider;
+	}
+
+	IDataProvider createProvider(String sql, StatementContext context) {
 		final ConnectionConfig config = connection.config();
 		assert config != null;
 		assert connection instanceof AtsdConnection;
 		final Properties info = ((AtsdConnection) connection).getInfo();
-		final StatementContext newContext = new StatementContext();
-		contextMap.put(id, newContext);
-		final IDataProvider dataProvider = new DataProvider(config.url(), sql,
-				info != null ? (String) info.get("user") : "", info != null ? (String) info.get("password") : "",
-				newContext);
-		providerCache.put(id, dataProvider);
-		return dataProvider;
+		final DataProvider provider = new DataProvider(config.url(), sql, info != null ? (String) info.get("user") : "",
+				info != null ? (String) info.get("password") : "", context);
+		final ContentDescription cd = provider.getContentDescription();
+		context.setMemory(getConnectionMemory(cd).newChild("statement", cd.getStatementMemoryLimit()));
+		return provider;
+	}
+
+	private synchronized MemoryAccountant getConnectionMemory(ContentDescription cd) {
+		if (connectionMemory == null)
+			connectionMemory = MemoryAccountant.driver().newChild("connection", cd.getConnectionMemoryLimit());
+		return connectionMemory;
 	}
 
 	private ContentMetadata findMetadata(String sql, String connectionId, int statementId)
@@ -375,6 +623,15 @@ public class AtsdMeta extends MetaImpl {
 		if (contentMetadata == null) {
 			IDataProvider provider = providerCache.get(statementId);
 			final String jsonScheme = provider != null ? provider.getContentDescription().getJsonScheme() : "";
+			final StatementContext context = contextMap.get(statementId);
+			if (context != null) {
+				try {
+					context.getMemory().reserve(2L * jsonScheme.length(),
+							MemoryAccountant.BACKPRESSURE_TIMEOUT_MILLIS);
+				} catch (final SQLException e) {
+					throw new AtsdException(e.getMessage());
+				}
+			}
 			contentMetadata = new ContentMetadata(jsonScheme, sql, connectionId, statementId);
 			metaCache.put(statementId, contentMetadata);
 		}
@@ -402,7 +659,7 @@ public class AtsdMeta extends MetaImpl {
 		return rows;
 	}
 
-	private List<Object> getFrameRow(final List<ColumnMetaData> metadataList, final String[] sarray) {
+	static List<Object> getFrameRow(final List<ColumnMetaData> metadataList, final String[] sarray) {
 		final List<Object> row = new ArrayList<>();
 		for (int i = 0; i < sarray.length; i++) {
 			for (ColumnMetaData columnMetaData : metadataList) {
@@ -470,18 +727,10 @@ public class AtsdMeta extends MetaImpl {
 				case Types.TIMESTAMP:
 					Timestamp ts = null;
 					try {
-						Date dt = TIMESTAMP_FORMATTER.get().parse(sarray[i]);
-						ts = new Timestamp(dt.getTime());
+						ts = new Timestamp(TimeDateUtils.parseEpochMillis(sarray[i]));
 					} catch (final ParseException e) {
 						if (log.isDebugEnabled())
 							log.debug("[getFrame] " + e.getMessage());
-						try {
-							Date dt = TIMESTAMP_SHORT_FORMATTER.get().parse(sarray[i]);
-							ts = new Timestamp(dt.getTime());
-						} catch (ParseException e1) {
-							if (log.isDebugEnabled())
-								log.debug("[getFrame] " + e1.getMessage());
-						}
 					}
 					row.add(ts);
 					break;
@@ -522,15 +771,6 @@ public class AtsdMeta extends MetaImpl {
 		}
 	};
 
-	public static final ThreadLocal<SimpleDateFormat> TIMESTAMP_SHORT_FORMATTER = new ThreadLocal<SimpleDateFormat>() {
-		@Override
-		protected SimpleDateFormat initialValue() {
-			SimpleDateFormat sdt = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'", Locale.UK);
-			sdt.setTimeZone(TimeZone.getTimeZone("UTC"));
-			return sdt;
-		}
-	};
-
 	private static MetaTypeInfo getTypeInfo(String name, int type, boolean isCaseSensitive) {
 		return new MetaTypeInfo(name, type, getMaxPrecision(type), getLiteral(type, true), getLiteral(type, false),
 				DatabaseMetaData.typeNullable, isCaseSensitive, DatabaseMetaData.typeSearchable, false, false, false, 0,
@@ -43,6 +43,7 @@ import org.apache.calcite.avatica.Meta.StatementHandle;
 import org.apache.calcite.avatica.remote.TypedValue;
 
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyChoice;
 
 public class AtsdPreparedStatement extends AvaticaPreparedStatement {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(AtsdPreparedStatement.class);
@@ -78,9 +79,30 @@ public class AtsdPreparedStatement extends AvaticaPreparedStatement {
 		return list;
 	}
 
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface == StrategyChoice.class) {
+			final StrategyChoice choice = ((AtsdMeta) ((AtsdConnection) connection).getMeta()).getStrategyChoice(handle);
+			if (choice == null)
+				throw new SQLException("No strategy has been chosen with strategy=auto for the statement");
+			return iface.cast(choice);
+		}
+		return super.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		if (iface == StrategyChoice.class)
+			return ((AtsdMeta) ((AtsdConnection) connection).getMeta()).getStrategyChoice(handle) != null;
+		return super.isWrapperFor(iface);
+	}
+
 	@Override
 	public synchronized void close() throws SQLException {
 		super.close();
+		final AtsdMeta meta = (AtsdMeta) ((AtsdConnection) connection).getMeta();
+		meta.forgetStrategyChoice(handle);
+		meta.forgetTailWindow(handle);
 		if (logger.isTraceEnabled())
 			logger.trace("[close] " + this.handle.id);
 	}
@@ -0,0 +1,218 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.ext;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.calcite.avatica.ColumnMetaData;
+
+import com.axibase.tsd.driver.jdbc.content.ContentMetadata;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.intf.IDataProvider;
+import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
+import com.axibase.tsd.driver.jdbc.intf.ISubscriber;
+import com.axibase.tsd.driver.jdbc.intf.ISubscription;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Reactive-Streams-shaped publisher of query rows. Nothing is requested from
+ * the server until the first {@link ISubscription#request(long)}; each request
+ * reads only as much of the response as needed to emit the demanded rows.
+ * Rows are emitted on the thread calling request, or on the executor if one
+ * is given. {@link ISubscription#cancel()} closes the HTTP stream and removes
+ * the spill file of the file strategy; the close is done by the thread that
+ * emits rows, so it never runs under an open or a read in progress.
+ */
+public class AtsdPublisher {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(AtsdPublisher.class);
+	private final AtsdMeta meta;
+	private final String sql;
+	private final long maxRowCount;
+	private final Executor executor;
+
+	AtsdPublisher(AtsdMeta meta, String sql, long maxRowCount, Executor executor) {
+		this.meta = meta;
+		this.sql = sql;
+		this.maxRowCount = maxRowCount;
+		this.executor = executor;
+	}
+
+	public void subscribe(ISubscriber<? super List<Object>> subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("Subscriber is null");
+		final RowSubscription subscription = new RowSubscription(subscriber);
+		subscriber.onSubscribe(subscription);
+	}
+
+	private class RowSubscription implements ISubscription, Runnable {
+		private final ISubscriber<? super List<Object>> subscriber;
+		private final StatementContext context = new StatementContext();
+		private final AtomicLong requested = new AtomicLong();
+		private final AtomicInteger wip = new AtomicInteger();
+		private final AtomicBoolean closed = new AtomicBoolean();
+		private volatile boolean cancelled;
+		private boolean done;
+		private IDataProvider provider;
+		private Iterator<String[]> iterator;
+		private List<ColumnMetaData> metadataList;
+		private String[] headers;
+		private long emitted;
+
+		RowSubscription(ISubscriber<? super List<Object>> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				cancel();
+				subscriber.onError(new IllegalArgumentException("Non-positive request: " + n));
+				return;
+			}
+			long current;
+			long next;
+			do {
+				current = requested.get();
+				next = current + n < 0 ? Long.MAX_VALUE : current + n;
+			} while (!requested.compareAndSet(current, next));
+			schedule();
+		}
+
+		@Override
+		public void cancel() {
+			if (logger.isDebugEnabled())
+				logger.debug("[cancel] emitted: " + emitted);
+			cancelled = true;
+			drain();
+		}
+
+		@Override
+		public void run() {
+			drain();
+		}
+
+		private void schedule() {
+			if (executor != null)
+				executor.execute(this);
+			else
+				drain();
+		}
+
+		private void drain() {
+			if (wip.getAndIncrement() != 0)
+				return;
+			int missed = 1;
+			do {
+				if (cancelled)
+					close();
+				else if (open())
+					emit();
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		private boolean open() {
+			if (iterator != null)
+				return !done && !cancelled;
+			if (done || cancelled)
+				return false;
+			try {
+				provider = meta.createProvider(sql, context);
+				provider.fetchData(maxRowCount);
+				final IStoreStrategy strategy = provider.getStrategy();
+				headers = strategy.openToRead();
+				if (headers == null || headers.length == 0)
+					throw new AtsdException("No result for the query: " + sql);
+				metadataList = new ContentMetadata(provider.getContentDescription().getJsonScheme(), sql, "", -1)
+						.getMetadataList();
+				iterator = strategy.getIterator();
+				return true;
+			} catch (final Exception e) {
+				fail(e);
+				return false;
+			}
+		}
+
+		private void emit() {
+			final long demand = requested.get();
+			long count = 0;
+			try {
+				while (count != demand && !cancelled) {
+					if ((maxRowCount > 0 && emitted >= maxRowCount) || !iterator.hasNext()) {
+						complete();
+						return;
+					}
+					final String[] next = iterator.next();
+					if (next == null) {
+						complete();
+						return;
+					}
+					if (next.length != headers.length) {
+						if (logger.isDebugEnabled())
+							logger.debug("[emit] array length discrepancy: " + Arrays.toString(next));
+						continue;
+					}
+					subscriber.onNext(AtsdMeta.getFrameRow(metadataList, next));
+					emitted++;
+					count++;
+				}
+			} catch (final RuntimeException e) {
+				fail(e);
+				return;
+			}
+			if (demand != Long.MAX_VALUE)
+				requested.addAndGet(-count);
+		}
+
+		private void complete() {
+			done = true;
+			close();
+			if (cancelled)
+				return;
+			if (context.getException() != null)
+				subscriber.onError(context.getException());
+			else
+				subscriber.onComplete();
+		}
+
+		private void fail(Throwable throwable) {
+			done = true;
+			close();
+			if (!cancelled)
+				subscriber.onError(throwable);
+			else if (logger.isDebugEnabled())
+				logger.debug("[fail] after cancel: " + throwable.getMessage());
+		}
+
+		private void close() {
+			if (provider == null || !closed.compareAndSet(false, true))
+				return;
+			try {
+				provider.close();
+			} catch (final Exception e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[close] " + e.getMessage());
+			}
+			context.getMemory().close();
+		}
+	}
+
+}
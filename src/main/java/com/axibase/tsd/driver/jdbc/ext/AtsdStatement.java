@@ -14,14 +14,22 @@
 */
 package com.axibase.tsd.driver.jdbc.ext;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.sql.SQLException;
+import java.util.concurrent.Executor;
 
 import org.apache.calcite.avatica.AvaticaConnection;
 import org.apache.calcite.avatica.AvaticaStatement;
 import org.apache.calcite.avatica.Meta.Signature;
 import org.apache.calcite.avatica.Meta.StatementHandle;
 
+import com.axibase.tsd.driver.jdbc.intf.IRowHandler;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyChoice;
 
 public class AtsdStatement extends AvaticaStatement {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(AtsdStatement.class);
@@ -40,9 +48,69 @@ public class AtsdStatement extends AvaticaStatement {
 			logger.trace("[new] " + this.handle.id);
 	}
 
+	public long executeStreaming(String sql, IRowHandler handler) throws SQLException {
+		if (isClosed())
+			throw new SQLException("Statement is closed");
+		final AtsdMeta meta = (AtsdMeta) ((AtsdConnection) connection).getMeta();
+		return meta.executeStreaming(handle, sql, getLargeMaxRows(), handler);
+	}
+
+	public long exportCsv(String sql, WritableByteChannel target) throws SQLException {
+		if (isClosed())
+			throw new SQLException("Statement is closed");
+		if (target == null)
+			throw new SQLException("Target channel is not specified");
+		final AtsdMeta meta = (AtsdMeta) ((AtsdConnection) connection).getMeta();
+		return meta.exportCsv(handle, sql, getLargeMaxRows(), target);
+	}
+
+	public long exportCsv(String sql, OutputStream target) throws SQLException {
+		if (target == null)
+			throw new SQLException("Target stream is not specified");
+		if (target instanceof FileOutputStream)
+			return exportCsv(sql, ((FileOutputStream) target).getChannel());
+		final long written = exportCsv(sql, Channels.newChannel(target));
+		try {
+			target.flush();
+		} catch (final IOException e) {
+			throw new SQLException(e.getMessage(), e);
+		}
+		return written;
+	}
+
+	public AtsdPublisher publish(String sql) throws SQLException {
+		return publish(sql, null);
+	}
+
+	public AtsdPublisher publish(String sql, Executor executor) throws SQLException {
+		if (isClosed())
+			throw new SQLException("Statement is closed");
+		final AtsdMeta meta = (AtsdMeta) ((AtsdConnection) connection).getMeta();
+		return new AtsdPublisher(meta, sql, getLargeMaxRows(), executor);
+	}
+
+	@Override
+	public <T> T unwrap(Class<T> iface) throws SQLException {
+		if (iface == StrategyChoice.class) {
+			final StrategyChoice choice = ((AtsdMeta) ((AtsdConnection) connection).getMeta()).getStrategyChoice(handle);
+			if (choice == null)
+				throw new SQLException("No strategy has been chosen with strategy=auto for the statement");
+			return iface.cast(choice);
+		}
+		return super.unwrap(iface);
+	}
+
+	@Override
+	public boolean isWrapperFor(Class<?> iface) throws SQLException {
+		if (iface == StrategyChoice.class)
+			return ((AtsdMeta) ((AtsdConnection) connection).getMeta()).getStrategyChoice(handle) != null;
+		return super.isWrapperFor(iface);
+	}
+
 	@Override
 	public synchronized void close() throws SQLException {
 		super.close();
+		((AtsdMeta) ((AtsdConnection) connection).getMeta()).forgetStrategyChoice(handle);
 		if (logger.isTraceEnabled())
 			logger.trace("[close] " + this.handle.id);
 	}
@@ -0,0 +1,260 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.ext;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+/**
+ * Reusable column-oriented batch filled by {@link AtsdColumnarResult#nextBatch(ColumnBatch)}.
+ * Column indexes are 1-based as in JDBC, row indexes within the arrays are 0-based.
+ * Timestamps and integer types are stored in {@code long[]} (epoch milliseconds for timestamps),
+ * floating point and decimal types in {@code double[]}, everything else as ids into a per-column
+ * dictionary which keeps growing for the lifetime of the result, so ids are stable across batches.
+ */
+public class ColumnBatch {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(ColumnBatch.class);
+	static final int LONG = 0;
+	static final int DOUBLE = 1;
+	static final int STRING = 2;
+
+	private final int capacity;
+	private int size;
+	private String[] names;
+	private int[] types;
+	private int[] kinds;
+	private long[][] longs;
+	private double[][] doubles;
+	private int[][] ids;
+	private boolean[][] nulls;
+	private Dictionary[] dictionaries;
+
+	public ColumnBatch(int capacity) {
+		if (capacity <= 0)
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+		this.capacity = capacity;
+	}
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getColumnCount() {
+		return names == null ? 0 : names.length;
+	}
+
+	public String getColumnName(int columnIndex) {
+		return names[columnIndex - 1];
+	}
+
+	public int getColumnType(int columnIndex) {
+		return types[columnIndex - 1];
+	}
+
+	/**
+	 * @return values of a timestamp or integer column, or null for columns of other types
+	 */
+	public long[] getLongs(int columnIndex) {
+		return longs[columnIndex - 1];
+	}
+
+	/**
+	 * @return values of a floating point or decimal column, or null for columns of other types
+	 */
+	public double[] getDoubles(int columnIndex) {
+		return doubles[columnIndex - 1];
+	}
+
+	/**
+	 * @return dictionary ids of a string column, or null for columns of other types
+	 */
+	public int[] getDictionaryIds(int columnIndex) {
+		return ids[columnIndex - 1];
+	}
+
+	public List<String> getDictionary(int columnIndex) {
+		final Dictionary dictionary = dictionaries[columnIndex - 1];
+		return dictionary == null ? Collections.<String> emptyList() : dictionary.view;
+	}
+
+	public boolean[] getNulls(int columnIndex) {
+		return nulls[columnIndex - 1];
+	}
+
+	public boolean isNull(int columnIndex, int row) {
+		return nulls[columnIndex - 1][row];
+	}
+
+	/**
+	 * Keeps the arrays and dictionaries when the shape matches the previous result, otherwise reallocates them.
+	 */
+	void bind(String[] columnNames, int[] columnTypes) {
+		size = 0;
+		if (Arrays.equals(names, columnNames) && Arrays.equals(types, columnTypes))
+			return;
+		final int count = columnNames.length;
+		names = columnNames.clone();
+		types = columnTypes.clone();
+		kinds = new int[count];
+		longs = new long[count][];
+		doubles = new double[count][];
+		ids = new int[count][];
+		nulls = new boolean[count][];
+		dictionaries = new Dictionary[count];
+		for (int i = 0; i < count; i++) {
+			kinds[i] = kindOf(columnTypes[i]);
+			nulls[i] = new boolean[capacity];
+			switch (kinds[i]) {
+			case LONG:
+				longs[i] = new long[capacity];
+				break;
+			case DOUBLE:
+				doubles[i] = new double[capacity];
+				break;
+			default:
+				ids[i] = new int[capacity];
+				dictionaries[i] = new Dictionary();
+				break;
+			}
+		}
+	}
+
+	void clear() {
+		size = 0;
+	}
+
+	boolean isFull() {
+		return size == capacity;
+	}
+
+	void add(String[] values) {
+		final int row = size++;
+		for (int i = 0; i < kinds.length; i++) {
+			final String value = values[i];
+			final boolean empty = value == null || (value.isEmpty() && kinds[i] != STRING);
+			nulls[i][row] = empty;
+			if (empty) {
+				if (kinds[i] == STRING)
+					ids[i][row] = -1;
+				continue;
+			}
+			try {
+				switch (kinds[i]) {
+				case LONG:
+					longs[i][row] = parseLong(value, types[i]);
+					break;
+				case DOUBLE:
+					doubles[i][row] = Double.parseDouble(value);
+					break;
+				default:
+					ids[i][row] = dictionaries[i].id(value);
+					break;
+				}
+			} catch (final NumberFormatException | ParseException e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[add] type mismatched: {} on {} position", value, i);
+				nulls[i][row] = true;
+			}
+		}
+	}
+
+	void add(List<?> values) {
+		final int row = size++;
+		for (int i = 0; i < kinds.length; i++) {
+			final Object value = values.get(i);
+			nulls[i][row] = value == null;
+			switch (kinds[i]) {
+			case LONG:
+				if (value instanceof Timestamp)
+					longs[i][row] = ((Timestamp) value).getTime();
+				else if (value instanceof Number)
+					longs[i][row] = ((Number) value).longValue();
+				else
+					nulls[i][row] = true;
+				break;
+			case DOUBLE:
+				if (value instanceof Number)
+					doubles[i][row] = ((Number) value).doubleValue();
+				else
+					nulls[i][row] = true;
+				break;
+			default:
+				ids[i][row] = value == null ? -1 : dictionaries[i].id(value.toString());
+				break;
+			}
+		}
+	}
+
+	private static long parseLong(String value, int type) throws ParseException {
+		if (type == Types.TIMESTAMP)
+			return TimeDateUtils.parseEpochMillis(value);
+		try {
+			return Long.parseLong(value);
+		} catch (final NumberFormatException e) {
+			return new BigDecimal(value).longValue();
+		}
+	}
+
+	static int kindOf(int type) {
+		switch (type) {
+		case Types.TIMESTAMP:
+		case Types.BIGINT:
+		case Types.INTEGER:
+		case Types.SMALLINT:
+		case Types.TINYINT:
+			return LONG;
+		case Types.DOUBLE:
+		case Types.FLOAT:
+		case Types.REAL:
+		case Types.DECIMAL:
+		case Types.NUMERIC:
+			return DOUBLE;
+		default:
+			return STRING;
+		}
+	}
+
+	private static final class Dictionary {
+		private final Map<String, Integer> index = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+		private final List<String> view = Collections.unmodifiableList(values);
+
+		int id(String value) {
+			final Integer id = index.get(value);
+			if (id != null)
+				return id;
+			final int next = values.size();
+			values.add(value);
+			index.put(value, next);
+			return next;
+		}
+	}
+
+}
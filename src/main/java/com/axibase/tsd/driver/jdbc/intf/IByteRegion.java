@@ -0,0 +1,39 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.intf;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import com.axibase.tsd.driver.jdbc.strategies.CommittedSequence;
+
+/**
+ * Response bytes written by one thread and read by another below the committed length.
+ */
+public interface IByteRegion extends AutoCloseable {
+
+	CommittedSequence getSequence();
+
+	boolean isClosed();
+
+	/**
+	 * @return buffer with up to length committed bytes starting at the position, valid until the next call
+	 */
+	ByteBuffer read(long position, long available, int length) throws IOException;
+
+	@Override
+	void close() throws IOException;
+
+}
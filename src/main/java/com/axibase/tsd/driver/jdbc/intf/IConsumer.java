@@ -28,4 +28,7 @@ public interface IConsumer extends AutoCloseable {
 	Iterator<String[]> getIterator() throws AtsdException;
 
 	StatementContext getContext();
+
+	@Override
+	void close() throws IOException;
 }
@@ -15,6 +15,7 @@
 package com.axibase.tsd.driver.jdbc.intf;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.security.GeneralSecurityException;
 
 import com.axibase.tsd.driver.jdbc.content.ContentDescription;
@@ -30,4 +31,6 @@ public interface IDataProvider extends AutoCloseable {
 
 	void fetchData(long maxLimit) throws AtsdException, GeneralSecurityException, IOException;
 
+	InputStream readContent(long maxLimit) throws AtsdException, GeneralSecurityException, IOException;
+
 }
\ No newline at end of file
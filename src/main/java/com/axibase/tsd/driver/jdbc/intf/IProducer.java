@@ -21,4 +21,7 @@ import java.nio.file.Path;
 public interface IProducer extends AutoCloseable {
 
 	void produce(Path tmp, ReadableByteChannel inputChannel) throws IOException;
+
+	@Override
+	void close() throws IOException;
 }
@@ -0,0 +1,44 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.intf;
+
+import java.math.BigDecimal;
+import java.sql.SQLException;
+
+public interface IRowView {
+
+	int getColumnCount();
+
+	String getColumnName(int columnIndex);
+
+	int getColumnType(int columnIndex);
+
+	long getRowNumber();
+
+	boolean isNull(int columnIndex);
+
+	String getString(int columnIndex);
+
+	int getInt(int columnIndex) throws SQLException;
+
+	long getLong(int columnIndex) throws SQLException;
+
+	double getDouble(int columnIndex) throws SQLException;
+
+	BigDecimal getBigDecimal(int columnIndex) throws SQLException;
+
+	long getTime(int columnIndex) throws SQLException;
+
+}
@@ -16,6 +16,7 @@ package com.axibase.tsd.driver.jdbc.intf;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
 
 import com.axibase.tsd.driver.jdbc.content.StatementContext;
@@ -27,6 +28,8 @@ public interface IStoreStrategy extends AutoCloseable {
 
 	List<String[]> fetch(long from, int size) throws IOException, AtsdException;
 
+	Iterator<String[]> getIterator() throws AtsdException;
+
 	void store(InputStream is) throws IOException;
 
 	StatementContext getContext();
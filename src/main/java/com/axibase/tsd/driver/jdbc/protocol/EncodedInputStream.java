@@ -0,0 +1,126 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.protocol;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Response body which is decoded on the first read, so that a consumer may take the raw bytes instead.
+ */
+public class EncodedInputStream extends FilterInputStream {
+	private static final int INFLATER_BUFFER_SIZE = 64 * 1024;
+	private final InputStream raw;
+	private final boolean gzipped;
+	private boolean detached;
+	private volatile long count;
+	private volatile boolean finished;
+
+	public EncodedInputStream(InputStream raw, boolean gzipped) {
+		super(null);
+		this.raw = raw;
+		this.gzipped = gzipped;
+	}
+
+	public boolean isGzipped() {
+		return gzipped;
+	}
+
+	/**
+	 * @return undecoded response body, the caller becomes responsible for decoding and closing it
+	 */
+	public InputStream detach() {
+		if (in != null)
+			throw new IllegalStateException("Content is already being decoded");
+		detached = true;
+		return raw;
+	}
+
+	private InputStream decoded() throws IOException {
+		if (detached)
+			throw new IOException("Content has been detached");
+		if (in == null)
+			in = gzipped ? new GZIPInputStream(raw, INFLATER_BUFFER_SIZE) : raw;
+		return in;
+	}
+
+	/**
+	 * @return decoded bytes read so far, 0 once the content is detached
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * @return true if the end of the decoded content has been read
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final int value = decoded().read();
+		if (value != -1)
+			count++;
+		else
+			finished = true;
+		return value;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		final int read = decoded().read(b, off, len);
+		if (read > 0)
+			count += read;
+		else if (read < 0)
+			finished = true;
+		return read;
+	}
+
+	@Override
+	public long skip(long n) throws IOException {
+		final long skipped = decoded().skip(n);
+		count += skipped;
+		return skipped;
+	}
+
+	/**
+	 * GZIPInputStream reports 1 until the end of the stream, which makes Channels.newChannel keep
+	 * filling its buffer from a slow response. Bytes received but not inflated yet are reported instead.
+	 */
+	@Override
+	public int available() throws IOException {
+		if (in == null || in == raw)
+			return raw.available();
+		return in.available() > 0 ? raw.available() : 0;
+	}
+
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (in != null)
+			in.close();
+		else
+			raw.close();
+	}
+
+}
@@ -32,7 +32,6 @@ import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.List;
 import java.util.Map;
-import java.util.zip.GZIPInputStream;
 
 import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
@@ -109,8 +108,7 @@ public class SdkProtocolImpl implements DriverConstants, IContentProtocol {
 			throw new AtsdException("HTTP code " + code);
 		}
 		boolean gzipped = COMPRESSION_ENCODING.equals(conn.getContentEncoding());
-		final InputStream is = conn.getInputStream();
-		return gzipped ? (InputStream) new GZIPInputStream(is) : is;
+		return new EncodedInputStream(conn.getInputStream(), gzipped);
 	}
 
 	private void setBaseProperties(String method) throws IOException {
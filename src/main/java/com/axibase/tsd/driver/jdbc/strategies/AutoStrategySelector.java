@@ -0,0 +1,121 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Picks a strategy for {@code strategy=auto} from the size the response is expected to have. The size
+ * is the announced Content-Length of an uncompressed response, otherwise the size observed for the same
+ * query fingerprint before. Responses within the memory budget are kept in memory by the hybrid
+ * strategy, larger ones are spilled to a file, responses of unknown size are streamed.
+ */
+public final class AutoStrategySelector {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(AutoStrategySelector.class);
+	private static final int HISTORY_SIZE = 1024;
+	private static final Pattern STRING_LITERAL = Pattern.compile("'(?:[^']|'')*'");
+	private static final Pattern NUMBER_LITERAL = Pattern.compile("\\b\\d+(?:\\.\\d+)?\\b");
+	private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+
+	private static final Map<String, Long> history = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+			return size() > HISTORY_SIZE;
+		}
+	};
+
+	private AutoStrategySelector() {
+	}
+
+	/**
+	 * @param contentLength announced length of the response, -1 if unknown or before the request
+	 * @param gzipped whether the announced length is of the compressed response
+	 */
+	public static StrategyChoice select(String sql, long contentLength, boolean gzipped, long memoryBudget) {
+		final String fingerprint = fingerprint(sql);
+		long estimate = -1;
+		String source = null;
+		if (contentLength > 0 && !gzipped) {
+			estimate = contentLength;
+			source = "content length ";
+		} else {
+			final Long observed = getEstimate(fingerprint);
+			if (observed != null) {
+				estimate = observed;
+				source = "previous size ";
+			}
+		}
+		final String strategy;
+		final String reason;
+		if (estimate < 0) {
+			strategy = StrategyFactory.STREAM_STRATEGY;
+			reason = "unknown size";
+		} else if (estimate <= memoryBudget) {
+			strategy = StrategyFactory.HYBRID_STRATEGY;
+			reason = source + estimate + " <= memory budget " + memoryBudget;
+		} else {
+			strategy = StrategyFactory.FILE_STRATEGY;
+			reason = source + estimate + " > memory budget " + memoryBudget;
+		}
+		final StrategyChoice choice = new StrategyChoice(fingerprint, contentLength, estimate, strategy, reason);
+		if (logger.isDebugEnabled())
+			logger.debug("[select] " + choice);
+		return choice;
+	}
+
+	/**
+	 * Remembers the decoded size of a response, averaged with the previous observations.
+	 */
+	public static void record(String fingerprint, long bytes) {
+		if (bytes <= 0)
+			return;
+		synchronized (history) {
+			final Long previous = history.get(fingerprint);
+			history.put(fingerprint, previous == null ? bytes : (previous + bytes) / 2);
+		}
+	}
+
+	/**
+	 * @return query text with literals replaced by '?', lower-cased and with collapsed whitespace
+	 */
+	public static String fingerprint(String sql) {
+		if (sql == null)
+			return "";
+		String result = STRING_LITERAL.matcher(sql).replaceAll("?");
+		result = NUMBER_LITERAL.matcher(result).replaceAll("?");
+		result = WHITESPACE.matcher(result).replaceAll(" ");
+		return result.trim().toLowerCase(Locale.US);
+	}
+
+	static Long getEstimate(String fingerprint) {
+		synchronized (history) {
+			return history.get(fingerprint);
+		}
+	}
+
+	static void clear() {
+		synchronized (history) {
+			history.clear();
+		}
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Committed length of a spill published by a single writer. Readers park until bytes beyond
+ * their position are committed; a waiter registers itself before re-checking the length and
+ * the writer checks for waiters after publishing, so a wakeup cannot be lost.
+ */
+public class CommittedSequence {
+	private final AtomicLong committed = new AtomicLong();
+	private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+	private volatile boolean finished;
+
+	public void publish(long length) {
+		committed.set(length);
+		signal();
+	}
+
+	public void finish() {
+		finished = true;
+		signal();
+	}
+
+	public long getCommitted() {
+		return committed.get();
+	}
+
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * Blocks until bytes beyond the position are committed or the writer has finished.
+	 *
+	 * @return committed length
+	 */
+	public long await(long position) throws InterruptedException {
+		long available = committed.get();
+		if (available > position || finished)
+			return available;
+		final Thread current = Thread.currentThread();
+		waiters.add(current);
+		try {
+			while ((available = committed.get()) <= position && !finished) {
+				LockSupport.park(this);
+				if (Thread.interrupted())
+					throw new InterruptedException();
+			}
+		} finally {
+			waiters.remove(current);
+		}
+		return available;
+	}
+
+	private void signal() {
+		if (waiters.isEmpty())
+			return;
+		for (Thread waiter : waiters) {
+			LockSupport.unpark(waiter);
+		}
+	}
+
+}
@@ -0,0 +1,213 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.ext.AtsdException;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.util.BufferPool;
+
+/**
+ * Copies the CSV body of a response to a channel without parsing it. The trailing comment block
+ * is split off while the bytes pass through and processed into the statement context like the
+ * store strategies do, so the target only has to be writable. With a maximum row count set in the
+ * context, the copy ends after that many rows, as the result set does when LIMIT cannot be pushed down.
+ */
+public class CsvExporter {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(CsvExporter.class);
+	private static final byte COMMENT = '#';
+	private static final byte NEW_LINE = '\n';
+	private static final byte QUOTE = '"';
+	private static final int CHUNK_SIZE = 1024 * 1024;
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private final StatementContext context;
+
+	public CsvExporter(StatementContext context) {
+		this.context = context;
+	}
+
+	/**
+	 * @return number of CSV bytes written to the target
+	 */
+	public long export(InputStream is, WritableByteChannel target) throws IOException, AtsdException {
+		final BodyChannel source = new BodyChannel(Channels.newChannel(is), context.getMaxRowCount());
+		final long written;
+		if (target instanceof FileChannel)
+			written = transfer(source, (FileChannel) target);
+		else
+			written = copy(source, target);
+		source.finish();
+		final ByteArrayOutputStream trailer = source.getTrailer();
+		if (trailer.size() > 0)
+			processTrailer(trailer.toByteArray(), 0, trailer.size());
+		if (logger.isDebugEnabled())
+			logger.debug("[export] bytes: " + written);
+		return written;
+	}
+
+	/**
+	 * Leaves the file ending with the exported body, dropping whatever it held past it.
+	 */
+	private static long transfer(ReadableByteChannel source, FileChannel target) throws IOException {
+		final long start = target.position();
+		long end = start;
+		long count;
+		while ((count = target.transferFrom(source, end, CHUNK_SIZE)) > 0) {
+			end += count;
+		}
+		target.truncate(end);
+		target.position(end);
+		return end - start;
+	}
+
+	private static long copy(ReadableByteChannel source, WritableByteChannel target) throws IOException {
+		final ByteBuffer buffer = BufferPool.acquire(BUFFER_SIZE);
+		long written = 0;
+		try {
+			while (source.read(buffer) >= 0) {
+				buffer.flip();
+				while (buffer.hasRemaining()) {
+					written += target.write(buffer);
+				}
+				buffer.clear();
+			}
+		} finally {
+			BufferPool.release(buffer);
+		}
+		return written;
+	}
+
+	private static boolean isUnexpected(byte first) {
+		return first == '<' || first == '{';
+	}
+
+	private void processTrailer(byte[] bytes, int offset, int length) throws IOException {
+		final String comments = new String(bytes, offset, length, Charset.defaultCharset());
+		if (logger.isTraceEnabled())
+			logger.trace("[processTrailer] " + comments);
+		IteratorData.processComments(comments, context);
+	}
+
+	/**
+	 * Reads the response up to the first line starting with a comment symbol and collects the rest
+	 * as the trailer. A response that is not CSV reads as empty. With a positive row limit, the body
+	 * ends after the header and that many rows, line breaks inside quoted values are not counted.
+	 */
+	private static class BodyChannel implements ReadableByteChannel {
+		private final ReadableByteChannel source;
+		private final long maxLines;
+		private final ByteArrayOutputStream trailer = new ByteArrayOutputStream();
+		private boolean lineStart = true;
+		private boolean first = true;
+		private boolean quoted;
+		private boolean unexpected;
+		private boolean ended;
+		private boolean limited;
+		private long lines;
+
+		BodyChannel(ReadableByteChannel source, long maxRows) {
+			this.source = source;
+			this.maxLines = maxRows > 0 ? maxRows + 1 : 0;
+		}
+
+		@Override
+		public int read(ByteBuffer target) throws IOException {
+			if (ended)
+				return -1;
+			final int start = target.position();
+			final int count = source.read(target);
+			if (count <= 0)
+				return count;
+			if (first) {
+				first = false;
+				if (isUnexpected(target.get(start))) {
+					unexpected = true;
+					ended = true;
+					return -1;
+				}
+			}
+			final int limit = start + count;
+			for (int i = start; i < limit; i++) {
+				final byte b = target.get(i);
+				if (lineStart && b == COMMENT) {
+					final ByteBuffer rest = target.duplicate();
+					rest.limit(limit).position(i);
+					append(rest);
+					target.position(i);
+					ended = true;
+					return i - start;
+				}
+				if (b == QUOTE)
+					quoted = !quoted;
+				lineStart = b == NEW_LINE && !quoted;
+				if (lineStart && maxLines > 0 && ++lines == maxLines) {
+					target.position(i + 1);
+					ended = true;
+					limited = true;
+					return i + 1 - start;
+				}
+			}
+			return count;
+		}
+
+		/**
+		 * Reads the rest of the trailer unless the row limit cut the response short; fails if the
+		 * response was not CSV.
+		 */
+		void finish() throws IOException, AtsdException {
+			if (unexpected)
+				throw new AtsdException("Unexpected answer format");
+			if (!ended || limited)
+				return;
+			final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+			while (source.read(buffer) >= 0) {
+				buffer.flip();
+				append(buffer);
+				buffer.clear();
+			}
+		}
+
+		ByteArrayOutputStream getTrailer() {
+			return trailer;
+		}
+
+		private void append(ByteBuffer buffer) {
+			final byte[] bytes = new byte[buffer.remaining()];
+			buffer.get(bytes);
+			trailer.write(bytes, 0, bytes.length);
+		}
+
+		@Override
+		public boolean isOpen() {
+			return source.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			source.close();
+		}
+	}
+
+}
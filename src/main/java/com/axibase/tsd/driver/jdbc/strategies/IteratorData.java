@@ -16,7 +16,10 @@ package com.axibase.tsd.driver.jdbc.strategies;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
 import java.sql.SQLException;
 import java.sql.SQLWarning;
 import java.util.ArrayList;
@@ -29,6 +32,8 @@ import com.axibase.tsd.driver.jdbc.content.json.ExceptionSection;
 import com.axibase.tsd.driver.jdbc.content.json.WarningSection;
 import com.axibase.tsd.driver.jdbc.ext.AtsdException;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.util.BufferPool;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -40,20 +45,42 @@ public class IteratorData {
 	private static final char CSV_ESCAPE_SYMBOL = '\\';
 	private static final char CSV_QUOTE_SYMBOL = '"';
 	private static final char CSV_SEPARATOR_SYMBOL = ',';
-	private final ByteBuffer buffer = ByteBuffer.allocate(16 * 1024);
+	private static final int BUFFER_SIZE = 16 * 1024;
+	private static final int MEMORY_STEP = 64 * 1024;
+	private static final byte[] EMPTY = new byte[0];
+	private final CharsetDecoder decoder = Charset.defaultCharset().newDecoder()
+			.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+	private byte[] undecoded = EMPTY;
+	private ByteBuffer buffer;
+	private boolean closed;
 	private final StatementContext context;
 	private final StringBuilder comments = new StringBuilder();
 	private StringBuilder content = new StringBuilder();
 	private int position;
+	private long reserved;
 
 	public IteratorData(StatementContext context) {
 		this.context = context;
 	}
 
 	public ByteBuffer getBuffer() {
+		if (buffer == null)
+			buffer = closed ? ByteBuffer.allocate(BUFFER_SIZE) : BufferPool.acquire(BUFFER_SIZE);
 		return buffer;
 	}
 
+	/**
+	 * Returns the read buffer to the pool; must not be called while another thread reads into it.
+	 */
+	public void close() {
+		closed = true;
+		final ByteBuffer pooled = buffer;
+		buffer = null;
+		BufferPool.release(pooled);
+		context.getMemory().release(reserved);
+		reserved = 0;
+	}
+
 	public StringBuilder getSb() {
 		return content;
 	}
@@ -67,6 +94,8 @@ public class IteratorData {
 	}
 
 	public String[] getNext(boolean stopping) {
+		if (stopping && undecoded.length != 0)
+			content.append(decode(ByteBuffer.allocate(0), true));
 		if (content.length() == 0)
 			return null;
 		int crlf = content.indexOf("\n");
@@ -82,19 +111,30 @@ public class IteratorData {
 	}
 
 	public void bufferOperations() throws AtsdException {
+		final ByteBuffer buffer = getBuffer();
 		buffer.flip();
-		final byte[] tmp = new byte[buffer.limit()];
-		buffer.get(tmp);
-		buffer.clear();
-		final String line = new String(tmp, Charset.defaultCharset());
-		if(position == 0 && (line.charAt(0) == '<' || line.charAt(0) == '{' )){
+		try {
+			bufferOperations(buffer);
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * Decodes the source, carrying a character split at its end over to the next call.
+	 */
+	public void bufferOperations(ByteBuffer source) throws AtsdException {
+		final int length = source.remaining();
+		final String line = decode(source, false);
+		if (position == 0 && line.length() > 0 && (line.charAt(0) == '<' || line.charAt(0) == '{')) {
 			throw new AtsdException("Unexpected answer format");
 		}
-		position += tmp.length;
+		position += length;
 		if (logger.isTraceEnabled())
 			logger.trace("[position] " + position);
 		if (line.startsWith(COMMENT_NEW_LINE) || comments.length() > 0) {
 			comments.append(line);
+			account();
 			return;
 		}
 		int commentStart = line.indexOf(COMMENT_NEXT_LINE);
@@ -106,9 +146,51 @@ public class IteratorData {
 				logger.trace("[bufferOperations] " + line);
 			content.append(line);
 		}
+		account();
+	}
+
+	private String decode(ByteBuffer source, boolean endOfInput) {
+		ByteBuffer input = source;
+		if (undecoded.length != 0) {
+			input = ByteBuffer.allocate(undecoded.length + source.remaining());
+			input.put(undecoded).put(source).flip();
+		}
+		final CharBuffer chars = CharBuffer.allocate((int) (input.remaining() * decoder.maxCharsPerByte()) + 1);
+		decoder.decode(input, chars, endOfInput);
+		if (endOfInput) {
+			decoder.flush(chars);
+			decoder.reset();
+		}
+		undecoded = input.hasRemaining() ? new byte[input.remaining()] : EMPTY;
+		input.get(undecoded);
+		chars.flip();
+		return chars.toString();
+	}
+
+	/**
+	 * Charges the statement for the capacity of the builders, which grows with the longest unparsed
+	 * line and never shrinks.
+	 */
+	private void account() throws AtsdException {
+		final long needed = 2L * (content.capacity() + comments.capacity());
+		if (needed <= reserved)
+			return;
+		final long bytes = Math.max(needed - reserved, MEMORY_STEP);
+		try {
+			context.getMemory().reserve(bytes, MemoryAccountant.BACKPRESSURE_TIMEOUT_MILLIS);
+		} catch (final SQLException e) {
+			context.addException(e);
+			throw new AtsdException(e.getMessage());
+		}
+		reserved += bytes;
 	}
 
 	public void processComments() throws JsonParseException, JsonMappingException, IOException {
+		processComments(comments, context);
+	}
+
+	static void processComments(CharSequence comments, StatementContext context)
+			throws JsonParseException, JsonMappingException, IOException {
 		if (comments.length() == 0)
 			return;
 		final String json = comments.toString().replace(COMMENT_NEW_LINE, "");
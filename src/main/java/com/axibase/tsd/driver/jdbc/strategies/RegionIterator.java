@@ -0,0 +1,126 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.ext.AtsdException;
+import com.axibase.tsd.driver.jdbc.intf.IByteRegion;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Parses rows from an {@link IByteRegion}, waiting only when the reader has caught up with the writer.
+ */
+public class RegionIterator implements Iterator<String[]> {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(RegionIterator.class);
+	private static final int CHUNK_SIZE = 64 * 1024;
+	private final IByteRegion region;
+	private final StrategyStatus status;
+	private final IteratorData data;
+	private long position;
+	private boolean completed;
+
+	public RegionIterator(final IByteRegion region, final StatementContext context, final StrategyStatus status) {
+		this.region = region;
+		this.status = status;
+		this.data = new IteratorData(context);
+	}
+
+	@Override
+	public boolean hasNext() {
+		final CommittedSequence sequence = region.getSequence();
+		if (!completed && (!sequence.isFinished() || position < sequence.getCommitted()))
+			return true;
+		if (data.getSb().length() > 0)
+			return true;
+		if (logger.isDebugEnabled())
+			logger.debug("[hasNext->false] comments: " + data.getComments().length());
+		return false;
+	}
+
+	@Override
+	public String[] next() {
+		String[] found = data.getNext(false);
+		if (found != null)
+			return found;
+		while (!completed) {
+			final long available;
+			try {
+				available = region.getSequence().await(position);
+			} catch (InterruptedException e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[next] " + e.getMessage());
+				Thread.currentThread().interrupt();
+				return complete();
+			}
+			if (available <= position || region.isClosed())
+				return complete();
+			final int length;
+			try {
+				final ByteBuffer chunk = region.read(position, available, CHUNK_SIZE);
+				cutAtLineEnd(chunk);
+				length = chunk.remaining();
+				data.bufferOperations(chunk);
+			} catch (final AtsdException | IOException e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[bufferOperations] " + e.getMessage());
+				completed = true;
+				status.setInProgress(false);
+				return null;
+			}
+			position += length;
+			found = data.getNext(false);
+			if (found != null)
+				return found;
+		}
+		return data.getNext(true);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Keeps the comment marker from being split between chunks; a row longer than a chunk is passed
+	 * as is, the data decoder carries a character split at its end over to the next chunk.
+	 */
+	private static void cutAtLineEnd(ByteBuffer chunk) {
+		for (int i = chunk.limit() - 1; i >= chunk.position(); i--) {
+			if (chunk.get(i) == '\n') {
+				chunk.limit(i + 1);
+				return;
+			}
+		}
+	}
+
+	private String[] complete() {
+		if (!completed) {
+			completed = true;
+			try {
+				data.processComments();
+			} catch (final IOException e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[complete] " + e.getMessage());
+			}
+			status.setInProgress(false);
+		}
+		return data.getNext(true);
+	}
+
+}
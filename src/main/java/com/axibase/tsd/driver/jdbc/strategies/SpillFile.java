@@ -0,0 +1,109 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Spill file created by {@link SpillManager}. The space written to it is reserved against the
+ * driver-wide quota and returned when the file is closed.
+ */
+public final class SpillFile implements AutoCloseable {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(SpillFile.class);
+	private final Path path;
+	private long reserved;
+	private boolean closed;
+
+	SpillFile(Path path) {
+		this.path = path;
+	}
+
+	public Path getPath() {
+		return path;
+	}
+
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * Reserves space for the file to grow to the length, rounded up to the next extent. Called by
+	 * the single writer of the file.
+	 *
+	 * @return false if the quota stays exhausted for the timeout or the file is closed
+	 */
+	public boolean reserve(long length, long timeoutMillis) throws InterruptedException {
+		final long current;
+		synchronized (this) {
+			if (closed)
+				return false;
+			if (length <= reserved)
+				return true;
+			current = reserved;
+		}
+		long target = (length + SpillManager.EXTENT - 1) / SpillManager.EXTENT * SpillManager.EXTENT;
+		final long quota = SpillManager.getQuota();
+		if (quota > 0 && target > quota)
+			target = Math.max(length, quota);
+		if (!SpillManager.acquire(target - current, timeoutMillis))
+			return false;
+		synchronized (this) {
+			if (!closed) {
+				reserved = target;
+				return true;
+			}
+		}
+		SpillManager.release(target - current);
+		return false;
+	}
+
+	/**
+	 * @return true if the first extent is available without waiting
+	 */
+	public boolean tryReserve() {
+		try {
+			return reserve(1, 0);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	@Override
+	public void close() {
+		final long released;
+		synchronized (this) {
+			if (closed)
+				return;
+			closed = true;
+			released = reserved;
+			reserved = 0;
+		}
+		SpillManager.release(released);
+		SpillManager.closed(this);
+		try {
+			final boolean deleted = Files.deleteIfExists(path);
+			if (logger.isDebugEnabled())
+				logger.debug("[close] File {} is deleted {} ", path, deleted);
+		} catch (IOException e) {
+			logger.warn("[close] " + path + ": " + e.getMessage());
+		}
+	}
+
+}
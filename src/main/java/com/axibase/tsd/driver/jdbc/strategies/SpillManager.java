@@ -0,0 +1,294 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Owns the spill files of all strategies in this JVM.
+ * <p>
+ * Files are created in the directory given by the spillDirectory connection parameter, the
+ * axibase.tsd.driver.jdbc.spillDirectory system property or java.io.tmpdir. Every JVM holds a lock
+ * on its own {@code atsd-driver-<owner>.lock} file in each directory it uses; when a directory is
+ * used for the first time, and again when a file is created there {@link #RESCAN_INTERVAL_MILLIS}
+ * after the previous scan, spill files of owners whose lock is free are deleted as crash leftovers.
+ * Files of strategies that were garbage collected without being closed are deleted as well.
+ * <p>
+ * A shutdown hook deleting the open files is registered with the first open file and removed when the
+ * last one is closed, so an idle driver does not keep its class loader reachable from the runtime.
+ * <p>
+ * The optional axibase.tsd.driver.jdbc.spillQuota system property limits the bytes reserved by all
+ * spill files together. Space is reserved in extents of {@link #EXTENT} bytes.
+ */
+public final class SpillManager {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(SpillManager.class);
+	static final String DIRECTORY_PROPERTY = "axibase.tsd.driver.jdbc.spillDirectory";
+	static final String QUOTA_PROPERTY = "axibase.tsd.driver.jdbc.spillQuota";
+	public static final long EXTENT = 64L * 1024 * 1024;
+	public static final long BACKPRESSURE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	static final long RESCAN_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+	private static final String PREFIX = "atsd-driver-";
+	private static final String LOCK_SUFFIX = ".lock";
+	private static final String SPILL_SUFFIX = ".spill";
+	private static final String OWNER = UUID.randomUUID().toString();
+
+	private static final AtomicLong counter = new AtomicLong();
+	private static final Map<Path, FileChannel> directories = new ConcurrentHashMap<>();
+	private static final Map<Path, Long> scanned = new ConcurrentHashMap<>();
+	private static final Map<SpillFile, Tracker> live = new ConcurrentHashMap<>();
+	private static final ReferenceQueue<Object> collected = new ReferenceQueue<>();
+	private static final Object quotaMonitor = new Object();
+	private static long quota = readQuota();
+	private static long reserved;
+	private static Thread shutdownHook;
+
+	private SpillManager() {
+	}
+
+	/**
+	 * Creates an empty spill file.
+	 *
+	 * @param directory spill directory from the connection URL or null for the default one
+	 * @param owner object whose collection without close means the file is leaked
+	 */
+	public static SpillFile create(String directory, Object owner) throws IOException {
+		expunge();
+		final Path dir = prepare(resolve(directory));
+		final Path path = dir.resolve(PREFIX + OWNER + '-' + counter.incrementAndGet() + SPILL_SUFFIX);
+		Files.createFile(path);
+		final SpillFile file = new SpillFile(path);
+		synchronized (live) {
+			live.put(file, new Tracker(owner, file));
+			if (shutdownHook == null) {
+				shutdownHook = new Thread(new Cleanup(), "atsd-driver-spill-cleanup");
+				Runtime.getRuntime().addShutdownHook(shutdownHook);
+			}
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[create] " + path);
+		return file;
+	}
+
+	public static long getQuota() {
+		synchronized (quotaMonitor) {
+			return quota;
+		}
+	}
+
+	public static long getReserved() {
+		synchronized (quotaMonitor) {
+			return reserved;
+		}
+	}
+
+	public static int getOpenFiles() {
+		return live.size();
+	}
+
+	static void setQuota(long bytes) {
+		synchronized (quotaMonitor) {
+			quota = bytes;
+			quotaMonitor.notifyAll();
+		}
+	}
+
+	/**
+	 * @return true if the bytes are reserved, false if the quota is still exhausted after the timeout
+	 */
+	static boolean acquire(long bytes, long timeoutMillis) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (quotaMonitor) {
+			while (quota > 0 && reserved + bytes > quota) {
+				final long remaining = deadline - System.currentTimeMillis();
+				if (bytes > quota || remaining <= 0)
+					return false;
+				quotaMonitor.wait(remaining);
+			}
+			reserved += bytes;
+			return true;
+		}
+	}
+
+	static void release(long bytes) {
+		if (bytes == 0)
+			return;
+		synchronized (quotaMonitor) {
+			reserved -= bytes;
+			quotaMonitor.notifyAll();
+		}
+	}
+
+	static void closed(SpillFile file) {
+		synchronized (live) {
+			live.remove(file);
+			if (!live.isEmpty() || shutdownHook == null)
+				return;
+			try {
+				Runtime.getRuntime().removeShutdownHook(shutdownHook);
+			} catch (IllegalStateException e) {
+				// the hook is already running
+			}
+			shutdownHook = null;
+		}
+	}
+
+	static boolean isShutdownHookRegistered() {
+		synchronized (live) {
+			return shutdownHook != null;
+		}
+	}
+
+	private static void expunge() {
+		Reference<?> reference;
+		while ((reference = collected.poll()) != null) {
+			final SpillFile file = ((Tracker) reference).file;
+			if (live.containsKey(file)) {
+				logger.warn("Spill file " + file.getPath() + " was not closed, deleting it");
+				file.close();
+			}
+		}
+	}
+
+	private static Path resolve(String directory) {
+		String name = directory;
+		if (StringUtils.isEmpty(name))
+			name = System.getProperty(DIRECTORY_PROPERTY);
+		if (StringUtils.isEmpty(name))
+			name = System.getProperty("java.io.tmpdir");
+		return Paths.get(name).toAbsolutePath().normalize();
+	}
+
+	private static Path prepare(Path dir) throws IOException {
+		if (directories.containsKey(dir) && !isScanDue(dir))
+			return dir;
+		synchronized (directories) {
+			if (!directories.containsKey(dir)) {
+				Files.createDirectories(dir);
+				final FileChannel lock = FileChannel.open(dir.resolve(PREFIX + OWNER + LOCK_SUFFIX),
+						StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+				lock.lock();
+				directories.put(dir, lock);
+			} else if (!isScanDue(dir)) {
+				return dir;
+			}
+			scanned.put(dir, System.currentTimeMillis());
+			removeOrphans(dir);
+		}
+		return dir;
+	}
+
+	private static boolean isScanDue(Path dir) {
+		final Long last = scanned.get(dir);
+		return last == null || System.currentTimeMillis() - last >= RESCAN_INTERVAL_MILLIS;
+	}
+
+	private static void removeOrphans(Path dir) {
+		try (final DirectoryStream<Path> locks = Files.newDirectoryStream(dir, PREFIX + "*" + LOCK_SUFFIX)) {
+			for (final Path lockPath : locks) {
+				final String fileName = lockPath.getFileName().toString();
+				final String owner = fileName.substring(PREFIX.length(), fileName.length() - LOCK_SUFFIX.length());
+				if (!OWNER.equals(owner) && isAbandoned(lockPath))
+					removeOwner(dir, owner, lockPath);
+			}
+		} catch (IOException e) {
+			logger.warn("[removeOrphans] " + dir + ": " + e.getMessage());
+		}
+	}
+
+	private static boolean isAbandoned(Path lockPath) {
+		try (final FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.WRITE)) {
+			final FileLock lock = channel.tryLock();
+			if (lock == null)
+				return false;
+			lock.release();
+			return true;
+		} catch (IOException | OverlappingFileLockException e) {
+			// the lock is held by this JVM, for example by the driver in another class loader
+			if (logger.isDebugEnabled())
+				logger.debug("[isAbandoned] " + lockPath + ": " + e);
+			return false;
+		}
+	}
+
+	private static void removeOwner(Path dir, String owner, Path lockPath) throws IOException {
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(dir, PREFIX + owner + "-*" + SPILL_SUFFIX)) {
+			for (final Path path : files) {
+				if (Files.deleteIfExists(path))
+					logger.info("Deleted orphaned spill file " + path);
+			}
+		}
+		Files.deleteIfExists(lockPath);
+	}
+
+	private static long readQuota() {
+		final String value = System.getProperty(QUOTA_PROPERTY);
+		if (StringUtils.isEmpty(value))
+			return 0;
+		try {
+			return ContentDescription.parseSize(value);
+		} catch (final NumberFormatException e) {
+			logger.error("Invalid " + QUOTA_PROPERTY + ": " + value);
+			return 0;
+		}
+	}
+
+	private static final class Cleanup implements Runnable {
+		@Override
+		public void run() {
+			for (SpillFile file : live.keySet()) {
+				file.close();
+			}
+			for (Map.Entry<Path, FileChannel> entry : directories.entrySet()) {
+				try {
+					entry.getValue().close();
+					Files.deleteIfExists(entry.getKey().resolve(PREFIX + OWNER + LOCK_SUFFIX));
+				} catch (IOException e) {
+					// the lock is released by the OS anyway
+				}
+			}
+		}
+	}
+
+	private static final class Tracker extends WeakReference<Object> {
+		private final SpillFile file;
+
+		Tracker(Object owner, SpillFile file) {
+			super(owner, collected);
+			this.file = file;
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+/**
+ * Strategy picked by {@code strategy=auto} for the last query of a statement. Available through
+ * {@code Statement.unwrap(StrategyChoice.class)}.
+ */
+public class StrategyChoice {
+	private final String fingerprint;
+	private final long contentLength;
+	private final long estimatedSize;
+	private final String strategy;
+	private final String reason;
+
+	public StrategyChoice(String fingerprint, long contentLength, long estimatedSize, String strategy,
+			String reason) {
+		this.fingerprint = fingerprint;
+		this.contentLength = contentLength;
+		this.estimatedSize = estimatedSize;
+		this.strategy = strategy;
+		this.reason = reason;
+	}
+
+	/**
+	 * @return normalized query text used as the key of the size history
+	 */
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	/**
+	 * @return Content-Length announced by the server or -1
+	 */
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * @return expected size of the decoded response in bytes or -1 if unknown
+	 */
+	public long getEstimatedSize() {
+		return estimatedSize;
+	}
+
+	public String getStrategy() {
+		return strategy;
+	}
+
+	public String getReason() {
+		return reason;
+	}
+
+	@Override
+	public String toString() {
+		return "StrategyChoice [strategy=" + strategy + ", reason=" + reason + ", fingerprint=" + fingerprint + "]";
+	}
+
+}
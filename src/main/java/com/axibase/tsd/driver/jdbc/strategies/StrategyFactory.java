@@ -16,9 +16,13 @@ package com.axibase.tsd.driver.jdbc.strategies;
 
 import org.apache.commons.lang3.StringUtils;
 
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
 import com.axibase.tsd.driver.jdbc.content.StatementContext;
 import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.columnar.ColumnarStoreStrategy;
+import com.axibase.tsd.driver.jdbc.strategies.hybrid.HybridStoreStrategy;
+import com.axibase.tsd.driver.jdbc.strategies.mmap.MappedStoreStrategy;
 import com.axibase.tsd.driver.jdbc.strategies.storage.FileStoreStrategy;
 import com.axibase.tsd.driver.jdbc.strategies.stream.KeepAliveStrategy;
 
@@ -26,6 +30,24 @@ public class StrategyFactory {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(StrategyFactory.class);
 	public static final String STREAM_STRATEGY = "stream";
 	public static final String FILE_STRATEGY = "file";
+	public static final String MMAP_STRATEGY = "mmap";
+	public static final String HYBRID_STRATEGY = "hybrid";
+	public static final String AUTO_STRATEGY = "auto";
+	public static final String COLUMNAR_STRATEGY = "columnar";
+
+	public static <T extends IStoreStrategy> T create(Class<T> type, StatementContext context,
+			ContentDescription cd) {
+		try {
+			return type.getDeclaredConstructor(StatementContext.class, ContentDescription.class).newInstance(context,
+					cd);
+		} catch (final NoSuchMethodException e) {
+			return create(type, context);
+		} catch (final IllegalArgumentException | ReflectiveOperationException | SecurityException e) {
+			if (logger.isErrorEnabled())
+				logger.error("Cannot get a store instance from the factory: " + e.getMessage());
+		}
+		return null;
+	}
 
 	public static <T extends IStoreStrategy> T create(Class<T> type, StatementContext context) {
 		try {
@@ -44,6 +66,12 @@ public class StrategyFactory {
 		switch (name) {
 		case FILE_STRATEGY:
 			return FileStoreStrategy.class;
+		case MMAP_STRATEGY:
+			return MappedStoreStrategy.class;
+		case HYBRID_STRATEGY:
+			return HybridStoreStrategy.class;
+		case COLUMNAR_STRATEGY:
+			return ColumnarStoreStrategy.class;
 		case STREAM_STRATEGY:
 		default:
 			return KeepAliveStrategy.class;
@@ -17,27 +17,13 @@ package com.axibase.tsd.driver.jdbc.strategies;
 import java.util.concurrent.CountDownLatch;
 
 public class StrategyStatus {
-	private boolean inProgress;
-	private long lockPosition;
-	private long lockSize;
-	private long currentSize;
+	private final CommittedSequence sequence = new CommittedSequence();
+	private volatile boolean inProgress;
 	private long processed;
-	private CountDownLatch syncLatch = new CountDownLatch(1);
+	private volatile CountDownLatch syncLatch = new CountDownLatch(1);
 
-	public long getLockPosition() {
-		return lockPosition;
-	}
-
-	public void setLockPosition(long lockPosition) {
-		this.lockPosition = lockPosition;
-	}
-
-	public long getCurrentSize() {
-		return currentSize;
-	}
-
-	public void setCurrentSize(long currentSize) {
-		this.currentSize = currentSize;
+	public CommittedSequence getSequence() {
+		return sequence;
 	}
 
 	public boolean isInProgress() {
@@ -56,14 +42,6 @@ public class StrategyStatus {
 		this.syncLatch = syncLatch;
 	}
 
-	public long getLockSize() {
-		return lockSize;
-	}
-
-	public void setLockSize(long lockSize) {
-		this.lockSize = lockSize;
-	}
-
 	public long getProcessed() {
 		return processed;
 	}
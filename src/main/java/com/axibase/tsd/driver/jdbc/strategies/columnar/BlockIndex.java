@@ -0,0 +1,91 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Headers, column types and block locations of a columnar result, on the heap or in the spill file. Filled by the writer before it
+ * publishes the row count covering a block, so readers see every block below the committed count.
+ */
+class BlockIndex {
+	private final List<Entry> entries = new ArrayList<>();
+	private volatile String[] headers;
+	private volatile int[] types;
+
+	void open(String[] headers, int[] types) {
+		this.types = types;
+		this.headers = headers;
+	}
+
+	String[] getHeaders() {
+		return headers;
+	}
+
+	int[] getTypes() {
+		return types;
+	}
+
+	synchronized void add(long firstRow, int rows, long offset, int length) {
+		entries.add(new Entry(firstRow, rows, offset, length, null));
+	}
+
+	synchronized void add(long firstRow, int rows, ByteBuffer data) {
+		entries.add(new Entry(firstRow, rows, -1, data.remaining(), data));
+	}
+
+	synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return block holding the row, or null if no such block is indexed
+	 */
+	synchronized Entry find(long row) {
+		int low = 0;
+		int high = entries.size() - 1;
+		while (low <= high) {
+			final int middle = (low + high) >>> 1;
+			final Entry entry = entries.get(middle);
+			if (row < entry.firstRow)
+				high = middle - 1;
+			else if (row >= entry.firstRow + entry.rows)
+				low = middle + 1;
+			else
+				return entry;
+		}
+		return null;
+	}
+
+	static final class Entry {
+		final long firstRow;
+		final int rows;
+		final long offset;
+		final int length;
+		/** Encoded block kept on the heap, null if it is in the spill file. */
+		final ByteBuffer data;
+
+		Entry(long firstRow, int rows, long offset, int length, ByteBuffer data) {
+			this.firstRow = firstRow;
+			this.rows = rows;
+			this.offset = offset;
+			this.length = length;
+			this.data = data;
+		}
+	}
+
+}
@@ -0,0 +1,519 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+/**
+ * Rows of a columnar spill block. Timestamps and integers are kept as long, floating point numbers
+ * as double and everything else, decimals included to keep their digits, as ids into a dictionary of
+ * the block. Timestamp, integer and floating point columns carry the min/max of the block.
+ * <p>
+ * Encoded block: row count, then per column the kind, the null bitmap and
+ * <ul>
+ * <li>timestamp and long: min, max, encoding, payload length, raw values or {@link GorillaCodec}
+ * delta-of-delta bits</li>
+ * <li>double: min, max, encoding, payload length, raw values or {@link GorillaCodec} XOR bits</li>
+ * <li>string: dictionary size, length-prefixed UTF-8 entries, raw ids</li>
+ * </ul>
+ * The shorter of the two encodings is chosen per column and block. A null number repeats the previous
+ * value of its column, which costs a single bit in the packed encodings.
+ * Values are converted the same way {@code AtsdMeta} converts CSV fields into frame rows.
+ */
+public final class ColumnBlock {
+	static final byte TIMESTAMP = 0;
+	static final byte LONG = 1;
+	static final byte DOUBLE = 2;
+	static final byte STRING = 3;
+	static final byte RAW = 0;
+	static final byte PACKED = 1;
+	/** Type of a column without metadata, such columns are left out of frame rows. */
+	static final int MISSING = Integer.MIN_VALUE;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final int[] types;
+	private final byte[] kinds;
+	private final int capacity;
+	private final boolean[][] nulls;
+	private final long[][] longs;
+	private final double[][] doubles;
+	private final int[][] ids;
+	private final Dictionary[] dictionaries;
+	private final long[] minLongs;
+	private final long[] maxLongs;
+	private final double[] minDoubles;
+	private final double[] maxDoubles;
+	private final byte[] encodings;
+	private final long[] payloads;
+	private boolean measured;
+	private int size;
+
+	/**
+	 * @param types JDBC types of the columns, {@link #MISSING} for columns without metadata
+	 */
+	ColumnBlock(int[] types, int capacity) {
+		final int count = types.length;
+		this.types = types.clone();
+		this.capacity = capacity;
+		kinds = new byte[count];
+		nulls = new boolean[count][];
+		longs = new long[count][];
+		doubles = new double[count][];
+		ids = new int[count][];
+		dictionaries = new Dictionary[count];
+		minLongs = new long[count];
+		maxLongs = new long[count];
+		minDoubles = new double[count];
+		maxDoubles = new double[count];
+		encodings = new byte[count];
+		payloads = new long[count];
+		for (int i = 0; i < count; i++) {
+			kinds[i] = kindOf(types[i]);
+			nulls[i] = new boolean[capacity];
+			switch (kinds[i]) {
+			case TIMESTAMP:
+			case LONG:
+				longs[i] = new long[capacity];
+				break;
+			case DOUBLE:
+				doubles[i] = new double[capacity];
+				break;
+			default:
+				ids[i] = new int[capacity];
+				dictionaries[i] = new Dictionary();
+				break;
+			}
+		}
+		reset();
+	}
+
+	static byte kindOf(int type) {
+		switch (type) {
+		case Types.TIMESTAMP:
+			return TIMESTAMP;
+		case Types.SMALLINT:
+		case Types.INTEGER:
+		case Types.BIGINT:
+			return LONG;
+		case Types.FLOAT:
+		case Types.DOUBLE:
+			return DOUBLE;
+		default:
+			return STRING;
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getColumnCount() {
+		return types.length;
+	}
+
+	boolean isFull() {
+		return size == capacity;
+	}
+
+	void reset() {
+		size = 0;
+		Arrays.fill(minLongs, Long.MAX_VALUE);
+		Arrays.fill(maxLongs, Long.MIN_VALUE);
+		Arrays.fill(minDoubles, Double.POSITIVE_INFINITY);
+		Arrays.fill(maxDoubles, Double.NEGATIVE_INFINITY);
+		measured = false;
+		for (Dictionary dictionary : dictionaries) {
+			if (dictionary != null)
+				dictionary.clear();
+		}
+	}
+
+	/**
+	 * @return smallest value of a timestamp, integer or floating point column, null for other columns
+	 *         or if all values of the block are null
+	 */
+	public Number getMin(int column) {
+		switch (kinds[column]) {
+		case TIMESTAMP:
+		case LONG:
+			return minLongs[column] <= maxLongs[column] ? (Number) minLongs[column] : null;
+		case DOUBLE:
+			return minDoubles[column] <= maxDoubles[column] ? (Number) minDoubles[column] : null;
+		default:
+			return null;
+		}
+	}
+
+	public Number getMax(int column) {
+		switch (kinds[column]) {
+		case TIMESTAMP:
+		case LONG:
+			return minLongs[column] <= maxLongs[column] ? (Number) maxLongs[column] : null;
+		case DOUBLE:
+			return minDoubles[column] <= maxDoubles[column] ? (Number) maxDoubles[column] : null;
+		default:
+			return null;
+		}
+	}
+
+	void add(String[] values) {
+		measured = false;
+		final int row = size++;
+		for (int i = 0; i < kinds.length; i++) {
+			final String value = i < values.length ? values[i] : null;
+			final byte kind = kinds[i];
+			if (kind == STRING) {
+				nulls[i][row] = value == null;
+				ids[i][row] = value == null ? -1 : dictionaries[i].id(value);
+				continue;
+			}
+			boolean empty = value == null || value.isEmpty();
+			try {
+				if (!empty && kind == DOUBLE) {
+					final double parsed = Double.parseDouble(value);
+					doubles[i][row] = parsed;
+					minDoubles[i] = Math.min(minDoubles[i], parsed);
+					maxDoubles[i] = Math.max(maxDoubles[i], parsed);
+				} else if (!empty) {
+					final long parsed = parseLong(value, types[i]);
+					longs[i][row] = parsed;
+					minLongs[i] = Math.min(minLongs[i], parsed);
+					maxLongs[i] = Math.max(maxLongs[i], parsed);
+				}
+			} catch (final NumberFormatException | ParseException e) {
+				empty = true;
+			}
+			nulls[i][row] = empty;
+			if (empty && kind == DOUBLE)
+				doubles[i][row] = row > 0 ? doubles[i][row - 1] : 0;
+			else if (empty)
+				longs[i][row] = row > 0 ? longs[i][row - 1] : 0;
+		}
+	}
+
+	private static long parseLong(String value, int type) throws ParseException {
+		switch (type) {
+		case Types.TIMESTAMP:
+			return TimeDateUtils.parseEpochMillis(value);
+		case Types.SMALLINT:
+			return Short.parseShort(value);
+		case Types.INTEGER:
+			return Integer.parseInt(value);
+		default:
+			return Long.parseLong(value);
+		}
+	}
+
+	/**
+	 * @return value converted to the JDBC type of the column
+	 */
+	Object getValue(int column, int row) {
+		if (nulls[column][row])
+			return null;
+		switch (kinds[column]) {
+		case TIMESTAMP:
+			return new Timestamp(longs[column][row]);
+		case LONG:
+			final long value = longs[column][row];
+			if (types[column] == Types.SMALLINT)
+				return (short) value;
+			return types[column] == Types.INTEGER ? (Object) (int) value : (Object) value;
+		case DOUBLE:
+			return doubles[column][row];
+		default:
+			final String text = dictionaries[column].get(ids[column][row]);
+			if (text.isEmpty())
+				return types[column] == Types.VARCHAR ? text : null;
+			if (types[column] != Types.DECIMAL)
+				return text;
+			try {
+				return new BigDecimal(text);
+			} catch (final NumberFormatException e) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * @return values of the row in the shape of an Avatica frame row
+	 */
+	List<Object> getRow(int row) {
+		final List<Object> result = new ArrayList<>(types.length);
+		for (int i = 0; i < types.length; i++) {
+			if (types[i] != MISSING)
+				result.add(getValue(i, row));
+		}
+		return result;
+	}
+
+	/**
+	 * @return values of the row as text, timestamps in UTC and unparseable numbers as empty strings
+	 */
+	String[] getText(int row) {
+		final String[] result = new String[types.length];
+		for (int i = 0; i < types.length; i++) {
+			if (nulls[i][row]) {
+				result[i] = kinds[i] == STRING ? null : "";
+				continue;
+			}
+			switch (kinds[i]) {
+			case TIMESTAMP:
+				result[i] = TimeDateUtils.formatEpochMillis(longs[i][row]);
+				break;
+			case LONG:
+				result[i] = Long.toString(longs[i][row]);
+				break;
+			case DOUBLE:
+				result[i] = Double.toString(doubles[i][row]);
+				break;
+			default:
+				result[i] = dictionaries[i].get(ids[i][row]);
+				break;
+			}
+		}
+		return result;
+	}
+
+	int encodedSize() {
+		measure();
+		long bytes = 4;
+		for (int i = 0; i < kinds.length; i++) {
+			bytes += 1 + bitmapSize();
+			if (kinds[i] == STRING)
+				bytes += 4 + dictionaries[i].encodedSize() + 4L * size;
+			else
+				bytes += 21 + payloads[i];
+		}
+		if (bytes > Integer.MAX_VALUE)
+			throw new IllegalStateException("Block is too large: " + bytes);
+		return (int) bytes;
+	}
+
+	/**
+	 * Chooses the encoding of every numeric column by the length of its payload.
+	 */
+	private void measure() {
+		if (measured)
+			return;
+		for (int i = 0; i < kinds.length; i++) {
+			if (kinds[i] == STRING)
+				continue;
+			final GorillaCodec.BitWriter counter = new GorillaCodec.BitWriter(null);
+			if (kinds[i] == DOUBLE)
+				GorillaCodec.encodeDoubles(doubles[i], size, counter);
+			else
+				GorillaCodec.encodeLongs(longs[i], size, counter);
+			final long raw = 8L * size;
+			encodings[i] = counter.getBytes() < raw ? PACKED : RAW;
+			payloads[i] = encodings[i] == PACKED ? counter.getBytes() : raw;
+		}
+		measured = true;
+	}
+
+	void encode(ByteBuffer out) {
+		measure();
+		out.putInt(size);
+		for (int i = 0; i < kinds.length; i++) {
+			out.put(kinds[i]);
+			encodeNulls(nulls[i], out);
+			switch (kinds[i]) {
+			case TIMESTAMP:
+			case LONG:
+				out.putLong(minLongs[i]).putLong(maxLongs[i]).put(encodings[i]).putInt((int) payloads[i]);
+				if (encodings[i] == PACKED) {
+					final GorillaCodec.BitWriter writer = new GorillaCodec.BitWriter(out);
+					GorillaCodec.encodeLongs(longs[i], size, writer);
+					writer.flush();
+				} else {
+					out.asLongBuffer().put(longs[i], 0, size);
+					out.position(out.position() + 8 * size);
+				}
+				break;
+			case DOUBLE:
+				out.putDouble(minDoubles[i]).putDouble(maxDoubles[i]).put(encodings[i]).putInt((int) payloads[i]);
+				if (encodings[i] == PACKED) {
+					final GorillaCodec.BitWriter writer = new GorillaCodec.BitWriter(out);
+					GorillaCodec.encodeDoubles(doubles[i], size, writer);
+					writer.flush();
+				} else {
+					out.asDoubleBuffer().put(doubles[i], 0, size);
+					out.position(out.position() + 8 * size);
+				}
+				break;
+			default:
+				dictionaries[i].encode(out);
+				out.asIntBuffer().put(ids[i], 0, size);
+				out.position(out.position() + 4 * size);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Replaces the rows with the encoded block, which must have the columns of this block.
+	 */
+	void decode(ByteBuffer in) throws IOException {
+		reset();
+		final int rows = in.getInt();
+		if (rows < 0 || rows > capacity)
+			throw new IOException("Corrupted block: " + rows + " rows");
+		size = rows;
+		for (int i = 0; i < kinds.length; i++) {
+			if (in.get() != kinds[i])
+				throw new IOException("Corrupted block: unexpected kind of column " + i);
+			decodeNulls(in, nulls[i]);
+			final int payload;
+			switch (kinds[i]) {
+			case TIMESTAMP:
+			case LONG:
+				minLongs[i] = in.getLong();
+				maxLongs[i] = in.getLong();
+				payload = readEncoding(in, i);
+				if (encodings[i] == PACKED)
+					GorillaCodec.decodeLongs(new GorillaCodec.BitReader(in), longs[i], size);
+				else
+					in.asLongBuffer().get(longs[i], 0, size);
+				in.position(payload + (int) payloads[i]);
+				break;
+			case DOUBLE:
+				minDoubles[i] = in.getDouble();
+				maxDoubles[i] = in.getDouble();
+				payload = readEncoding(in, i);
+				if (encodings[i] == PACKED)
+					GorillaCodec.decodeDoubles(new GorillaCodec.BitReader(in), doubles[i], size);
+				else
+					in.asDoubleBuffer().get(doubles[i], 0, size);
+				in.position(payload + (int) payloads[i]);
+				break;
+			default:
+				dictionaries[i].decode(in);
+				in.asIntBuffer().get(ids[i], 0, size);
+				in.position(in.position() + 4 * size);
+				break;
+			}
+		}
+		measured = true;
+	}
+
+	/**
+	 * @return position of the payload
+	 */
+	private int readEncoding(ByteBuffer in, int column) throws IOException {
+		final byte encoding = in.get();
+		final int payload = in.getInt();
+		if (encoding != RAW && encoding != PACKED || payload < 0 || payload > in.remaining())
+			throw new IOException("Corrupted block: unexpected encoding of column " + column);
+		encodings[column] = encoding;
+		payloads[column] = payload;
+		return in.position();
+	}
+
+	private int bitmapSize() {
+		return (size + 7) >>> 3;
+	}
+
+	private void encodeNulls(boolean[] values, ByteBuffer out) {
+		for (int from = 0; from < size; from += 8) {
+			int bits = 0;
+			for (int bit = 0; bit < 8 && from + bit < size; bit++) {
+				if (values[from + bit])
+					bits |= 1 << bit;
+			}
+			out.put((byte) bits);
+		}
+	}
+
+	private void decodeNulls(ByteBuffer in, boolean[] values) {
+		for (int from = 0; from < size; from += 8) {
+			final int bits = in.get();
+			for (int bit = 0; bit < 8 && from + bit < size; bit++) {
+				values[from + bit] = (bits & (1 << bit)) != 0;
+			}
+		}
+	}
+
+	private static final class Dictionary {
+		private final Map<String, Integer> index = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+		private final List<byte[]> encoded = new ArrayList<>();
+		private long encodedSize;
+
+		int id(String value) {
+			final Integer id = index.get(value);
+			if (id != null)
+				return id;
+			final int next = values.size();
+			final byte[] bytes = value.getBytes(UTF_8);
+			values.add(value);
+			encoded.add(bytes);
+			encodedSize += 4 + bytes.length;
+			index.put(value, next);
+			return next;
+		}
+
+		String get(int id) {
+			return values.get(id);
+		}
+
+		long encodedSize() {
+			return encodedSize;
+		}
+
+		void clear() {
+			index.clear();
+			values.clear();
+			encoded.clear();
+			encodedSize = 0;
+		}
+
+		void encode(ByteBuffer out) {
+			out.putInt(encoded.size());
+			for (byte[] bytes : encoded) {
+				out.putInt(bytes.length).put(bytes);
+			}
+		}
+
+		void decode(ByteBuffer in) {
+			final int count = in.getInt();
+			for (int i = 0; i < count; i++) {
+				final int length = in.getInt();
+				final String value;
+				if (in.hasArray()) {
+					value = new String(in.array(), in.arrayOffset() + in.position(), length, UTF_8);
+					in.position(in.position() + length);
+				} else {
+					final byte[] bytes = new byte[length];
+					in.get(bytes);
+					value = new String(bytes, UTF_8);
+				}
+				values.add(value);
+			}
+		}
+	}
+
+}
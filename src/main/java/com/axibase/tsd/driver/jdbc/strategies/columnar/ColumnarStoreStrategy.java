@@ -0,0 +1,274 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.calcite.avatica.ColumnMetaData;
+import org.apache.commons.lang3.StringUtils;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.content.ContentMetadata;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.ext.AtsdException;
+import com.axibase.tsd.driver.jdbc.intf.IFrameSource;
+import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.util.DriverExecutor;
+
+/**
+ * Holds the response as typed column blocks parsed once by the writer, compressed on the heap up to the
+ * memory budget and spilled past it. Frames are built from the decoded blocks without parsing text,
+ * and any row offset can be read again by seeking to its block.
+ */
+public class ColumnarStoreStrategy implements IStoreStrategy, IFrameSource {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(ColumnarStoreStrategy.class);
+
+	private final StatementContext context;
+	private final StrategyStatus status;
+	private final String spillDirectory;
+	private final String schema;
+	private final long memoryBudget;
+	private final BlockIndex index = new BlockIndex();
+	private ColumnarWriter writer;
+	private Future<Long> taskResult;
+	private FileChannel readChannel;
+	private ByteBuffer readBuffer = ByteBuffer.allocate(0).order(ByteOrder.nativeOrder());
+	private ColumnBlock current;
+	private long currentFirstRow;
+	private long position;
+
+	public ColumnarStoreStrategy(StatementContext context) {
+		this(context, ContentDescription.DEFAULT_MEMORY_BUDGET);
+	}
+
+	public ColumnarStoreStrategy(StatementContext context, ContentDescription cd) {
+		this(context, cd.getSpillDirectory(), cd.getJsonScheme(), cd.getMemoryBudget());
+	}
+
+	ColumnarStoreStrategy(StatementContext context, long memoryBudget) {
+		this(context, null, "", memoryBudget);
+	}
+
+	private ColumnarStoreStrategy(StatementContext context, String spillDirectory, String schema, long memoryBudget) {
+		this.context = context;
+		this.spillDirectory = spillDirectory;
+		this.schema = schema;
+		this.memoryBudget = memoryBudget;
+		this.status = new StrategyStatus();
+		this.status.setInProgress(true);
+	}
+
+	@Override
+	public void close() throws Exception {
+		status.setInProgress(false);
+		if (taskResult != null)
+			taskResult.cancel(true);
+		if (readChannel != null)
+			readChannel.close();
+		if (writer != null)
+			writer.close();
+		if (logger.isDebugEnabled())
+			logger.debug("[close] processed " + status.getProcessed());
+	}
+
+	@Override
+	public void store(InputStream is) throws IOException {
+		List<ColumnMetaData> metadataList = Collections.emptyList();
+		if (StringUtils.isNotEmpty(schema)) {
+			try {
+				metadataList = new ContentMetadata(schema, "", "", -1).getMetadataList();
+			} catch (final AtsdException e) {
+				if (logger.isDebugEnabled())
+					logger.debug("[store] " + e.getMessage());
+			}
+		}
+		writer = new ColumnarWriter(Channels.newChannel(is), index, metadataList, status, context, spillDirectory,
+				memoryBudget, this);
+		try {
+			taskResult = DriverExecutor.submit(writer);
+		} catch (final RejectedExecutionException e) {
+			writer = null;
+			throw e;
+		}
+	}
+
+	@Override
+	public String[] openToRead() throws IOException {
+		try {
+			status.getSyncLatch().await();
+		} catch (InterruptedException e) {
+			if (logger.isDebugEnabled())
+				logger.debug("[openToRead] " + e.getMessage());
+		}
+		final String[] headers = index.getHeaders();
+		if (headers == null)
+			return null;
+		current = new ColumnBlock(index.getTypes(), ColumnarWriter.BLOCK_ROWS);
+		return headers;
+	}
+
+	@Override
+	public List<Object> fetchFrame(long from, int limit) throws IOException, AtsdException {
+		checkOpened();
+		final List<Object> list = new ArrayList<>();
+		final long end = end(from, limit);
+		for (long row = from; row < end; row++) {
+			final ColumnBlock block = load(row);
+			if (block == null)
+				break;
+			list.add(block.getRow((int) (row - currentFirstRow)));
+		}
+		fetched(from, list.size());
+		return Collections.unmodifiableList(list);
+	}
+
+	@Override
+	public List<String[]> fetch(long from, int limit) throws AtsdException, IOException {
+		checkOpened();
+		final List<String[]> list = new ArrayList<>();
+		final long end = end(from, limit);
+		for (long row = from; row < end; row++) {
+			final ColumnBlock block = load(row);
+			if (block == null)
+				break;
+			list.add(block.getText((int) (row - currentFirstRow)));
+		}
+		fetched(from, list.size());
+		return Collections.unmodifiableList(list);
+	}
+
+	private long end(long from, int limit) {
+		final long maxRowCount = context.getMaxRowCount();
+		return maxRowCount > 0 ? Math.min(from + limit, maxRowCount) : from + limit;
+	}
+
+	private void fetched(long from, int count) {
+		position = from + count;
+		status.increaseProcessed(count);
+		final long maxRowCount = context.getMaxRowCount();
+		if (maxRowCount > 0 && position >= maxRowCount && status.isInProgress()) {
+			if (logger.isDebugEnabled())
+				logger.debug("[fetch] max row count is reached: " + maxRowCount);
+			status.setInProgress(false);
+			if (taskResult != null)
+				taskResult.cancel(true);
+		}
+	}
+
+	/**
+	 * @return decoded block holding the row, waiting for the writer if needed, or null past the last row
+	 */
+	private ColumnBlock load(long row) throws IOException {
+		if (row >= currentFirstRow && row < currentFirstRow + current.size())
+			return current;
+		final long committed;
+		try {
+			committed = status.getSequence().await(row);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getMessage());
+		}
+		final BlockIndex.Entry entry = committed > row ? index.find(row) : null;
+		if (entry == null)
+			return null;
+		if (entry.data != null) {
+			current.decode(entry.data.duplicate().order(ByteOrder.nativeOrder()));
+			currentFirstRow = entry.firstRow;
+			return current;
+		}
+		if (readChannel == null)
+			readChannel = FileChannel.open(writer.getSpill().getPath(), StandardOpenOption.READ);
+		if (readBuffer.capacity() < entry.length)
+			readBuffer = ByteBuffer.allocate(entry.length).order(ByteOrder.nativeOrder());
+		readBuffer.clear();
+		readBuffer.limit(entry.length);
+		while (readBuffer.hasRemaining()) {
+			if (readChannel.read(readBuffer, entry.offset + readBuffer.position()) < 0)
+				throw new IOException("Unexpected end of spill file at block " + entry.firstRow);
+		}
+		readBuffer.flip();
+		current.decode(readBuffer);
+		currentFirstRow = entry.firstRow;
+		return current;
+	}
+
+	/**
+	 * @return true if part of the result has been spilled to disk
+	 */
+	boolean isSpilled() {
+		return writer != null && writer.getSpill() != null;
+	}
+
+	private void checkOpened() throws AtsdException {
+		if (current == null)
+			throw new AtsdException("Content has not opened yet");
+	}
+
+	@Override
+	public Iterator<String[]> getIterator() throws AtsdException {
+		checkOpened();
+		return new Iterator<String[]>() {
+			@Override
+			public boolean hasNext() {
+				final long maxRowCount = context.getMaxRowCount();
+				if (maxRowCount > 0 && position >= maxRowCount)
+					return false;
+				try {
+					return load(position) != null;
+				} catch (IOException e) {
+					if (logger.isDebugEnabled())
+						logger.debug("[hasNext] " + e.getMessage());
+					return false;
+				}
+			}
+
+			@Override
+			public String[] next() {
+				if (!hasNext())
+					return null;
+				final String[] row = current.getText((int) (position - currentFirstRow));
+				position++;
+				status.increaseProcessed(1);
+				return row;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+
+	@Override
+	public StatementContext getContext() {
+		return context;
+	}
+
+}
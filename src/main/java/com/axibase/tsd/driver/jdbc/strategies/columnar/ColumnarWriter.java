@@ -0,0 +1,243 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.calcite.avatica.ColumnMetaData;
+
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.SpillFile;
+import com.axibase.tsd.driver.jdbc.strategies.SpillManager;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.strategies.stream.KeepAliveIterator;
+
+/**
+ * Parses the response on the writer thread into typed column blocks. Encoded blocks are kept on the
+ * heap while they fit into the memory budget and the statement memory limit; the rest of the response
+ * is appended to a spill file created on demand. Blocks start small and double up to {@link #BLOCK_ROWS}
+ * so the first rows are handed over early; a block is also written once it has been open for
+ * {@link #FLUSH_MILLIS}. The committed length of the status sequence is the number of rows written.
+ */
+public class ColumnarWriter implements Callable<Long> {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(ColumnarWriter.class);
+	static final int BLOCK_ROWS = 4096;
+	private static final int FIRST_BLOCK_ROWS = 16;
+	private static final long FLUSH_MILLIS = 100;
+	private static final int LENGTH_PREFIX = 4;
+	private final ReadableByteChannel inputChannel;
+	private final BlockIndex index;
+	private final List<ColumnMetaData> metadataList;
+	private final StrategyStatus status;
+	private final StatementContext context;
+	private final String spillDirectory;
+	private final long memoryBudget;
+	private final Object owner;
+	private ByteBuffer buffer = ByteBuffer.allocate(0).order(ByteOrder.nativeOrder());
+	private volatile SpillFile spill;
+	private FileChannel writeChannel;
+	private long held;
+	private boolean closed;
+	private long position;
+	private long rows;
+
+	/**
+	 * @param owner object whose collection without close means the spill file is leaked
+	 */
+	ColumnarWriter(ReadableByteChannel inputChannel, BlockIndex index, List<ColumnMetaData> metadataList,
+			StrategyStatus status, StatementContext context, String spillDirectory, long memoryBudget, Object owner) {
+		this.inputChannel = inputChannel;
+		this.index = index;
+		this.metadataList = metadataList;
+		this.status = status;
+		this.context = context;
+		this.spillDirectory = spillDirectory;
+		this.memoryBudget = memoryBudget;
+		this.owner = owner;
+	}
+
+	/**
+	 * @return spill file holding the blocks past the memory budget, or null if all blocks are on the heap
+	 */
+	SpillFile getSpill() {
+		return spill;
+	}
+
+	/**
+	 * Releases the blocks kept on the heap and the spill file.
+	 */
+	void close() {
+		final long released;
+		synchronized (this) {
+			closed = true;
+			released = held;
+			held = 0;
+		}
+		context.getMemory().release(released);
+		if (spill != null)
+			spill.close();
+	}
+
+	@Override
+	public Long call() throws IOException {
+		final StrategyStatus parsing = new StrategyStatus();
+		parsing.setInProgress(true);
+		final KeepAliveIterator<String[]> parser = new KeepAliveIterator<>(inputChannel, context, parsing);
+		try {
+			final String[] headers = parser.hasNext() ? parser.next() : null;
+			if (headers == null || headers.length == 0)
+				return rows;
+			final int[] types = columnTypes(headers.length);
+			index.open(headers, types);
+			releaseLatch();
+			final ColumnBlock block = new ColumnBlock(types, BLOCK_ROWS);
+			int limit = FIRST_BLOCK_ROWS;
+			long opened = System.currentTimeMillis();
+			while (parser.hasNext()) {
+				final String[] next = parser.next();
+				if (next == null)
+					break;
+				if (next.length != headers.length) {
+					if (logger.isDebugEnabled())
+						logger.debug("[call] array length discrepancy: " + Arrays.toString(next));
+					continue;
+				}
+				block.add(next);
+				if (block.size() >= limit || System.currentTimeMillis() - opened >= FLUSH_MILLIS) {
+					if (!write(block))
+						break;
+					limit = Math.min(2 * limit, BLOCK_ROWS);
+					opened = System.currentTimeMillis();
+				}
+			}
+			if (block.size() > 0)
+				write(block);
+		} finally {
+			status.getSequence().finish();
+			releaseLatch();
+			parser.close();
+			if (writeChannel != null)
+				writeChannel.close();
+			if (logger.isDebugEnabled())
+				logger.debug("[call] rows: {} blocks: {} bytes: {}", rows, index.size(), position);
+		}
+		return rows;
+	}
+
+	private boolean write(ColumnBlock block) throws IOException {
+		final int length = block.encodedSize();
+		final ByteBuffer data = hold(length);
+		if (data != null) {
+			block.encode(data);
+			data.flip();
+			index.add(rows, block.size(), data);
+			return written(block);
+		}
+		if (writeChannel == null)
+			openSpill();
+		if (!reserve(position + LENGTH_PREFIX + length))
+			return false;
+		if (buffer.capacity() < LENGTH_PREFIX + length)
+			buffer = ByteBuffer.allocate(LENGTH_PREFIX + length).order(ByteOrder.nativeOrder());
+		buffer.clear();
+		buffer.putInt(length);
+		block.encode(buffer);
+		buffer.flip();
+		final long offset = position + LENGTH_PREFIX;
+		while (buffer.hasRemaining()) {
+			position += writeChannel.write(buffer, position);
+		}
+		index.add(rows, block.size(), offset, length);
+		return written(block);
+	}
+
+	private boolean written(ColumnBlock block) {
+		rows += block.size();
+		status.getSequence().publish(rows);
+		block.reset();
+		return true;
+	}
+
+	/**
+	 * @return heap buffer for the encoded block, or null once the block has to go to the spill file
+	 */
+	private synchronized ByteBuffer hold(int length) {
+		if (closed || writeChannel != null || held + length > memoryBudget || !context.getMemory().tryReserve(length))
+			return null;
+		held += length;
+		return ByteBuffer.allocate(length).order(ByteOrder.nativeOrder());
+	}
+
+	private void openSpill() throws IOException {
+		final SpillFile file = SpillManager.create(spillDirectory, owner);
+		synchronized (this) {
+			if (closed) {
+				file.close();
+				throw new IOException("Result is already closed");
+			}
+			spill = file;
+		}
+		writeChannel = FileChannel.open(file.getPath(), StandardOpenOption.WRITE);
+		if (logger.isDebugEnabled())
+			logger.debug("[openSpill] {} after {} rows", file.getPath(), rows);
+	}
+
+	private int[] columnTypes(int count) {
+		final int[] types = new int[count];
+		Arrays.fill(types, ColumnBlock.MISSING);
+		for (ColumnMetaData columnMetaData : metadataList) {
+			if (columnMetaData.ordinal >= 0 && columnMetaData.ordinal < count)
+				types[columnMetaData.ordinal] = columnMetaData.type.id;
+		}
+		return types;
+	}
+
+	private boolean reserve(long length) throws InterruptedIOException {
+		if (spill == null)
+			return true;
+		try {
+			if (spill.reserve(length, SpillManager.BACKPRESSURE_TIMEOUT_MILLIS))
+				return true;
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException(e.getMessage());
+		}
+		if (spill.isClosed())
+			return false;
+		final String message = "Spill quota of " + SpillManager.getQuota() + " bytes is exhausted after " + position
+				+ " bytes";
+		logger.error(message);
+		context.addException(new SQLException(message));
+		return false;
+	}
+
+	private void releaseLatch() {
+		final CountDownLatch syncLatch = status.getSyncLatch();
+		if (syncLatch.getCount() != 0)
+			syncLatch.countDown();
+	}
+
+}
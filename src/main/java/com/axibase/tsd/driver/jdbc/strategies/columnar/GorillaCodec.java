@@ -0,0 +1,218 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Bit-packed encodings of numeric columns after the Gorilla paper (Pelkonen et al., VLDB 2015).
+ * Longs, timestamps first of all, are stored as delta-of-delta: a regular interval costs one bit per
+ * row. Doubles are stored as the XOR with the previous value, keeping only the meaningful bits:
+ * a repeated value costs one bit and a slowly changing one a few dozen.
+ * <p>
+ * Bits are packed into longs written in the order of the buffer, so the payload length is a multiple of
+ * 8 bytes. Passing a null buffer to {@link BitWriter} only counts the bits.
+ */
+final class GorillaCodec {
+	/** Prefix bits and payload bits of the delta-of-delta buckets, the last one holds any value. */
+	private static final int[] PREFIX_BITS = {2, 3, 4, 5, 5};
+	private static final long[] PREFIXES = {0b10, 0b110, 0b1110, 0b11110, 0b11111};
+	private static final int[] VALUE_BITS = {7, 9, 12, 32, 64};
+	private static final int LEADING_BITS = 5;
+	private static final int MAX_LEADING = (1 << LEADING_BITS) - 1;
+	private static final int SIGNIFICANT_BITS = 6;
+
+	private GorillaCodec() {
+	}
+
+	static void encodeLongs(long[] values, int size, BitWriter out) {
+		if (size == 0)
+			return;
+		out.write(values[0], 64);
+		long previousDelta = 0;
+		for (int row = 1; row < size; row++) {
+			final long delta = values[row] - values[row - 1];
+			final long dod = delta - previousDelta;
+			previousDelta = delta;
+			if (dod == 0) {
+				out.write(0, 1);
+				continue;
+			}
+			int bucket = 0;
+			while (bucket < VALUE_BITS.length - 1 && !fits(dod, VALUE_BITS[bucket])) {
+				bucket++;
+			}
+			out.write(PREFIXES[bucket], PREFIX_BITS[bucket]);
+			out.write(dod, VALUE_BITS[bucket]);
+		}
+	}
+
+	static void decodeLongs(BitReader in, long[] values, int size) {
+		if (size == 0)
+			return;
+		long value = in.read(64);
+		values[0] = value;
+		long delta = 0;
+		for (int row = 1; row < size; row++) {
+			int bucket = -1;
+			while (bucket < VALUE_BITS.length - 1 && in.read(1) == 1) {
+				bucket++;
+			}
+			if (bucket >= 0) {
+				final int bits = VALUE_BITS[bucket];
+				final long dod = in.read(bits);
+				delta += bits == 64 ? dod : dod << (64 - bits) >> (64 - bits);
+			}
+			value += delta;
+			values[row] = value;
+		}
+	}
+
+	static void encodeDoubles(double[] values, int size, BitWriter out) {
+		if (size == 0)
+			return;
+		long previous = Double.doubleToRawLongBits(values[0]);
+		out.write(previous, 64);
+		int previousLeading = -1;
+		int previousTrailing = 0;
+		for (int row = 1; row < size; row++) {
+			final long bits = Double.doubleToRawLongBits(values[row]);
+			final long xor = bits ^ previous;
+			previous = bits;
+			if (xor == 0) {
+				out.write(0, 1);
+				continue;
+			}
+			final int leading = Math.min(Long.numberOfLeadingZeros(xor), MAX_LEADING);
+			final int trailing = Long.numberOfTrailingZeros(xor);
+			if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+				out.write(0b10, 2);
+				out.write(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+			} else {
+				final int significant = 64 - leading - trailing;
+				out.write(0b11, 2);
+				out.write(leading, LEADING_BITS);
+				out.write(significant - 1, SIGNIFICANT_BITS);
+				out.write(xor >>> trailing, significant);
+				previousLeading = leading;
+				previousTrailing = trailing;
+			}
+		}
+	}
+
+	static void decodeDoubles(BitReader in, double[] values, int size) {
+		if (size == 0)
+			return;
+		long bits = in.read(64);
+		values[0] = Double.longBitsToDouble(bits);
+		int leading = 0;
+		int trailing = 0;
+		for (int row = 1; row < size; row++) {
+			if (in.read(1) == 1) {
+				if (in.read(1) == 1) {
+					leading = (int) in.read(LEADING_BITS);
+					trailing = 64 - leading - ((int) in.read(SIGNIFICANT_BITS) + 1);
+				}
+				bits ^= in.read(64 - leading - trailing) << trailing;
+			}
+			values[row] = Double.longBitsToDouble(bits);
+		}
+	}
+
+	private static boolean fits(long value, int bits) {
+		return bits == 64 || value >= -(1L << (bits - 1)) && value < 1L << (bits - 1);
+	}
+
+	/**
+	 * Packs bits from the most significant one, a long at a time.
+	 */
+	static final class BitWriter {
+		private final ByteBuffer out;
+		private long bits;
+		private long accumulator;
+		private int used;
+
+		/**
+		 * @param out buffer to write to, or null to count bits only
+		 */
+		BitWriter(ByteBuffer out) {
+			this.out = out;
+		}
+
+		void write(long value, int count) {
+			bits += count;
+			if (out == null || count == 0)
+				return;
+			if (count < 64)
+				value &= (1L << count) - 1;
+			final int free = 64 - used;
+			if (count < free) {
+				accumulator |= value << (free - count);
+				used += count;
+				return;
+			}
+			out.putLong(accumulator | value >>> (count - free));
+			used = count - free;
+			accumulator = used == 0 ? 0 : value << (64 - used);
+		}
+
+		/**
+		 * Writes the last partly filled long.
+		 */
+		void flush() {
+			if (out != null && used > 0) {
+				out.putLong(accumulator);
+				accumulator = 0;
+				used = 0;
+			}
+		}
+
+		/**
+		 * @return length of the written bits rounded up to whole longs
+		 */
+		long getBytes() {
+			return (bits + 63) / 64 * 8;
+		}
+	}
+
+	static final class BitReader {
+		private final ByteBuffer in;
+		private long accumulator;
+		private int available;
+
+		BitReader(ByteBuffer in) {
+			this.in = in;
+		}
+
+		long read(int count) {
+			if (count == 0)
+				return 0;
+			if (count <= available) {
+				final long result = accumulator >>> (64 - count);
+				accumulator = count == 64 ? 0 : accumulator << count;
+				available -= count;
+				return result;
+			}
+			final long high = available == 0 ? 0 : accumulator >>> (64 - available);
+			final int rest = count - available;
+			final long next = in.getLong();
+			final long result = (rest == 64 ? 0 : high << rest) | next >>> (64 - rest);
+			accumulator = rest == 64 ? 0 : next << rest;
+			available = 64 - rest;
+			return result;
+		}
+	}
+
+}
@@ -0,0 +1,219 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.hybrid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.axibase.tsd.driver.jdbc.intf.IByteRegion;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.CommittedSequence;
+import com.axibase.tsd.driver.jdbc.strategies.SpillFile;
+import com.axibase.tsd.driver.jdbc.strategies.SpillManager;
+import com.axibase.tsd.driver.jdbc.util.BufferPool;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+
+/**
+ * Chain of fixed-size buffers holding the response while the reader keeps up. Consumed buffers are
+ * recycled; once the unread backlog would exceed the memory budget or the memory accountant refuses
+ * another buffer, the rest of the response is appended to a temporary file. Buffers go back to the driver pool when both the writer and the
+ * reader side are done with the chain.
+ */
+public class BufferChain implements IByteRegion {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(BufferChain.class);
+	static final int CHUNK_SIZE = 64 * 1024;
+	private final long budget;
+	private final String spillDirectory;
+	private final MemoryAccountant memory;
+	private final CommittedSequence sequence = new CommittedSequence();
+	private final Queue<Chunk> chunks = new ConcurrentLinkedQueue<>();
+	private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+	private final AtomicLong allocated = new AtomicLong();
+	private final AtomicInteger owners = new AtomicInteger(2);
+	private final Object spillMonitor = new Object();
+	private ByteBuffer scratch;
+	private volatile long spillStart = -1;
+	private volatile boolean closed;
+	private FileChannel spill;
+	private SpillFile spillFile;
+
+	public BufferChain(long budget) {
+		this(budget, null);
+	}
+
+	public BufferChain(long budget, String spillDirectory) {
+		this(budget, spillDirectory, MemoryAccountant.driver());
+	}
+
+	public BufferChain(long budget, String spillDirectory, MemoryAccountant memory) {
+		this.budget = Math.max(budget, CHUNK_SIZE);
+		this.spillDirectory = spillDirectory;
+		this.memory = memory;
+	}
+
+	/**
+	 * @return empty buffer appended to the chain at the position, or null if the budget is exhausted
+	 */
+	ByteBuffer nextChunk(long position) {
+		if (allocated.get() + CHUNK_SIZE > budget || !memory.tryReserve(CHUNK_SIZE))
+			return null;
+		ByteBuffer buffer = free.poll();
+		if (buffer == null)
+			buffer = BufferPool.acquire(CHUNK_SIZE);
+		buffer.clear();
+		allocated.addAndGet(CHUNK_SIZE);
+		chunks.add(new Chunk(position, buffer));
+		return buffer;
+	}
+
+	/**
+	 * Opens the spill file on the writer thread. Does nothing if the reader has already closed the
+	 * chain, so that a file created concurrently with {@link #close()} is never left open.
+	 */
+	void startSpill(long position) throws IOException {
+		synchronized (spillMonitor) {
+			if (closed)
+				return;
+			final SpillFile file = SpillManager.create(spillDirectory, this);
+			try {
+				spill = FileChannel.open(file.getPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+			spillFile = file;
+			spillStart = position;
+		}
+		if (logger.isDebugEnabled())
+			logger.debug("[startSpill] {} at {}", spillFile.getPath(), position);
+	}
+
+	void spill(ByteBuffer buffer, long position) throws IOException {
+		final long offset = position - spillStart;
+		try {
+			while (buffer.hasRemaining()) {
+				spill.write(buffer, offset + buffer.position());
+			}
+		} catch (ClosedChannelException e) {
+			if (!closed)
+				throw e;
+		}
+	}
+
+	long getSpillStart() {
+		return spillStart;
+	}
+
+	@Override
+	public ByteBuffer read(long position, long available, int length) throws IOException {
+		final long spillAt = spillStart;
+		if (spillAt < 0 || position < spillAt) {
+			Chunk head;
+			while ((head = chunks.peek()) != null && position >= head.start + CHUNK_SIZE) {
+				chunks.poll();
+				release(head.buffer);
+			}
+			if (head == null)
+				throw new IOException("No buffer at position " + position);
+			long end = Math.min(Math.min(available, position + length), head.start + CHUNK_SIZE);
+			if (spillAt >= 0)
+				end = Math.min(end, spillAt);
+			final ByteBuffer buffer = head.buffer.duplicate();
+			buffer.limit((int) (end - head.start));
+			buffer.position((int) (position - head.start));
+			return buffer;
+		}
+		if (scratch == null)
+			scratch = BufferPool.acquire(CHUNK_SIZE);
+		scratch.clear();
+		scratch.limit((int) Math.min(Math.min(length, scratch.capacity()), available - position));
+		final long offset = position - spillAt;
+		while (scratch.hasRemaining()) {
+			if (spill.read(scratch, offset + scratch.position()) < 0)
+				break;
+		}
+		scratch.flip();
+		return scratch;
+	}
+
+	private void release(ByteBuffer buffer) {
+		allocated.addAndGet(-CHUNK_SIZE);
+		memory.release(CHUNK_SIZE);
+		free.add(buffer);
+	}
+
+	void writerDone() {
+		if (owners.decrementAndGet() == 0)
+			recycle();
+	}
+
+	private void recycle() {
+		Chunk chunk;
+		while ((chunk = chunks.poll()) != null) {
+			BufferPool.release(chunk.buffer);
+		}
+		ByteBuffer buffer;
+		while ((buffer = free.poll()) != null) {
+			BufferPool.release(buffer);
+		}
+		BufferPool.release(scratch);
+		scratch = null;
+		memory.release(allocated.getAndSet(0));
+	}
+
+	@Override
+	public CommittedSequence getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (spillMonitor) {
+			if (closed)
+				return;
+			closed = true;
+		}
+		sequence.finish();
+		if (owners.decrementAndGet() == 0)
+			recycle();
+		if (spill != null)
+			spill.close();
+		if (spillFile != null)
+			spillFile.close();
+	}
+
+	private static final class Chunk {
+		private final long start;
+		private final ByteBuffer buffer;
+
+		Chunk(long start, ByteBuffer buffer) {
+			this.start = start;
+			this.buffer = buffer;
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.hybrid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.util.BufferPool;
+
+public class BufferChainWriter implements Callable<Long> {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(BufferChainWriter.class);
+	private final ReadableByteChannel inputChannel;
+	private final BufferChain chain;
+	private final StrategyStatus status;
+
+	public BufferChainWriter(final ReadableByteChannel inputChannel, final BufferChain chain,
+			final StrategyStatus status) {
+		this.inputChannel = inputChannel;
+		this.chain = chain;
+		this.status = status;
+	}
+
+	@Override
+	public Long call() throws IOException {
+		long position = 0;
+		ByteBuffer target = null;
+		ByteBuffer spillBuffer = null;
+		try {
+			while (!chain.isClosed()) {
+				final int received;
+				if (spillBuffer == null) {
+					if (target == null || !target.hasRemaining()) {
+						target = chain.nextChunk(position);
+						if (target == null) {
+							chain.startSpill(position);
+							spillBuffer = BufferPool.acquire(BufferChain.CHUNK_SIZE);
+							continue;
+						}
+					}
+					received = inputChannel.read(target);
+				} else {
+					spillBuffer.clear();
+					received = inputChannel.read(spillBuffer);
+					if (received > 0) {
+						spillBuffer.flip();
+						chain.spill(spillBuffer, position);
+					}
+				}
+				if (received < 0)
+					break;
+				if (received == 0)
+					continue;
+				position += received;
+				chain.getSequence().publish(position);
+				releaseLatch();
+			}
+		} finally {
+			BufferPool.release(spillBuffer);
+			chain.getSequence().finish();
+			chain.writerDone();
+			releaseLatch();
+			inputChannel.close();
+			if (logger.isDebugEnabled())
+				logger.debug("[call] received: {} spilled from: {}", position, chain.getSpillStart());
+		}
+		return position;
+	}
+
+	private void releaseLatch() {
+		final CountDownLatch syncLatch = status.getSyncLatch();
+		if (syncLatch.getCount() != 0)
+			syncLatch.countDown();
+	}
+
+}
@@ -0,0 +1,148 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.hybrid;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.ext.AtsdException;
+import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.RegionIterator;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.util.DriverExecutor;
+
+/**
+ * Drains the response into an in-memory buffer chain bounded by the memory budget and spills the
+ * remainder to a temporary file only if the reader falls behind by more than the budget.
+ */
+public class HybridStoreStrategy implements IStoreStrategy {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(HybridStoreStrategy.class);
+
+	private final StatementContext context;
+	private final StrategyStatus status;
+	private final long memoryBudget;
+	private final String spillDirectory;
+	private BufferChain chain;
+	private RegionIterator iterator;
+	private Future<?> taskResult;
+	private long position;
+
+	public HybridStoreStrategy(StatementContext context) {
+		this(context, ContentDescription.DEFAULT_MEMORY_BUDGET, null);
+	}
+
+	public HybridStoreStrategy(StatementContext context, ContentDescription cd) {
+		this(context, cd.getMemoryBudget(), cd.getSpillDirectory());
+	}
+
+	private HybridStoreStrategy(StatementContext context, long memoryBudget, String spillDirectory) {
+		this.context = context;
+		this.memoryBudget = memoryBudget;
+		this.spillDirectory = spillDirectory;
+		this.status = new StrategyStatus();
+		this.status.setInProgress(true);
+	}
+
+	@Override
+	public void close() throws Exception {
+		status.setInProgress(false);
+		if (taskResult != null)
+			taskResult.cancel(true);
+		if (chain != null)
+			chain.close();
+		if (logger.isDebugEnabled())
+			logger.debug("[close] processed " + status.getProcessed());
+	}
+
+	@Override
+	public String[] openToRead() throws IOException {
+		try {
+			status.getSyncLatch().await();
+		} catch (InterruptedException e) {
+			if (logger.isDebugEnabled())
+				logger.debug("[openToRead] " + e.getMessage());
+		}
+		iterator = new RegionIterator(chain, context, status);
+		return iterator.next();
+	}
+
+	@Override
+	public List<String[]> fetch(long from, int limit) throws AtsdException, IOException {
+		final List<String[]> list = new ArrayList<>();
+		final long maxRowCount = context.getMaxRowCount();
+		final long size = maxRowCount > 0 ? Math.min(limit, maxRowCount - from) : limit;
+		final Iterator<String[]> iterator = getIterator();
+		while (list.size() < size && iterator.hasNext()) {
+			final String[] next = iterator.next();
+			if (next == null) {
+				if (logger.isDebugEnabled())
+					logger.debug("[fetch] no more");
+				break;
+			}
+			if (position < from) {
+				position++;
+				continue;
+			}
+			list.add(next);
+		}
+		position = from + list.size();
+		status.increaseProcessed(list.size());
+		if (maxRowCount > 0 && position >= maxRowCount && status.isInProgress()) {
+			if (logger.isDebugEnabled())
+				logger.debug("[fetch] max row count is reached: " + maxRowCount);
+			status.setInProgress(false);
+			if (taskResult != null)
+				taskResult.cancel(true);
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	@Override
+	public Iterator<String[]> getIterator() throws AtsdException {
+		if (iterator == null)
+			throw new AtsdException("Content has not opened yet");
+		return iterator;
+	}
+
+	@Override
+	public void store(InputStream is) throws IOException {
+		if (logger.isDebugEnabled())
+			logger.debug("[store] memory budget: " + memoryBudget);
+		chain = new BufferChain(memoryBudget, spillDirectory, context.getMemory());
+		try {
+			taskResult = DriverExecutor.submit(new BufferChainWriter(Channels.newChannel(is), chain, status));
+		} catch (final RejectedExecutionException e) {
+			chain.close();
+			chain = null;
+			throw e;
+		}
+	}
+
+	@Override
+	public StatementContext getContext() {
+		return context;
+	}
+
+}
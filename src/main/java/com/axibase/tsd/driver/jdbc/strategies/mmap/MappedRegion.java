@@ -0,0 +1,133 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.mmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.axibase.tsd.driver.jdbc.intf.IByteRegion;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.CommittedSequence;
+import com.axibase.tsd.driver.jdbc.util.BufferCleaner;
+
+/**
+ * Growing file mapped in fixed-size segments. A single writer appends and publishes the committed
+ * length through a {@link CommittedSequence}, readers only access bytes below it, so no file locks
+ * are needed. When the writer finishes, the file is truncated to the committed length; segments are
+ * unmapped once both the writer has finished and the region is closed.
+ */
+public class MappedRegion implements IByteRegion {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(MappedRegion.class);
+	static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+	private final FileChannel channel;
+	private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+	private final CommittedSequence sequence = new CommittedSequence();
+	private final AtomicInteger owners = new AtomicInteger(2);
+	private volatile boolean closed;
+
+	public MappedRegion(Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+	}
+
+	/**
+	 * @return buffer over the remainder of the segment containing the position
+	 */
+	ByteBuffer writeBuffer(long position) throws IOException {
+		final int index = (int) (position / SEGMENT_SIZE);
+		while (segments.size() <= index) {
+			final long offset = (long) segments.size() * SEGMENT_SIZE;
+			segments.add(channel.map(MapMode.READ_WRITE, offset, SEGMENT_SIZE));
+			if (logger.isTraceEnabled())
+				logger.trace("[writeBuffer] mapped segment at " + offset);
+		}
+		final ByteBuffer buffer = segments.get(index).duplicate();
+		buffer.position((int) (position - (long) index * SEGMENT_SIZE));
+		return buffer;
+	}
+
+	/**
+	 * The returned buffer is valid until the region is closed, so it must not be used after
+	 * {@link #close()}.
+	 */
+	@Override
+	public ByteBuffer read(long position, long available, int length) throws IOException {
+		if (closed)
+			throw new IOException("Region is closed");
+		final int index = (int) (position / SEGMENT_SIZE);
+		final long segmentStart = (long) index * SEGMENT_SIZE;
+		final long end = Math.min(Math.min(available, position + length), segmentStart + SEGMENT_SIZE);
+		final ByteBuffer buffer = segments.get(index).duplicate();
+		buffer.limit((int) (end - segmentStart));
+		buffer.position((int) (position - segmentStart));
+		return buffer;
+	}
+
+	void commit(long length) {
+		sequence.publish(length);
+	}
+
+	/**
+	 * Called by the writer when it stops writing. Cuts the file down from the mapped segment size.
+	 */
+	void finish() {
+		sequence.finish();
+		try {
+			channel.truncate(sequence.getCommitted());
+		} catch (IOException e) {
+			// closed by the reader or mapped on Windows, the file is deleted on close anyway
+			if (logger.isDebugEnabled())
+				logger.debug("[finish] file is not truncated: " + e);
+		}
+		if (owners.decrementAndGet() == 0)
+			unmap();
+	}
+
+	private void unmap() {
+		for (MappedByteBuffer segment : segments) {
+			BufferCleaner.clean(segment);
+		}
+		segments.clear();
+	}
+
+	@Override
+	public CommittedSequence getSequence() {
+		return sequence;
+	}
+
+	@Override
+	public boolean isClosed() {
+		return closed;
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		if (closed)
+			return;
+		closed = true;
+		sequence.finish();
+		channel.close();
+		if (owners.decrementAndGet() == 0)
+			unmap();
+	}
+
+}
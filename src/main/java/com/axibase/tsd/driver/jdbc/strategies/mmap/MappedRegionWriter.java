@@ -0,0 +1,72 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.mmap;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+
+public class MappedRegionWriter implements Callable<Long> {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(MappedRegionWriter.class);
+	private final ReadableByteChannel inputChannel;
+	private final MappedRegion region;
+	private final StrategyStatus status;
+
+	public MappedRegionWriter(final ReadableByteChannel inputChannel, final MappedRegion region,
+			final StrategyStatus status) {
+		this.inputChannel = inputChannel;
+		this.region = region;
+		this.status = status;
+	}
+
+	@Override
+	public Long call() throws IOException {
+		long position = 0;
+		ByteBuffer target = null;
+		try {
+			while (!region.isClosed()) {
+				if (target == null || !target.hasRemaining())
+					target = region.writeBuffer(position);
+				final int received = inputChannel.read(target);
+				if (received < 0)
+					break;
+				if (received == 0)
+					continue;
+				position += received;
+				region.commit(position);
+				releaseLatch();
+			}
+		} finally {
+			region.finish();
+			releaseLatch();
+			inputChannel.close();
+			if (logger.isDebugEnabled())
+				logger.debug("[call] received: " + position);
+		}
+		return position;
+	}
+
+	private void releaseLatch() {
+		final CountDownLatch syncLatch = status.getSyncLatch();
+		if (syncLatch.getCount() != 0)
+			syncLatch.countDown();
+	}
+
+}
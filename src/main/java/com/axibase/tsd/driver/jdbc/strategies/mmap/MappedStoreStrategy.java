@@ -0,0 +1,154 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.mmap;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.ext.AtsdException;
+import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.RegionIterator;
+import com.axibase.tsd.driver.jdbc.strategies.SpillFile;
+import com.axibase.tsd.driver.jdbc.strategies.SpillManager;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.util.DriverExecutor;
+
+/**
+ * Spills the response into a memory-mapped temporary file. The reader parses straight from the
+ * mapped segments and blocks only while it has caught up with the writer.
+ */
+public class MappedStoreStrategy implements IStoreStrategy {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(MappedStoreStrategy.class);
+
+	private final StatementContext context;
+	private final StrategyStatus status;
+	private final String spillDirectory;
+	private MappedRegion region;
+	private RegionIterator iterator;
+	private Future<?> taskResult;
+	private SpillFile spill;
+	private long position;
+
+	public MappedStoreStrategy(StatementContext context) {
+		this(context, (String) null);
+	}
+
+	public MappedStoreStrategy(StatementContext context, ContentDescription cd) {
+		this(context, cd.getSpillDirectory());
+	}
+
+	private MappedStoreStrategy(StatementContext context, String spillDirectory) {
+		this.context = context;
+		this.spillDirectory = spillDirectory;
+		this.status = new StrategyStatus();
+		this.status.setInProgress(true);
+	}
+
+	@Override
+	public void close() throws Exception {
+		status.setInProgress(false);
+		if (taskResult != null)
+			taskResult.cancel(true);
+		if (region != null)
+			region.close();
+		if (spill != null)
+			spill.close();
+		if (logger.isDebugEnabled())
+			logger.debug("[close] processed " + status.getProcessed());
+	}
+
+	@Override
+	public String[] openToRead() throws IOException {
+		try {
+			status.getSyncLatch().await();
+		} catch (InterruptedException e) {
+			if (logger.isDebugEnabled())
+				logger.debug("[openToRead] " + e.getMessage());
+		}
+		iterator = new RegionIterator(region, context, status);
+		return iterator.next();
+	}
+
+	@Override
+	public List<String[]> fetch(long from, int limit) throws AtsdException, IOException {
+		final List<String[]> list = new ArrayList<>();
+		final long maxRowCount = context.getMaxRowCount();
+		final long size = maxRowCount > 0 ? Math.min(limit, maxRowCount - from) : limit;
+		final Iterator<String[]> iterator = getIterator();
+		while (list.size() < size && iterator.hasNext()) {
+			final String[] next = iterator.next();
+			if (next == null) {
+				if (logger.isDebugEnabled())
+					logger.debug("[fetch] no more");
+				break;
+			}
+			if (position < from) {
+				position++;
+				continue;
+			}
+			list.add(next);
+		}
+		position = from + list.size();
+		status.increaseProcessed(list.size());
+		if (maxRowCount > 0 && position >= maxRowCount && status.isInProgress()) {
+			if (logger.isDebugEnabled())
+				logger.debug("[fetch] max row count is reached: " + maxRowCount);
+			status.setInProgress(false);
+			if (taskResult != null)
+				taskResult.cancel(true);
+		}
+		return Collections.unmodifiableList(list);
+	}
+
+	@Override
+	public Iterator<String[]> getIterator() throws AtsdException {
+		if (iterator == null)
+			throw new AtsdException("File has not opened yet");
+		return iterator;
+	}
+
+	@Override
+	public void store(InputStream is) throws IOException {
+		spill = SpillManager.create(spillDirectory, this);
+		if (logger.isDebugEnabled())
+			logger.debug("[store] " + spill.getPath());
+		region = new MappedRegion(spill.getPath());
+		try {
+			taskResult = DriverExecutor.submit(new MappedRegionWriter(Channels.newChannel(is), region, status));
+		} catch (final RejectedExecutionException e) {
+			region.close();
+			region = null;
+			spill.close();
+			spill = null;
+			throw e;
+		}
+	}
+
+	@Override
+	public StatementContext getContext() {
+		return context;
+	}
+
+}
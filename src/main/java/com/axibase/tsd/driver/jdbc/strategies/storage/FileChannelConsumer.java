@@ -15,8 +15,8 @@
 package com.axibase.tsd.driver.jdbc.strategies.storage;
 
 import java.io.IOException;
-import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.Channel;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
 
 import com.axibase.tsd.driver.jdbc.content.StatementContext;
@@ -46,7 +46,7 @@ public class FileChannelConsumer implements IConsumer {
 
 	@Override
 	public String[] open(Channel channel) throws IOException {
-		AsynchronousFileChannel readChannel = (AsynchronousFileChannel) channel;
+		FileChannel readChannel = (FileChannel) channel;
 		iterator = new FileChannelIterator<String[]>(readChannel, context, status);
 		return iterator.next();
 	}
@@ -15,38 +15,38 @@
 package com.axibase.tsd.driver.jdbc.strategies.storage;
 
 import java.io.IOException;
-import java.nio.channels.AsynchronousFileChannel;
-import java.nio.channels.FileLock;
-import java.nio.channels.OverlappingFileLockException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Iterator;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.concurrent.locks.ReentrantLock;
 
 import com.axibase.tsd.driver.jdbc.content.StatementContext;
 import com.axibase.tsd.driver.jdbc.ext.AtsdException;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.CommittedSequence;
 import com.axibase.tsd.driver.jdbc.strategies.IteratorData;
 import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
 
 public class FileChannelIterator<T> implements Iterator<String[]>, AutoCloseable {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(FileChannelIterator.class);
-	private static final int PART_LENGTH = 1 * 1024 * 1024;
 	private final ReentrantLock lock = new ReentrantLock();
-	private final AsynchronousFileChannel readChannel;
+	private final FileChannel readChannel;
 	private final StrategyStatus status;
+	private final CommittedSequence sequence;
 	private final IteratorData data;
+	private boolean completed;
 
-	public FileChannelIterator(final AsynchronousFileChannel readChannel, final StatementContext context,
+	public FileChannelIterator(final FileChannel readChannel, final StatementContext context,
 			final StrategyStatus status) {
 		this.readChannel = readChannel;
 		this.status = status;
+		this.sequence = status.getSequence();
 		data = new IteratorData(context);
 	}
 
 	@Override
 	public boolean hasNext() {
-		if (status.isInProgress() || data.getPosition() < status.getCurrentSize())
+		if (status.isInProgress() || data.getPosition() < sequence.getCommitted())
 			return true;
 		if (logger.isDebugEnabled())
 			logger.debug("[hasNext->false] comments: " + data.getComments().length());
@@ -59,77 +59,47 @@ public class FileChannelIterator<T> implements Iterator<String[]>, AutoCloseable
 		if (found != null) {
 			return found;
 		}
-		while (true) {
-			if (!status.isInProgress() && status.getCurrentSize() <= data.getPosition()) {
+		while (!completed) {
+			final long position = data.getPosition();
+			final long available;
+			try {
+				available = sequence.await(position);
+			} catch (InterruptedException e) {
 				if (logger.isDebugEnabled())
-					logger.debug("[next] stop iterating with " + status.isInProgress() + ' ' + status.getCurrentSize()
-							+ ' ' + data.getPosition());
-				return null;
+					logger.debug("[next] " + e.getMessage());
+				Thread.currentThread().interrupt();
+				return complete();
 			}
-			while (status.getLockPosition() <= data.getPosition()) {
+			if (available <= position) {
 				if (logger.isDebugEnabled())
-					logger.debug("[next] waiting for the next section: " + data.getPosition());
-				try {
-					Thread.sleep(100);
-				} catch (InterruptedException e) {
-					logger.error(e.getMessage(), e);
-				}
-				if (!status.isInProgress()) {
-					break;
-				}
-			}
-			if (logger.isTraceEnabled())
-				logger.trace("[next] try read lock: " + data.getPosition());
-			Future<FileLock> fileLock;
-			try {
-				fileLock = readChannel.lock(data.getPosition(), PART_LENGTH, true);
-				while (!fileLock.isDone()) {
-					try {
-						Thread.sleep(1);
-					} catch (InterruptedException e) {
-						logger.error(e.getMessage(), e);
-					}
-				}
-			} catch (OverlappingFileLockException e) {
-				if (logger.isTraceEnabled())
-					logger.trace("[next] overlapped");
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e1) {
-					logger.error(e1.getMessage(), e1);
-				}
-				continue;
-			}
-			if (logger.isTraceEnabled())
-				logger.trace("[next] locked on read: " + data.getPosition());
-			Future<Integer> operation = readChannel.read(data.getBuffer(), data.getPosition());
-			while (!operation.isDone()) {
-				try {
-					Thread.sleep(1);
-				} catch (InterruptedException e) {
-					logger.error(e.getMessage(), e);
-				}
+					logger.debug("[next] stop iterating with " + status.isInProgress() + ' ' + available + ' '
+							+ position);
+				return complete();
 			}
+			final ByteBuffer buffer = data.getBuffer();
+			buffer.limit((int) Math.min(buffer.capacity(), available - position));
+			final int read;
 			lock.lock();
 			try {
-				if (operation.get() == -1) {
-					data.processComments();
-					status.setInProgress(false);
-					return data.getNext(true);
-				}
-			} catch (ExecutionException | InterruptedException | IOException e) {
+				read = readChannel.read(buffer, position);
+			} catch (IOException e) {
 				if (logger.isDebugEnabled())
-					logger.debug("[next] ExecutionInterruptedException: " + e.getMessage());
-				return data.getNext(true);
+					logger.debug("[next] " + e);
+				buffer.clear();
+				return complete();
 			} finally {
-				releaseFileLock(fileLock);
 				lock.unlock();
 			}
+			if (read < 0) {
+				buffer.clear();
+				return complete();
+			}
 			try {
 				data.bufferOperations();
 			} catch (final AtsdException e) {
 				if (logger.isDebugEnabled())
 					logger.debug("[bufferOperations] " + e.getMessage());
+				completed = true;
 				status.setInProgress(false);
 				return null;
 			}
@@ -137,6 +107,7 @@ public class FileChannelIterator<T> implements Iterator<String[]>, AutoCloseable
 			if (found != null)
 				return found;
 		}
+		return null;
 	}
 
 	@Override
@@ -150,6 +121,7 @@ public class FileChannelIterator<T> implements Iterator<String[]>, AutoCloseable
 			lock.lock();
 			try {
 				readChannel.close();
+				data.close();
 				if (logger.isTraceEnabled())
 					logger.trace("[close]");
 			} finally {
@@ -158,19 +130,16 @@ public class FileChannelIterator<T> implements Iterator<String[]>, AutoCloseable
 		}
 	}
 
-	private void releaseFileLock(final Future<FileLock> fileLock) {
-		if (fileLock == null)
-			return;
+	private String[] complete() {
+		completed = true;
 		try {
-			final FileLock lock = fileLock.get();
-			lock.release();
-			lock.close();
-		} catch (final IOException | InterruptedException | ExecutionException e) {
+			data.processComments();
+		} catch (final IOException e) {
 			if (logger.isDebugEnabled())
-				logger.debug("[releaseFileLock] " + e.getMessage());
-		} finally {
-			fileLock.cancel(true);
+				logger.debug("[complete] " + e.getMessage());
 		}
+		status.setInProgress(false);
+		return data.getNext(true);
 	}
 
 }
\ No newline at end of file
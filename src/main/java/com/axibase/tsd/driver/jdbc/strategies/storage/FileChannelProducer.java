@@ -15,36 +15,39 @@
 package com.axibase.tsd.driver.jdbc.strategies.storage;
 
 import java.io.IOException;
-import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
 import com.axibase.tsd.driver.jdbc.intf.IProducer;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.SpillFile;
 import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.util.DriverExecutor;
 
 public class FileChannelProducer implements IProducer {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(FileChannelProducer.class);
+	private final StatementContext context;
 	private final StrategyStatus status;
-	private AsynchronousFileChannel writeChannel;
+	private final SpillFile spill;
+	private FileChannel writeChannel;
 	private Future<Long> taskResult;
-	private ExecutorService execIn;
 
-
-	public FileChannelProducer(final StrategyStatus status) {
+	public FileChannelProducer(final StatementContext context, final StrategyStatus status, final SpillFile spill) {
+		this.context = context;
 		this.status = status;
+		this.spill = spill;
 	}
 
 	@Override
 	public void close() throws IOException {
-		if (taskResult != null && (!taskResult.isDone() || !taskResult.isCancelled()))
+		status.getSequence().finish();
+		if (taskResult != null && !taskResult.isDone())
 			taskResult.cancel(true);
-		if (execIn != null && !execIn.isShutdown())
-			execIn.shutdownNow();
 		if (writeChannel != null)
 			writeChannel.close();
 		if (logger.isDebugEnabled()) {
@@ -54,13 +57,18 @@ public class FileChannelProducer implements IProducer {
 
 	@Override
 	public void produce(Path tmp, ReadableByteChannel inputChannel) throws IOException {
-		writeChannel = AsynchronousFileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+		writeChannel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
 		if (logger.isDebugEnabled()) {
 			logger.debug("[produce] {} -> {}", tmp, writeChannel.isOpen());
 		}
-		FileChannelWriter writer = new FileChannelWriter(inputChannel, writeChannel, status);
-		execIn = Executors.newSingleThreadExecutor();
-		taskResult = execIn.submit(writer);
+		FileChannelWriter writer = new FileChannelWriter(inputChannel, writeChannel, status, spill, context);
+		try {
+			taskResult = DriverExecutor.submit(writer);
+		} catch (final RejectedExecutionException e) {
+			writeChannel.close();
+			writeChannel = null;
+			throw e;
+		}
 	}
 
 }
@@ -15,98 +15,121 @@
 package com.axibase.tsd.driver.jdbc.strategies.storage;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.ByteBuffer;
-import java.nio.channels.AsynchronousFileChannel;
-import java.nio.channels.FileLock;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.sql.SQLException;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 
-import com.axibase.tsd.driver.jdbc.ext.AtsdException;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.strategies.CommittedSequence;
+import com.axibase.tsd.driver.jdbc.strategies.SpillFile;
+import com.axibase.tsd.driver.jdbc.strategies.SpillManager;
 import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.util.BufferPool;
 
 public class FileChannelWriter implements Callable<Long> {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(FileChannelWriter.class);
 
-	private static final int PART_LENGTH = 1 * 1024 * 1024;
+	private static final int PUBLISH_STEP = 1 * 1024 * 1024;
+	private static final int BUFFER_SIZE = 256 * 1024;
+	/** The header and the first row. */
+	private static final int FIRST_LINES = 2;
 	private final ReadableByteChannel inputChannel;
-	private final AsynchronousFileChannel writeChannel;
+	private final FileChannel writeChannel;
 	private final StrategyStatus status;
-	private final ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+	private final SpillFile spill;
+	private final StatementContext context;
 	private long position;
-	private long receivedBytes;
-	private long nextPart = PART_LENGTH;
 
-	public FileChannelWriter(final ReadableByteChannel inputChannel, final AsynchronousFileChannel writeChannel,
+	public FileChannelWriter(final ReadableByteChannel inputChannel, final FileChannel writeChannel,
 			final StrategyStatus status) {
+		this(inputChannel, writeChannel, status, null, null);
+	}
+
+	/**
+	 * @param spill file to reserve quota for as it grows, or null to write without a quota
+	 */
+	public FileChannelWriter(final ReadableByteChannel inputChannel, final FileChannel writeChannel,
+			final StrategyStatus status, final SpillFile spill, final StatementContext context) {
 		this.inputChannel = inputChannel;
 		this.writeChannel = writeChannel;
 		this.status = status;
-		this.status.setLockSize(PART_LENGTH);
+		this.spill = spill;
+		this.context = context;
 	}
 
 	@Override
-	public Long call() throws IOException, AtsdException {
+	public Long call() throws IOException {
 		if (logger.isTraceEnabled())
 			logger.trace("[Writer->call] " + writeChannel.size());
-		FileLock fileLock = getFileLock(position);
+		final CommittedSequence sequence = status.getSequence();
+		final ByteBuffer buffer = BufferPool.acquire(BUFFER_SIZE);
+		long published = 0;
+		int lines = 0;
 		try {
-			while ((receivedBytes = inputChannel.read(buffer)) >= 0 || buffer.position() != 0) {
+			while (inputChannel.read(buffer) >= 0) {
+				// a partly filled buffer means the response is slower than the disk, so hand over what we have
+				final boolean stalled = buffer.hasRemaining();
 				buffer.flip();
-				Future<Integer> lastWrite = writeChannel.write(buffer, position);
-				position += receivedBytes;
-				if (position > nextPart) {
-					releaseFileLock(fileLock);
+				if (!reserve(position + buffer.remaining()))
+					break;
+				if (lines < FIRST_LINES)
+					lines += countLines(buffer);
+				while (buffer.hasRemaining()) {
+					position += writeChannel.write(buffer, position);
+				}
+				buffer.clear();
+				// the first rows are handed over as soon as they are on disk
+				final boolean firstRows = published == 0 && lines >= FIRST_LINES;
+				if (stalled || firstRows || position - published >= PUBLISH_STEP) {
+					sequence.publish(position);
+					published = position;
 					releaseLatch();
-					fileLock = getFileLock(position);
-					nextPart = position + PART_LENGTH;
 				}
-				if (lastWrite != null)
-					try {
-						lastWrite.get();
-					} catch (final InterruptedException | ExecutionException e) {
-						logger.error(e.getMessage(), e);
-						throw new AtsdException(e.getMessage());
-					}
-				buffer.compact();
 			}
 		} finally {
-			status.setLockPosition(Long.MAX_VALUE);
-			releaseFileLock(fileLock);
+			BufferPool.release(buffer);
+			sequence.publish(position);
+			sequence.finish();
 			releaseLatch();
 			if (logger.isTraceEnabled())
-				logger.trace("[Writer->call] File size: " + writeChannel.size());
+				logger.trace("[Writer->call] File size: " + position);
 			writeChannel.close();
 			inputChannel.close();
 		}
 		return position;
 	}
 
-	private void releaseFileLock(final FileLock fileLock) throws IOException {
-		if (fileLock != null) {
-			fileLock.release();
-			fileLock.close();
+	private static int countLines(ByteBuffer buffer) {
+		int count = 0;
+		for (int i = buffer.position(); i < buffer.limit(); i++) {
+			if (buffer.get(i) == '\n')
+				count++;
 		}
+		return count;
 	}
 
-	private FileLock getFileLock(long position) throws AtsdException {
-		if (logger.isTraceEnabled())
-			logger.trace("Try write lock: " + position);
-		status.setLockPosition(position);
-		final Future<FileLock> lock = writeChannel.lock(position, PART_LENGTH, false);
-		FileLock fileLock = null;
+	private boolean reserve(long length) throws InterruptedIOException {
+		if (spill == null)
+			return true;
 		try {
-			fileLock = lock.get();
-			if (logger.isTraceEnabled())
-				logger.trace("[Writer->call] Locked " + position);
-		} catch (final InterruptedException | ExecutionException e) {
-			logger.error(e.getMessage(), e);
-			throw new AtsdException(e.getMessage());
+			if (spill.reserve(length, SpillManager.BACKPRESSURE_TIMEOUT_MILLIS))
+				return true;
+		} catch (InterruptedException e) {
+			throw new InterruptedIOException(e.getMessage());
 		}
-		return fileLock;
+		if (spill.isClosed())
+			return false;
+		final String message = "Spill quota of " + SpillManager.getQuota() + " bytes is exhausted after " + position
+				+ " bytes";
+		logger.error(message);
+		if (context != null)
+			context.addException(new SQLException(message));
+		return false;
 	}
 
 	private void releaseLatch() {
@@ -114,4 +137,4 @@ public class FileChannelWriter implements Callable<Long> {
 		if (syncLatch.getCount() != 0)
 			syncLatch.countDown();
 	}
-}
\ No newline at end of file
+}
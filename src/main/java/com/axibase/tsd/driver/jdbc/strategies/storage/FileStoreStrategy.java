@@ -14,43 +14,62 @@
 */
 package com.axibase.tsd.driver.jdbc.strategies.storage;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.nio.channels.AsynchronousFileChannel;
 import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.GZIPInputStream;
 
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
 import com.axibase.tsd.driver.jdbc.content.StatementContext;
 import com.axibase.tsd.driver.jdbc.ext.AtsdException;
 import com.axibase.tsd.driver.jdbc.intf.IConsumer;
 import com.axibase.tsd.driver.jdbc.intf.IProducer;
 import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
 import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.protocol.EncodedInputStream;
+import com.axibase.tsd.driver.jdbc.strategies.SpillFile;
+import com.axibase.tsd.driver.jdbc.strategies.SpillManager;
 import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.strategies.stream.KeepAliveConsumer;
 
 public class FileStoreStrategy implements IStoreStrategy {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(FileStoreStrategy.class);
-	private static final String TMP_FILE_PREFIX = "atsd-driver";
 
-	private final IProducer producer;
-	private final IConsumer consumer;
+	private final StatementContext context;
 	private final StrategyStatus status;
-	private Path tmp;
+	private final boolean compressSpill;
+	private final String spillDirectory;
+	private IConsumer consumer;
+	private IProducer producer;
+	private SpillFile spill;
+	private ReadableByteChannel streamChannel;
+	private boolean compressed;
 	private long position;
 
 	public FileStoreStrategy(StatementContext context) {
+		this(context, false, null);
+	}
+
+	public FileStoreStrategy(StatementContext context, ContentDescription cd) {
+		this(context, cd.isSpillCompressed(), cd.getSpillDirectory());
+	}
+
+	private FileStoreStrategy(StatementContext context, boolean compressSpill, String spillDirectory) {
+		this.context = context;
+		this.compressSpill = compressSpill;
+		this.spillDirectory = spillDirectory;
 		status = new StrategyStatus();
 		status.setInProgress(true);
 		consumer = new FileChannelConsumer(context, status);
-		producer = new FileChannelProducer(status);
 	}
 
 	@Override
@@ -62,14 +81,10 @@ public class FileStoreStrategy implements IStoreStrategy {
 			consumer.close();
 		if (producer != null)
 			producer.close();
-		if (tmp != null) {
-			final File file = tmp.toFile();
-			if (file.exists()) {
-				boolean deleted = file.delete();
-				if (logger.isDebugEnabled())
-					logger.debug("[close] File {} is deleted {} ", file.toString(), deleted);
-			}
-		}
+		if (streamChannel != null)
+			streamChannel.close();
+		if (spill != null)
+			spill.close();
 		if (logger.isDebugEnabled())
 			logger.debug("[close] processed " + status.getProcessed());
 	}
@@ -84,17 +99,29 @@ public class FileStoreStrategy implements IStoreStrategy {
 			if (logger.isDebugEnabled())
 				logger.debug("[openToRead] " + e.getMessage());
 		}
-		AsynchronousFileChannel readChannel = AsynchronousFileChannel.open(tmp, StandardOpenOption.READ);
+		if (streamChannel != null)
+			return consumer.open(streamChannel);
+		FileChannel readChannel = FileChannel.open(spill.getPath(), StandardOpenOption.READ);
 		if (logger.isDebugEnabled())
-			logger.debug("[openToRead] {} -> {}", tmp.toAbsolutePath(), readChannel.isOpen());
-		return consumer.open(readChannel);
+			logger.debug("[openToRead] {} -> {}, compressed {}", spill.getPath(), readChannel.isOpen(), compressed);
+		if (!compressed)
+			return consumer.open(readChannel);
+		final SpillInputStream spill = new SpillInputStream(readChannel, status.getSequence());
+		try {
+			return consumer.open(Channels.newChannel(new GZIPInputStream(spill)));
+		} catch (IOException e) {
+			spill.close();
+			throw e;
+		}
 	}
 
 	@Override
 	public List<String[]> fetch(long from, int limit) throws AtsdException, IOException {
 		final List<String[]> list = new ArrayList<>();
+		final long maxRowCount = getContext().getMaxRowCount();
+		final long size = maxRowCount > 0 ? Math.min(limit, maxRowCount - from) : limit;
 		final Iterator<String[]> iterator = consumer.getIterator();
-		while (iterator.hasNext()) {
+		while (list.size() < size && iterator.hasNext()) {
 			final String[] next = iterator.next();
 			if (next == null) {
 				if (logger.isDebugEnabled())
@@ -108,8 +135,6 @@ public class FileStoreStrategy implements IStoreStrategy {
 				continue;
 			}
 			list.add(next);
-			if (list.size() >= limit)
-				break;
 		}
 		if (logger.isTraceEnabled())
 			logger.trace("[fetch] sublist size: " + list.size());
@@ -117,21 +142,70 @@ public class FileStoreStrategy implements IStoreStrategy {
 		if (logger.isTraceEnabled())
 			logger.trace("[fetch] updated position: " + position);
 		status.increaseProcessed(list.size());
+		if (maxRowCount > 0 && position >= maxRowCount && status.isInProgress()) {
+			if (logger.isDebugEnabled())
+				logger.debug("[fetch] max row count is reached: " + maxRowCount);
+			closeInput();
+		}
 		return Collections.unmodifiableList(list);
 	}
 
+	private void closeInput() throws IOException {
+		status.setInProgress(false);
+		if (producer != null)
+			producer.close();
+	}
+
+	@Override
+	public Iterator<String[]> getIterator() throws AtsdException {
+		return consumer.getIterator();
+	}
+
 	@Override
 	public void store(InputStream is) throws IOException {
-		final ReadableByteChannel inputChannel = Channels.newChannel(is);
-		tmp = Files.createTempFile(TMP_FILE_PREFIX, null);
+		spill = SpillManager.create(spillDirectory, this);
+		if (!spill.tryReserve()) {
+			logger.warn("Spill quota of {} bytes is exhausted, the response is streamed", SpillManager.getQuota());
+			stream(is);
+			return;
+		}
+		InputStream source = is;
+		if (compressSpill && is instanceof EncodedInputStream && ((EncodedInputStream) is).isGzipped()) {
+			// spill the body as received and inflate it on read
+			source = ((EncodedInputStream) is).detach();
+			compressed = true;
+			consumer = new KeepAliveConsumer(context, status);
+		}
+		final ReadableByteChannel inputChannel = Channels.newChannel(source);
 		if (logger.isDebugEnabled())
-			logger.debug("[store] " + tmp.toRealPath());
-		producer.produce(tmp, inputChannel);
+			logger.debug("[store] " + spill.getPath());
+		producer = new FileChannelProducer(context, status, spill);
+		try {
+			producer.produce(spill.getPath(), inputChannel);
+		} catch (final RejectedExecutionException e) {
+			logger.warn(e.getMessage() + ", the response is streamed");
+			producer = null;
+			stream(compressed ? new GZIPInputStream(source) : is);
+			compressed = false;
+		}
+	}
+
+	/**
+	 * Reads the response on the caller's thread instead of spilling it.
+	 */
+	private void stream(InputStream is) throws IOException {
+		spill.close();
+		spill = null;
+		consumer = new KeepAliveConsumer(context, status);
+		streamChannel = Channels.newChannel(is);
+		final CountDownLatch syncLatch = status.getSyncLatch();
+		if (syncLatch.getCount() != 0)
+			syncLatch.countDown();
 	}
 
 	@Override
 	public StatementContext getContext() {
-		return consumer != null ? consumer.getContext() : null;
+		return context;
 	}
 
 }
@@ -0,0 +1,74 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.axibase.tsd.driver.jdbc.strategies.CommittedSequence;
+
+/**
+ * Reads a spill file up to the committed length, blocking while the writer is behind.
+ */
+public class SpillInputStream extends InputStream {
+	private final FileChannel channel;
+	private final CommittedSequence sequence;
+	private long position;
+
+	public SpillInputStream(FileChannel channel, CommittedSequence sequence) {
+		this.channel = channel;
+		this.sequence = sequence;
+	}
+
+	@Override
+	public int read() throws IOException {
+		final byte[] one = new byte[1];
+		return read(one, 0, 1) == -1 ? -1 : one[0] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] b, int off, int len) throws IOException {
+		if (len == 0)
+			return 0;
+		final long committed;
+		try {
+			committed = sequence.await(position);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getMessage());
+		}
+		if (committed <= position)
+			return -1;
+		final ByteBuffer target = ByteBuffer.wrap(b, off, (int) Math.min(len, committed - position));
+		final int read = channel.read(target, position);
+		if (read > 0)
+			position += read;
+		return read;
+	}
+
+	@Override
+	public int available() {
+		return (int) Math.min(Integer.MAX_VALUE, Math.max(0, sequence.getCommitted() - position));
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
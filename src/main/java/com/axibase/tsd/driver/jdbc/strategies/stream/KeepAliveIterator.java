@@ -18,6 +18,7 @@ import java.io.IOException;
 import java.nio.channels.ReadableByteChannel;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.axibase.tsd.driver.jdbc.content.StatementContext;
 import com.axibase.tsd.driver.jdbc.ext.AtsdException;
@@ -27,6 +28,7 @@ import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
 
 public class KeepAliveIterator<T> implements Iterator<String[]>, AutoCloseable {
 	private static final LoggingFacade logger = LoggingFacade.getLogger(KeepAliveIterator.class);
+	private final ReentrantLock lock = new ReentrantLock();
 	private final ReadableByteChannel readChannel;
 	private final StrategyStatus status;
 	private final IteratorData data;
@@ -45,6 +47,15 @@ public class KeepAliveIterator<T> implements Iterator<String[]>, AutoCloseable {
 
 	@Override
 	public String[] next() {
+		lock.lock();
+		try {
+			return readNext();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private String[] readNext() {
 		String[] found = data.getNext(false);
 		if (found != null) {
 			return found;
@@ -95,6 +106,12 @@ public class KeepAliveIterator<T> implements Iterator<String[]>, AutoCloseable {
 	public void close() throws IOException {
 		if (readChannel != null)
 			readChannel.close();
+		lock.lock();
+		try {
+			data.close();
+		} finally {
+			lock.unlock();
+		}
 		if (logger.isTraceEnabled())
 			logger.trace("[closed]");
 	}
@@ -76,8 +76,10 @@ public class KeepAliveStrategy implements IStoreStrategy {
 	@Override
 	public List<String[]> fetch(long from, int limit) throws AtsdException, IOException {
 		final List<String[]> list = new ArrayList<>();
+		final long maxRowCount = getContext().getMaxRowCount();
+		final long size = maxRowCount > 0 ? Math.min(limit, maxRowCount - from) : limit;
 		final Iterator<String[]> iterator = consumer.getIterator();
-		while (iterator.hasNext()) {
+		while (list.size() < size && iterator.hasNext()) {
 			final String[] next = iterator.next();
 			if (next == null) {
 				if (logger.isDebugEnabled())
@@ -91,8 +93,6 @@ public class KeepAliveStrategy implements IStoreStrategy {
 				continue;
 			}
 			list.add(next);
-			if (list.size() >= limit)
-				break;
 		}
 		if (logger.isTraceEnabled())
 			logger.trace("[fetch] sublist size: " + list.size());
@@ -100,9 +100,26 @@ public class KeepAliveStrategy implements IStoreStrategy {
 		if (logger.isTraceEnabled())
 			logger.trace("[fetch] updated position: " + position);
 		status.increaseProcessed(list.size());
+		if (maxRowCount > 0 && position >= maxRowCount && status.isInProgress()) {
+			if (logger.isDebugEnabled())
+				logger.debug("[fetch] max row count is reached: " + maxRowCount);
+			closeInput();
+		}
 		return Collections.unmodifiableList(list);
 	}
 
+	private void closeInput() throws IOException {
+		status.setInProgress(false);
+		consumer.close();
+		if (is != null)
+			is.close();
+	}
+
+	@Override
+	public Iterator<String[]> getIterator() throws AtsdException {
+		return consumer.getIterator();
+	}
+
 	@Override
 	public void store(InputStream is) throws IOException {
 		if (logger.isTraceEnabled())
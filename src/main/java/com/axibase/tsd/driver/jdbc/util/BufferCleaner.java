@@ -0,0 +1,48 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Releases the memory of a direct or mapped buffer without waiting for garbage collection. Runs the
+ * buffer's sun.misc.Cleaner on Java 7 and 8; the Java 9+ variant of this class in
+ * META-INF/versions/9 uses Unsafe.invokeCleaner. The buffer must not be accessed afterwards.
+ */
+public final class BufferCleaner {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(BufferCleaner.class);
+
+	private BufferCleaner() {
+	}
+
+	public static void clean(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect())
+			return;
+		try {
+			final Method cleanerMethod = buffer.getClass().getMethod("cleaner");
+			cleanerMethod.setAccessible(true);
+			final Object cleaner = cleanerMethod.invoke(buffer);
+			if (cleaner != null)
+				cleaner.getClass().getMethod("clean").invoke(cleaner);
+		} catch (Exception e) {
+			if (logger.isDebugEnabled())
+				logger.debug("[clean] buffer is left to the garbage collector: " + e);
+		}
+	}
+
+}
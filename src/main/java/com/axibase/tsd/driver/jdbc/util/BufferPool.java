@@ -0,0 +1,172 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Driver-wide pool of direct buffers in power-of-two size classes from 4 KB to 4 MB. Channel reads
+ * and writes with direct buffers avoid the temporary direct copies the JDK makes for heap buffers.
+ * With debug logging enabled every acquired buffer is tracked, and buffers collected without being
+ * released are reported together with the stack trace of the acquisition.
+ */
+public final class BufferPool {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(BufferPool.class);
+	private static final int MIN_SHIFT = 12;
+	private static final int MAX_SHIFT = 22;
+	private static final long MAX_RETAINED_PER_CLASS = 8 * 1024 * 1024;
+	@SuppressWarnings("unchecked")
+	private static final Queue<ByteBuffer>[] POOLS = new Queue[MAX_SHIFT - MIN_SHIFT + 1];
+	private static final AtomicInteger[] RETAINED = new AtomicInteger[POOLS.length];
+	private static final AtomicLong ALLOCATED = new AtomicLong();
+	private static final AtomicLong REUSED = new AtomicLong();
+	private static final ReferenceQueue<ByteBuffer> COLLECTED = new ReferenceQueue<>();
+	private static final Map<Integer, List<Lease>> LEASES = new HashMap<>();
+
+	static {
+		for (int i = 0; i < POOLS.length; i++) {
+			POOLS[i] = new ConcurrentLinkedQueue<>();
+			RETAINED[i] = new AtomicInteger();
+		}
+	}
+
+	private BufferPool() {
+	}
+
+	/**
+	 * @return cleared direct buffer with capacity of at least the requested size
+	 */
+	public static ByteBuffer acquire(int size) {
+		final int index = classIndex(size);
+		ByteBuffer buffer = null;
+		if (index >= 0) {
+			buffer = POOLS[index].poll();
+			if (buffer != null) {
+				RETAINED[index].decrementAndGet();
+				REUSED.incrementAndGet();
+				buffer.clear();
+			}
+		}
+		if (buffer == null) {
+			buffer = ByteBuffer.allocateDirect(index >= 0 ? 1 << (index + MIN_SHIFT) : size);
+			ALLOCATED.incrementAndGet();
+		}
+		if (logger.isDebugEnabled())
+			track(buffer);
+		return buffer;
+	}
+
+	/**
+	 * Returns the buffer to the pool. Buffers not acquired from the pool, slices and duplicates are ignored.
+	 */
+	public static void release(ByteBuffer buffer) {
+		if (buffer == null || !buffer.isDirect())
+			return;
+		untrack(buffer);
+		final int capacity = buffer.capacity();
+		final int index = classIndex(capacity);
+		if (index < 0 || capacity != 1 << (index + MIN_SHIFT))
+			return;
+		if ((long) RETAINED[index].incrementAndGet() * capacity > MAX_RETAINED_PER_CLASS) {
+			RETAINED[index].decrementAndGet();
+			return;
+		}
+		POOLS[index].add(buffer);
+	}
+
+	public static long getAllocated() {
+		return ALLOCATED.get();
+	}
+
+	public static long getReused() {
+		return REUSED.get();
+	}
+
+	static int classIndex(int size) {
+		if (size > 1 << MAX_SHIFT)
+			return -1;
+		final int shift = Math.max(MIN_SHIFT, 32 - Integer.numberOfLeadingZeros(Math.max(size, 1) - 1));
+		return shift - MIN_SHIFT;
+	}
+
+	private static synchronized void track(ByteBuffer buffer) {
+		reportLeaks();
+		final Lease lease = new Lease(buffer, COLLECTED);
+		List<Lease> list = LEASES.get(lease.hash);
+		if (list == null) {
+			list = new ArrayList<>(1);
+			LEASES.put(lease.hash, list);
+		}
+		list.add(lease);
+	}
+
+	private static synchronized void untrack(ByteBuffer buffer) {
+		if (LEASES.isEmpty())
+			return;
+		final int hash = System.identityHashCode(buffer);
+		final List<Lease> list = LEASES.get(hash);
+		if (list == null)
+			return;
+		for (Iterator<Lease> iterator = list.iterator(); iterator.hasNext();) {
+			if (iterator.next().get() == buffer) {
+				iterator.remove();
+				break;
+			}
+		}
+		if (list.isEmpty())
+			LEASES.remove(hash);
+	}
+
+	private static void reportLeaks() {
+		Reference<? extends ByteBuffer> reference;
+		while ((reference = COLLECTED.poll()) != null) {
+			final Lease lease = (Lease) reference;
+			final List<Lease> list = LEASES.get(lease.hash);
+			if (list == null || !list.remove(lease))
+				continue;
+			if (list.isEmpty())
+				LEASES.remove(lease.hash);
+			logger.error("Buffer of " + lease.capacity + " bytes was not released to the pool", lease.origin);
+		}
+	}
+
+	private static final class Lease extends WeakReference<ByteBuffer> {
+		private final int hash;
+		private final int capacity;
+		private final Throwable origin;
+
+		Lease(ByteBuffer buffer, ReferenceQueue<ByteBuffer> queue) {
+			super(buffer, queue);
+			this.hash = System.identityHashCode(buffer);
+			this.capacity = buffer.capacity();
+			this.origin = new Throwable("Acquired here");
+		}
+	}
+
+}
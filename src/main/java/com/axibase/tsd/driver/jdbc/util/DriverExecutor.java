@@ -0,0 +1,144 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Driver-wide executor for background work such as spill writers. Threads are daemons named
+ * {@code atsd-driver-N}, the pool size is taken from -Daxibase.tsd.driver.jdbc.threads.
+ * Tasks are stopped with {@link Future#cancel(boolean)} instead of shutting the executor down.
+ * When every pool thread is busy, up to as many tasks as there are threads wait in a queue. When the queue is
+ * full as well, the submitting thread waits up to {@link #OFFER_TIMEOUT_MILLIS} for room and then gets a
+ * RejectedExecutionException; store strategies then stream the response instead of spilling it.
+ */
+public final class DriverExecutor {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(DriverExecutor.class);
+	static final String THREADS_PROPERTY = "axibase.tsd.driver.jdbc.threads";
+	private static final String THREAD_PREFIX = "atsd-driver-";
+	public static final long OFFER_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(5);
+	private static final int SIZE = poolSize();
+	private static final AtomicLong rejected = new AtomicLong();
+	private static final ExecutorService EXECUTOR = DriverThreads.newExecutor(THREAD_PREFIX, SIZE, SIZE,
+			new RejectedExecutionHandler() {
+				@Override
+				public void rejectedExecution(Runnable task, ThreadPoolExecutor executor) {
+					boolean queued = false;
+					try {
+						queued = !executor.isShutdown()
+								&& executor.getQueue().offer(task, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+					if (!queued) {
+						rejected.incrementAndGet();
+						throw new RejectedExecutionException(String.format(
+								"All %d driver threads are busy and %d tasks are queued", SIZE, SIZE));
+					}
+				}
+			});
+	private static final AtomicLong submitted = new AtomicLong();
+	private static final AtomicLong completed = new AtomicLong();
+	private static final AtomicLong failed = new AtomicLong();
+	private static final AtomicInteger active = new AtomicInteger();
+
+	private DriverExecutor() {
+	}
+
+	/**
+	 * @throws RejectedExecutionException if the pool and its queue stay full for {@link #OFFER_TIMEOUT_MILLIS}
+	 */
+	public static <T> Future<T> submit(final Callable<T> task) {
+		submitted.incrementAndGet();
+		try {
+			return EXECUTOR.submit(new Callable<T>() {
+				@Override
+				public T call() throws Exception {
+					active.incrementAndGet();
+					boolean done = false;
+					try {
+						final T result = task.call();
+						done = true;
+						return result;
+					} finally {
+						active.decrementAndGet();
+						if (done)
+							completed.incrementAndGet();
+						else
+							failed.incrementAndGet();
+					}
+				}
+			});
+		} catch (final RejectedExecutionException e) {
+			submitted.decrementAndGet();
+			throw e;
+		}
+	}
+
+	public static int getSize() {
+		return SIZE;
+	}
+
+	public static boolean isVirtual() {
+		return DriverThreads.isVirtual();
+	}
+
+	public static long getSubmitted() {
+		return submitted.get();
+	}
+
+	public static long getCompleted() {
+		return completed.get();
+	}
+
+	public static long getFailed() {
+		return failed.get();
+	}
+
+	public static int getActive() {
+		return active.get();
+	}
+
+	/**
+	 * @return tasks refused because the pool and its queue were full, always 0 with virtual threads
+	 */
+	public static long getRejected() {
+		return rejected.get();
+	}
+
+	private static int poolSize() {
+		final int defaultSize = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+		final String value = System.getProperty(THREADS_PROPERTY);
+		if (value == null)
+			return defaultSize;
+		try {
+			return Math.max(1, Integer.parseInt(value.trim()));
+		} catch (final NumberFormatException e) {
+			logger.error("Invalid " + THREADS_PROPERTY + ": " + value);
+			return defaultSize;
+		}
+	}
+
+}
@@ -0,0 +1,184 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+
+/**
+ * Heap accounting for buffers, frames and caches held by the driver. Accountants form a tree: the
+ * driver-wide root limited by -Daxibase.tsd.driver.jdbc.memoryLimit (half of the maximum heap by
+ * default), one child per connection and one grandchild per statement. A reservation succeeds only if
+ * it fits into every limit on the way to the root.
+ * <p>
+ * Callers that can spill use {@link #tryReserve(long)}; the others wait in {@link #reserve(long, long)}
+ * for memory held by other statements and get an SQLException once the wait times out or their own
+ * statement limit is exceeded.
+ */
+public final class MemoryAccountant {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(MemoryAccountant.class);
+	static final String LIMIT_PROPERTY = "axibase.tsd.driver.jdbc.memoryLimit";
+	public static final long UNLIMITED = Long.MAX_VALUE;
+	public static final long BACKPRESSURE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+	public static final String SQL_STATE = "53200";
+	private static final Object monitor = new Object();
+	private static final MemoryAccountant DRIVER = new MemoryAccountant("driver", null, readLimit());
+
+	private final String name;
+	private final MemoryAccountant parent;
+	private long limit;
+	private long used;
+	private boolean closed;
+
+	private MemoryAccountant(String name, MemoryAccountant parent, long limit) {
+		this.name = name;
+		this.parent = parent;
+		this.limit = limit > 0 ? limit : UNLIMITED;
+	}
+
+	public static MemoryAccountant driver() {
+		return DRIVER;
+	}
+
+	/**
+	 * @param limit bytes, a non-positive value means no limit of its own
+	 */
+	public MemoryAccountant newChild(String name, long limit) {
+		return new MemoryAccountant(name, this, limit);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public long getLimit() {
+		synchronized (monitor) {
+			return limit;
+		}
+	}
+
+	void setLimit(long limit) {
+		synchronized (monitor) {
+			this.limit = limit > 0 ? limit : UNLIMITED;
+			monitor.notifyAll();
+		}
+	}
+
+	public long getUsed() {
+		synchronized (monitor) {
+			return used;
+		}
+	}
+
+	/**
+	 * @return true if the bytes are reserved, false if any limit up to the root would be exceeded
+	 */
+	public boolean tryReserve(long bytes) {
+		synchronized (monitor) {
+			if (closed || exhausted(bytes) != null)
+				return false;
+			add(bytes);
+			return true;
+		}
+	}
+
+	/**
+	 * Waits while memory held by other statements or connections is in the way.
+	 *
+	 * @throws SQLException if the statement limit is exceeded or memory is not released in time
+	 */
+	public void reserve(long bytes, long timeoutMillis) throws SQLException {
+		final long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized (monitor) {
+			if (closed)
+				throw new SQLException("Memory of " + name + " is already released", SQL_STATE);
+			MemoryAccountant exhausted;
+			while ((exhausted = exhausted(bytes)) != null) {
+				final long remaining = deadline - System.currentTimeMillis();
+				if (exhausted == this || bytes > exhausted.limit || remaining <= 0)
+					throw exceeded(exhausted, bytes);
+				try {
+					monitor.wait(remaining);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw exceeded(exhausted, bytes);
+				}
+			}
+			add(bytes);
+		}
+	}
+
+	public void release(long bytes) {
+		if (bytes <= 0)
+			return;
+		synchronized (monitor) {
+			final long released = Math.min(bytes, used);
+			for (MemoryAccountant node = this; node != null; node = node.parent) {
+				node.used = Math.max(0, node.used - released);
+			}
+			monitor.notifyAll();
+		}
+	}
+
+	/**
+	 * Releases everything still reserved through this accountant; later reservations fail.
+	 */
+	public void close() {
+		synchronized (monitor) {
+			if (closed)
+				return;
+			if (used > 0 && logger.isDebugEnabled())
+				logger.debug("[close] {} releases {} bytes", name, used);
+			release(used);
+			closed = true;
+		}
+	}
+
+	private MemoryAccountant exhausted(long bytes) {
+		for (MemoryAccountant node = this; node != null; node = node.parent) {
+			if (node.limit - node.used < bytes)
+				return node;
+		}
+		return null;
+	}
+
+	private void add(long bytes) {
+		for (MemoryAccountant node = this; node != null; node = node.parent) {
+			node.used += bytes;
+		}
+	}
+
+	private static SQLException exceeded(MemoryAccountant node, long bytes) {
+		return new SQLException(String.format("Memory limit of %s exceeded: %d of %d bytes in use, %d bytes requested",
+				node.name, node.used, node.limit, bytes), SQL_STATE);
+	}
+
+	private static long readLimit() {
+		final long defaultLimit = Runtime.getRuntime().maxMemory() / 2;
+		final String value = System.getProperty(LIMIT_PROPERTY);
+		if (value == null)
+			return defaultLimit;
+		try {
+			return ContentDescription.parseSize(value);
+		} catch (final NumberFormatException e) {
+			logger.error("Invalid " + LIMIT_PROPERTY + ": " + value);
+			return defaultLimit;
+		}
+	}
+
+}
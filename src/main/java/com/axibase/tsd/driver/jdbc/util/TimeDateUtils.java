@@ -0,0 +1,146 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import java.text.ParseException;
+
+/**
+ * Allocation-free parser of ISO 8601 timestamps returned by ATSD, e.g.
+ * {@code 2016-01-01T00:00:00.000Z} or {@code 2016-01-01T00:00:00Z}, and the matching UTC formatter.
+ */
+public final class TimeDateUtils {
+	private static final long MILLIS_IN_SECOND = 1000L;
+	private static final long MILLIS_IN_MINUTE = 60 * MILLIS_IN_SECOND;
+	private static final long MILLIS_IN_HOUR = 60 * MILLIS_IN_MINUTE;
+	private static final long MILLIS_IN_DAY = 24 * MILLIS_IN_HOUR;
+
+	private TimeDateUtils() {
+	}
+
+	public static long parseEpochMillis(final CharSequence value) throws ParseException {
+		final int length = value.length();
+		if (length < 20 || value.charAt(4) != '-' || value.charAt(7) != '-' || value.charAt(10) != 'T'
+				|| value.charAt(13) != ':' || value.charAt(16) != ':') {
+			throw new ParseException("Unparseable timestamp: " + value, 0);
+		}
+		final int year = digits(value, 0, 4);
+		final int month = digits(value, 5, 2);
+		final int day = digits(value, 8, 2);
+		final int hour = digits(value, 11, 2);
+		final int minute = digits(value, 14, 2);
+		final int second = digits(value, 17, 2);
+		if (month < 1 || month > 12 || day < 1 || day > 31 || hour > 23 || minute > 59 || second > 60) {
+			throw new ParseException("Timestamp field out of range: " + value, 0);
+		}
+		int pos = 19;
+		int millis = 0;
+		if (value.charAt(pos) == '.') {
+			int scale = 100;
+			pos++;
+			while (pos < length && isDigit(value.charAt(pos))) {
+				millis += (value.charAt(pos) - '0') * scale;
+				scale /= 10;
+				pos++;
+			}
+		}
+		final long offset = parseOffset(value, pos);
+		return epochDay(year, month, day) * MILLIS_IN_DAY + hour * MILLIS_IN_HOUR + minute * MILLIS_IN_MINUTE
+				+ second * MILLIS_IN_SECOND + millis - offset;
+	}
+
+	/**
+	 * @return UTC timestamp such as {@code 2016-01-01T00:00:00.000Z}
+	 */
+	public static String formatEpochMillis(long millis) {
+		long days = millis / MILLIS_IN_DAY;
+		long time = millis % MILLIS_IN_DAY;
+		if (time < 0) {
+			time += MILLIS_IN_DAY;
+			days--;
+		}
+		final long z = days + 719468L;
+		final long era = (z >= 0 ? z : z - 146096) / 146097;
+		final long doe = z - era * 146097;
+		final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		final long mp = (5 * doy + 2) / 153;
+		final long day = doy - (153 * mp + 2) / 5 + 1;
+		final long month = mp < 10 ? mp + 3 : mp - 9;
+		final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		final char[] chars = new char[24];
+		pad(chars, 0, year, 4);
+		chars[4] = '-';
+		pad(chars, 5, month, 2);
+		chars[7] = '-';
+		pad(chars, 8, day, 2);
+		chars[10] = 'T';
+		pad(chars, 11, time / MILLIS_IN_HOUR, 2);
+		chars[13] = ':';
+		pad(chars, 14, time % MILLIS_IN_HOUR / MILLIS_IN_MINUTE, 2);
+		chars[16] = ':';
+		pad(chars, 17, time % MILLIS_IN_MINUTE / MILLIS_IN_SECOND, 2);
+		chars[19] = '.';
+		pad(chars, 20, time % MILLIS_IN_SECOND, 3);
+		chars[23] = 'Z';
+		return new String(chars);
+	}
+
+	private static void pad(char[] chars, int from, long value, int count) {
+		for (int i = from + count - 1; i >= from; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+
+	private static long parseOffset(final CharSequence value, int pos) throws ParseException {
+		final int length = value.length();
+		if (pos == length - 1 && value.charAt(pos) == 'Z') {
+			return 0;
+		}
+		if (pos + 6 == length && (value.charAt(pos) == '+' || value.charAt(pos) == '-')
+				&& value.charAt(pos + 3) == ':') {
+			final long offset = digits(value, pos + 1, 2) * MILLIS_IN_HOUR + digits(value, pos + 4, 2) * MILLIS_IN_MINUTE;
+			return value.charAt(pos) == '-' ? -offset : offset;
+		}
+		throw new ParseException("Unparseable timestamp zone: " + value, pos);
+	}
+
+	private static int digits(final CharSequence value, int from, int count) throws ParseException {
+		int result = 0;
+		for (int i = from; i < from + count; i++) {
+			final char ch = value.charAt(i);
+			if (!isDigit(ch)) {
+				throw new ParseException("Unparseable timestamp: " + value, i);
+			}
+			result = result * 10 + (ch - '0');
+		}
+		return result;
+	}
+
+	private static boolean isDigit(char ch) {
+		return ch >= '0' && ch <= '9';
+	}
+
+	// days since 1970-01-01 in the proleptic Gregorian calendar
+	private static long epochDay(int year, int month, int day) {
+		final int y = month <= 2 ? year - 1 : year;
+		final int era = (y >= 0 ? y : y - 399) / 400;
+		final int yoe = y - era * 400;
+		final int doy = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+		final int doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097L + doe - 719468L;
+	}
+
+}
@@ -0,0 +1,60 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import java.sql.Timestamp;
+import java.util.Date;
+
+/**
+ * Converts decoded epoch milliseconds to the class requested by
+ * {@code ResultSet.getObject(int, Class)}. The Java 9+ variant of this class
+ * in META-INF/versions/9 adds the java.time types.
+ * Absolute types take the epoch as decoded, the others take it shifted to the connection time zone
+ * the way {@code ResultSet.getTimestamp(int)} does.
+ */
+public final class TimestampConverter {
+
+	private TimestampConverter() {
+	}
+
+	public static boolean isSupported(Class<?> type) {
+		return type == Long.class || type == Timestamp.class || type == Date.class || type == java.sql.Date.class
+				|| type == java.sql.Time.class;
+	}
+
+	public static boolean isAbsolute(Class<?> type) {
+		return type == Long.class;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> T toObject(long epochMillis, Class<T> type) {
+		final Object result;
+		if (type == Long.class) {
+			result = epochMillis;
+		} else if (type == Timestamp.class) {
+			result = new Timestamp(epochMillis);
+		} else if (type == Date.class) {
+			result = new Date(epochMillis);
+		} else if (type == java.sql.Date.class) {
+			result = new java.sql.Date(epochMillis);
+		} else if (type == java.sql.Time.class) {
+			result = new java.sql.Time(epochMillis);
+		} else {
+			throw new IllegalArgumentException("Unsupported timestamp conversion to " + type.getName());
+		}
+		return (T) result;
+	}
+
+}
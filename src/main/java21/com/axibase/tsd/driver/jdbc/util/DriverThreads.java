@@ -0,0 +1,51 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Java 21+ variant packaged into META-INF/versions/21 of the multi-release jar.
+ * With -Daxibase.tsd.driver.jdbc.virtualThreads=true every task gets its own virtual thread
+ * and the pool size is not applied, otherwise tasks run on a bounded pool of platform threads.
+ */
+final class DriverThreads {
+	static final String VIRTUAL_THREADS_PROPERTY = "axibase.tsd.driver.jdbc.virtualThreads";
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	private DriverThreads() {
+	}
+
+	static ExecutorService newExecutor(String prefix, int size, int queueSize,
+			RejectedExecutionHandler saturated) {
+		if (isVirtual())
+			return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(prefix, 1).factory());
+		final ThreadPoolExecutor executor = new ThreadPoolExecutor(size, size, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<>(queueSize), Thread.ofPlatform().name(prefix, 1).daemon(true).factory(),
+				saturated);
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	static boolean isVirtual() {
+		return Boolean.getBoolean(VIRTUAL_THREADS_PROPERTY);
+	}
+
+}
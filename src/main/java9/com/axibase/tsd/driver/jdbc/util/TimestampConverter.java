@@ -0,0 +1,74 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Date;
+
+/**
+ * Java 9+ variant packaged into META-INF/versions/9 of the multi-release jar.
+ * Timestamps are UTC, so the zoned java.time values are built with {@link ZoneOffset#UTC}.
+ * {@link LocalDateTime} is read from the shifted epoch in the default zone, as {@link Timestamp#toLocalDateTime()}
+ * does, so it shows the same wall-clock time as {@code ResultSet.getTimestamp(int)}.
+ */
+public final class TimestampConverter {
+
+	private TimestampConverter() {
+	}
+
+	public static boolean isSupported(Class<?> type) {
+		return type == Long.class || type == Instant.class || type == OffsetDateTime.class
+				|| type == ZonedDateTime.class || type == LocalDateTime.class || type == Timestamp.class
+				|| type == Date.class || type == java.sql.Date.class || type == java.sql.Time.class;
+	}
+
+	public static boolean isAbsolute(Class<?> type) {
+		return type == Long.class || type == Instant.class || type == OffsetDateTime.class
+				|| type == ZonedDateTime.class;
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> T toObject(long epochMillis, Class<T> type) {
+		final Object result;
+		if (type == Long.class) {
+			result = epochMillis;
+		} else if (type == Instant.class) {
+			result = Instant.ofEpochMilli(epochMillis);
+		} else if (type == OffsetDateTime.class) {
+			result = OffsetDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+		} else if (type == ZonedDateTime.class) {
+			result = ZonedDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneOffset.UTC);
+		} else if (type == LocalDateTime.class) {
+			result = new Timestamp(epochMillis).toLocalDateTime();
+		} else if (type == Timestamp.class) {
+			result = new Timestamp(epochMillis);
+		} else if (type == Date.class) {
+			result = new Date(epochMillis);
+		} else if (type == java.sql.Date.class) {
+			result = new java.sql.Date(epochMillis);
+		} else if (type == java.sql.Time.class) {
+			result = new java.sql.Time(epochMillis);
+		} else {
+			throw new IllegalArgumentException("Unsupported timestamp conversion to " + type.getName());
+		}
+		return (T) result;
+	}
+
+}
@@ -0,0 +1,38 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class DataProviderTest {
+	private static final String URL = "http://127.0.0.1:1/api/sql";
+	private static final String QUERY = "SELECT * FROM m WHERE entity = 'e' AND datetime > now - 1 * HOUR";
+
+	@Test
+	public void testHintsRemovedWhenPrepared() throws Exception {
+		final String sql = "/*+ atsd: tail=true */ " + QUERY;
+		final DataProvider provider = new DataProvider(URL, sql, "", "", new StatementContext());
+		provider.checkScheme(sql);
+		final ContentDescription cd = provider.getContentDescription();
+		assertEquals(" " + QUERY, cd.getQuery());
+		assertTrue(cd.isTailEnabled());
+		assertNotNull(new TailWindow().request(cd.getQuery(), System.currentTimeMillis()));
+	}
+
+}
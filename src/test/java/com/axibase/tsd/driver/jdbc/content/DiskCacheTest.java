@@ -0,0 +1,201 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskCacheTest {
+	private static final long SIZE = 1024 * 1024;
+	private Path directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("atsd-disk-cache");
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				Files.delete(file);
+			}
+		}
+		Files.delete(directory);
+	}
+
+	@Test
+	public void testUpperBound() {
+		final long now = System.currentTimeMillis();
+		assertTrue(DiskCache.isClosed("SELECT entity, avg(value) FROM m WHERE entity = 'e' "
+				+ "AND datetime BETWEEN '2016-06-20T00:00:00Z' AND '2016-06-21T00:00:00Z' GROUP BY entity", now));
+		assertTrue(DiskCache.isClosed("SELECT datetime, value FROM m WHERE datetime >= '2016-06-20T00:00:00Z' "
+				+ "AND datetime < '2016-06-21T00:00:00Z' ORDER BY datetime", now));
+		assertTrue(DiskCache.isClosed("SELECT * FROM m WHERE time < 1466380800000", now));
+		assertFalse(DiskCache.isClosed("SELECT * FROM m WHERE datetime >= '2016-06-20T00:00:00Z'", now));
+		assertFalse(DiskCache.isClosed("SELECT * FROM m WHERE datetime < now - 1 * DAY", now));
+		assertFalse(DiskCache.isClosed("SELECT * FROM m WHERE datetime < '2016-06-21T00:00:00Z' "
+				+ "OR entity = 'e'", now));
+		assertFalse(DiskCache.isClosed("SELECT * FROM m WHERE datetime < '2016-06-21T00:00:00Z' "
+				+ "AND datetime IN ('2016-06-22T00:00:00Z')", now));
+		assertFalse(DiskCache.isClosed("SELECT * FROM m WHERE datetime < '2116-06-21T00:00:00Z'", now));
+		assertFalse(DiskCache.isClosed("SELECT * FROM m", now));
+		assertEquals(1466467200000L, DiskCache.upperBound("SELECT * FROM m WHERE entity = 'datetime < 1' "
+				+ "AND datetime BETWEEN '2016-06-20T00:00:00Z' AND '2016-06-21T00:00:00Z'"));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final byte[] digest = DiskCache.digest(description("SELECT * FROM m"));
+		final long hits = DiskCache.getHits();
+		assertNull(DiskCache.get(directory, SIZE, digest));
+		final byte[] response = response(3 * DiskCache.BLOCK_SIZE + 100);
+		assertTrue(store(digest, response).commit(false));
+		final DiskCache.Entry entry = DiskCache.get(directory, SIZE, digest);
+		assertNotNull(entry);
+		assertEquals("{}", entry.getSchema());
+		assertEquals(response.length, entry.getLength());
+		assertArrayEquals(response, TestStreams.readAll(entry.open()));
+		assertEquals(hits + 1, DiskCache.getHits());
+		assertTrue(DiskCache.getBytes(directory) > 0);
+		assertTrue(DiskCache.getBytes(directory) < response.length);
+		assertArrayEquals(digest, DiskCache.digest(description("  SELECT *  FROM m;")));
+
+		final PersistingInputStream partial = new PersistingInputStream(new ByteArrayInputStream(response), directory,
+				SIZE, DiskCache.digest(description("SELECT * FROM n")), "{}");
+		partial.read(new byte[4]);
+		assertFalse(partial.commit(false));
+		assertFalse(store(DiskCache.digest(description("SELECT * FROM n")), response).commit(true));
+		assertEquals(1, count());
+	}
+
+	@Test
+	public void testStaleTempFiles() throws IOException {
+		final Path stale = DiskCache.createTemp(directory);
+		final Path foreign = Files.createFile(directory.resolve("report" + DiskCache.TEMP_SUFFIX));
+		Files.setLastModifiedTime(stale, FileTime.fromMillis(0));
+		Files.setLastModifiedTime(foreign, FileTime.fromMillis(0));
+		assertNull(DiskCache.get(directory, SIZE, DiskCache.digest(description("SELECT * FROM m"))));
+		assertEquals(0, DiskCache.getBytes(directory));
+		assertFalse(Files.exists(stale));
+		assertTrue(Files.exists(foreign));
+	}
+
+	@Test
+	public void testCorruptedEntry() throws IOException {
+		final byte[] digest = DiskCache.digest(description("SELECT * FROM m"));
+		assertTrue(store(digest, response(DiskCache.BLOCK_SIZE * 2)).commit(false));
+		final Path file = directory.resolve(only());
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			final ByteBuffer buffer = ByteBuffer.allocate(1);
+			channel.read(buffer, channel.size() - 100);
+			buffer.put(0, (byte) (buffer.get(0) ^ 1));
+			buffer.rewind();
+			channel.write(buffer, channel.size() - 100);
+		}
+		final long corrupted = DiskCache.getCorrupted();
+		assertNull(DiskCache.get(directory, SIZE, digest));
+		assertEquals(corrupted + 1, DiskCache.getCorrupted());
+		assertEquals(0, count());
+		assertEquals(0, DiskCache.getBytes(directory));
+	}
+
+	@Test
+	public void testEviction() throws IOException {
+		final long size = 36 * 1024;
+		final byte[][] digests = new byte[5][];
+		for (int i = 0; i < digests.length; i++) {
+			digests[i] = DiskCache.digest(description("SELECT * FROM m" + i));
+			final PersistingInputStream store = new PersistingInputStream(new ByteArrayInputStream(response(24000)),
+					directory, size, digests[i], "{}");
+			TestStreams.readAll(store);
+			assertTrue(store.commit(false));
+			if (i == 0) {
+				assertNotNull(DiskCache.get(directory, size, digests[0]));
+				Files.setLastModifiedTime(directory.resolve(only()), FileTime.fromMillis(0));
+			}
+		}
+		assertNull(DiskCache.get(directory, size, digests[0]));
+		assertNotNull(DiskCache.get(directory, size, digests[1]));
+		assertEquals(4, count());
+		assertTrue(DiskCache.getBytes(directory) <= size);
+		final PersistingInputStream large = new PersistingInputStream(
+				new ByteArrayInputStream(response(DiskCache.BLOCK_SIZE)), directory, size, digests[0], "{}");
+		TestStreams.readAll(large);
+		assertFalse(large.commit(false));
+	}
+
+	private static ContentDescription description(String query) {
+		return new ContentDescription("http://localhost", query, "user", "password", new String[0]);
+	}
+
+	private PersistingInputStream store(byte[] digest, byte[] response) throws IOException {
+		final PersistingInputStream store = new PersistingInputStream(new ByteArrayInputStream(response), directory,
+				SIZE, digest, "{}");
+		TestStreams.readAll(store);
+		return store;
+	}
+
+	/**
+	 * @return CSV with random values that deflates to about a third
+	 */
+	private static byte[] response(int length) {
+		final Random random = new Random(length);
+		final StringBuilder sb = new StringBuilder("time,entity,value\r\n");
+		while (sb.length() < length) {
+			sb.append(1466380800000L + sb.length()).append(",e").append(random.nextInt(10)).append(',')
+					.append(random.nextInt(100000)).append("\r\n");
+		}
+		sb.setLength(length);
+		return sb.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private int count() throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+			for (Path file : files) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private Path only() throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + DiskCache.SUFFIX)) {
+			return files.iterator().next().getFileName();
+		}
+	}
+
+}
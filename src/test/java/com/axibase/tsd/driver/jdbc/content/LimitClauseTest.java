@@ -0,0 +1,56 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class LimitClauseTest {
+
+	@Test
+	public void testAppendLimit() {
+		assertEquals("SELECT * FROM m WHERE entity = 'e' LIMIT 1000",
+				LimitClause.apply("SELECT * FROM m WHERE entity = 'e'", 1000));
+		assertEquals("SELECT * FROM m LIMIT 1000", LimitClause.apply("SELECT * FROM m ;", 1000));
+		assertEquals("SELECT * FROM m LIMIT 10 OPTION (ROW_MEMORY_THRESHOLD 10000)",
+				LimitClause.apply("SELECT * FROM m OPTION (ROW_MEMORY_THRESHOLD 10000)", 10));
+	}
+
+	@Test
+	public void testTightenLimit() {
+		assertEquals("SELECT * FROM m LIMIT 1000", LimitClause.apply("SELECT * FROM m LIMIT 100000", 1000));
+		assertEquals("SELECT * FROM m LIMIT 10", LimitClause.apply("SELECT * FROM m LIMIT 10", 1000));
+		assertEquals("SELECT * FROM m LIMIT 5 OFFSET 20", LimitClause.apply("SELECT * FROM m LIMIT 50 OFFSET 20", 5));
+		assertEquals("select * from m limit 20, 5", LimitClause.apply("select * from m limit 20, 50", 5));
+	}
+
+	@Test
+	public void testIgnoreLiteralsAndSubqueries() {
+		assertEquals("SELECT * FROM m WHERE tags.t = 'LIMIT 5' LIMIT 3",
+				LimitClause.apply("SELECT * FROM m WHERE tags.t = 'LIMIT 5'", 3));
+		assertEquals("SELECT * FROM (SELECT * FROM m LIMIT 100) LIMIT 3",
+				LimitClause.apply("SELECT * FROM (SELECT * FROM m LIMIT 100)", 3));
+	}
+
+	@Test
+	public void testUnsafe() {
+		assertNull(LimitClause.apply("SELECT * FROM m LIMIT ?", 3));
+		assertNull(LimitClause.apply("SELECT * FROM m WHERE tags.t = 'unclosed", 3));
+		assertNull(LimitClause.apply("SHOW METRICS", 3));
+	}
+
+}
@@ -0,0 +1,86 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class QueryHintsTest {
+
+	@Test
+	public void testStripHints() {
+		final QueryHints hints = QueryHints.parse("SELECT /*+ atsd:strategy=file fetch=50000 */ * FROM m");
+		assertEquals("SELECT  * FROM m", hints.getQuery());
+		assertEquals("file", hints.getValues().get("strategy"));
+		assertEquals("50000", hints.getValues().get("fetch"));
+	}
+
+	@Test
+	public void testKeepOtherComments() {
+		final String sql = "SELECT /*+ INDEX(m) */ value FROM m WHERE entity = '/*+ atsd:strategy=file */'";
+		final QueryHints hints = QueryHints.parse(sql);
+		assertEquals(sql, hints.getQuery());
+		assertTrue(hints.getValues().isEmpty());
+	}
+
+	@Test
+	public void testIgnoreUnsupportedHints() {
+		final QueryHints hints = QueryHints.parse("/*+ atsd:memoryBudget=64m, prefetch=2 bogus */SELECT * FROM m");
+		assertEquals("SELECT * FROM m", hints.getQuery());
+		assertEquals(1, hints.getValues().size());
+		assertEquals("64m", hints.getValues().get("memorybudget"));
+	}
+
+	@Test
+	public void testIgnoreDirectoryHints() {
+		final QueryHints hints = QueryHints
+				.parse("/*+ atsd:spillDirectory=/var/data diskCache=/var/data diskCacheSize=1g */SELECT * FROM m");
+		assertEquals("SELECT * FROM m", hints.getQuery());
+		assertTrue(hints.getValues().isEmpty());
+	}
+
+	@Test
+	public void testOverrideConnectionParams() {
+		final QueryHints hints = QueryHints.parse("SELECT * FROM m /*+ atsd:strategy=hybrid fetch=500 */");
+		final ContentDescription cd = new ContentDescription("http://localhost:8088/api/sql", hints.getQuery(), "",
+				"", new String[] { "strategy=file", "memoryBudget=1m" });
+		cd.setHints(hints.getValues());
+		assertEquals("hybrid", cd.getStrategyName());
+		assertEquals(1024 * 1024, cd.getMemoryBudget());
+		assertEquals(500, cd.getFetchSize(100));
+		assertNull(cd.getSpillDirectory());
+		cd.setHints(null);
+		assertEquals("file", cd.getStrategyName());
+		assertEquals(100, cd.getFetchSize(100));
+	}
+
+	@Test
+	public void testStatementMemoryLimitHintOnlyLowers() {
+		final ContentDescription cd = new ContentDescription("http://localhost:8088/api/sql", "SELECT * FROM m", "",
+				"", new String[] { "statementMemoryLimit=1m" });
+		cd.setHints(QueryHints.parse("/*+ atsd:statementMemoryLimit=1g */SELECT * FROM m").getValues());
+		assertEquals(1024 * 1024, cd.getStatementMemoryLimit());
+		cd.setHints(QueryHints.parse("/*+ atsd:statementMemoryLimit=64k */SELECT * FROM m").getValues());
+		assertEquals(64 * 1024, cd.getStatementMemoryLimit());
+		final ContentDescription unlimited = new ContentDescription("http://localhost:8088/api/sql",
+				"SELECT * FROM m", "", "", new String[0]);
+		unlimited.setHints(QueryHints.parse("/*+ atsd:statementMemoryLimit=1g */SELECT * FROM m").getValues());
+		assertEquals(1024 * 1024 * 1024, unlimited.getStatementMemoryLimit());
+	}
+
+}
@@ -0,0 +1,142 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ResultCacheTest {
+	private static final String CSV = "time,entity,value\r\n2016-06-20T00:00:00.000Z,e1,1.5\r\n";
+
+	@Before
+	public void setUp() {
+		ResultCache.clear();
+		ResultCache.setMaxBytes(ResultCache.DEFAULT_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		ResultCache.clear();
+		ResultCache.setMaxBytes(ResultCache.DEFAULT_SIZE);
+	}
+
+	@Test
+	public void testNormalize() {
+		assertEquals("SELECT * FROM m WHERE entity = 'a  b'",
+				ResultCache.normalize("  SELECT *\n\tFROM   m WHERE entity = 'a  b' ;"));
+		assertEquals(key("SELECT * FROM m"), key("SELECT  *  FROM m;"));
+		assertFalse(key("SELECT * FROM m").equals(key("SELECT * FROM n")));
+		final ContentDescription other = new ContentDescription("http://localhost:8088/api/sql", "SELECT * FROM m",
+				"user", "secret", new String[0]);
+		assertFalse(key("SELECT * FROM m").equals(ResultCache.key(other, 0)));
+		assertFalse(ResultCache.credentials(other).contains("secret"));
+	}
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		final ResultCache.Key key = key("SELECT * FROM m");
+		assertNull(ResultCache.get(key));
+		final CachingInputStream capture = capture(key, CSV.getBytes(StandardCharsets.UTF_8), 60000);
+		assertTrue(capture.commit(false));
+		final ResultCache.Entry entry = ResultCache.get(key);
+		assertNotNull(entry);
+		assertEquals("{}", entry.getSchema());
+		assertEquals(CSV.length(), entry.getLength());
+		assertEquals(CSV, new String(TestStreams.readAll(entry.open()), StandardCharsets.UTF_8));
+		assertEquals(1, ResultCache.getHits());
+		assertEquals(1, ResultCache.getMisses());
+		assertEquals(1, ResultCache.getEntries());
+	}
+
+	@Test
+	public void testSkipIncompleteOrFailedResponse() throws IOException {
+		final ResultCache.Key key = key("SELECT * FROM m");
+		final CachingInputStream partial = new CachingInputStream(
+				new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8)), key, "{}", 60000);
+		partial.read(new byte[4]);
+		assertFalse(partial.commit(false));
+		assertFalse(capture(key, CSV.getBytes(StandardCharsets.UTF_8), 60000).commit(true));
+		assertEquals(0, ResultCache.getEntries());
+	}
+
+	@Test
+	public void testExpiration() throws IOException {
+		final ResultCache.Key key = key("SELECT * FROM m");
+		assertTrue(capture(key, CSV.getBytes(StandardCharsets.UTF_8), 0).commit(false));
+		assertNull(ResultCache.get(key));
+		assertEquals(1, ResultCache.getExpirations());
+		assertEquals(0, ResultCache.getBytes());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() throws IOException {
+		final byte[] content = random(4 * 1024);
+		ResultCache.setMaxBytes(19 * 1024);
+		for (int i = 1; i <= 4; i++) {
+			assertTrue(capture(key("SELECT " + i), content, 60000).commit(false));
+		}
+		assertNotNull(ResultCache.get(key("SELECT 1")));
+		assertTrue(capture(key("SELECT 5"), content, 60000).commit(false));
+		assertEquals(1, ResultCache.getEvictions());
+		assertNull(ResultCache.get(key("SELECT 2")));
+		assertNotNull(ResultCache.get(key("SELECT 1")));
+		assertNotNull(ResultCache.get(key("SELECT 5")));
+		assertEquals(4, ResultCache.getEntries());
+		assertTrue(ResultCache.getBytes() <= 19 * 1024);
+	}
+
+	@Test
+	public void testAbandonLargeResponse() throws IOException {
+		ResultCache.setMaxBytes(64 * 1024);
+		final ResultCache.Key key = key("SELECT * FROM m");
+		final byte[] content = random(64 * 1024);
+		final CachingInputStream capture = capture(key, content, 60000);
+		assertFalse(capture.commit(false));
+		assertEquals(0, ResultCache.getEntries());
+	}
+
+	private static ResultCache.Key key(String query) {
+		final ContentDescription cd = new ContentDescription("http://localhost:8088/api/sql", query, "user",
+				"password", new String[0]);
+		return ResultCache.key(cd, 0);
+	}
+
+	private static CachingInputStream capture(ResultCache.Key key, byte[] content, long ttlMillis)
+			throws IOException {
+		final CachingInputStream capture = new CachingInputStream(new ByteArrayInputStream(content), key, "{}",
+				ttlMillis);
+		assertEquals(content.length, TestStreams.readAll(capture).length);
+		return capture;
+	}
+
+	private static byte[] random(int size) {
+		final byte[] bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return bytes;
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+public class SeriesCacheTest {
+	private static final String HEADER = "datetime,value,entity";
+
+	@Before
+	public void setUp() {
+		SeriesCache.clear();
+		SeriesCache.setMaxBytes(SeriesCache.DEFAULT_SIZE);
+	}
+
+	@After
+	public void tearDown() {
+		SeriesCache.clear();
+		SeriesCache.setMaxBytes(SeriesCache.DEFAULT_SIZE);
+	}
+
+	@Test
+	public void testParseQuery() throws ParseException {
+		final SeriesQuery query = SeriesQuery.parse("SELECT datetime, value FROM \"cpu.busy\" WHERE entity = 'e1' "
+				+ "AND datetime BETWEEN '2016-06-20T00:00:00Z' AND '2016-06-21T00:00:00Z' AND tags.disk = 'sda';");
+		assertNotNull(query);
+		assertEquals(millis("2016-06-20T00:00:00Z"), query.getStart());
+		assertEquals(millis("2016-06-21T00:00:00Z") + 1, query.getEnd());
+		assertEquals("datetime, value FROM \"cpu.busy\" AND entity = 'e1' AND tags.disk = 'sda'", query.getSeries());
+		assertEquals("SELECT datetime, value FROM \"cpu.busy\" WHERE entity = 'e1' AND tags.disk = 'sda' "
+				+ "AND datetime >= '2016-06-20T00:00:00.000Z' AND datetime < '2016-06-20T01:00:00.000Z'",
+				query.rewrite(millis("2016-06-20T00:00:00Z"), millis("2016-06-20T01:00:00Z")));
+		final SeriesQuery bounds = SeriesQuery.parse("select * from m where datetime > '2016-06-20T00:00:00Z' "
+				+ "and entity = 'e1' and datetime <= '2016-06-20T01:00:00Z'");
+		assertNotNull(bounds);
+		assertEquals(millis("2016-06-20T00:00:00Z") + 1, bounds.getStart());
+		assertEquals(query.getSeries().replace("datetime, value", "*").replace("\"cpu.busy\"", "m")
+				.replace(" AND tags.disk = 'sda'", ""), bounds.getSeries());
+	}
+
+	@Test
+	public void testKeyWithoutPassword() {
+		final SeriesQuery query = SeriesQuery.parse("SELECT datetime, value FROM m WHERE entity = 'e1' "
+				+ "AND datetime BETWEEN '2016-06-20T00:00:00Z' AND '2016-06-21T00:00:00Z'");
+		final String key = SeriesCache.key(new ContentDescription("http://localhost:8088/api/sql", "", "user",
+				"secret", new String[0]), query);
+		assertFalse(key.contains("secret"));
+		assertFalse(key.equals(SeriesCache.key(new ContentDescription("http://localhost:8088/api/sql", "", "user",
+				"other", new String[0]), query)));
+	}
+
+	@Test
+	public void testRejectOtherQueries() {
+		final String range = " AND datetime BETWEEN '2016-06-20T00:00:00Z' AND '2016-06-21T00:00:00Z'";
+		assertNull(SeriesQuery.parse("SELECT value FROM m WHERE entity = 'e1'" + range));
+		assertNull(SeriesQuery.parse("SELECT count(*) FROM m WHERE entity = 'e1'" + range));
+		assertNull(SeriesQuery.parse("SELECT datetime, value FROM m WHERE entity = 'e1' OR entity = 'e2'" + range));
+		assertNull(SeriesQuery.parse("SELECT datetime, value FROM m WHERE entity = 'e1'" + range + " ORDER BY value"));
+		assertNull(SeriesQuery.parse("SELECT datetime, value FROM m WHERE datetime > '2016-06-20T00:00:00Z'"));
+		assertNull(SeriesQuery.parse("SELECT datetime, value FROM m WHERE datetime > now - 1 * DAY"));
+		assertNull(SeriesQuery.parse("SELECT datetime, value FROM m WHERE entity = 'e1' /* c */" + range));
+	}
+
+	@Test
+	public void testFetchMissingIntervals() {
+		final SeriesCache.Series series = SeriesCache.get("key");
+		final long start = 0;
+		final long end = 10000;
+		assertEquals(1, series.missing(start, end).size());
+		assertTrue(series.merge(HEADER, "{}", start, end, Long.MAX_VALUE, rows(0, 10000, 1000)));
+		assertTrue(series.missing(start, end).isEmpty());
+		final List<long[]> gaps = series.missing(5000, 12000);
+		assertEquals(1, gaps.size());
+		assertEquals(10000, gaps.get(0)[0]);
+		assertEquals(12000, gaps.get(0)[1]);
+		assertTrue(series.merge(HEADER, "{}", 10000, 12000, 11000, rows(10000, 12000, 1000)));
+		assertEquals(Arrays.asList(line(5000), line(6000), line(7000), line(8000), line(9000), line(10000),
+				line(11000)), series.lines(5000, 12000));
+		final List<long[]> lagging = series.missing(5000, 12000);
+		assertEquals(1, lagging.size());
+		assertEquals(11000, lagging.get(0)[0]);
+		assertTrue(series.merge(HEADER, "{}", 11000, 12000, 12000, rows(11000, 12000, 500)));
+		assertEquals(Arrays.asList(line(10000), line(11000), line(11500)), series.lines(10000, 12000));
+		assertTrue(series.missing(0, 12000).isEmpty());
+		assertEquals(2, series.missing(-1000, 13000).size());
+	}
+
+	@Test
+	public void testEvictLeastRecentlyUsed() {
+		final SeriesCache.Series first = SeriesCache.get("first");
+		assertTrue(first.merge(HEADER, "{}", 0, 10000, Long.MAX_VALUE, rows(0, 10000, 1000)));
+		final long size = SeriesCache.getBytes();
+		SeriesCache.setMaxBytes(size * 3 / 2);
+		final SeriesCache.Series second = SeriesCache.get("second");
+		assertTrue(second.merge(HEADER, "{}", 0, 10000, Long.MAX_VALUE, rows(0, 10000, 1000)));
+		assertEquals(1, SeriesCache.getEvictions());
+		assertEquals(size, SeriesCache.getBytes());
+		assertFalse(first.merge(HEADER, "{}", 10000, 11000, Long.MAX_VALUE, rows(10000, 11000, 1000)));
+		assertEquals(1, SeriesCache.get("first").missing(0, 10000).size());
+		assertTrue(SeriesCache.get("second").missing(0, 10000).isEmpty());
+	}
+
+	@Test
+	public void testParseResponse() {
+		final SeriesCache.Fetched fetched = SeriesCache.parse("value,\"datetime\"\r\n1,1970-01-01T00:00:01Z\r\n"
+				+ "\"a,b\",1970-01-01T00:00:01Z\r\n3,1970-01-01T00:00:00Z\r\n");
+		assertNotNull(fetched);
+		assertEquals("value,\"datetime\"", fetched.getHeader());
+		assertEquals(Arrays.asList(0L, 1000L), Arrays.asList(fetched.getRows().keySet().toArray()));
+		assertEquals(2, fetched.getRows().get(1000L).size());
+		assertNull(SeriesCache.parse("value\r\n1\r\n"));
+		assertNull(SeriesCache.parse(HEADER + "\r\n#{\"errors\":[]}\r\n"));
+	}
+
+	private static NavigableMap<Long, List<String>> rows(long from, long to, long step) {
+		final StringBuilder sb = new StringBuilder(HEADER);
+		for (long time = from; time < to; time += step) {
+			sb.append("\r\n").append(line(time));
+		}
+		return SeriesCache.parse(sb.toString()).getRows();
+	}
+
+	private static String line(long time) {
+		return TimeDateUtils.formatEpochMillis(time) + ",1,e1";
+	}
+
+	private static long millis(String value) throws ParseException {
+		return TimeDateUtils.parseEpochMillis(value);
+	}
+
+}
@@ -0,0 +1,149 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+
+public class SharedResponseTest {
+
+	@Before
+	public void setUp() {
+		SharedResponse.clear();
+	}
+
+	@After
+	public void tearDown() {
+		SharedResponse.clear();
+	}
+
+	@Test
+	public void testShareResponse() throws Exception {
+		final long used = MemoryAccountant.driver().getUsed();
+		final byte[] content = new byte[5 * SharedResponse.CHUNK_SIZE + 123];
+		new Random(5).nextBytes(content);
+		final CountDownLatch gate = new CountDownLatch(1);
+		final ResultCache.Key key = key("SELECT * FROM m");
+		final SharedResponse leader = SharedResponse.acquire(key, 2 * SharedResponse.CHUNK_SIZE, null);
+		assertTrue(leader.lead());
+		leader.start(new GatedInputStream(content, gate), "{}", content.length);
+		final SharedResponse follower = SharedResponse.acquire(key, 0, null);
+		assertTrue(leader == follower);
+		assertFalse(follower.lead());
+		follower.awaitStart();
+		assertEquals("{}", follower.getSchema());
+		final InputStream first = leader.open();
+		final InputStream second = follower.open();
+		gate.countDown();
+		assertArrayEquals(content, TestStreams.readAll(second));
+		assertArrayEquals(content, TestStreams.readAll(first));
+		awaitReleased(used);
+		assertEquals(0, SharedResponse.getInFlight());
+	}
+
+	@Test
+	public void testFailedRequest() throws Exception {
+		final ResultCache.Key key = key("SELECT * FROM failed");
+		final SharedResponse leader = SharedResponse.acquire(key, 0, null);
+		final SharedResponse follower = SharedResponse.acquire(key, 0, null);
+		assertTrue(leader.lead());
+		leader.fail(new IOException("HTTP code 500"));
+		try {
+			follower.awaitStart();
+			fail("Failure is not propagated");
+		} catch (IOException e) {
+			assertTrue(e.getMessage().contains("HTTP code 500"));
+		}
+		assertEquals(0, SharedResponse.getInFlight());
+	}
+
+	@Test
+	public void testAbandonResponse() throws Exception {
+		final ResultCache.Key key = key("SELECT * FROM endless");
+		final SharedResponse leader = SharedResponse.acquire(key, 0, null);
+		assertTrue(leader.lead());
+		final InputStream endless = new InputStream() {
+			@Override
+			public int read() {
+				return 'x';
+			}
+		};
+		leader.start(endless, "{}", -1);
+		final InputStream stream = leader.open();
+		assertEquals('x', stream.read());
+		stream.close();
+		final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (SharedResponse.getInFlight() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, SharedResponse.getInFlight());
+		final SharedResponse next = SharedResponse.acquire(key, 0, null);
+		assertFalse(next == leader);
+		assertTrue(next.lead());
+		next.fail(new IOException("Not sent"));
+		assertEquals(0, SharedResponse.getInFlight());
+	}
+
+	private static void awaitReleased(long used) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (MemoryAccountant.driver().getUsed() != used && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(used, MemoryAccountant.driver().getUsed());
+	}
+
+	private static ResultCache.Key key(String query) {
+		final ContentDescription cd = new ContentDescription("http://localhost:8088/api/sql", query, "user",
+				"password", new String[0]);
+		return ResultCache.key(cd, 0);
+	}
+
+	private static final class GatedInputStream extends ByteArrayInputStream {
+		private final CountDownLatch gate;
+
+		GatedInputStream(byte[] content, CountDownLatch gate) {
+			super(content);
+			this.gate = gate;
+		}
+
+		@Override
+		public synchronized int read(byte[] b, int off, int len) {
+			try {
+				gate.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return -1;
+			}
+			return super.read(b, off, Math.min(len, 1000));
+		}
+	}
+
+}
@@ -0,0 +1,152 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.content;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.text.ParseException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+public class TailWindowTest {
+	private static final String HEADER = "datetime,value,entity,tags.disk";
+	private static final String QUERY = "SELECT * FROM \"disk.used\" WHERE entity LIKE 'nur%' "
+			+ "AND datetime > now - 1 * HOUR;";
+
+	@Test
+	public void testRefusedStatements() {
+		final long now = millis("2016-06-20T12:00:00Z");
+		for (String sql : Arrays.asList("SELECT * FROM m WHERE datetime > '2016-06-20T00:00:00Z'",
+				"SELECT * FROM m WHERE datetime > now - 1*HOUR ORDER BY datetime",
+				"SELECT count(*) FROM m WHERE datetime > now - 1*HOUR",
+				"SELECT * FROM m WHERE entity = 'a' OR datetime > now - 1*HOUR",
+				"SELECT * FROM m WHERE datetime > now - 1*HOUR AND datetime < now",
+				"SELECT * FROM m WHERE datetime > now - 1*HOUR -- comment",
+				"SELECT * FROM m WHERE datetime > now - 1*MONTH")) {
+			assertNull(sql, new TailWindow().request(sql, now));
+		}
+		assertNotNull(new TailWindow().request("select * from m where text = 'order by' and datetime>=now-5*minute",
+				now));
+	}
+
+	@Test
+	public void testIncrementalRequests() {
+		final TailWindow window = new TailWindow();
+		final long used = MemoryAccountant.driver().getUsed();
+		long now = millis("2016-06-20T12:00:00Z");
+		assertEquals(QUERY, window.request(QUERY, now));
+		assertTrue(window.merge(HEADER, null, SeriesCache.parse(HEADER + "\r\n"
+				+ "2016-06-20T11:00:00.000Z,1,nurswgvml006,sda\r\n"
+				+ "2016-06-20T11:59:50.000Z,2,nurswgvml006,sda\r\n"
+				+ "2016-06-20T11:59:40.000Z,3,nurswgvml006,sdb\r\n").getRows(), now));
+		assertEquals(2, window.getRowCount());
+		assertTrue(MemoryAccountant.driver().getUsed() > used);
+
+		now += 10000;
+		assertEquals("SELECT * FROM \"disk.used\" WHERE (entity LIKE 'nur%' AND datetime > now - 1 * HOUR) "
+				+ "AND datetime > '2016-06-20T11:59:40.000Z'", window.request(QUERY, now));
+		assertTrue(window.merge(HEADER, null, SeriesCache.parse(HEADER + "\r\n"
+				+ "2016-06-20T11:59:50.000Z,2,nurswgvml006,sda\r\n"
+				+ "2016-06-20T11:59:50.000Z,4,nurswgvml006,sdb\r\n"
+				+ "2016-06-20T12:00:00.000Z,5,nurswgvml006,sda\r\n").getRows(), now));
+		assertEquals(2, window.getAddedRows());
+		assertEquals(Arrays.asList("2016-06-20T11:59:40.000Z,3,nurswgvml006,sdb",
+				"2016-06-20T11:59:50.000Z,2,nurswgvml006,sda", "2016-06-20T11:59:50.000Z,4,nurswgvml006,sdb",
+				"2016-06-20T12:00:00.000Z,5,nurswgvml006,sda"), window.lines());
+
+		now = millis("2016-06-20T12:59:50.000Z");
+		assertTrue(window.request(QUERY, now).endsWith("AND datetime > '2016-06-20T12:00:00.000Z'"));
+		assertEquals(Arrays.asList("2016-06-20T12:00:00.000Z,5,nurswgvml006,sda"), window.lines());
+
+		final int generation = window.getGeneration();
+		assertFalse(window.merge("datetime,value", null, SeriesCache.parse("datetime,value\r\n").getRows(), now));
+		assertEquals(generation + 1, window.getGeneration());
+		assertEquals(0, window.getRowCount());
+		assertEquals(QUERY, window.request(QUERY, now));
+		window.close();
+		assertEquals(0, window.getBytes());
+		assertEquals(used, MemoryAccountant.driver().getUsed());
+	}
+
+	@Test
+	public void testWholeWindowRequestedOncePerWidth() {
+		final TailWindow window = new TailWindow();
+		long now = millis("2016-06-20T12:00:00Z");
+		assertEquals(QUERY, window.request(QUERY, now));
+		assertTrue(window.merge(HEADER, null, SeriesCache.parse(HEADER + "\r\n"
+				+ "2016-06-20T11:59:50.000Z,1,nurswgvml006,sda\r\n").getRows(), now));
+		now = millis("2016-06-20T12:30:00Z");
+		assertTrue(window.request(QUERY, now).endsWith("AND datetime > '2016-06-20T11:59:50.000Z'"));
+		assertTrue(window.merge(HEADER, null, SeriesCache.parse(HEADER + "\r\n").getRows(), now));
+
+		now = millis("2016-06-20T13:00:00Z");
+		assertEquals(QUERY, window.request(QUERY, now));
+		assertTrue(window.merge(HEADER, null, SeriesCache.parse(HEADER + "\r\n"
+				+ "2016-06-20T12:10:00.000Z,2,nurswgvml007,sda\r\n").getRows(), now));
+		assertEquals(1, window.getAddedRows());
+		assertEquals(Arrays.asList("2016-06-20T12:10:00.000Z,2,nurswgvml007,sda"), window.lines());
+		window.close();
+	}
+
+	@Test
+	public void testChargedToStatementMemory() {
+		final long used = MemoryAccountant.driver().getUsed();
+		final MemoryAccountant first = MemoryAccountant.driver().newChild("statement", MemoryAccountant.UNLIMITED);
+		final TailWindow window = new TailWindow();
+		final long now = millis("2016-06-20T12:00:00Z");
+		window.charge(first);
+		window.request(QUERY, now);
+		assertTrue(window.merge(HEADER, null, SeriesCache.parse(HEADER + "\r\n"
+				+ "2016-06-20T11:59:50.000Z,1,nurswgvml006,sda\r\n").getRows(), now));
+		assertEquals(window.getBytes(), first.getUsed());
+
+		first.close();
+		final MemoryAccountant second = MemoryAccountant.driver().newChild("statement", MemoryAccountant.UNLIMITED);
+		window.charge(second);
+		assertEquals(window.getBytes(), second.getUsed());
+		assertEquals(1, window.getRowCount());
+
+		final MemoryAccountant small = MemoryAccountant.driver().newChild("statement", 1);
+		window.charge(small);
+		assertEquals(0, window.getRowCount());
+		assertEquals(0, second.getUsed());
+		assertEquals(0, small.getUsed());
+
+		window.charge(second);
+		window.request(QUERY, now);
+		assertTrue(window.merge(HEADER, null, SeriesCache.parse(HEADER + "\r\n"
+				+ "2016-06-20T11:59:50.000Z,1,nurswgvml006,sda\r\n").getRows(), now));
+		window.close();
+		assertEquals(0, second.getUsed());
+		assertEquals(used, MemoryAccountant.driver().getUsed());
+	}
+
+	private static long millis(String value) {
+		try {
+			return TimeDateUtils.parseEpochMillis(value);
+		} catch (final ParseException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+}
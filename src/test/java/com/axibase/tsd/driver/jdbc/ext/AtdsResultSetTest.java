@@ -0,0 +1,102 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Calendar;
+import java.util.Properties;
+import java.util.TimeZone;
+
+import org.apache.calcite.avatica.AvaticaConnection;
+import org.apache.calcite.avatica.Meta;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.AtsdDriver;
+
+public class AtdsResultSetTest {
+	private static final String URL = "jdbc:axibase:atsd:http://127.0.0.1:1/api/sql";
+	private static final String SQL = "SELECT datetime, value, entity FROM mpstat.cpu_busy";
+	private static final String CSV = "/csv/1.csv";
+	private static final String SCHEMA = "/json/mpstat_cpu_busy_ordered.jsonld";
+	private static final TimeZone ZONE = TimeZone.getTimeZone("Asia/Kathmandu");
+	private static final long EPOCH_MILLIS = 1453292006000L; // 2016-01-20T12:13:26Z
+
+	private TimeZone defaultZone;
+	private Connection connection;
+
+	@Before
+	public void setUp() throws Exception {
+		defaultZone = TimeZone.getDefault();
+		TimeZone.setDefault(ZONE);
+		connection = new AtsdDriver() {
+			@Override
+			public Meta createMeta(AvaticaConnection connection) {
+				return new CannedMeta(connection, CSV, SCHEMA);
+			}
+		}.connect(URL, new Properties());
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		try {
+			if (connection != null)
+				connection.close();
+		} finally {
+			TimeZone.setDefault(defaultZone);
+		}
+	}
+
+	@Test
+	public void testAbsoluteObjectFromEpoch() throws Exception {
+		try (final Statement statement = connection.createStatement();
+				final ResultSet resultSet = statement.executeQuery(SQL);) {
+			assertTrue(resultSet.next());
+			assertEquals(EPOCH_MILLIS, (long) resultSet.getObject("datetime", Long.class));
+		}
+	}
+
+	@Test
+	public void testLocalObjectMatchesTimestamp() throws Exception {
+		try (final Statement statement = connection.createStatement();
+				final ResultSet resultSet = statement.executeQuery(SQL);) {
+			assertTrue(resultSet.next());
+			final Timestamp timestamp = resultSet.getTimestamp("datetime");
+			assertEquals("2016-01-20 12:13:26.0", timestamp.toString());
+			assertEquals(timestamp, resultSet.getObject("datetime", Timestamp.class));
+		}
+	}
+
+	@Test
+	public void testTimestampWithCalendar() throws Exception {
+		try (final Statement statement = connection.createStatement();
+				final ResultSet resultSet = statement.executeQuery(SQL);) {
+			assertTrue(resultSet.next());
+			final Calendar utc = Calendar.getInstance(TimeZone.getTimeZone("UTC"));
+			assertEquals(EPOCH_MILLIS, resultSet.getTimestamp("datetime", utc).getTime());
+			final Calendar local = Calendar.getInstance(ZONE);
+			assertEquals(EPOCH_MILLIS - ZONE.getOffset(EPOCH_MILLIS),
+					resultSet.getTimestamp("datetime", local).getTime());
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.intf.ISubscriber;
+import com.axibase.tsd.driver.jdbc.intf.ISubscription;
+
+public class AtsdPublisherTest {
+	private static final String SQL = "SELECT * FROM 'jdbc.driver.test.metric.short'";
+
+	@Test
+	public void testRequest() {
+		final CannedMeta meta = new CannedMeta();
+		final RecordingSubscriber subscriber = new RecordingSubscriber();
+		new AtsdPublisher(meta, SQL, 0, null).subscribe(subscriber);
+		assertEquals(0, meta.created.get());
+		subscriber.subscription.request(3);
+		assertEquals(3, subscriber.rows.size());
+		assertFalse(subscriber.completed);
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertEquals(CannedMeta.ROWS, subscriber.rows.size());
+		assertTrue(subscriber.completed);
+		assertNull(subscriber.error);
+		assertEquals(1, meta.created.get());
+		assertEquals(1, meta.closed.get());
+	}
+
+	@Test
+	public void testCancelBeforeRequest() {
+		final CannedMeta meta = new CannedMeta();
+		final RecordingSubscriber subscriber = new RecordingSubscriber();
+		new AtsdPublisher(meta, SQL, 0, null).subscribe(subscriber);
+		subscriber.subscription.cancel();
+		subscriber.subscription.request(1);
+		assertEquals(0, meta.created.get());
+		assertTrue(subscriber.rows.isEmpty());
+		assertFalse(subscriber.completed);
+	}
+
+	@Test
+	public void testCancelDuringOpen() throws Exception {
+		final CannedMeta meta = new CannedMeta();
+		meta.gate = new CountDownLatch(1);
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final RecordingSubscriber subscriber = new RecordingSubscriber();
+			new AtsdPublisher(meta, SQL, 0, executor).subscribe(subscriber);
+			subscriber.subscription.request(1);
+			assertTrue(meta.fetching.await(10, TimeUnit.SECONDS));
+			subscriber.subscription.cancel();
+			assertEquals(0, meta.closed.get());
+			meta.gate.countDown();
+			executor.shutdown();
+			assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+			assertEquals(1, meta.closed.get());
+			assertTrue(subscriber.rows.isEmpty());
+			assertFalse(subscriber.completed);
+			assertNull(subscriber.error);
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testCancelDuringEmit() {
+		final CannedMeta meta = new CannedMeta();
+		final RecordingSubscriber subscriber = new RecordingSubscriber() {
+			@Override
+			public void onNext(List<Object> item) {
+				super.onNext(item);
+				if (rows.size() == 2) {
+					subscription.cancel();
+					assertEquals(0, meta.closed.get());
+				}
+			}
+		};
+		new AtsdPublisher(meta, SQL, 0, null).subscribe(subscriber);
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertEquals(2, subscriber.rows.size());
+		assertEquals(1, meta.closed.get());
+		assertFalse(subscriber.completed);
+		assertNull(subscriber.error);
+	}
+
+	@Test
+	public void testFailure() {
+		final CannedMeta meta = new CannedMeta();
+		final IOException failure = new IOException("Connection refused");
+		meta.failure = failure;
+		final RecordingSubscriber subscriber = new RecordingSubscriber();
+		new AtsdPublisher(meta, SQL, 0, null).subscribe(subscriber);
+		subscriber.subscription.request(1);
+		assertSame(failure, subscriber.error);
+		assertTrue(subscriber.rows.isEmpty());
+		assertEquals(1, meta.closed.get());
+	}
+
+	private static class RecordingSubscriber implements ISubscriber<List<Object>> {
+		final List<List<Object>> rows = new ArrayList<>();
+		ISubscription subscription;
+		boolean completed;
+		Throwable error;
+
+		@Override
+		public void onSubscribe(ISubscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public void onNext(List<Object> item) {
+			rows.add(item);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			error = throwable;
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+	}
+
+}
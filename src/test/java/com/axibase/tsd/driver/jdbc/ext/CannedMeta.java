@@ -0,0 +1,127 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.ext;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.calcite.avatica.AvaticaConnection;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.intf.IDataProvider;
+import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
+import com.axibase.tsd.driver.jdbc.strategies.stream.KeepAliveStrategy;
+
+/**
+ * Meta answering every query with a fixture, the short metric one by default, instead of a request to the server.
+ */
+class CannedMeta extends AtsdMeta {
+	static final String CSV = "/csv/jdbc.driver.test.metric.short.csv";
+	static final String SCHEMA = "/json/jdbc.driver.test.metric.short.jsonld";
+	static final int ROWS = 200;
+
+	private final String csv;
+	private final String schema;
+	final AtomicInteger created = new AtomicInteger();
+	final AtomicInteger closed = new AtomicInteger();
+	final CountDownLatch fetching = new CountDownLatch(1);
+	volatile CountDownLatch gate;
+	volatile IOException failure;
+
+	CannedMeta() {
+		this(null, CSV, SCHEMA);
+	}
+
+	CannedMeta(AvaticaConnection connection, String csv, String schema) {
+		super(connection);
+		this.csv = csv;
+		this.schema = schema;
+	}
+
+	@Override
+	IDataProvider createProvider(String sql, StatementContext context) {
+		created.incrementAndGet();
+		return new CannedProvider(sql, context);
+	}
+
+	private static String read(String resource) {
+		try (final InputStream is = CannedMeta.class.getResourceAsStream(resource);
+				final Scanner scanner = new Scanner(is, "UTF-8");) {
+			scanner.useDelimiter("\\A");
+			return scanner.hasNext() ? scanner.next() : "";
+		} catch (final IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private class CannedProvider implements IDataProvider {
+		private final ContentDescription contentDescription;
+		private final IStoreStrategy strategy;
+
+		CannedProvider(String sql, StatementContext context) {
+			this.contentDescription = new ContentDescription("http://localhost", sql, "", "", new String[0]);
+			this.strategy = new KeepAliveStrategy(context);
+		}
+
+		@Override
+		public void checkScheme(String original) {
+		}
+
+		@Override
+		public ContentDescription getContentDescription() {
+			return contentDescription;
+		}
+
+		@Override
+		public IStoreStrategy getStrategy() {
+			return strategy;
+		}
+
+		@Override
+		public void fetchData(long maxLimit) throws IOException {
+			fetching.countDown();
+			final CountDownLatch latch = gate;
+			try {
+				if (latch != null && !latch.await(10, TimeUnit.SECONDS))
+					throw new IOException("Gate is not opened");
+			} catch (final InterruptedException e) {
+				throw new IOException(e);
+			}
+			if (failure != null)
+				throw failure;
+			contentDescription.setJsonScheme(read(schema));
+			strategy.store(CannedMeta.class.getResourceAsStream(csv));
+		}
+
+		@Override
+		public InputStream readContent(long maxLimit) throws IOException {
+			if (failure != null)
+				throw failure;
+			return CannedMeta.class.getResourceAsStream(csv);
+		}
+
+		@Override
+		public void close() throws Exception {
+			closed.incrementAndGet();
+			strategy.close();
+		}
+	}
+
+}
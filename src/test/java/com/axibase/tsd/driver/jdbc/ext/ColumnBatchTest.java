@@ -0,0 +1,65 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.ext;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Types;
+
+import org.junit.Test;
+
+public class ColumnBatchTest {
+	private static final String[] NAMES = { "datetime", "value", "entity" };
+	private static final int[] TYPES = { Types.TIMESTAMP, Types.DOUBLE, Types.VARCHAR };
+
+	@Test
+	public void testFill() {
+		final ColumnBatch batch = new ColumnBatch(4);
+		batch.bind(NAMES, TYPES);
+		batch.add(new String[] { "2016-01-01T00:00:00.000Z", "1.5", "e1" });
+		batch.add(new String[] { "2016-01-01T00:00:01.000Z", "", "e2" });
+		batch.add(new String[] { "2016-01-01T00:00:02.000Z", "3", "e1" });
+		assertEquals(3, batch.size());
+		assertEquals(1451606400000L, batch.getLongs(1)[0]);
+		assertEquals(1451606402000L, batch.getLongs(1)[2]);
+		assertEquals(1.5, batch.getDoubles(2)[0], 0);
+		assertTrue(batch.isNull(2, 1));
+		assertFalse(batch.isNull(2, 2));
+		assertEquals(0, batch.getDictionaryIds(3)[0]);
+		assertEquals(1, batch.getDictionaryIds(3)[1]);
+		assertEquals(0, batch.getDictionaryIds(3)[2]);
+		assertEquals("e2", batch.getDictionary(3).get(1));
+	}
+
+	@Test
+	public void testReuse() {
+		final ColumnBatch batch = new ColumnBatch(2);
+		batch.bind(NAMES, TYPES);
+		final long[] times = batch.getLongs(1);
+		batch.add(new String[] { "2016-01-01T00:00:00.000Z", "1", "e1" });
+		batch.add(new String[] { "2016-01-01T00:00:00.000Z", "1", "e2" });
+		assertTrue(batch.isFull());
+		batch.bind(NAMES, TYPES);
+		assertEquals(0, batch.size());
+		assertSame(times, batch.getLongs(1));
+		batch.add(new String[] { "2016-01-01T00:00:00.000Z", "1", "e2" });
+		assertArrayEquals(new int[] { 1 }, new int[] { batch.getDictionaryIds(3)[0] });
+	}
+
+}
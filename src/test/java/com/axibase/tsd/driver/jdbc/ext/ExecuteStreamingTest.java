@@ -0,0 +1,120 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.ext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.calcite.avatica.ColumnMetaData;
+import org.apache.calcite.avatica.Meta.StatementHandle;
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.content.RowView;
+import com.axibase.tsd.driver.jdbc.intf.IRowHandler;
+import com.axibase.tsd.driver.jdbc.intf.IRowView;
+
+public class ExecuteStreamingTest {
+	private static final String SQL = "SELECT * FROM 'jdbc.driver.test.metric.short'";
+	private static final StatementHandle HANDLE = new StatementHandle("connection", 1, null);
+
+	@Test
+	public void testRowsInOrder() throws Exception {
+		final CannedMeta meta = new CannedMeta();
+		final RecordingHandler handler = new RecordingHandler(Integer.MAX_VALUE);
+		assertEquals(CannedMeta.ROWS, meta.executeStreaming(HANDLE, SQL, 0, handler));
+		assertEquals(CannedMeta.ROWS, handler.times.size());
+		for (int i = 1; i < handler.times.size(); i++) {
+			if (handler.times.get(i) < handler.times.get(i - 1))
+				fail("Row " + (i + 1) + " is out of order");
+		}
+		assertEquals(1458308172062L, (long) handler.times.get(0));
+		assertEquals(1, meta.closed.get());
+	}
+
+	@Test
+	public void testHandlerStops() throws Exception {
+		final CannedMeta meta = new CannedMeta();
+		final RecordingHandler handler = new RecordingHandler(3);
+		assertEquals(3, meta.executeStreaming(HANDLE, SQL, 0, handler));
+		assertEquals(3, handler.times.size());
+		assertEquals(1, meta.closed.get());
+	}
+
+	@Test
+	public void testHandlerFailure() throws Exception {
+		final CannedMeta meta = new CannedMeta();
+		final SQLException failure = new SQLException("Handler failed");
+		try {
+			meta.executeStreaming(HANDLE, SQL, 0, new IRowHandler() {
+				@Override
+				public boolean handle(IRowView row) throws SQLException {
+					throw failure;
+				}
+			});
+			fail("Handler exception is not thrown");
+		} catch (final SQLException e) {
+			assertSame(failure, e);
+		}
+		assertEquals(1, meta.closed.get());
+	}
+
+	@Test
+	public void testMaxRows() throws Exception {
+		final CannedMeta meta = new CannedMeta();
+		final RecordingHandler handler = new RecordingHandler(Integer.MAX_VALUE);
+		assertEquals(10, meta.executeStreaming(HANDLE, SQL, 10, handler));
+		assertEquals(10, handler.times.size());
+		assertEquals(10, handler.lastRowNumber);
+	}
+
+	@Test
+	public void testIntOverflow() throws Exception {
+		final RowView row = new RowView(Collections.<ColumnMetaData>emptyList(), new String[] {"value"});
+		row.wrap(new String[] {"2147483647"});
+		assertEquals(Integer.MAX_VALUE, row.getInt(1));
+		row.wrap(new String[] {"2147483648"});
+		try {
+			row.getInt(1);
+			fail("Overflow is not reported");
+		} catch (final SQLException e) {
+			assertEquals("22003", e.getSQLState());
+		}
+		assertEquals(2147483648L, row.getLong(1));
+	}
+
+	private static class RecordingHandler implements IRowHandler {
+		final List<Long> times = new ArrayList<>();
+		private final int limit;
+		long lastRowNumber;
+
+		RecordingHandler(int limit) {
+			this.limit = limit;
+		}
+
+		@Override
+		public boolean handle(IRowView row) throws SQLException {
+			times.add(row.getTime(2));
+			lastRowNumber = row.getRowNumber();
+			return times.size() < limit;
+		}
+	}
+
+}
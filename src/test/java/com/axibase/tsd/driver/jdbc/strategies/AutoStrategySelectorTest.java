@@ -0,0 +1,63 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AutoStrategySelectorTest {
+	private static final long BUDGET = 1024 * 1024;
+
+	@Test
+	public void testFingerprint() {
+		assertEquals("select * from cpu_busy where entity = ? and value > ? limit ?",
+				AutoStrategySelector.fingerprint(
+						"SELECT *\n FROM cpu_busy WHERE entity = 'nur''007'  AND value > 10.5 LIMIT 100"));
+		assertEquals(AutoStrategySelector.fingerprint("SELECT * FROM \"m1\" WHERE datetime > '2016-01-01'"),
+				AutoStrategySelector.fingerprint("select * from \"m1\" where datetime > '2017-06-30'"));
+	}
+
+	@Test
+	public void testContentLength() {
+		final String sql = "SELECT * FROM length_test";
+		assertEquals(StrategyFactory.HYBRID_STRATEGY,
+				AutoStrategySelector.select(sql, BUDGET, false, BUDGET).getStrategy());
+		assertEquals(StrategyFactory.FILE_STRATEGY,
+				AutoStrategySelector.select(sql, BUDGET + 1, false, BUDGET).getStrategy());
+		// a compressed length says little about the decoded size
+		assertEquals(StrategyFactory.STREAM_STRATEGY,
+				AutoStrategySelector.select(sql, BUDGET + 1, true, BUDGET).getStrategy());
+	}
+
+	@Test
+	public void testHistory() {
+		AutoStrategySelector.clear();
+		final String sql = "SELECT * FROM history_test WHERE value > 1";
+		final StrategyChoice first = AutoStrategySelector.select(sql, -1, true, BUDGET);
+		assertEquals(StrategyFactory.STREAM_STRATEGY, first.getStrategy());
+		assertEquals(-1, first.getEstimatedSize());
+		AutoStrategySelector.record(first.getFingerprint(), 3 * BUDGET);
+		final StrategyChoice second = AutoStrategySelector.select("SELECT * FROM history_test WHERE value > 2", -1,
+				true, BUDGET);
+		assertEquals(StrategyFactory.FILE_STRATEGY, second.getStrategy());
+		assertEquals(3 * BUDGET, second.getEstimatedSize());
+		// observations are averaged: 3 -> 1.625 -> 0.9375 of the budget
+		AutoStrategySelector.record(first.getFingerprint(), BUDGET / 4);
+		AutoStrategySelector.record(first.getFingerprint(), BUDGET / 4);
+		assertEquals(StrategyFactory.HYBRID_STRATEGY, AutoStrategySelector.select(sql, -1, true, BUDGET).getStrategy());
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.intf.IStoreStrategy;
+import com.axibase.tsd.driver.jdbc.protocol.EncodedInputStream;
+import com.axibase.tsd.driver.jdbc.strategies.hybrid.HybridStoreStrategy;
+import com.axibase.tsd.driver.jdbc.strategies.mmap.MappedStoreStrategy;
+import com.axibase.tsd.driver.jdbc.strategies.storage.FileStoreStrategy;
+
+public class CommittedSequenceTest {
+	private static final int SEQUENCE_LENGTH = 1000000;
+	private static final int ROWS = 300000;
+
+	@Test(timeout = 60000)
+	public void testNoLostWakeups() throws Exception {
+		for (int round = 0; round < 20; round++) {
+			final CommittedSequence sequence = new CommittedSequence();
+			final long[] values = new long[SEQUENCE_LENGTH];
+			final AtomicReference<Throwable> failure = new AtomicReference<>();
+			final Thread reader = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						long position = 0;
+						while (true) {
+							final long available = sequence.await(position);
+							if (available <= position)
+								break;
+							for (long i = position; i < available; i++) {
+								if (values[(int) i] != i + 1)
+									throw new AssertionError("Uncommitted value at " + i);
+							}
+							position = available;
+						}
+						assertEquals(SEQUENCE_LENGTH, position);
+					} catch (Throwable e) {
+						failure.set(e);
+					}
+				}
+			});
+			reader.start();
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				values[i] = i + 1;
+				if ((i & 0xFF) == 0 || round % 2 == 0)
+					sequence.publish(i + 1);
+			}
+			sequence.publish(SEQUENCE_LENGTH);
+			sequence.finish();
+			reader.join();
+			if (failure.get() != null)
+				throw new AssertionError(failure.get());
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testFinishWakesReader() throws Exception {
+		final CommittedSequence sequence = new CommittedSequence();
+		sequence.publish(10);
+		final Thread reader = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sequence.await(10);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		reader.start();
+		Thread.sleep(100);
+		sequence.finish();
+		reader.join();
+		assertTrue(sequence.isFinished());
+	}
+
+	@Test(timeout = 60000)
+	public void testFileStrategy() throws Exception {
+		checkStrategy(new FileStoreStrategy(new StatementContext()));
+	}
+
+	@Test(timeout = 60000)
+	public void testCompressedFileStrategy() throws Exception {
+		final ContentDescription cd = new ContentDescription("http://localhost", "", "", "",
+				new String[] { "compressSpill=true" });
+		final FileStoreStrategy strategy = new FileStoreStrategy(new StatementContext(), cd);
+		final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+		try (final InputStream is = content(); final GZIPOutputStream os = new GZIPOutputStream(gzipped)) {
+			final byte[] buffer = new byte[8192];
+			int read;
+			while ((read = is.read(buffer)) != -1)
+				os.write(buffer, 0, read);
+		}
+		checkStrategy(strategy, new EncodedInputStream(slow(gzipped.toByteArray()), true));
+	}
+
+	@Test(timeout = 60000)
+	public void testMappedStrategy() throws Exception {
+		checkStrategy(new MappedStoreStrategy(new StatementContext()));
+	}
+
+	@Test(timeout = 60000)
+	public void testHybridStrategy() throws Exception {
+		checkStrategy(new HybridStoreStrategy(new StatementContext()));
+	}
+
+	private static void checkStrategy(IStoreStrategy strategy) throws Exception {
+		checkStrategy(strategy, content());
+	}
+
+	private static void checkStrategy(IStoreStrategy strategy, InputStream content) throws Exception {
+		try {
+			strategy.store(content);
+			final String[] headers = strategy.openToRead();
+			assertEquals(2, headers.length);
+			long rows = 0;
+			long sum = 0;
+			while (true) {
+				final List<String[]> part = strategy.fetch(rows, 1000);
+				for (String[] row : part) {
+					assertEquals(rows + 1, Long.parseLong(row[0]));
+					sum += Long.parseLong(row[0]);
+					rows++;
+				}
+				if (part.size() < 1000)
+					break;
+			}
+			assertEquals(ROWS, rows);
+			assertEquals((long) ROWS * (ROWS + 1) / 2, sum);
+		} finally {
+			strategy.close();
+		}
+	}
+
+	private static InputStream content() {
+		final StringBuilder sb = new StringBuilder("id,value\n");
+		for (int i = 1; i <= ROWS; i++) {
+			sb.append(i).append(",value").append(i).append('\n');
+		}
+		return slow(sb.toString().getBytes());
+	}
+
+	private static InputStream slow(byte[] bytes) {
+		return new FilterInputStream(new ByteArrayInputStream(bytes)) {
+			private int reads;
+
+			@Override
+			public int read(byte[] b, int off, int len) throws IOException {
+				// vary the chunk size so that the reader catches up with the writer at arbitrary offsets
+				return super.read(b, off, Math.min(len, 1 + (reads++ * 7919) % 8192));
+			}
+		};
+	}
+
+}
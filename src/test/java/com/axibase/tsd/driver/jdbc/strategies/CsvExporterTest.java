@@ -0,0 +1,158 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.ext.AtsdException;
+
+public class CsvExporterTest {
+	private static final String CONTENT = "entity,time,value\r\n060190011,1392048000000,1.0\r\n"
+			+ "060190011,1392055200000,2.0\r\n";
+
+	@Test
+	public void testCopyStopsAtTrailer() throws IOException, AtsdException {
+		final byte[] body = CONTENT.getBytes();
+		final StatementContext context = new StatementContext();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final long written = new CsvExporter(context).export(withTrailer(body), Channels.newChannel(out));
+		assertEquals(body.length, written);
+		assertArrayEquals(body, out.toByteArray());
+		assertNotNull(context.getException());
+	}
+
+	@Test
+	public void testTransferTruncatesTrailer() throws IOException, AtsdException {
+		final byte[] body = CONTENT.getBytes();
+		final StatementContext context = new StatementContext();
+		final File file = File.createTempFile("export", ".csv");
+		file.deleteOnExit();
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			final FileChannel channel = raf.getChannel();
+			final long written = new CsvExporter(context).export(withTrailer(body), channel);
+			assertEquals(body.length, written);
+			assertEquals(body.length, channel.size());
+		}
+		assertNotNull(context.getException());
+	}
+
+	@Test
+	public void testTransferToWriteOnlyChannel() throws IOException, AtsdException {
+		final byte[] body = CONTENT.getBytes();
+		final StatementContext context = new StatementContext();
+		final File file = File.createTempFile("export", ".csv");
+		file.deleteOnExit();
+		try (final FileOutputStream fos = new FileOutputStream(file)) {
+			final long written = new CsvExporter(context).export(withTrailer(body), fos.getChannel());
+			assertEquals(body.length, written);
+		}
+		assertEquals(body.length, file.length());
+		assertNotNull(context.getException());
+	}
+
+	@Test
+	public void testTransferTruncatesPreviousContent() throws IOException, AtsdException {
+		final byte[] body = CONTENT.getBytes();
+		final StatementContext context = new StatementContext();
+		final File file = File.createTempFile("export", ".csv");
+		file.deleteOnExit();
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.write(new byte[3 * body.length]);
+			raf.seek(0);
+			final FileChannel channel = raf.getChannel();
+			new CsvExporter(context).export(new ByteArrayInputStream(body), channel);
+			assertEquals(body.length, channel.size());
+			assertEquals(body.length, channel.position());
+		}
+		assertNull(context.getException());
+	}
+
+	@Test
+	public void testMaxRows() throws IOException, AtsdException {
+		final String quoted = "entity,time,text\r\ne1,1392048000000,\"two\nlines\"\r\ne2,1392055200000,x\r\n";
+		final StatementContext context = new StatementContext();
+		context.setMaxRowCount(1);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final long written = new CsvExporter(context).export(withTrailer(quoted.getBytes()), Channels.newChannel(out));
+		final String expected = "entity,time,text\r\ne1,1392048000000,\"two\nlines\"\r\n";
+		assertEquals(expected, out.toString());
+		assertEquals(expected.length(), written);
+		assertNull(context.getException());
+	}
+
+	@Test
+	public void testTransferMaxRows() throws IOException, AtsdException {
+		final StatementContext context = new StatementContext();
+		context.setMaxRowCount(1);
+		final File file = File.createTempFile("export", ".csv");
+		file.deleteOnExit();
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			final long written = new CsvExporter(context).export(withTrailer(CONTENT.getBytes()), raf.getChannel());
+			assertEquals(CONTENT.indexOf("060190011,1392055200000"), written);
+			assertEquals(written, raf.length());
+		}
+	}
+
+	@Test(expected = AtsdException.class)
+	public void testUnexpectedFormat() throws IOException, AtsdException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			new CsvExporter(new StatementContext()).export(new ByteArrayInputStream("{\"error\":1}".getBytes()),
+					Channels.newChannel(out));
+		} finally {
+			assertEquals(0, out.size());
+		}
+	}
+
+	@Test
+	public void testWithoutTrailer() throws IOException, AtsdException {
+		final byte[] body = CONTENT.getBytes();
+		final StatementContext context = new StatementContext();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		new CsvExporter(context).export(new ByteArrayInputStream(body), Channels.newChannel(out));
+		assertArrayEquals(body, out.toByteArray());
+		assertNull(context.getException());
+	}
+
+	private InputStream withTrailer(byte[] body) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		out.write(body);
+		try (final InputStream trailer = getClass().getResourceAsStream("/csv/docker.network.eth0.rxerrors.csv")) {
+			final byte[] buffer = new byte[4096];
+			int count;
+			while ((count = trailer.read(buffer)) != -1) {
+				out.write(buffer, 0, count);
+			}
+		}
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+
+}
@@ -20,6 +20,8 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.sql.SQLException;
 
 import org.junit.After;
@@ -123,4 +125,18 @@ public class IteratorDataTest {
 		throw exc;
 	}
 
+	@Test
+	public void testSplitCharacter() throws Exception {
+		final IteratorData split = new IteratorData(new StatementContext());
+		final byte[] bytes = "entity\nd\u00e9j\u00e0 vu\n".getBytes(Charset.defaultCharset());
+		// with a multi-byte charset the first chunk ends inside the first accented character
+		final int middle = "entity\nd".length() + 1;
+		split.bufferOperations(ByteBuffer.wrap(bytes, 0, middle));
+		split.bufferOperations(ByteBuffer.wrap(bytes, middle, bytes.length - middle));
+		assertArrayEquals(new String[] { "entity" }, split.getNext(false));
+		final String row = new String(bytes, Charset.defaultCharset()).split("\n")[1];
+		assertArrayEquals(new String[] { row }, split.getNext(false));
+		assertEquals(bytes.length, split.getPosition());
+	}
+
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.content.ContentDescription;
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.strategies.storage.FileStoreStrategy;
+import com.axibase.tsd.driver.jdbc.util.DriverExecutor;
+
+public class SpillManagerTest {
+	private static final int ROWS = 1000;
+
+	@Test
+	public void testOrphansRemoved() throws Exception {
+		final Path dir = Files.createTempDirectory("spill");
+		try {
+			final Path deadLock = Files.createFile(dir.resolve("atsd-driver-dead.lock"));
+			final Path deadSpill = Files.createFile(dir.resolve("atsd-driver-dead-1.spill"));
+			final Path aliveLock = Files.createFile(dir.resolve("atsd-driver-alive.lock"));
+			final Path aliveSpill = Files.createFile(dir.resolve("atsd-driver-alive-1.spill"));
+			try (final FileChannel channel = FileChannel.open(aliveLock, StandardOpenOption.WRITE);
+					final FileLock lock = channel.lock();
+					final SpillFile spill = SpillManager.create(dir.toString(), this)) {
+				assertTrue(Files.exists(spill.getPath()));
+				assertFalse(Files.exists(deadLock));
+				assertFalse(Files.exists(deadSpill));
+				assertTrue(Files.exists(aliveLock));
+				assertTrue(Files.exists(aliveSpill));
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test
+	public void testShutdownHookFollowsOpenFiles() throws Exception {
+		final Path dir = Files.createTempDirectory("spill");
+		try {
+			final SpillFile spill = SpillManager.create(dir.toString(), this);
+			assertTrue(SpillManager.isShutdownHookRegistered());
+			spill.close();
+			assertEquals(0, SpillManager.getOpenFiles());
+			assertFalse(SpillManager.isShutdownHookRegistered());
+		} finally {
+			delete(dir);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testReserveWaitsForQuota() throws Exception {
+		final Path dir = Files.createTempDirectory("spill");
+		SpillManager.setQuota(1024 * 1024);
+		try {
+			final SpillFile first = SpillManager.create(dir.toString(), this);
+			final SpillFile second = SpillManager.create(dir.toString(), this);
+			assertTrue(first.reserve(1024 * 1024, 0));
+			assertFalse(second.reserve(1, 0));
+			final Future<Boolean> waiting = DriverExecutor.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws Exception {
+					return second.reserve(1, TimeUnit.SECONDS.toMillis(5));
+				}
+			});
+			first.close();
+			assertTrue(waiting.get());
+			assertFalse(Files.exists(first.getPath()));
+			second.close();
+			assertEquals(0, SpillManager.getReserved());
+		} finally {
+			SpillManager.setQuota(0);
+			delete(dir);
+		}
+	}
+
+	@Test(timeout = 10000)
+	public void testStreamingWhenQuotaIsExhausted() throws Exception {
+		final Path dir = Files.createTempDirectory("spill");
+		SpillManager.setQuota(1024 * 1024);
+		final SpillFile holder = SpillManager.create(dir.toString(), this);
+		final ContentDescription cd = new ContentDescription("http://localhost", "", "", "",
+				new String[] { "spillDirectory=" + dir });
+		final FileStoreStrategy strategy = new FileStoreStrategy(new StatementContext(), cd);
+		try {
+			assertTrue(holder.reserve(1024 * 1024, 0));
+			strategy.store(content());
+			assertEquals(2, strategy.openToRead().length);
+			final List<String[]> rows = strategy.fetch(0, ROWS + 1);
+			assertEquals(ROWS, rows.size());
+			assertEquals(String.valueOf(ROWS), rows.get(ROWS - 1)[0]);
+		} finally {
+			strategy.close();
+			holder.close();
+			SpillManager.setQuota(0);
+			delete(dir);
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testLeakedFileDeleted() throws Exception {
+		final Path dir = Files.createTempDirectory("spill");
+		try {
+			final Path leaked = SpillManager.create(dir.toString(), new Object()).getPath();
+			while (Files.exists(leaked)) {
+				System.gc();
+				Thread.sleep(10);
+				SpillManager.create(dir.toString(), this).close();
+			}
+		} finally {
+			delete(dir);
+		}
+	}
+
+	private static ByteArrayInputStream content() {
+		final StringBuilder sb = new StringBuilder("id,value\n");
+		for (int i = 1; i <= ROWS; i++) {
+			sb.append(i).append(",value").append(i).append('\n');
+		}
+		return new ByteArrayInputStream(sb.toString().getBytes());
+	}
+
+	private static void delete(Path dir) throws IOException {
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (final Path path : files) {
+				Files.deleteIfExists(path);
+			}
+		}
+		Files.deleteIfExists(dir);
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.util.TimeDateUtils;
+
+public class ColumnBlockTest {
+	private static final int[] TYPES = { Types.VARCHAR, Types.TIMESTAMP, Types.BIGINT, Types.DOUBLE, Types.DECIMAL,
+			Types.SMALLINT, ColumnBlock.MISSING };
+
+	@Test
+	public void testRoundTrip() throws Exception {
+		final ColumnBlock block = new ColumnBlock(TYPES, 16);
+		block.add(new String[] { "e1", "2016-01-01T00:00:00.000Z", "10", "1.5", "0.10", "7", "x" });
+		block.add(new String[] { "", "", "", "", "", "", "" });
+		block.add(new String[] { "e1", "2016-01-01T00:00:01.500Z", "-3", "NaN?", "1e400x", "40000", "y" });
+		block.add(new String[] { "e2", "2015-12-31T23:59:59.000Z", "5", "-2.0", "12345678901234567890.5", "-1", "z" });
+		final ColumnBlock decoded = roundTrip(block);
+		assertEquals(4, decoded.size());
+
+		assertEquals(Arrays.<Object> asList("e1", new Timestamp(1451606400000L), 10L, 1.5, new BigDecimal("0.10"),
+				(short) 7), decoded.getRow(0));
+		assertEquals(Arrays.<Object> asList("", null, null, null, null, null), decoded.getRow(1));
+		assertEquals(Arrays.<Object> asList("e1", new Timestamp(1451606401500L), -3L, null, null, null),
+				decoded.getRow(2));
+		assertEquals(new BigDecimal("12345678901234567890.5"), decoded.getRow(3).get(4));
+
+		assertEquals(1451606399000L, decoded.getMin(1));
+		assertEquals(1451606401500L, decoded.getMax(1));
+		assertEquals(-3L, decoded.getMin(2));
+		assertEquals(10L, decoded.getMax(2));
+		assertEquals(-2.0, decoded.getMin(3));
+		assertEquals(1.5, decoded.getMax(3));
+		assertNull(decoded.getMin(0));
+		assertNull(decoded.getMin(4));
+
+		assertArrayEquals(new String[] { "e2", "2015-12-31T23:59:59.000Z", "5", "-2.0", "12345678901234567890.5", "-1",
+				"z" }, decoded.getText(3));
+		assertArrayEquals(new String[] { "", "", "", "", "", "", "" }, decoded.getText(1));
+	}
+
+	@Test
+	public void testFullBlock() throws Exception {
+		final int rows = ColumnarWriter.BLOCK_ROWS;
+		final ColumnBlock block = new ColumnBlock(TYPES, rows);
+		long time = 1451606400000L;
+		for (int i = 0; i < rows; i++) {
+			time += i % 10 == 0 ? 3600000L : 1000L;
+			block.add(new String[] { "entity" + (i % 3), TimeDateUtils.formatEpochMillis(time), Integer.toString(i), Double.toString(i / 4.0),
+					Integer.toString(i), Integer.toString(i % 100), "" });
+		}
+		final ColumnBlock decoded = roundTrip(block);
+		assertEquals(rows, decoded.size());
+		for (int i = 0; i < rows; i++) {
+			assertArrayEquals(block.getText(i), decoded.getText(i));
+		}
+		assertEquals(time, ((Timestamp) decoded.getRow(rows - 1).get(1)).getTime());
+	}
+
+	private static ColumnBlock roundTrip(ColumnBlock block) throws Exception {
+		final ByteBuffer buffer = ByteBuffer.allocate(block.encodedSize()).order(ByteOrder.nativeOrder());
+		block.encode(buffer);
+		assertEquals(buffer.capacity(), buffer.position());
+		buffer.flip();
+		final ColumnBlock decoded = new ColumnBlock(TYPES, ColumnarWriter.BLOCK_ROWS);
+		decoded.decode(buffer);
+		assertEquals(0, buffer.remaining());
+		return decoded;
+	}
+
+}
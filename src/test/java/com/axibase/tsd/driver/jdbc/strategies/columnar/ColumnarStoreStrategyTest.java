@@ -0,0 +1,111 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+
+public class ColumnarStoreStrategyTest {
+	private static final int ROWS = 20000;
+
+	@Test(timeout = 30000)
+	public void testReadAndReread() throws Exception {
+		final ColumnarStoreStrategy strategy = new ColumnarStoreStrategy(new StatementContext());
+		try {
+			strategy.store(new ByteArrayInputStream(content()));
+			assertArrayEquals(new String[] { "entity", "time", "value", "tags.tag" }, strategy.openToRead());
+			long offset = 0;
+			List<String[]> rows;
+			while (!(rows = strategy.fetch(offset, 1000)).isEmpty()) {
+				for (String[] row : rows) {
+					assertRow(offset++, row);
+				}
+			}
+			assertEquals(ROWS, offset);
+			assertRow(5, strategy.fetch(5, 1).get(0));
+			assertRow(ROWS - 1, strategy.fetch(ROWS - 1, 10).get(0));
+			assertEquals(1000, strategy.fetchFrame(100, 1000).size());
+			final Iterator<String[]> iterator = strategy.getIterator();
+			assertRow(1100, iterator.next());
+			assertFalse(strategy.isSpilled());
+		} finally {
+			strategy.close();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testSpillPastMemoryBudget() throws Exception {
+		final StatementContext context = new StatementContext();
+		final ColumnarStoreStrategy strategy = new ColumnarStoreStrategy(context, 16 * 1024);
+		try {
+			strategy.store(new ByteArrayInputStream(content()));
+			strategy.openToRead();
+			assertRow(ROWS - 1, strategy.fetch(ROWS - 1, 1).get(0));
+			assertTrue(strategy.isSpilled());
+			assertTrue(context.getMemory().getUsed() > 0);
+			assertRow(3, strategy.fetch(3, 1).get(0));
+			assertRow(ROWS / 2, strategy.fetch(ROWS / 2, 1).get(0));
+		} finally {
+			strategy.close();
+		}
+		// the parser buffers are released once the writer task ends
+		final long deadline = System.currentTimeMillis() + 10000;
+		while (context.getMemory().getUsed() > 0 && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertEquals(0, context.getMemory().getUsed());
+	}
+
+	@Test(timeout = 30000)
+	public void testEmptyResponse() throws Exception {
+		final ColumnarStoreStrategy strategy = new ColumnarStoreStrategy(new StatementContext());
+		try {
+			strategy.store(new ByteArrayInputStream(new byte[0]));
+			assertNull(strategy.openToRead());
+		} finally {
+			strategy.close();
+		}
+	}
+
+	private static void assertRow(long index, String[] row) {
+		assertEquals("e" + index % 2, row[0]);
+		assertEquals(Long.toString(1000 + index), row[1]);
+		assertEquals(Double.toString(index / 2.0), row[2]);
+		assertEquals(index % 3 == 0 ? "t" + index % 7 : "", row[3]);
+	}
+
+	private static byte[] content() {
+		final StringBuilder sb = new StringBuilder("entity,time,value,tags.tag\n");
+		for (int i = 0; i < ROWS; i++) {
+			sb.append('e').append(i % 2).append(',').append(1000 + i).append(',').append(i / 2.0).append(',');
+			if (i % 3 == 0)
+				sb.append('t').append(i % 7);
+			sb.append('\n');
+		}
+		return sb.toString().getBytes();
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.columnar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class GorillaCodecTest {
+	private static final Logger logger = LoggerFactory.getLogger(GorillaCodecTest.class);
+	private static final String[] FIXTURES = { "double", "float", "int", "long", "short", "decimal.200" };
+
+	@Test
+	public void testLongs() {
+		final long[] regular = new long[1000];
+		for (int i = 0; i < regular.length; i++) {
+			regular[i] = 1458294659000L + 60000L * i + (i % 10 == 0 ? 1 : 0);
+		}
+		assertLongs(regular);
+		assertTrue(encodedBytes(regular) < regular.length);
+		assertLongs(new long[] { Long.MIN_VALUE, Long.MAX_VALUE, 0, -1, Long.MIN_VALUE, 1L << 40, -(1L << 40), 5 });
+		final Random random = new Random(7);
+		final long[] noise = new long[1000];
+		for (int i = 0; i < noise.length; i++) {
+			noise[i] = random.nextLong() >> random.nextInt(64);
+		}
+		assertLongs(noise);
+		assertLongs(new long[] { 42 });
+		assertLongs(new long[0]);
+	}
+
+	@Test
+	public void testDoubles() {
+		assertDoubles(new double[] { 1.5, 1.5, 1.5, -0.0, 0.0, Double.NaN, Double.POSITIVE_INFINITY,
+				Double.NEGATIVE_INFINITY, Double.MIN_VALUE, Double.MAX_VALUE, 1e-300, 12.25 });
+		final Random random = new Random(11);
+		final double[] walk = new double[1000];
+		for (int i = 1; i < walk.length; i++) {
+			walk[i] = walk[i - 1] + (random.nextInt(5) - 2) * 0.5;
+		}
+		assertDoubles(walk);
+		final double[] noise = new double[1000];
+		for (int i = 0; i < noise.length; i++) {
+			noise[i] = random.nextDouble();
+		}
+		assertDoubles(noise);
+	}
+
+	/**
+	 * Bytes per (time, value) point of the bundled fixtures, 16 without compression; logs one line per fixture.
+	 */
+	@Test
+	public void testFixtures() throws IOException {
+		logger.info(String.format("%-12s %8s %10s %10s %8s", "fixture", "points", "time B/pt", "value B/pt", "total"));
+		for (String fixture : FIXTURES) {
+			final List<String[]> rows = read("/csv/jdbc.driver.test.metric." + fixture + ".csv");
+			final List<String> header = Arrays.asList(rows.remove(0));
+			final int time = header.indexOf("time");
+			final int value = header.indexOf("value");
+			final long[] times = new long[rows.size()];
+			final double[] values = new double[rows.size()];
+			for (int i = 0; i < rows.size(); i++) {
+				times[i] = Long.parseLong(rows.get(i)[time]);
+				values[i] = Double.parseDouble(rows.get(i)[value]);
+			}
+			assertLongs(times);
+			assertDoubles(values);
+			final double timeBytes = (double) encodedBytes(times) / rows.size();
+			final double valueBytes = (double) encodedBytes(values) / rows.size();
+			final double perPoint = timeBytes + valueBytes;
+			logger.info(String.format("%-12s %8d %10.2f %10.2f %8.2f", fixture, rows.size(), timeBytes, valueBytes,
+					perPoint));
+			assertTrue(fixture + ": " + perPoint, perPoint < 16);
+		}
+	}
+
+	private static void assertLongs(long[] values) {
+		final ByteBuffer buffer = ByteBuffer.allocate((int) encodedBytes(values)).order(ByteOrder.nativeOrder());
+		final GorillaCodec.BitWriter writer = new GorillaCodec.BitWriter(buffer);
+		GorillaCodec.encodeLongs(values, values.length, writer);
+		writer.flush();
+		assertEquals(buffer.capacity(), buffer.position());
+		buffer.flip();
+		final long[] decoded = new long[values.length];
+		GorillaCodec.decodeLongs(new GorillaCodec.BitReader(buffer), decoded, values.length);
+		assertArrayEquals(values, decoded);
+	}
+
+	private static void assertDoubles(double[] values) {
+		final ByteBuffer buffer = ByteBuffer.allocate((int) encodedBytes(values)).order(ByteOrder.nativeOrder());
+		final GorillaCodec.BitWriter writer = new GorillaCodec.BitWriter(buffer);
+		GorillaCodec.encodeDoubles(values, values.length, writer);
+		writer.flush();
+		assertEquals(buffer.capacity(), buffer.position());
+		buffer.flip();
+		final double[] decoded = new double[values.length];
+		GorillaCodec.decodeDoubles(new GorillaCodec.BitReader(buffer), decoded, values.length);
+		for (int i = 0; i < values.length; i++) {
+			assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoded[i]));
+		}
+	}
+
+	private static long encodedBytes(long[] values) {
+		final GorillaCodec.BitWriter counter = new GorillaCodec.BitWriter(null);
+		GorillaCodec.encodeLongs(values, values.length, counter);
+		return counter.getBytes();
+	}
+
+	private static long encodedBytes(double[] values) {
+		final GorillaCodec.BitWriter counter = new GorillaCodec.BitWriter(null);
+		GorillaCodec.encodeDoubles(values, values.length, counter);
+		return counter.getBytes();
+	}
+
+	private static List<String[]> read(String resource) throws IOException {
+		final List<String[]> rows = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(GorillaCodecTest.class.getResourceAsStream(resource), StandardCharsets.UTF_8))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isEmpty())
+					rows.add(line.split(","));
+			}
+		}
+		return rows;
+	}
+
+}
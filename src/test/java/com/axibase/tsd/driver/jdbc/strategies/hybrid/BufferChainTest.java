@@ -0,0 +1,118 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.hybrid;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.channels.Channels;
+
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.strategies.RegionIterator;
+import com.axibase.tsd.driver.jdbc.strategies.SpillManager;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+import com.axibase.tsd.driver.jdbc.util.MemoryAccountant;
+
+public class BufferChainTest {
+
+	@Test(timeout = 30000)
+	public void testSmallContentStaysInMemory() throws Exception {
+		final BufferChain chain = new BufferChain(1024 * 1024);
+		try {
+			assertEquals(1000, readAll(chain, content(1000), false));
+			assertEquals(-1, chain.getSpillStart());
+		} finally {
+			chain.close();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testSpillPastBudget() throws Exception {
+		final BufferChain chain = new BufferChain(2 * BufferChain.CHUNK_SIZE);
+		try {
+			assertEquals(200000, readAll(chain, content(200000), true));
+			assertTrue(chain.getSpillStart() >= 2 * BufferChain.CHUNK_SIZE);
+		} finally {
+			chain.close();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testSpillPastMemoryLimit() throws Exception {
+		final MemoryAccountant memory = MemoryAccountant.driver().newChild("statement", 2 * BufferChain.CHUNK_SIZE);
+		final BufferChain chain = new BufferChain(1024 * 1024 * 1024, null, memory);
+		try {
+			assertEquals(200000, readAll(chain, content(200000), true));
+			assertTrue(chain.getSpillStart() >= 2 * BufferChain.CHUNK_SIZE);
+		} finally {
+			chain.close();
+		}
+		assertEquals(0, memory.getUsed());
+	}
+
+	@Test(timeout = 30000)
+	public void testNoSpillAfterClose() throws Exception {
+		final BufferChain chain = new BufferChain(BufferChain.CHUNK_SIZE);
+		final int openFiles = SpillManager.getOpenFiles();
+		chain.close();
+		chain.startSpill(BufferChain.CHUNK_SIZE);
+		assertEquals(-1, chain.getSpillStart());
+		assertEquals(openFiles, SpillManager.getOpenFiles());
+	}
+
+	private static long readAll(BufferChain chain, byte[] content, boolean awaitWriter) throws Exception {
+		final StrategyStatus status = new StrategyStatus();
+		status.setInProgress(true);
+		final BufferChainWriter writer = new BufferChainWriter(
+				Channels.newChannel(new ByteArrayInputStream(content)), chain, status);
+		if (awaitWriter) {
+			writer.call();
+		} else {
+			new Thread(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						writer.call();
+					} catch (Exception e) {
+						throw new IllegalStateException(e);
+					}
+				}
+			}).start();
+		}
+		final RegionIterator iterator = new RegionIterator(chain, new StatementContext(), status);
+		assertEquals("id", iterator.next()[0]);
+		long rows = 0;
+		while (iterator.hasNext()) {
+			final String[] next = iterator.next();
+			if (next == null)
+				break;
+			assertEquals(rows + 1, Long.parseLong(next[0]));
+			rows++;
+		}
+		return rows;
+	}
+
+	private static byte[] content(int rows) {
+		final StringBuilder sb = new StringBuilder("id,value\n");
+		for (int i = 1; i <= rows; i++) {
+			sb.append(i).append(",value").append(i).append('\n');
+		}
+		return sb.toString().getBytes();
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.mmap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.Test;
+
+public class MappedRegionTest {
+
+	@Test
+	public void testReadAfterClose() throws Exception {
+		final Path path = Files.createTempFile("atsd-region", ".csv");
+		try {
+			final MappedRegion region = new MappedRegion(path);
+			final byte[] bytes = "entity,time,value\n".getBytes(StandardCharsets.US_ASCII);
+			region.writeBuffer(0).put(bytes);
+			region.commit(bytes.length);
+			assertEquals(4, region.read(0, bytes.length, 4).remaining());
+			region.close();
+			assertTrue(region.isClosed());
+			try {
+				region.read(4, bytes.length, 4);
+				fail("Read from a closed region");
+			} catch (final IOException expected) {
+				assertEquals("Region is closed", expected.getMessage());
+			}
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+	@Test
+	public void testFinishTruncatesToCommittedLength() throws Exception {
+		final Path path = Files.createTempFile("atsd-region", ".csv");
+		try {
+			final MappedRegion region = new MappedRegion(path);
+			final byte[] bytes = "entity,time,value\n".getBytes(StandardCharsets.US_ASCII);
+			region.writeBuffer(0).put(bytes);
+			region.commit(bytes.length);
+			region.finish();
+			assertEquals(bytes.length, Files.size(path));
+			assertEquals('e', region.read(0, bytes.length, 4).get());
+			region.close();
+		} finally {
+			Files.deleteIfExists(path);
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.strategies.CommittedSequence;
+import com.axibase.tsd.driver.jdbc.strategies.StrategyStatus;
+
+public class FileChannelWriterTest {
+	private static final int MB = 1024 * 1024;
+
+	private Path tmp;
+	private StrategyStatus status;
+
+	@Before
+	public void setUp() throws IOException {
+		tmp = Files.createTempFile("atsd-writer", null);
+		status = new StrategyStatus();
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		Files.delete(tmp);
+	}
+
+	@Test
+	public void testContent() throws IOException {
+		final byte[] content = content(3 * MB + 12345);
+		final long length = write(new RecordingChannel(content, -1));
+		assertEquals(content.length, length);
+		assertArrayEquals(content, Files.readAllBytes(tmp));
+	}
+
+	@Test
+	public void testPublishSteps() throws IOException {
+		final byte[] content = content(4 * MB + 100);
+		final RecordingChannel input = new RecordingChannel(content, -1);
+		write(input);
+		final List<Long> published = input.published;
+		assertEquals(5, published.size());
+		// the first rows are published on their own, then every megabyte, then the partial last read
+		for (int i = 2; i < published.size() - 1; i++) {
+			assertEquals(MB, published.get(i) - published.get(i - 1));
+		}
+		assertEquals(content.length, (long) published.get(published.size() - 1));
+	}
+
+	@Test
+	public void testFinishOnEof() throws IOException {
+		final byte[] content = content(MB / 2);
+		write(new RecordingChannel(content, -1));
+		final CommittedSequence sequence = status.getSequence();
+		assertTrue(sequence.isFinished());
+		assertEquals(content.length, sequence.getCommitted());
+		assertEquals(0, status.getSyncLatch().getCount());
+	}
+
+	@Test
+	public void testFinishOnError() throws IOException {
+		final byte[] content = content(3 * MB);
+		final RecordingChannel input = new RecordingChannel(content, 2 * MB);
+		try {
+			write(input);
+			fail("Read error is not thrown");
+		} catch (final IOException expected) {
+			assertEquals("Connection reset", expected.getMessage());
+		}
+		final CommittedSequence sequence = status.getSequence();
+		assertTrue(sequence.isFinished());
+		assertEquals(2 * MB, sequence.getCommitted());
+		assertEquals(2 * MB, Files.size(tmp));
+		assertEquals(0, status.getSyncLatch().getCount());
+		assertTrue(!input.isOpen());
+	}
+
+	private long write(ReadableByteChannel input) throws IOException {
+		final FileChannel output = FileChannel.open(tmp, StandardOpenOption.WRITE);
+		return new FileChannelWriter(input, output, status).call();
+	}
+
+	private static byte[] content(int length) {
+		final byte[] content = new byte[length];
+		for (int i = 0; i < length; i++) {
+			content[i] = (byte) (i % 64 == 63 ? '\n' : 'a' + i % 26);
+		}
+		return content;
+	}
+
+	/**
+	 * Serves the content in full reads and records each newly committed length seen between reads.
+	 */
+	private class RecordingChannel implements ReadableByteChannel {
+		private final byte[] content;
+		private final int failAt;
+		private final List<Long> published = new ArrayList<>();
+		private int position;
+		private boolean open = true;
+
+		RecordingChannel(byte[] content, int failAt) {
+			this.content = content;
+			this.failAt = failAt;
+		}
+
+		@Override
+		public int read(ByteBuffer dst) throws IOException {
+			final long committed = status.getSequence().getCommitted();
+			if (committed > 0 && (published.isEmpty() || published.get(published.size() - 1) != committed))
+				published.add(committed);
+			if (position == failAt)
+				throw new IOException("Connection reset");
+			if (position == content.length)
+				return -1;
+			int count = Math.min(dst.remaining(), content.length - position);
+			if (failAt > position)
+				count = Math.min(count, failAt - position);
+			dst.put(content, position, count);
+			position += count;
+			return count;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public void close() {
+			open = false;
+		}
+	}
+
+}
@@ -0,0 +1,155 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.strategies.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.axibase.tsd.driver.jdbc.content.StatementContext;
+import com.axibase.tsd.driver.jdbc.logging.LoggingFacade;
+import com.axibase.tsd.driver.jdbc.protocol.EncodedInputStream;
+import com.axibase.tsd.driver.jdbc.util.DriverExecutor;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class FileStoreStrategyTest {
+	private static final LoggingFacade logger = LoggingFacade.getLogger(FileStoreStrategyTest.class);
+	private static final int FIRST_ROWS = 2;
+	private static final int PARTS = 40;
+	private static final int ROWS_PER_PART = 50;
+	private static final long PART_DELAY_MILLIS = 50;
+
+	private HttpServer server;
+	private URL url;
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+				exchange.sendResponseHeaders(200, 0);
+				try (final OutputStream os = new GZIPOutputStream(exchange.getResponseBody(), true)) {
+					int row = 0;
+					os.write(("id,value\n" + rows(row, FIRST_ROWS)).getBytes());
+					os.flush();
+					row += FIRST_ROWS;
+					for (int part = 0; part < PARTS; part++) {
+						Thread.sleep(PART_DELAY_MILLIS);
+						os.write(rows(row, ROWS_PER_PART).getBytes());
+						os.flush();
+						row += ROWS_PER_PART;
+					}
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		server.start();
+		url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	@Test(timeout = 30000)
+	public void testTimeToFirstRow() throws Exception {
+		final FileStoreStrategy strategy = new FileStoreStrategy(new StatementContext());
+		try {
+			final long start = System.nanoTime();
+			final HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+			conn.setRequestProperty("Accept-Encoding", "gzip");
+			strategy.store(new EncodedInputStream(conn.getInputStream(), "gzip".equals(conn.getContentEncoding())));
+			assertArrayEquals(new String[] { "id", "value" }, strategy.openToRead());
+			final List<String[]> first = strategy.fetch(0, 1);
+			final long firstRowMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			assertEquals("1", first.get(0)[0]);
+			long rows = first.size();
+			List<String[]> part;
+			while (!(part = strategy.fetch(rows, 100)).isEmpty()) {
+				rows += part.size();
+			}
+			final long totalMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+			logger.info("[testTimeToFirstRow] first row {} ms, all rows {} ms", firstRowMillis, totalMillis);
+			assertEquals(FIRST_ROWS + PARTS * ROWS_PER_PART, rows);
+			assertTrue(totalMillis >= PARTS * PART_DELAY_MILLIS);
+			assertTrue("first row after " + firstRowMillis + " ms", firstRowMillis < PARTS * PART_DELAY_MILLIS / 4);
+		} finally {
+			strategy.close();
+		}
+	}
+
+	@Test(timeout = 30000)
+	public void testStreamedWhenSaturated() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Future<Void>> blockers = new ArrayList<>();
+		final FileStoreStrategy strategy = new FileStoreStrategy(new StatementContext());
+		try {
+			final CountDownLatch started = new CountDownLatch(DriverExecutor.getSize());
+			for (int i = 0; i < 2 * DriverExecutor.getSize(); i++) {
+				blockers.add(DriverExecutor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						started.countDown();
+						release.await();
+						return null;
+					}
+				}));
+			}
+			started.await();
+			strategy.store(new ByteArrayInputStream(("id,value\n" + rows(0, 3)).getBytes()));
+			assertArrayEquals(new String[] { "id", "value" }, strategy.openToRead());
+			assertEquals(3, strategy.fetch(0, 100).size());
+		} finally {
+			release.countDown();
+			for (Future<Void> blocker : blockers) {
+				blocker.get();
+			}
+			strategy.close();
+		}
+	}
+
+	private static String rows(int from, int count) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = from + 1; i <= from + count; i++) {
+			sb.append(i).append(",value").append(i).append('\n');
+		}
+		return sb.toString();
+	}
+
+}
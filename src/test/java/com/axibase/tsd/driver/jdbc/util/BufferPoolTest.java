@@ -0,0 +1,64 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class BufferPoolTest {
+
+	@Test
+	public void testSizeClasses() {
+		assertEquals(0, BufferPool.classIndex(1));
+		assertEquals(0, BufferPool.classIndex(4096));
+		assertEquals(1, BufferPool.classIndex(4097));
+		assertEquals(2, BufferPool.classIndex(16 * 1024));
+		assertEquals(10, BufferPool.classIndex(4 * 1024 * 1024));
+		assertEquals(-1, BufferPool.classIndex(4 * 1024 * 1024 + 1));
+	}
+
+	@Test
+	public void testReuse() {
+		final ByteBuffer buffer = BufferPool.acquire(20000);
+		assertTrue(buffer.isDirect());
+		assertEquals(32 * 1024, buffer.capacity());
+		buffer.put((byte) 1);
+		BufferPool.release(buffer);
+		final ByteBuffer reused = BufferPool.acquire(30000);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(reused.capacity(), reused.limit());
+		BufferPool.release(reused);
+	}
+
+	@Test
+	public void testForeignBuffersIgnored() {
+		final ByteBuffer heap = ByteBuffer.allocate(8192);
+		BufferPool.release(heap);
+		final ByteBuffer odd = ByteBuffer.allocateDirect(5000);
+		BufferPool.release(odd);
+		final ByteBuffer acquired = BufferPool.acquire(8192);
+		assertNotSame(heap, acquired);
+		assertNotSame(odd, acquired);
+		BufferPool.release(acquired);
+	}
+
+}
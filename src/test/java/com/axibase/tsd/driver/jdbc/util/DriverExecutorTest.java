@@ -0,0 +1,123 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class DriverExecutorTest {
+
+	@Test(timeout = 10000)
+	public void testNamedDaemonThreads() throws Exception {
+		final long completed = DriverExecutor.getCompleted();
+		final Future<Thread> future = DriverExecutor.submit(new Callable<Thread>() {
+			@Override
+			public Thread call() {
+				return Thread.currentThread();
+			}
+		});
+		final Thread thread = future.get();
+		assertTrue(thread.getName().startsWith("atsd-driver-"));
+		assertTrue(thread.isDaemon());
+		while (DriverExecutor.getCompleted() == completed) {
+			Thread.sleep(1);
+		}
+		assertTrue(DriverExecutor.getCompleted() > completed);
+	}
+
+	@Test(timeout = 10000)
+	public void testCancelInterruptsTask() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		final long failed = DriverExecutor.getFailed();
+		final Future<Void> future = DriverExecutor.submit(new Callable<Void>() {
+			@Override
+			public Void call() throws Exception {
+				started.countDown();
+				try {
+					Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+					throw e;
+				}
+				return null;
+			}
+		});
+		started.await();
+		future.cancel(true);
+		interrupted.await();
+		try {
+			future.get();
+		} catch (CancellationException e) {
+			// expected
+		}
+		while (DriverExecutor.getFailed() == failed) {
+			Thread.sleep(1);
+		}
+		assertTrue(DriverExecutor.getFailed() > failed);
+	}
+
+	@Test(timeout = 30000)
+	public void testRejectedWhenSaturated() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final List<Future<Void>> blockers = new ArrayList<>();
+		try {
+			final CountDownLatch started = new CountDownLatch(DriverExecutor.getSize());
+			for (int i = 0; i < 2 * DriverExecutor.getSize(); i++) {
+				blockers.add(DriverExecutor.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						started.countDown();
+						release.await();
+						return null;
+					}
+				}));
+			}
+			started.await();
+			final long rejected = DriverExecutor.getRejected();
+			final long start = System.currentTimeMillis();
+			try {
+				DriverExecutor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						return null;
+					}
+				});
+				fail("Task is accepted by a saturated executor");
+			} catch (RejectedExecutionException e) {
+				assertTrue(System.currentTimeMillis() - start >= DriverExecutor.OFFER_TIMEOUT_MILLIS - 100);
+			}
+			assertEquals(rejected + 1, DriverExecutor.getRejected());
+		} finally {
+			release.countDown();
+			for (Future<Void> blocker : blockers) {
+				blocker.get();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,92 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+
+import org.junit.Test;
+
+public class MemoryAccountantTest {
+	private static final long MB = 1024 * 1024;
+
+	@Test
+	public void testLimitsUpToRoot() {
+		final MemoryAccountant connection = MemoryAccountant.driver().newChild("connection", 4 * MB);
+		final MemoryAccountant first = connection.newChild("statement", 3 * MB);
+		final MemoryAccountant second = connection.newChild("statement", 0);
+		assertTrue(first.tryReserve(3 * MB));
+		assertFalse(first.tryReserve(1));
+		assertFalse(second.tryReserve(2 * MB));
+		assertTrue(second.tryReserve(MB));
+		assertEquals(4 * MB, connection.getUsed());
+		first.close();
+		assertEquals(MB, connection.getUsed());
+		assertFalse(first.tryReserve(1));
+		second.release(MB);
+		assertEquals(0, connection.getUsed());
+	}
+
+	@Test
+	public void testStatementLimitFailsFast() throws SQLException {
+		final MemoryAccountant statement = MemoryAccountant.driver().newChild("statement", MB);
+		statement.reserve(MB, 0);
+		final long start = System.currentTimeMillis();
+		try {
+			statement.reserve(1, 10000);
+			fail("limit is not enforced");
+		} catch (SQLException e) {
+			assertEquals(MemoryAccountant.SQL_STATE, e.getSQLState());
+		}
+		assertTrue(System.currentTimeMillis() - start < 5000);
+		statement.close();
+	}
+
+	@Test
+	public void testBackpressure() throws Exception {
+		final MemoryAccountant connection = MemoryAccountant.driver().newChild("connection", 2 * MB);
+		final MemoryAccountant first = connection.newChild("statement", 0);
+		final MemoryAccountant second = connection.newChild("statement", 0);
+		first.reserve(2 * MB, 0);
+		final Thread releaser = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					return;
+				}
+				first.close();
+			}
+		});
+		releaser.start();
+		second.reserve(MB, 10000);
+		assertEquals(MB, connection.getUsed());
+		releaser.join();
+		try {
+			second.reserve(2 * MB, 100);
+			fail("connection limit is not enforced");
+		} catch (SQLException e) {
+			assertTrue(e.getMessage().contains("connection"));
+		}
+		second.close();
+		assertEquals(0, connection.getUsed());
+	}
+
+}
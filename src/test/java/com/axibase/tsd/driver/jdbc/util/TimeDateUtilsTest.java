@@ -0,0 +1,66 @@
+/*
+* Copyright 2016 Axibase Corporation or its affiliates. All Rights Reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License").
+* You may not use this file except in compliance with the License.
+* A copy of the License is located at
+*
+* https://www.axibase.com/atsd/axibase-apache-2.0.pdf
+*
+* or in the "license" file accompanying this file. This file is distributed
+* on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either
+* express or implied. See the License for the specific language governing
+* permissions and limitations under the License.
+*/
+package com.axibase.tsd.driver.jdbc.util;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+public class TimeDateUtilsTest {
+
+	@Test
+	public void testParseEpochMillis() throws ParseException {
+		assertEquals(1451606400000L, TimeDateUtils.parseEpochMillis("2016-01-01T00:00:00Z"));
+		assertEquals(1451606400123L, TimeDateUtils.parseEpochMillis("2016-01-01T00:00:00.123Z"));
+		assertEquals(1451606400500L, TimeDateUtils.parseEpochMillis("2016-01-01T00:00:00.5Z"));
+		assertEquals(1451606400000L, TimeDateUtils.parseEpochMillis("2016-01-01T03:00:00+03:00"));
+	}
+
+	@Test
+	public void testSameAsSimpleDateFormat() throws ParseException {
+		final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.UK);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		final Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			final long time = Math.abs(random.nextLong() % 4000000000000L);
+			assertEquals(time, TimeDateUtils.parseEpochMillis(format.format(new Date(time))));
+		}
+	}
+
+	@Test
+	public void testFormatEpochMillis() throws ParseException {
+		final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.UK);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		final Random random = new Random(1);
+		for (int i = 0; i < 10000; i++) {
+			final long time = random.nextLong() % 4000000000000L;
+			assertEquals(format.format(new Date(time)), TimeDateUtils.formatEpochMillis(time));
+			assertEquals(time, TimeDateUtils.parseEpochMillis(TimeDateUtils.formatEpochMillis(time)));
+		}
+	}
+
+	@Test(expected = ParseException.class)
+	public void testWrongFormat() throws ParseException {
+		TimeDateUtils.parseEpochMillis("1456424003535");
+	}
+
+}